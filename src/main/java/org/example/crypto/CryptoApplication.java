@@ -3,6 +3,7 @@ package org.example.crypto;
 import org.example.crypto.cli.CryptoCLI;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.env.Environment;
 import picocli.CommandLine;
@@ -11,7 +12,10 @@ import picocli.CommandLine;
 public class CryptoApplication {
 
     public static void main(String[] args) {
-        ApplicationContext ctx = SpringApplication.run(CryptoApplication.class, args);
+        SpringApplication application = new SpringApplication(CryptoApplication.class);
+        // Тайминги фаз старта контекста доступны через /actuator/startup
+        application.setApplicationStartup(new BufferingApplicationStartup(2048));
+        ApplicationContext ctx = application.run(args);
 
         Environment env = ctx.getEnvironment();
         if (env.acceptsProfiles("local")) {
@@ -0,0 +1,9 @@
+package org.example.crypto.alert;
+
+import java.time.Duration;
+import java.time.Instant;
+
+// Срабатывание правила: value - значение метрики на тике (процент, кратность объёма или доля капитализации)
+public record Alert(String ruleId, AlertRule.Type type, AlertRule.Direction direction, String coinId, String symbol,
+                    double value, double threshold, Duration window, Instant tickTimestamp, Instant firedAt) {
+}
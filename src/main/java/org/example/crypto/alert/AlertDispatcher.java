@@ -0,0 +1,171 @@
+package org.example.crypto.alert;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Рассылка оповещений по получателям из отдельного потока: медленный webhook или БД не задерживают
+// загрузку тиков. Очередь ограничена; при переполнении оповещения отбрасываются и считаются в метрике.
+@Component
+public class AlertDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlertDispatcher.class);
+
+    private final List<AlertSink> sinks;
+    private final BlockingQueue<Alert> queue;
+    private final int batchSize;
+    private final Clock clock;
+    private final MeterRegistry meterRegistry;
+    private final Counter dropped;
+    private final Timer deliveryLatency;
+
+    private Thread worker;
+    private volatile boolean running;
+
+    @Autowired
+    public AlertDispatcher(JdbcAlertSink jdbcAlertSink, ObjectProvider<MeterRegistry> meterRegistry,
+                           @Value("${crypto.alerts.sinks:log}") List<String> sinkNames,
+                           @Value("${crypto.alerts.webhook-url:}") String webhookUrl,
+                           @Value("${crypto.alerts.webhook-timeout-ms:2000}") long webhookTimeoutMs,
+                           @Value("${crypto.alerts.queue-capacity:10000}") int queueCapacity,
+                           @Value("${crypto.alerts.batch-size:100}") int batchSize) {
+        this(sinks(sinkNames, jdbcAlertSink, webhookUrl, Duration.ofMillis(webhookTimeoutMs)), queueCapacity, batchSize,
+                Clock.systemUTC(), meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
+    public AlertDispatcher(List<AlertSink> sinks, int queueCapacity, int batchSize, Clock clock,
+                           MeterRegistry meterRegistry) {
+        this.sinks = List.copyOf(sinks);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.clock = clock;
+        this.meterRegistry = meterRegistry;
+        this.dropped = meterRegistry.counter("crypto.alerts.dropped");
+        // От срабатывания правила до доставки последнему получателю
+        this.deliveryLatency = Timer.builder("crypto.alerts.delivery.latency")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static List<AlertSink> sinks(List<String> names, JdbcAlertSink jdbcAlertSink, String webhookUrl,
+                                         Duration webhookTimeout) {
+        List<AlertSink> sinks = new ArrayList<>();
+        for (String name : names) {
+            switch (name.trim().toLowerCase()) {
+                case "log" -> sinks.add(new LogAlertSink());
+                case "db" -> sinks.add(jdbcAlertSink);
+                case "webhook" -> {
+                    if (webhookUrl == null || webhookUrl.isBlank()) {
+                        throw new IllegalArgumentException("Для получателя webhook не задан crypto.alerts.webhook-url");
+                    }
+                    sinks.add(new WebhookAlertSink(webhookUrl, webhookTimeout));
+                }
+                case "" -> {
+                }
+                default -> throw new IllegalArgumentException("Неизвестный получатель оповещений: " + name);
+            }
+        }
+        return sinks;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (sinks.isEmpty()) {
+            logger.info("Получатели оповещений не заданы, оповещения только считаются в метриках");
+            return;
+        }
+        running = true;
+        worker = new Thread(this::run, "alert-dispatcher");
+        worker.setDaemon(true);
+        worker.start();
+        logger.info("Получатели оповещений: {}", sinks.stream().map(AlertSink::name).toList());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (worker == null) {
+            return;
+        }
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        worker.interrupt();
+    }
+
+    // Не блокирует: вызывается из потока загрузки тиков
+    public void submit(List<Alert> alerts) {
+        if (worker == null) {
+            return;
+        }
+        int lost = 0;
+        for (Alert alert : alerts) {
+            if (!queue.offer(alert)) {
+                lost++;
+            }
+        }
+        if (lost > 0) {
+            dropped.increment(lost);
+            logger.warn("Очередь оповещений переполнена, отброшено {}", lost);
+        }
+    }
+
+    private void run() {
+        List<Alert> batch = new ArrayList<>(batchSize);
+        // После остановки очередь дорассылается, пока не опустеет
+        while (running || !queue.isEmpty()) {
+            try {
+                Alert first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                deliver(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void deliver(List<Alert> batch) {
+        for (AlertSink sink : sinks) {
+            try {
+                sink.deliver(batch);
+                meterRegistry.counter("crypto.alerts.delivery", "sink", sink.name(), "result", "ok")
+                        .increment(batch.size());
+            } catch (Exception e) {
+                meterRegistry.counter("crypto.alerts.delivery", "sink", sink.name(), "result", "error")
+                        .increment(batch.size());
+                logger.warn("Не удалось доставить {} оповещений получателю {}: {}", batch.size(), sink.name(),
+                        e.getMessage());
+            }
+        }
+        long now = clock.millis();
+        for (Alert alert : batch) {
+            deliveryLatency.record(Math.max(0, now - alert.firedAt().toEpochMilli()), TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package org.example.crypto.alert;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.crypto.cluster.CoinShardingService;
+import org.example.crypto.model.CoinPriceHistory;
+import org.example.crypto.service.TicksIngestedEvent;
+import org.example.crypto.service.TrackedCoinRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Правила оповещений проверяются прямо на загрузке (TicksIngestedEvent), по буферу последних тиков каждой монеты,
+// без запросов к БД. Правило срабатывает при пересечении порога: пока условие держится, повторов нет,
+// после возврата за порог правило снова взводится. Вдобавок действует cooldown правила по монете.
+// Доля капитализации считается среди монет этого узла и только когда известны капитализации всех из них.
+// Найденные оповещения уходят в AlertDispatcher, рассылка идёт в его потоке.
+@Component
+public class AlertEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlertEngine.class);
+
+    private final AlertDispatcher dispatcher;
+    private final Supplier<List<String>> ownedCoins;
+    private final Path rulesFile;
+    private final int seriesCapacity;
+    private final Clock clock;
+
+    @Value("${crypto.alerts.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${crypto.alerts.reload-interval-seconds:5}")
+    private long reloadIntervalSeconds = 5;
+
+    private volatile RuleIndex index = RuleIndex.build(List.of(), 0);
+    private long horizonMillis;
+    private boolean hasDominance;
+    private long rulesModified = Long.MIN_VALUE;
+    private final Map<String, CoinSeries> series = new HashMap<>();
+
+    private final Timer evaluationTimer;
+    private final Counter evaluated;
+    private final Counter stale;
+    private final Counter suppressed;
+    private final Map<AlertRule.Type, Counter> fired = new EnumMap<>(AlertRule.Type.class);
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public AlertEngine(AlertDispatcher dispatcher, TrackedCoinRegistry trackedCoinRegistry,
+                       CoinShardingService coinShardingService, ObjectProvider<MeterRegistry> meterRegistry,
+                       @Value("${crypto.alerts.rules-file:alert_rules.json}") String rulesFile,
+                       @Value("${crypto.alerts.series-capacity:256}") int seriesCapacity) {
+        this(dispatcher, () -> coinShardingService.filterOwned(trackedCoinRegistry.snapshot()), Paths.get(rulesFile),
+                seriesCapacity, Clock.systemUTC(), meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
+    public AlertEngine(AlertDispatcher dispatcher, Supplier<List<String>> ownedCoins, Path rulesFile,
+                       int seriesCapacity, Clock clock, MeterRegistry meterRegistry) {
+        this.dispatcher = dispatcher;
+        this.ownedCoins = ownedCoins;
+        this.rulesFile = rulesFile;
+        this.seriesCapacity = Math.max(2, seriesCapacity);
+        this.clock = clock;
+        // Время проверки пачки тиков на загрузке, с гистограммой для перцентилей задержки
+        this.evaluationTimer = Timer.builder("crypto.alerts.evaluation")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.evaluated = meterRegistry.counter("crypto.alerts.ticks", "result", "evaluated");
+        this.stale = meterRegistry.counter("crypto.alerts.ticks", "result", "stale");
+        this.suppressed = meterRegistry.counter("crypto.alerts.suppressed");
+        for (AlertRule.Type type : AlertRule.Type.values()) {
+            fired.put(type, meterRegistry.counter("crypto.alerts.fired", "type", type.name().toLowerCase()));
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            logger.info("Оповещения отключены");
+            return;
+        }
+        reloadRules();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "alert-rules");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::reloadRules, reloadIntervalSeconds, reloadIntervalSeconds,
+                TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    // Файл правил перечитывается при изменении; с ошибкой в файле остаются прежние правила
+    void reloadRules() {
+        try {
+            long modified = Files.exists(rulesFile) ? Files.getLastModifiedTime(rulesFile).toMillis() : -1;
+            if (modified == rulesModified) {
+                return;
+            }
+            rulesModified = modified;
+            if (modified < 0) {
+                logger.info("Файл правил оповещений {} не найден, правил нет", rulesFile);
+                setRules(List.of());
+                return;
+            }
+            setRules(AlertRule.read(rulesFile));
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Не удалось прочитать правила оповещений из {}: {}", rulesFile, e.getMessage());
+        }
+    }
+
+    // Новый индекс получает следующую версию; состояние срабатываний монет сбрасывается при первом их тике,
+    // и первое значение метрики после смены правил только запоминается, чтобы не повторить уже разосланное
+    public synchronized void setRules(List<AlertRule> rules) {
+        RuleIndex rebuilt = RuleIndex.build(rules, index.version + 1);
+        horizonMillis = rules.stream()
+                .filter(rule -> rule.type() != AlertRule.Type.DOMINANCE)
+                .mapToLong(rule -> rule.window().toMillis())
+                .max().orElse(0);
+        hasDominance = rules.stream().anyMatch(rule -> rule.type() == AlertRule.Type.DOMINANCE);
+        index = rebuilt;
+        logger.info("Правил оповещений: {}, групп в индексе: {}", rebuilt.ruleCount(), rebuilt.groupCount);
+    }
+
+    @EventListener
+    public void onTicksIngested(TicksIngestedEvent event) {
+        if (!enabled || event.getTicks().isEmpty() || index.ruleCount() == 0) {
+            return;
+        }
+        List<Alert> alerts = evaluate(event.getTicks());
+        if (!alerts.isEmpty()) {
+            dispatcher.submit(alerts);
+        }
+    }
+
+    synchronized List<Alert> evaluate(List<CoinPriceHistory> ticks) {
+        long started = System.nanoTime();
+        RuleIndex rules = index;
+        List<Alert> alerts = new ArrayList<>();
+
+        // Капитализации всей пачки обновляются до проверок, чтобы доли считались от одной суммы
+        for (CoinPriceHistory tick : ticks) {
+            if (tick.getMarketCap() != null) {
+                seriesOf(tick.getCoinId()).marketCap = tick.getMarketCap();
+            }
+        }
+        double totalMarketCap = hasDominance ? totalMarketCap() : Double.NaN;
+
+        double[] values = new double[rules.metrics.length];
+        boolean[] computed = new boolean[rules.metrics.length];
+        Instant firedAt = clock.instant();
+        int applied = 0;
+        for (CoinPriceHistory tick : ticks) {
+            if (tick.getPrice() == null || tick.getTimestamp() == null) {
+                continue;
+            }
+            CoinSeries coin = seriesOf(tick.getCoinId());
+            long time = tick.getTimestamp().toEpochMilli();
+            double volume = tick.getVolume() == null ? Double.NaN : tick.getVolume();
+            if (!coin.append(time, tick.getPrice(), volume, horizonMillis)) {
+                stale.increment();
+                continue;
+            }
+            applied++;
+            if (coin.indexVersion != rules.version) {
+                coin.resetRules(rules.groupCount, rules.version);
+            }
+            Arrays.fill(computed, false);
+            // Сначала правила самой монеты, затем правила для всех монет
+            for (int pass = 0; pass < 2; pass++) {
+                RuleIndex.Group[] groups = pass == 0 ? rules.groupsOf(tick.getCoinId()) : rules.anyCoin;
+                for (RuleIndex.Group group : groups) {
+                    int metricId = group.metricId;
+                    if (!computed[metricId]) {
+                        values[metricId] = metric(rules.metrics[metricId], coin, time, tick.getPrice(), volume,
+                                totalMarketCap);
+                        computed[metricId] = true;
+                    }
+                    check(group, coin, tick, values[metricId], firedAt, alerts);
+                }
+            }
+        }
+        evaluated.increment(applied);
+        evaluationTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        return alerts;
+    }
+
+    private void check(RuleIndex.Group group, CoinSeries coin, CoinPriceHistory tick, double value, Instant firedAt,
+                       List<Alert> alerts) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        int satisfied = group.satisfied(value);
+        int previous = coin.satisfied[group.id];
+        coin.satisfied[group.id] = satisfied;
+        if (previous < 0 || satisfied <= previous) {
+            return;
+        }
+        long time = tick.getTimestamp().toEpochMilli();
+        for (int r = previous; r < satisfied; r++) {
+            AlertRule rule = group.rules[r];
+            Long last = coin.lastFired.get(rule.id());
+            if (last != null && time - last < rule.cooldown().toMillis()) {
+                suppressed.increment();
+                continue;
+            }
+            coin.lastFired.put(rule.id(), time);
+            fired.get(rule.type()).increment();
+            alerts.add(new Alert(rule.id(), rule.type(),
+                    group.negated ? AlertRule.Direction.DOWN : AlertRule.Direction.UP, tick.getCoinId(),
+                    tick.getSymbol(), value, rule.threshold(), rule.window(), tick.getTimestamp(), firedAt));
+        }
+    }
+
+    private static double metric(RuleIndex.Metric metric, CoinSeries coin, long time, double price, double volume,
+                                 double totalMarketCap) {
+        switch (metric.type()) {
+            case PRICE_CHANGE -> {
+                double base = coin.priceAtOrBefore(time - metric.window().toMillis());
+                return base > 0 ? (price / base - 1) * 100 : Double.NaN;
+            }
+            case VOLUME_SPIKE -> {
+                double mean = coin.meanVolumeBefore(time - metric.window().toMillis());
+                return mean > 0 && !Double.isNaN(volume) ? volume / mean : Double.NaN;
+            }
+            case DOMINANCE -> {
+                return totalMarketCap > 0 && !Double.isNaN(coin.marketCap) ? coin.marketCap / totalMarketCap * 100
+                        : Double.NaN;
+            }
+            default -> throw new IllegalStateException("Неизвестный тип правила: " + metric.type());
+        }
+    }
+
+    // Сумма капитализаций монет узла; NaN, пока не у всех из них известна капитализация
+    private double totalMarketCap() {
+        double total = 0;
+        for (String coinId : ownedCoins.get()) {
+            CoinSeries coin = series.get(coinId);
+            if (coin == null || Double.isNaN(coin.marketCap)) {
+                return Double.NaN;
+            }
+            total += coin.marketCap;
+        }
+        return total;
+    }
+
+    private CoinSeries seriesOf(String coinId) {
+        return series.computeIfAbsent(coinId, id -> new CoinSeries(seriesCapacity));
+    }
+}
@@ -0,0 +1,71 @@
+package org.example.crypto.alert;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Правило оповещения из файла правил. coin = "*" - правило для каждой монеты.
+// PRICE_CHANGE: изменение цены за window в процентах; threshold - величина движения, DOWN - падение.
+// VOLUME_SPIKE: объём тика относительно среднего объёма за window; DOWN - провал объёма ниже доли threshold.
+// DOMINANCE: доля капитализации монеты в процентах пересекает threshold снизу (UP) или сверху (DOWN).
+public record AlertRule(String id, Type type, String coin, Duration window, double threshold,
+                        Direction direction, Duration cooldown) {
+
+    public static final String ANY_COIN = "*";
+
+    private static final ObjectMapper MAPPER = JsonMapper.builder()
+            .enable(MapperFeature.ACCEPT_CASE_INSENSITIVE_ENUMS)
+            .findAndAddModules()
+            .build();
+
+    public enum Type {
+        PRICE_CHANGE, VOLUME_SPIKE, DOMINANCE
+    }
+
+    public enum Direction {
+        UP, DOWN, BOTH
+    }
+
+    public AlertRule {
+        if (id == null || id.isBlank()) {
+            throw new IllegalArgumentException("У правила оповещения нет id");
+        }
+        if (type == null) {
+            throw new IllegalArgumentException("У правила " + id + " не задан type");
+        }
+        if (type != Type.DOMINANCE && (window == null || window.isZero() || window.isNegative())) {
+            throw new IllegalArgumentException("У правила " + id + " не задано окно window");
+        }
+        if (type == Type.PRICE_CHANGE && threshold <= 0) {
+            throw new IllegalArgumentException("Порог изменения цены правила " + id + " должен быть положительным");
+        }
+        coin = coin == null || coin.isBlank() ? ANY_COIN : coin.trim().toLowerCase();
+        direction = direction == null ? Direction.UP : direction;
+        cooldown = cooldown == null ? Duration.ZERO : cooldown;
+    }
+
+    // Условие правила сводится к виду sign * metric >= bound: так все правила группы сортируются по одному порогу
+    double bound(boolean negated) {
+        return negated && type != Type.PRICE_CHANGE ? -threshold : threshold;
+    }
+
+    public static List<AlertRule> read(Path file) throws IOException {
+        List<AlertRule> rules = MAPPER.readValue(Files.readString(file), new TypeReference<List<AlertRule>>() {});
+        Set<String> ids = new HashSet<>();
+        for (AlertRule rule : rules) {
+            if (!ids.add(rule.id())) {
+                throw new IllegalArgumentException("Повторяющийся id правила оповещения: " + rule.id());
+            }
+        }
+        return List.copyOf(rules);
+    }
+}
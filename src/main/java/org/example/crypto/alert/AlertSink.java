@@ -0,0 +1,11 @@
+package org.example.crypto.alert;
+
+import java.util.List;
+
+// Получатель оповещений. Вызывается из потока рассылки, а не из потока загрузки тиков
+public interface AlertSink {
+
+    String name();
+
+    void deliver(List<Alert> alerts) throws Exception;
+}
@@ -0,0 +1,154 @@
+package org.example.crypto.alert;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Кольцевой буфер последних тиков монеты для правил оповещений. Хранит не меньше horizon истории:
+// если самый старый тик ещё нужен самому длинному окну, буфер растёт, иначе тик перезаписывается.
+// Объём хранится префиксными суммами, поэтому средний объём за окно - разность двух сумм, а не проход по окну.
+final class CoinSeries {
+
+    private long[] times;
+    private double[] prices;
+    private double[] volumeSums;
+    private int[] volumeCounts;
+    private int start;
+    private int size;
+    private int sinceRebase;
+
+    double marketCap = Double.NaN;
+    // Число выполненных правил каждой группы индекса на прошлом тике; -1 - ещё не известно
+    int[] satisfied = new int[0];
+    int indexVersion = -1;
+    // Время тика последнего срабатывания правила (по id) для cooldown
+    final Map<String, Long> lastFired = new HashMap<>();
+
+    CoinSeries(int capacity) {
+        times = new long[capacity];
+        prices = new double[capacity];
+        volumeSums = new double[capacity];
+        volumeCounts = new int[capacity];
+    }
+
+    long lastTime() {
+        return size == 0 ? Long.MIN_VALUE : times[slot(size - 1)];
+    }
+
+    // false - тик не новее последнего и не добавлен
+    boolean append(long time, double price, double volume, long horizon) {
+        if (size > 0 && time <= lastTime()) {
+            return false;
+        }
+        if (size == times.length) {
+            // Самый старый тик не нужен, если следующий за ним уже не позже начала самого длинного окна
+            if (size > 1 && times[slot(1)] <= time - horizon) {
+                start = slot(1);
+                size--;
+            } else {
+                grow();
+            }
+        }
+        double previousSum = size == 0 ? 0 : volumeSums[slot(size - 1)];
+        int previousCount = size == 0 ? 0 : volumeCounts[slot(size - 1)];
+        boolean hasVolume = !Double.isNaN(volume);
+        int slot = slot(size);
+        times[slot] = time;
+        prices[slot] = price;
+        volumeSums[slot] = previousSum + (hasVolume ? volume : 0);
+        volumeCounts[slot] = previousCount + (hasVolume ? 1 : 0);
+        size++;
+        if (++sinceRebase >= times.length) {
+            rebase();
+        }
+        return true;
+    }
+
+    // Цена последнего тика не позже time; NaN - истории на такую глубину нет
+    double priceAtOrBefore(long time) {
+        int position = lastAtOrBefore(time);
+        return position < 0 ? Double.NaN : prices[slot(position)];
+    }
+
+    // Средний объём тиков в (from, последний тик), без самого последнего; NaN - окно не покрыто историей
+    double meanVolumeBefore(long from) {
+        int first = lastAtOrBefore(from);
+        if (first < 0 || size < 2) {
+            return Double.NaN;
+        }
+        int last = slot(size - 2);
+        int base = slot(first);
+        int count = volumeCounts[last] - volumeCounts[base];
+        return count == 0 ? Double.NaN : (volumeSums[last] - volumeSums[base]) / count;
+    }
+
+    private int lastAtOrBefore(long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (times[slot(middle)] <= time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low - 1;
+    }
+
+    private int slot(int position) {
+        int slot = start + position;
+        return slot >= times.length ? slot - times.length : slot;
+    }
+
+    private void grow() {
+        int capacity = times.length * 2;
+        times = unwrap(times, capacity);
+        prices = unwrap(prices, capacity);
+        volumeSums = unwrap(volumeSums, capacity);
+        volumeCounts = unwrap(volumeCounts, capacity);
+        start = 0;
+    }
+
+    private long[] unwrap(long[] source, int capacity) {
+        long[] target = new long[capacity];
+        int head = Math.min(size, source.length - start);
+        System.arraycopy(source, start, target, 0, head);
+        System.arraycopy(source, 0, target, head, size - head);
+        return target;
+    }
+
+    private double[] unwrap(double[] source, int capacity) {
+        double[] target = new double[capacity];
+        int head = Math.min(size, source.length - start);
+        System.arraycopy(source, start, target, 0, head);
+        System.arraycopy(source, 0, target, head, size - head);
+        return target;
+    }
+
+    private int[] unwrap(int[] source, int capacity) {
+        int[] target = new int[capacity];
+        int head = Math.min(size, source.length - start);
+        System.arraycopy(source, start, target, 0, head);
+        System.arraycopy(source, 0, target, head, size - head);
+        return target;
+    }
+
+    // Префиксные суммы отсчитываются от самого старого тика в буфере, чтобы не росли без предела и не теряли точность
+    private void rebase() {
+        sinceRebase = 0;
+        double sumBase = volumeSums[start];
+        int countBase = volumeCounts[start];
+        for (int position = 0; position < size; position++) {
+            int slot = slot(position);
+            volumeSums[slot] -= sumBase;
+            volumeCounts[slot] -= countBase;
+        }
+    }
+
+    void resetRules(int groupCount, int version) {
+        satisfied = new int[groupCount];
+        Arrays.fill(satisfied, -1);
+        indexVersion = version;
+    }
+}
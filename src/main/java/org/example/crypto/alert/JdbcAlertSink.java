@@ -0,0 +1,48 @@
+package org.example.crypto.alert;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Types;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+// Журнал оповещений в coin_alert; serving_alerts - последние сутки для Grafana
+@Repository
+public class JdbcAlertSink implements AlertSink {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO coin_alert (fired_at, tick_ts, value, threshold, window_seconds, coin_key, rule_id, type, direction) " +
+            "SELECT ?, ?, ?, ?, ?, c.coin_key, ?, ?, ? FROM coin c WHERE c.coin_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcAlertSink(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public String name() {
+        return "db";
+    }
+
+    @Override
+    public void deliver(List<Alert> alerts) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, alerts, 500, (ps, alert) -> {
+            ps.setObject(1, OffsetDateTime.ofInstant(alert.firedAt(), ZoneOffset.UTC));
+            ps.setObject(2, OffsetDateTime.ofInstant(alert.tickTimestamp(), ZoneOffset.UTC));
+            ps.setDouble(3, alert.value());
+            ps.setDouble(4, alert.threshold());
+            if (alert.window() == null) {
+                ps.setNull(5, Types.INTEGER);
+            } else {
+                ps.setInt(5, (int) alert.window().toSeconds());
+            }
+            ps.setString(6, alert.ruleId());
+            ps.setString(7, alert.type().name());
+            ps.setString(8, alert.direction().name());
+            ps.setString(9, alert.coinId());
+        });
+    }
+}
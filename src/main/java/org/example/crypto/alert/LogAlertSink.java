@@ -0,0 +1,25 @@
+package org.example.crypto.alert;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+public class LogAlertSink implements AlertSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(LogAlertSink.class);
+
+    @Override
+    public String name() {
+        return "log";
+    }
+
+    @Override
+    public void deliver(List<Alert> alerts) {
+        for (Alert alert : alerts) {
+            logger.warn("Оповещение {}: {} {} {} = {} (порог {}, окно {}, тик {})", alert.ruleId(), alert.symbol(),
+                    alert.type(), alert.direction(), String.format("%.4f", alert.value()), alert.threshold(),
+                    alert.window(), alert.tickTimestamp());
+        }
+    }
+}
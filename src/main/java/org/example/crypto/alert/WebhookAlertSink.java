@@ -0,0 +1,47 @@
+package org.example.crypto.alert;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.List;
+
+// POST пачки оповещений JSON-массивом на webhook-url; ответ не 2xx или таймаут - ошибка доставки
+public class WebhookAlertSink implements AlertSink {
+
+    private final ObjectMapper objectMapper = JsonMapper.builder()
+            .findAndAddModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(SerializationFeature.WRITE_DURATIONS_AS_TIMESTAMPS)
+            .build();
+    private final WebClient webClient;
+    private final String url;
+    private final Duration timeout;
+
+    public WebhookAlertSink(String url, Duration timeout) {
+        this.webClient = WebClient.create();
+        this.url = url;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public String name() {
+        return "webhook";
+    }
+
+    @Override
+    public void deliver(List<Alert> alerts) throws Exception {
+        byte[] body = objectMapper.writeValueAsBytes(alerts);
+        webClient.post()
+                .uri(url)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .retrieve()
+                .toBodilessEntity()
+                .timeout(timeout)
+                .block();
+    }
+}
@@ -0,0 +1,138 @@
+package org.example.crypto.backtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Unmatched;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+// Ночной прогон бэктеста: ряды закрытий загружаются из coin_tick один раз, затем все сетки параметров
+// прогоняются по всем монетам параллельно. Результаты и пропускная способность (бар/с) пишутся
+// в backtest_result и backtest_run. Поднимает только DataSource и JdbcTemplate, без веб-сервера и загрузки цен.
+@Command(name = "backtest", mixinStandardHelpOptions = true,
+        description = "Бэктест торговых правил по сохранённой истории")
+public class BacktestMain implements Callable<Integer> {
+
+    private static final Logger logger = LoggerFactory.getLogger(BacktestMain.class);
+
+    @Option(names = "--days", defaultValue = "365", description = "Глубина истории в днях")
+    int days;
+
+    @Option(names = "--bar-minutes", defaultValue = "60", description = "Размер бара; параметры стратегий - в барах")
+    int barMinutes;
+
+    @Option(names = "--coins", split = ",", description = "Монеты; по умолчанию все, у которых есть тики")
+    List<String> coins = new ArrayList<>();
+
+    @Option(names = "--grid", description = "Сетка: стратегия:параметр=значения;... (можно несколько раз)")
+    List<String> grids = new ArrayList<>();
+
+    @Option(names = "--cost-bps", defaultValue = "10", description = "Комиссия и проскальзывание на сделку, б.п.")
+    double costBps;
+
+    @Option(names = "--min-bars", defaultValue = "100", description = "Монеты с более коротким рядом пропускаются")
+    int minBars;
+
+    @Option(names = "--parallelism", defaultValue = "0", description = "Потоков fork/join; 0 - по числу ядер")
+    int parallelism;
+
+    @Option(names = "--dry-run", description = "Не записывать результаты")
+    boolean dryRun;
+
+    // Остальные аргументы - параметры Spring, например --spring.datasource.url=...
+    @Unmatched
+    List<String> springArgs = new ArrayList<>();
+
+    @Configuration
+    @ImportAutoConfiguration({DataSourceAutoConfiguration.class, JdbcTemplateAutoConfiguration.class,
+            DataSourceTransactionManagerAutoConfiguration.class})
+    @Import(BacktestStore.class)
+    static class Context {
+    }
+
+    public static void main(String[] args) {
+        System.exit(new CommandLine(new BacktestMain()).execute(args));
+    }
+
+    @Override
+    public Integer call() {
+        List<ParameterGrid> parsed = (grids.isEmpty() ? ParameterGrid.DEFAULTS : grids).stream()
+                .map(ParameterGrid::parse)
+                .toList();
+        int parameterSets = parsed.stream().mapToInt(grid -> grid.points().size()).sum();
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        Instant to = Instant.now().truncatedTo(ChronoUnit.HOURS);
+        Instant from = to.minus(Duration.ofDays(days));
+
+        try (ConfigurableApplicationContext ctx = new SpringApplicationBuilder(Context.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .run(springArgs.toArray(String[]::new))) {
+            BacktestStore store = ctx.getBean(BacktestStore.class);
+
+            long loadStarted = System.nanoTime();
+            List<PriceSeries> series = store.loadSeries(from, to, barMinutes * 60L, coins).stream()
+                    .filter(s -> s.length() >= minBars)
+                    .toList();
+            long bars = series.stream().mapToLong(PriceSeries::length).sum();
+            logger.info("Загружено {} монет, {} баров за {} мс", series.size(), bars,
+                    (System.nanoTime() - loadStarted) / 1_000_000);
+            if (series.isEmpty()) {
+                logger.warn("Нет монет с историей не короче {} баров", minBars);
+                return 1;
+            }
+
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            Backtester.Report report;
+            try {
+                double periodsPerYear = 365.0 * 24 * 60 / barMinutes;
+                report = new Backtester(pool, costBps, periodsPerYear).run(series, parsed);
+            } finally {
+                pool.shutdownNow();
+            }
+            logger.info("Бэктест: {} монет x {} наборов параметров = {} прогонов, {} баров за {} с, {} бар/с на {} потоках",
+                    series.size(), parameterSets, report.results().size(), report.bars(),
+                    String.format(Locale.ROOT, "%.2f", report.seconds()),
+                    String.format(Locale.ROOT, "%.0f", report.barsPerSecond()), threads);
+            report.results().stream()
+                    .filter(result -> !Double.isNaN(result.performance().sharpe()))
+                    .sorted(Comparator.comparingDouble((Backtester.Result result) -> result.performance().sharpe())
+                            .reversed())
+                    .limit(10)
+                    .forEach(result -> logger.info("{} {} {}: доходность {}%, просадка {}%, Sharpe {}",
+                            result.symbol(), result.strategy(), result.parameters(),
+                            String.format(Locale.ROOT, "%.1f", result.performance().totalReturn() * 100),
+                            String.format(Locale.ROOT, "%.1f", result.performance().maxDrawdown() * 100),
+                            String.format(Locale.ROOT, "%.2f", result.performance().sharpe())));
+
+            if (!dryRun) {
+                long runId = store.startRun(new BacktestStore.Run(from, to, barMinutes, series.size(), parameterSets,
+                        threads, costBps));
+                store.finishRun(runId, report);
+                logger.info("Результаты записаны, прогон {}", runId);
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,159 @@
+package org.example.crypto.backtest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Загрузка закрытий баров из coin_tick и таблицы результатов: backtest_run - прогон с пропускной способностью,
+// backtest_result - показатели каждой пары (монета, стратегия с параметрами). serving_backtest - последний прогон.
+@Repository
+public class BacktestStore {
+
+    // Последняя цена каждой монеты в каждом баре, монета за монетой по первичному ключу (coin_key, ts)
+    private static final String CLOSES_SQL =
+            "SELECT DISTINCT ON (t.coin_key, bar) c.coin_id, c.symbol, " +
+            "floor(extract(epoch FROM t.ts) / ?)::bigint AS bar, t.price " +
+            "FROM coin_tick t JOIN coin c ON c.coin_key = t.coin_key " +
+            "WHERE t.ts >= ? AND t.ts < ? AND (cardinality(?::varchar[]) = 0 OR c.coin_id = ANY(?)) " +
+            "ORDER BY t.coin_key, bar, t.ts DESC";
+
+    private static final String INSERT_RESULT_SQL =
+            "INSERT INTO backtest_result (run_id, total_return, max_drawdown, sharpe, exposure, bars, trades, " +
+            "coin_key, strategy, parameters) SELECT ?, ?, ?, ?, ?, ?, ?, c.coin_key, ?, ? FROM coin c WHERE c.coin_id = ?";
+
+    public record Run(Instant from, Instant to, int barMinutes, int coins, int parameterSets, int parallelism,
+                      double costBps) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${crypto.backtest.fetch-size:10000}")
+    private int fetchSize = 10000;
+
+    public BacktestStore(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Ряды закрытий всех (или перечисленных) монет за [from, to); строки идут порциями по fetchSize внутри транзакции
+    public List<PriceSeries> loadSeries(Instant from, Instant to, long barSeconds, List<String> coinIds) {
+        List<PriceSeries> series = new ArrayList<>();
+        String[] ids = coinIds.toArray(String[]::new);
+        SeriesBuilder builder = new SeriesBuilder(series);
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(CLOSES_SQL);
+            statement.setFetchSize(fetchSize);
+            statement.setLong(1, barSeconds);
+            statement.setTimestamp(2, Timestamp.from(from));
+            statement.setTimestamp(3, Timestamp.from(to));
+            statement.setArray(4, connection.createArrayOf("varchar", ids));
+            statement.setArray(5, connection.createArrayOf("varchar", ids));
+            return statement;
+        }, rs -> {
+            builder.add(rs.getString(1), rs.getString(2), rs.getLong(3) * barSeconds, rs.getDouble(4));
+        }));
+        builder.finish();
+        return series;
+    }
+
+    public long startRun(Run run) {
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO backtest_run (started_at, history_from, history_to, bar_minutes, coins, " +
+                            "parameter_sets, parallelism, cost_bps) VALUES (now(), ?, ?, ?, ?, ?, ?, ?)",
+                    new String[]{"run_id"});
+            statement.setObject(1, OffsetDateTime.ofInstant(run.from(), ZoneOffset.UTC));
+            statement.setObject(2, OffsetDateTime.ofInstant(run.to(), ZoneOffset.UTC));
+            statement.setInt(3, run.barMinutes());
+            statement.setInt(4, run.coins());
+            statement.setInt(5, run.parameterSets());
+            statement.setInt(6, run.parallelism());
+            statement.setDouble(7, run.costBps());
+            return statement;
+        }, keys);
+        return keys.getKey().longValue();
+    }
+
+    // Результаты и итог прогона в одной транзакции: serving_backtest видит только завершённые прогоны
+    public void finishRun(long runId, Backtester.Report report) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_RESULT_SQL, report.results(), 1000, (ps, result) -> {
+                Performance performance = result.performance();
+                ps.setLong(1, runId);
+                ps.setDouble(2, performance.totalReturn());
+                ps.setDouble(3, performance.maxDrawdown());
+                setNullableDouble(ps, 4, performance.sharpe());
+                ps.setDouble(5, performance.exposure());
+                ps.setInt(6, performance.bars());
+                ps.setInt(7, performance.trades());
+                ps.setString(8, result.strategy().name().toLowerCase());
+                ps.setString(9, result.parameters());
+                ps.setString(10, result.coinId());
+            });
+            jdbcTemplate.update("UPDATE backtest_run SET bars = ?, seconds = ?, bars_per_second = ? WHERE run_id = ?",
+                    report.bars(), report.seconds(), report.barsPerSecond(), runId);
+        });
+    }
+
+    private static void setNullableDouble(PreparedStatement ps, int index, double value) throws SQLException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            ps.setNull(index, Types.DOUBLE);
+        } else {
+            ps.setDouble(index, value);
+        }
+    }
+
+    // Собирает строки одной монеты в растущие массивы и закрывает ряд при переходе к следующей монете
+    private static final class SeriesBuilder {
+
+        private final List<PriceSeries> series;
+        private String coinId;
+        private String symbol;
+        private long[] times = new long[1024];
+        private double[] closes = new double[1024];
+        private int size;
+
+        SeriesBuilder(List<PriceSeries> series) {
+            this.series = series;
+        }
+
+        void add(String coinId, String symbol, long time, double close) {
+            if (!coinId.equals(this.coinId)) {
+                finish();
+                this.coinId = coinId;
+                this.symbol = symbol;
+            }
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                closes = Arrays.copyOf(closes, size * 2);
+            }
+            times[size] = time;
+            closes[size] = close;
+            size++;
+        }
+
+        void finish() {
+            if (coinId != null && size > 0) {
+                series.add(new PriceSeries(coinId, symbol, Arrays.copyOf(times, size), Arrays.copyOf(closes, size)));
+            }
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.crypto.backtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// Прогон сеток параметров по всем монетам. Задача - пара (монета, набор параметров); задачи одной монеты идут
+// подряд, так что соседние задачи в потоке читают уже прогретый в кеше ряд. Задачи делятся fork/join
+// через параллельный IntStream в своём ForkJoinPool. Массив позиций - один на поток и переиспользуется.
+public class Backtester {
+
+    public record Result(String coinId, String symbol, Strategy strategy, String parameters, Performance performance) {
+    }
+
+    public record Report(List<Result> results, long bars, double seconds) {
+
+        public double barsPerSecond() {
+            return seconds > 0 ? bars / seconds : 0;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final double costRate;
+    private final double periodsPerYear;
+    private final ThreadLocal<double[]> scratch = ThreadLocal.withInitial(() -> new double[0]);
+
+    // costBps - комиссия и проскальзывание за изменение позиции на 1, в базисных пунктах
+    public Backtester(ForkJoinPool pool, double costBps, double periodsPerYear) {
+        this.pool = pool;
+        this.costRate = costBps / 10_000;
+        this.periodsPerYear = periodsPerYear;
+    }
+
+    public Report run(List<PriceSeries> series, List<ParameterGrid> grids) {
+        List<PriceSeries> usable = series.stream().filter(s -> s.length() >= 2).toList();
+        // Сквозная нумерация наборов параметров всех сеток
+        List<ParameterGrid> gridOf = new ArrayList<>();
+        List<double[]> paramsOf = new ArrayList<>();
+        for (ParameterGrid grid : grids) {
+            for (double[] point : grid.points()) {
+                gridOf.add(grid);
+                paramsOf.add(point);
+            }
+        }
+        int points = paramsOf.size();
+        int tasks = usable.size() * points;
+        Result[] results = new Result[tasks];
+
+        long started = System.nanoTime();
+        if (tasks > 0) {
+            pool.submit(() -> IntStream.range(0, tasks).parallel().forEach(task -> {
+                PriceSeries coin = usable.get(task / points);
+                ParameterGrid grid = gridOf.get(task % points);
+                double[] params = paramsOf.get(task % points);
+                results[task] = new Result(coin.coinId(), coin.symbol(), grid.strategy(), grid.describe(params),
+                        evaluate(coin, grid.strategy(), params));
+            })).join();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        long bars = (long) points * usable.stream().mapToLong(PriceSeries::length).sum();
+        return new Report(List.of(results), bars, seconds);
+    }
+
+    Performance evaluate(PriceSeries coin, Strategy strategy, double[] params) {
+        double[] positions = scratch.get();
+        if (positions.length < coin.length()) {
+            positions = new double[coin.length()];
+            scratch.set(positions);
+        }
+        strategy.positions(coin.closes(), params, positions);
+        return Performance.evaluate(coin.closes(), positions, costRate, periodsPerYear);
+    }
+}
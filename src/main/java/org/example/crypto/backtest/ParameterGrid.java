@@ -0,0 +1,69 @@
+package org.example.crypto.backtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Сетка параметров стратегии: "ma_crossover:fast=5,10,20;slow=50,100,200" - декартово произведение значений.
+// Несовместимые сочетания (fast >= slow) отбрасываются.
+public record ParameterGrid(Strategy strategy, List<double[]> points) {
+
+    public static final List<String> DEFAULTS = List.of(
+            "ma_crossover:fast=5,10,20,50;slow=20,50,100,200",
+            "momentum:lookback=6,12,24,72,168;threshold=0,1,2,5",
+            "mean_reversion:window=24,72,168;entry=1,1.5,2,2.5");
+
+    public static ParameterGrid parse(String spec) {
+        int colon = spec.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Ожидается стратегия:параметр=значения;...: " + spec);
+        }
+        Strategy strategy = Strategy.valueOf(spec.substring(0, colon).trim().toUpperCase().replace('-', '_'));
+        Map<String, double[]> values = new LinkedHashMap<>();
+        for (String part : spec.substring(colon + 1).split(";")) {
+            String[] pair = part.split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Ожидается параметр=значения: " + part);
+            }
+            values.put(pair[0].trim(), Arrays.stream(pair[1].split(",")).map(String::trim)
+                    .mapToDouble(Double::parseDouble).toArray());
+        }
+        if (!values.keySet().equals(new HashSet<>(strategy.parameters()))) {
+            throw new IllegalArgumentException("Для " + strategy + " нужны параметры " + strategy.parameters()
+                    + ", задано " + values.keySet());
+        }
+        List<double[]> axes = strategy.parameters().stream().map(values::get).toList();
+        List<double[]> points = new ArrayList<>();
+        cartesian(axes, 0, new double[axes.size()], points);
+        points.removeIf(point -> !strategy.valid(point));
+        return new ParameterGrid(strategy, List.copyOf(points));
+    }
+
+    private static void cartesian(List<double[]> axes, int axis, double[] point, List<double[]> points) {
+        if (axis == axes.size()) {
+            points.add(point.clone());
+            return;
+        }
+        for (double value : axes.get(axis)) {
+            point[axis] = value;
+            cartesian(axes, axis + 1, point, points);
+        }
+    }
+
+    // fast=5;slow=50 - так параметры записываются в таблицу результатов
+    public String describe(double[] point) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < point.length; i++) {
+            if (i > 0) {
+                text.append(';');
+            }
+            double value = point[i];
+            text.append(strategy.parameters().get(i)).append('=')
+                    .append(value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,44 @@
+package org.example.crypto.backtest;
+
+// Итоги прогона: доходность и просадка - доли (0.25 = 25%), sharpe - годовой по доходностям баров,
+// exposure - доля баров в позиции. Сделка - любое изменение позиции, комиссия списывается с каждой.
+public record Performance(int bars, double totalReturn, double maxDrawdown, double sharpe, int trades,
+                          double exposure) {
+
+    // Позиция positions[t - 1] держится на движении от t - 1 к t
+    static Performance evaluate(double[] prices, double[] positions, double costRate, double periodsPerYear) {
+        double equity = 1;
+        double peak = 1;
+        double maxDrawdown = 0;
+        double sum = 0;
+        double sumSq = 0;
+        double held = 0;
+        int trades = 0;
+        int exposed = 0;
+        int n = prices.length - 1;
+        for (int t = 1; t <= n; t++) {
+            double position = positions[t - 1];
+            double change = Math.abs(position - held);
+            held = position;
+            double r = position * (prices[t] / prices[t - 1] - 1) - costRate * change;
+            if (change > 0) {
+                trades++;
+            }
+            if (position != 0) {
+                exposed++;
+            }
+            equity *= 1 + r;
+            peak = Math.max(peak, equity);
+            maxDrawdown = Math.max(maxDrawdown, 1 - equity / peak);
+            sum += r;
+            sumSq += r * r;
+        }
+        if (n <= 0) {
+            return new Performance(prices.length, 0, 0, Double.NaN, 0, 0);
+        }
+        double mean = sum / n;
+        double variance = sumSq / n - mean * mean;
+        double sharpe = variance > 1e-18 ? mean / Math.sqrt(variance) * Math.sqrt(periodsPerYear) : Double.NaN;
+        return new Performance(prices.length, equity - 1, maxDrawdown, sharpe, trades, (double) exposed / n);
+    }
+}
@@ -0,0 +1,9 @@
+package org.example.crypto.backtest;
+
+// Закрытия баров монеты в примитивных массивах: загружаются один раз и читаются всеми наборами параметров
+public record PriceSeries(String coinId, String symbol, long[] times, double[] closes) {
+
+    public int length() {
+        return closes.length;
+    }
+}
@@ -0,0 +1,107 @@
+package org.example.crypto.backtest;
+
+import java.util.List;
+
+// Торговые правила long/flat. Позиция на баре t считается только по закрытиям до t включительно
+// и держится на движении от t к t + 1, поэтому заглядывания вперёд нет. Расчёт идёт бегущими суммами
+// в заранее выделенный массив позиций, без выделения памяти на бар.
+public enum Strategy {
+
+    // Длинная позиция, пока SMA(fast) выше SMA(slow)
+    MA_CROSSOVER(List.of("fast", "slow")) {
+        @Override
+        boolean valid(double[] params) {
+            return params[0] >= 1 && params[0] < params[1];
+        }
+
+        @Override
+        void positions(double[] prices, double[] params, double[] out) {
+            int fast = (int) params[0];
+            int slow = (int) params[1];
+            double fastSum = 0;
+            double slowSum = 0;
+            for (int t = 0; t < prices.length; t++) {
+                fastSum += prices[t];
+                slowSum += prices[t];
+                if (t >= fast) {
+                    fastSum -= prices[t - fast];
+                }
+                if (t >= slow) {
+                    slowSum -= prices[t - slow];
+                }
+                out[t] = t >= slow - 1 && fastSum / fast > slowSum / slow ? 1 : 0;
+            }
+        }
+    },
+
+    // Длинная позиция, пока рост за lookback баров выше threshold процентов
+    MOMENTUM(List.of("lookback", "threshold")) {
+        @Override
+        boolean valid(double[] params) {
+            return params[0] >= 1;
+        }
+
+        @Override
+        void positions(double[] prices, double[] params, double[] out) {
+            int lookback = (int) params[0];
+            double threshold = params[1] / 100;
+            for (int t = 0; t < prices.length; t++) {
+                out[t] = t >= lookback && prices[t] / prices[t - lookback] - 1 > threshold ? 1 : 0;
+            }
+        }
+    },
+
+    // Покупка, когда цена ниже среднего за window на entry стандартных отклонений; выход при возврате к среднему
+    MEAN_REVERSION(List.of("window", "entry")) {
+        @Override
+        boolean valid(double[] params) {
+            return params[0] >= 2 && params[1] > 0;
+        }
+
+        @Override
+        void positions(double[] prices, double[] params, double[] out) {
+            int window = (int) params[0];
+            double entry = params[1];
+            double sum = 0;
+            double sumSq = 0;
+            double position = 0;
+            for (int t = 0; t < prices.length; t++) {
+                double price = prices[t];
+                sum += price;
+                sumSq += price * price;
+                if (t >= window) {
+                    double old = prices[t - window];
+                    sum -= old;
+                    sumSq -= old * old;
+                }
+                if (t >= window - 1) {
+                    double mean = sum / window;
+                    double variance = sumSq / window - mean * mean;
+                    if (variance > 0) {
+                        double z = (price - mean) / Math.sqrt(variance);
+                        if (position == 0 && z < -entry) {
+                            position = 1;
+                        } else if (position != 0 && z >= 0) {
+                            position = 0;
+                        }
+                    }
+                }
+                out[t] = position;
+            }
+        }
+    };
+
+    private final List<String> parameters;
+
+    Strategy(List<String> parameters) {
+        this.parameters = parameters;
+    }
+
+    public List<String> parameters() {
+        return parameters;
+    }
+
+    abstract boolean valid(double[] params);
+
+    abstract void positions(double[] prices, double[] params, double[] out);
+}
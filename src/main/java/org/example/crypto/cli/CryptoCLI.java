@@ -2,6 +2,7 @@ package org.example.crypto.cli;
 
 import org.example.crypto.service.AutoUpdateService;
 import org.example.crypto.service.CoinGeckoService;
+import org.example.crypto.service.HourlyBackfillException;
 import org.example.crypto.service.PriceHistoryService;
 import org.example.crypto.spark.SparkRunner;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,6 +10,8 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 import picocli.CommandLine.Command;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 import java.util.Scanner;
 import java.util.concurrent.Callable;
@@ -71,18 +74,18 @@ public class CryptoCLI implements Callable<Integer> {
 
 
                 case "3":
-                    System.out.print("Введите ID монеты для добавления: ");
-                    String addCoin = scanner.nextLine().trim();
-                    if (!addCoin.isEmpty()) {
-                        coinGeckoService.addTrackedCoin(addCoin);
+                    System.out.print("Введите ID монет для добавления через запятую: ");
+                    String addCoins = scanner.nextLine().trim();
+                    if (!addCoins.isEmpty()) {
+                        coinGeckoService.addTrackedCoins(List.of(addCoins.split(",")));
                     }
                     break;
 
                 case "4":
-                    System.out.print("Введите ID монеты для удаления: ");
-                    String removeCoin = scanner.nextLine().trim();
-                    if (!removeCoin.isEmpty()) {
-                        coinGeckoService.removeTrackedCoin(removeCoin);;
+                    System.out.print("Введите ID монет для удаления через запятую: ");
+                    String removeCoins = scanner.nextLine().trim();
+                    if (!removeCoins.isEmpty()) {
+                        coinGeckoService.removeTrackedCoins(List.of(removeCoins.split(",")));
                     }
                     break;
 
@@ -140,6 +143,7 @@ public class CryptoCLI implements Callable<Integer> {
         System.out.println("1. Автоматически (только если данных мало)");
         System.out.println("2. Принудительно за последние 90 дней");
         System.out.println("3. Принудительно с выбором количества дней");
+        System.out.println("4. Почасовая история с выбором количества дней");
         System.out.print("Выберите вариант: ");
 
         String choice = scanner.nextLine().trim();
@@ -173,6 +177,30 @@ public class CryptoCLI implements Callable<Integer> {
                 }
                 break;
 
+            case "4":
+                System.out.print("Введите количество дней для почасовой загрузки: ");
+                try {
+                    int days = Integer.parseInt(scanner.nextLine().trim());
+                    if (days > 0 && days <= 3650) {
+                        Instant to = Instant.now();
+                        System.out.println("Почасовая загрузка истории за " + days + " дней");
+                        try {
+                            long saved = coinGeckoService.fetchAndSaveHourlyHistory(to.minus(Duration.ofDays(days)), to);
+                            System.out.println("Почасовая история загружена, сохранено записей: " + saved);
+                        } catch (HourlyBackfillException e) {
+                            System.out.println("Почасовая история загружена с пропусками, сохранено записей: "
+                                    + e.getSaved() + ". Не загружены интервалы (повторите загрузку):");
+                            e.getGaps().forEach(gap -> System.out.println("  " + gap.coinId() + ": "
+                                    + gap.from() + " - " + gap.to()));
+                        }
+                    } else {
+                        System.out.println("Некорректное количество дней (1-3650)");
+                    }
+                } catch (NumberFormatException e) {
+                    System.out.println("Некорректный формат числа");
+                }
+                break;
+
             default:
                 System.out.println("Некорректный выбор");
         }
@@ -0,0 +1,156 @@
+package org.example.crypto.cluster;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import org.example.crypto.model.ClusterMember;
+import org.example.crypto.repository.ClusterMemberRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Component
+public class CoinShardingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoinShardingService.class);
+
+    private final ClusterMemberRepository memberRepository;
+
+    @Getter
+    @Value("${crypto.cluster.sharding.enabled:false}")
+    private boolean enabled;
+
+    @Value("${crypto.cluster.sharding.virtual-nodes:128}")
+    private int virtualNodes = 128;
+
+    @Value("${crypto.cluster.sharding.heartbeat-interval-ms:5000}")
+    private long heartbeatIntervalMs = 5000;
+
+    @Value("${crypto.cluster.sharding.member-ttl-ms:15000}")
+    private long memberTtlMs = 15000;
+
+    @Getter
+    private final String nodeId;
+
+    private ScheduledExecutorService scheduler;
+
+    private volatile ConsistentHashRing ring;
+
+    // Кольцо действительно, пока остальные реплики видят наш heartbeat: после member-ttl-ms без него
+    // наши монеты уже разобраны другими, и загружать их по старому кольцу значит дублировать работу
+    private volatile Instant leaseUntil = Instant.MIN;
+
+    private volatile int ownedCoins;
+
+    public CoinShardingService(
+            ClusterMemberRepository memberRepository,
+            MeterRegistry meterRegistry,
+            @Value("${crypto.cluster.node-id:${HOSTNAME:}}") String configuredNodeId
+    ) {
+        this.memberRepository = memberRepository;
+        this.nodeId = configuredNodeId == null || configuredNodeId.isBlank()
+                ? "node-" + UUID.randomUUID().toString().substring(0, 8)
+                : configuredNodeId;
+
+        Gauge.builder("crypto.cluster.shard.members", this, service -> service.ring == null ? 0 : service.ring.getNodes().size())
+                .description("Число живых реплик в кольце шардирования")
+                .register(meterRegistry);
+        Gauge.builder("crypto.cluster.shard.owned.coins", this, service -> service.ownedCoins)
+                .description("Число монет, которые загружает эта реплика")
+                .register(meterRegistry);
+    }
+
+    public synchronized void start() {
+        if (!enabled || scheduler != null) {
+            return;
+        }
+        // Первый heartbeat синхронно, чтобы первый цикл загрузки уже видел своё кольцо
+        heartbeat();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "shard-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::heartbeat, heartbeatIntervalMs, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+        logger.info("Шардирование запущено, узел {}", nodeId);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        scheduler = null;
+        try {
+            // Уход узла сразу виден остальным, не дожидаясь истечения TTL
+            memberRepository.deleteById(nodeId);
+        } catch (Exception e) {
+            logger.warn("Не удалось удалить узел {} из списка участников: {}", nodeId, e.getMessage());
+        }
+    }
+
+    public List<String> filterOwned(List<String> coins) {
+        if (!enabled) {
+            return coins;
+        }
+        ConsistentHashRing current = ring;
+        if (current == null) {
+            logger.warn("Кольцо шардирования ещё не построено, пропускаем загрузку");
+            ownedCoins = 0;
+            return List.of();
+        }
+        if (Instant.now().isAfter(leaseUntil)) {
+            logger.warn("Heartbeat узла {} просрочен, монеты переданы другим репликам, пропускаем загрузку", nodeId);
+            ownedCoins = 0;
+            return List.of();
+        }
+        List<String> owned = new ArrayList<>();
+        for (String coin : coins) {
+            if (nodeId.equals(current.ownerOf(coin))) {
+                owned.add(coin);
+            }
+        }
+        ownedCoins = owned.size();
+        return owned;
+    }
+
+    void heartbeat() {
+        try {
+            Instant now = Instant.now();
+            memberRepository.heartbeat(nodeId, now);
+            leaseUntil = now.plusMillis(memberTtlMs);
+            memberRepository.deleteExpired(now.minusMillis(memberTtlMs * 4));
+
+            Set<String> liveNodes = new TreeSet<>();
+            for (ClusterMember member : memberRepository.findByLastHeartbeatAfter(now.minusMillis(memberTtlMs))) {
+                liveNodes.add(member.getNodeId());
+            }
+            liveNodes.add(nodeId);
+
+            ConsistentHashRing current = ring;
+            if (current == null || !current.getNodes().equals(liveNodes)) {
+                ring = new ConsistentHashRing(liveNodes, virtualNodes);
+                logger.info("Состав кластера изменился: {}", liveNodes);
+            }
+        } catch (Exception e) {
+            logger.error("Ошибка heartbeat узла {}: {}", nodeId, e.getMessage());
+            if (ring != null && !Instant.now().isBefore(leaseUntil)) {
+                logger.warn("Узел {} выбывает из кольца до восстановления heartbeat", nodeId);
+                ring = null;
+            }
+        }
+    }
+}
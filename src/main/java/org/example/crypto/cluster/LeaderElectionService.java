@@ -0,0 +1,237 @@
+package org.example.crypto.cluster;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Component
+public class LeaderElectionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeaderElectionService.class);
+
+    interface ConnectionFactory {
+        Connection open() throws SQLException;
+    }
+
+    private final ConnectionFactory connectionFactory;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Counter acquiredCounter;
+    private final Counter lostCounter;
+
+    @Getter
+    @Value("${crypto.cluster.leader-election.enabled:false}")
+    private boolean enabled;
+
+    @Value("${crypto.cluster.leader-election.lock-key:727361}")
+    private long lockKey = 727361;
+
+    @Value("${crypto.cluster.leader-election.poll-interval-ms:5000}")
+    private long pollIntervalMs = 5000;
+
+    @Value("${crypto.cluster.leader-election.validation-timeout-seconds:2}")
+    private int validationTimeoutSeconds = 2;
+
+    // Серверные keepalive ограничивают время, за которое Postgres заметит пропавшего лидера
+    @Value("${crypto.cluster.leader-election.keepalive-seconds:5}")
+    private int keepaliveSeconds = 5;
+
+    private ScheduledExecutorService scheduler;
+    private Connection connection;
+
+    @Getter
+    private volatile boolean leader = false;
+
+    // Эпоха текущего лидерства, -1 у ведомого
+    private volatile long epoch = -1;
+
+    @Autowired
+    public LeaderElectionService(
+            @Value("${spring.datasource.url:jdbc:postgresql://localhost:5432/cryptodb}") String dbUrl,
+            @Value("${spring.datasource.username:postgres}") String dbUsername,
+            @Value("${spring.datasource.password:admin}") String dbPassword,
+            ApplicationEventPublisher eventPublisher,
+            MeterRegistry meterRegistry
+    ) {
+        this(() -> DriverManager.getConnection(dbUrl, dbUsername, dbPassword), eventPublisher, meterRegistry);
+    }
+
+    LeaderElectionService(ConnectionFactory connectionFactory, ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry) {
+        this.connectionFactory = connectionFactory;
+        this.eventPublisher = eventPublisher;
+        Gauge.builder("crypto.cluster.leader", this, service -> service.isLeader() ? 1 : 0)
+                .description("1, если этот экземпляр держит лидерство")
+                .register(meterRegistry);
+        this.acquiredCounter = meterRegistry.counter("crypto.cluster.leadership.transitions", "type", "acquired");
+        this.lostCounter = meterRegistry.counter("crypto.cluster.leadership.transitions", "type", "lost");
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "leader-election");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::tick, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+        logger.info("Выбор лидера запущен, ключ блокировки {}, интервал {} мс", lockKey, pollIntervalMs);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(validationTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler = null;
+
+        if (leader && connection != null) {
+            try (PreparedStatement ps = connection.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+                ps.setLong(1, lockKey);
+                ps.execute();
+            } catch (SQLException e) {
+                logger.warn("Не удалось явно снять блокировку лидера: {}", e.getMessage());
+            }
+        }
+        changeLeadership(false);
+        closeConnection();
+    }
+
+    void tick() {
+        try {
+            if (connection == null) {
+                connection = openConnection();
+            }
+
+            if (leader) {
+                if (!holdsLock()) {
+                    logger.warn("Блокировка лидера больше не удерживается");
+                    changeLeadership(false);
+                    closeConnection();
+                }
+            } else if (tryLock()) {
+                epoch = nextEpoch();
+                changeLeadership(true);
+            }
+        } catch (SQLException e) {
+            logger.error("Ошибка выбора лидера: {}", e.getMessage());
+            changeLeadership(false);
+            closeConnection();
+        }
+    }
+
+    private Connection openConnection() throws SQLException {
+        Connection conn = connectionFactory.open();
+        try (Statement statement = conn.createStatement()) {
+            statement.execute("SET tcp_keepalives_idle = " + keepaliveSeconds);
+            statement.execute("SET tcp_keepalives_interval = " + keepaliveSeconds);
+            statement.execute("SET tcp_keepalives_count = 2");
+            statement.execute("CREATE TABLE IF NOT EXISTS cluster_leader_epoch (" +
+                    "lock_key BIGINT PRIMARY KEY, epoch BIGINT NOT NULL, acquired_at TIMESTAMPTZ NOT NULL)");
+        }
+        return conn;
+    }
+
+    // Токен для записи результатов анализа; у ведомого его нет, запись запрещена
+    public WriteFence fence() {
+        if (!enabled) {
+            return WriteFence.NONE;
+        }
+        long current = epoch;
+        if (!leader || current < 0) {
+            throw new IllegalStateException("Экземпляр не лидер, запись результатов анализа запрещена");
+        }
+        return new WriteFence(lockKey, current);
+    }
+
+    // Ждёт, пока завершится фиксация результата, начатая прежним лидером под его эпохой
+    private long nextEpoch() throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO cluster_leader_epoch (lock_key, epoch, acquired_at) VALUES (?, 1, now()) " +
+                "ON CONFLICT (lock_key) DO UPDATE SET epoch = cluster_leader_epoch.epoch + 1, acquired_at = now() " +
+                "RETURNING epoch")) {
+            ps.setLong(1, lockKey);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Не удалось увеличить эпоху лидерства");
+                }
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    // Сессионная блокировка живёт, пока живо выделенное соединение: при его обрыве Postgres снимает её сам
+    private boolean tryLock() throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+            ps.setLong(1, lockKey);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private boolean holdsLock() throws SQLException {
+        if (!connection.isValid(validationTimeoutSeconds)) {
+            return false;
+        }
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT count(*) FROM pg_locks WHERE locktype = 'advisory' AND granted " +
+                "AND pid = pg_backend_pid() AND classid = ? AND objid = ?")) {
+            ps.setLong(1, lockKey >>> 32);
+            ps.setLong(2, lockKey & 0xFFFFFFFFL);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getLong(1) > 0;
+            }
+        }
+    }
+
+    private void changeLeadership(boolean nowLeader) {
+        if (leader == nowLeader) {
+            return;
+        }
+        leader = nowLeader;
+        if (nowLeader) {
+            acquiredCounter.increment();
+            logger.info("Экземпляр стал лидером, эпоха {}", epoch);
+        } else {
+            epoch = -1;
+            lostCounter.increment();
+            logger.warn("Экземпляр потерял лидерство");
+        }
+        eventPublisher.publishEvent(new LeadershipChangedEvent(this, nowLeader));
+    }
+
+    private void closeConnection() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+            }
+            connection = null;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.example.crypto.cluster;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+@Getter
+public class LeadershipChangedEvent extends ApplicationEvent {
+
+    private final boolean leader;
+
+    public LeadershipChangedEvent(Object source, boolean leader) {
+        super(source);
+        this.leader = leader;
+    }
+}
@@ -0,0 +1,56 @@
+package org.example.crypto.cluster;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+// Токен ограждения записи: эпоха лидерства, под которой запущен прогон анализа.
+// Каждый захват блокировки лидера увеличивает эпоху в cluster_leader_epoch, поэтому прогон,
+// начатый бывшим лидером, не пройдёт проверку и не перезапишет результаты нового.
+public record WriteFence(long lockKey, long epoch) {
+
+    // Выбор лидера выключен: пишет единственный экземпляр, проверять нечего
+    public static final WriteFence NONE = new WriteFence(0, -1);
+
+    public static final String LOCK_KEY_PROPERTY = "crypto.cluster.fence.lock-key";
+    public static final String EPOCH_PROPERTY = "crypto.cluster.fence.epoch";
+
+    public boolean isEnabled() {
+        return epoch >= 0;
+    }
+
+    // Вызывается внутри транзакции, фиксирующей результат. FOR SHARE держит строку эпохи до commit:
+    // новый лидер не сменит эпоху, пока эта транзакция не завершится, и наоборот
+    public void check(Connection connection) throws SQLException {
+        if (!isEnabled()) {
+            return;
+        }
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT epoch FROM cluster_leader_epoch WHERE lock_key = ? FOR SHARE")) {
+            ps.setLong(1, lockKey);
+            try (ResultSet rs = ps.executeQuery()) {
+                long current = rs.next() ? rs.getLong(1) : -1;
+                if (current != epoch) {
+                    throw new FencedWriteException(epoch, current);
+                }
+            }
+        }
+    }
+
+    // Аргументы для процесса анализа, запущенного отдельно от приложения
+    public List<String> arguments() {
+        if (!isEnabled()) {
+            return List.of();
+        }
+        return List.of("--" + LOCK_KEY_PROPERTY + "=" + lockKey, "--" + EPOCH_PROPERTY + "=" + epoch);
+    }
+
+    public static class FencedWriteException extends SQLException {
+
+        public FencedWriteException(long epoch, long current) {
+            super("Запись отклонена: прогон начат в эпоху лидерства " + epoch + ", текущая эпоха " + current);
+        }
+    }
+}
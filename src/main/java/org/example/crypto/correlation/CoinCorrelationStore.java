@@ -0,0 +1,71 @@
+package org.example.crypto.correlation;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+// Цены закрытия баров из coin_tick и таблица coin_correlation: вместо полной матрицы
+// для каждой монеты хранятся top-k самых (direction = most) и наименее (least) коррелированных монет.
+@Repository
+public class CoinCorrelationStore {
+
+    // Последняя цена каждой монеты в каждом баре: DISTINCT ON по (coin_key, bar) идёт по первичному ключу
+    private static final String CLOSES_SQL =
+            "SELECT DISTINCT ON (t.coin_key, bar) c.coin_id, " +
+            "floor(extract(epoch FROM t.ts) / ?)::bigint AS bar, t.price " +
+            "FROM coin_tick t JOIN coin c ON c.coin_key = t.coin_key " +
+            "WHERE t.ts >= ? AND t.ts < ? ORDER BY t.coin_key, bar, t.ts DESC";
+
+    private static final String INSERT_SQL =
+            "INSERT INTO coin_correlation (computed_at, correlation, coin_key, peer_key, direction, rank) " +
+            "SELECT ?, ?, c.coin_key, p.coin_key, ?, ? FROM coin c, coin p WHERE c.coin_id = ? AND p.coin_id = ?";
+
+    public record Close(String coinId, long bar, double price) {
+    }
+
+    public record Row(String coinId, String peerId, String direction, int rank, double correlation) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public CoinCorrelationStore(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Закрытия баров с номерами [fromBar, toBar], упорядоченные по бару
+    public List<Close> closes(long fromBar, long toBar, long barSeconds) {
+        List<Close> closes = new ArrayList<>();
+        jdbcTemplate.query(CLOSES_SQL, rs -> {
+            closes.add(new Close(rs.getString(1), rs.getLong(2), rs.getDouble(3)));
+        }, barSeconds, Timestamp.from(Instant.ofEpochSecond(fromBar * barSeconds)),
+                Timestamp.from(Instant.ofEpochSecond((toBar + 1) * barSeconds)));
+        closes.sort((a, b) -> Long.compare(a.bar(), b.bar()));
+        return closes;
+    }
+
+    // Таблица заменяется целиком в одной транзакции: читатели видят либо прошлый, либо новый расчёт
+    public void replace(Instant computedAt, List<Row> rows) {
+        OffsetDateTime at = OffsetDateTime.ofInstant(computedAt, ZoneOffset.UTC);
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM coin_correlation");
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows, 1000, (ps, row) -> {
+                ps.setObject(1, at);
+                ps.setDouble(2, row.correlation());
+                ps.setString(3, row.direction());
+                ps.setInt(4, row.rank());
+                ps.setString(5, row.coinId());
+                ps.setString(6, row.peerId());
+            });
+        });
+    }
+}
@@ -0,0 +1,212 @@
+package org.example.crypto.correlation;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.crypto.cluster.LeadershipChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Скользящая корреляция лог-доходностей всех монет по барам bar-minutes за window-bars баров.
+// После закрытия бара (с запасом close-delay на запаздывающие тики) из coin_tick читаются только новые закрытия,
+// статистики RollingCorrelation обновляются на один бар, и в coin_correlation пишется top-k пар каждой монеты.
+// Монета без тика в баре сохраняет прошлую цену (доходность 0). Первый прогон загружает целое окно.
+// Корреляции нужны по всем монетам, поэтому при выборе лидера расчёт ведёт только лидер.
+@Component
+public class CorrelationEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(CorrelationEngine.class);
+
+    private final CoinCorrelationStore store;
+    private final Clock clock;
+    private final long barSeconds;
+    private final int windowBars;
+    private final int topK;
+    private final Duration closeDelay;
+    private final ForkJoinPool pool;
+    private final Timer updateTimer;
+
+    @Value("${crypto.correlation.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${crypto.cluster.leader-election.enabled:false}")
+    private boolean leaderElectionEnabled;
+
+    private volatile boolean leader;
+
+    private RollingCorrelation correlation;
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final List<String> coinIds = new ArrayList<>();
+    private double[] lastClose = new double[0];
+    // Номер последнего учтённого бара; null - окно ещё не загружено
+    private Long processedBar;
+    private volatile int coinCount;
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public CorrelationEngine(CoinCorrelationStore store, ObjectProvider<MeterRegistry> meterRegistry,
+                             @Value("${crypto.correlation.bar-minutes:60}") int barMinutes,
+                             @Value("${crypto.correlation.window-bars:168}") int windowBars,
+                             @Value("${crypto.correlation.top-k:5}") int topK,
+                             @Value("${crypto.correlation.close-delay-seconds:120}") long closeDelaySeconds,
+                             @Value("${crypto.correlation.parallelism:0}") int parallelism) {
+        this(store, Clock.systemUTC(), Duration.ofMinutes(barMinutes), windowBars, topK,
+                Duration.ofSeconds(closeDelaySeconds),
+                parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(),
+                meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
+    public CorrelationEngine(CoinCorrelationStore store, Clock clock, Duration bar, int windowBars, int topK,
+                             Duration closeDelay, int parallelism, MeterRegistry meterRegistry) {
+        this.store = store;
+        this.clock = clock;
+        this.barSeconds = bar.toSeconds();
+        this.windowBars = windowBars;
+        this.topK = topK;
+        this.closeDelay = closeDelay;
+        this.pool = new ForkJoinPool(parallelism);
+        this.correlation = new RollingCorrelation(windowBars, pool);
+        this.updateTimer = meterRegistry.timer("crypto.correlation.update");
+        Gauge.builder("crypto.correlation.coins", this, engine -> engine.coinCount).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            logger.info("Расчёт корреляций отключён");
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "correlation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Проверка раз в минуту: бар закрывается не позже чем через минуту после срока
+        scheduler.scheduleWithFixedDelay(this::updateQuietly, 1, 60, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        pool.shutdownNow();
+    }
+
+    @EventListener
+    public void onLeadershipChanged(LeadershipChangedEvent event) {
+        leader = event.isLeader();
+    }
+
+    private void updateQuietly() {
+        if (leaderElectionEnabled && !leader) {
+            return;
+        }
+        try {
+            update();
+        } catch (Exception e) {
+            logger.error("Ошибка расчёта корреляций: {}", e.getMessage(), e);
+        }
+    }
+
+    // Учитывает все закрытые с прошлого раза бары и переписывает top-k; false - новых баров нет
+    public synchronized boolean update() {
+        long lastClosed = Math.floorDiv(clock.instant().minus(closeDelay).getEpochSecond(), barSeconds) - 1;
+        if (processedBar != null && lastClosed <= processedBar) {
+            return false;
+        }
+        // После долгого простоя окно собирается заново: пропущенные бары всё равно вытеснили бы старые
+        if (processedBar == null || lastClosed - processedBar > windowBars) {
+            reset();
+            processedBar = lastClosed - windowBars - 1;
+        }
+        long started = System.nanoTime();
+        long fromBar = processedBar + 1;
+        List<CoinCorrelationStore.Close> closes = store.closes(fromBar, lastClosed, barSeconds);
+
+        int position = 0;
+        for (long bar = fromBar; bar <= lastClosed; bar++) {
+            double[] returns = new double[coinIds.size()];
+            while (position < closes.size() && closes.get(position).bar() == bar) {
+                CoinCorrelationStore.Close close = closes.get(position++);
+                int index = indexOf(close.coinId());
+                if (index >= returns.length) {
+                    returns = Arrays.copyOf(returns, index + 1);
+                }
+                double previous = lastClose[index];
+                returns[index] = previous > 0 && close.price() > 0 ? Math.log(close.price() / previous) : Double.NaN;
+                lastClose[index] = close.price();
+            }
+            correlation.add(returns);
+        }
+        processedBar = lastClosed;
+        coinCount = coinIds.size();
+
+        List<CoinCorrelationStore.Row> rows = topRows();
+        store.replace(Instant.ofEpochSecond((lastClosed + 1) * barSeconds), rows);
+        long elapsed = System.nanoTime() - started;
+        updateTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        logger.info("Корреляции обновлены по {} барам: {} монет, {} пар записано за {} мс",
+                lastClosed - fromBar + 1, coinIds.size(), rows.size(), elapsed / 1_000_000);
+        return true;
+    }
+
+    List<CoinCorrelationStore.Row> topRows() {
+        List<CoinCorrelationStore.Row> rows = new ArrayList<>();
+        for (RollingCorrelation.CoinPeers peers : correlation.topPeers(topK)) {
+            String coinId = coinIds.get(peers.index());
+            for (int rank = 0; rank < peers.most().size(); rank++) {
+                RollingCorrelation.Peer peer = peers.most().get(rank);
+                rows.add(new CoinCorrelationStore.Row(coinId, coinIds.get(peer.index()), "most", rank + 1, peer.correlation()));
+            }
+            for (int rank = 0; rank < peers.least().size(); rank++) {
+                RollingCorrelation.Peer peer = peers.least().get(rank);
+                rows.add(new CoinCorrelationStore.Row(coinId, coinIds.get(peer.index()), "least", rank + 1, peer.correlation()));
+            }
+        }
+        return rows;
+    }
+
+    private int indexOf(String coinId) {
+        Integer index = indexes.get(coinId);
+        if (index != null) {
+            return index;
+        }
+        int added = correlation.addCoin();
+        indexes.put(coinId, added);
+        coinIds.add(coinId);
+        if (added >= lastClose.length) {
+            lastClose = Arrays.copyOf(lastClose, Math.max(16, lastClose.length * 2));
+        }
+        return added;
+    }
+
+    private void reset() {
+        coinCount = 0;
+        correlation = new RollingCorrelation(windowBars, pool);
+        indexes.clear();
+        coinIds.clear();
+        lastClose = new double[0];
+    }
+}
@@ -0,0 +1,221 @@
+package org.example.crypto.correlation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// Корреляции Пирсона всех пар монет по скользящему окну из window доходностей.
+// Хранятся достаточные статистики: суммы, суммы квадратов и попарные произведения (верхний треугольник).
+// Новый бар добавляет свой вклад и вычитает вклад вытесненного за O(n²), без прохода по окну O(n²·T).
+// Треугольник делится на блоки строк с примерно равным числом пар, блоки считаются параллельно.
+// Раз в window баров суммы пересчитываются по кольцу заново, чтобы не копилась ошибка вычитаний.
+public final class RollingCorrelation {
+
+    public record Peer(int index, double correlation) {
+    }
+
+    public record CoinPeers(int index, List<Peer> most, List<Peer> least) {
+    }
+
+    private final int window;
+    private final ForkJoinPool pool;
+    private final int blocks;
+
+    private int size;
+    private double[][] ring;
+    private int next;
+    private int filled;
+    private int sinceRebuild;
+    private double[] sum;
+    private double[] sumSq;
+    // cross[i][j] при j > i; строка i короче не делается, чтобы индексы совпадали с номерами монет
+    private double[][] cross;
+    // Сколько подряд реальных доходностей монеты лежит в окне; пары считаются, когда окно заполнено у обеих
+    private int[] observations;
+
+    public RollingCorrelation(int window, ForkJoinPool pool) {
+        if (window < 3) {
+            throw new IllegalArgumentException("Окно корреляции должно быть не меньше 3 баров: " + window);
+        }
+        this.window = window;
+        this.pool = pool;
+        this.blocks = Math.max(1, pool.getParallelism() * 4);
+        this.ring = new double[window][0];
+        this.sum = new double[0];
+        this.sumSq = new double[0];
+        this.cross = new double[0][0];
+        this.observations = new int[0];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Новая монета получает следующий номер; до появления её доходности в окне равны нулю
+    public int addCoin() {
+        int index = size++;
+        if (index == sum.length) {
+            int capacity = Math.max(16, sum.length * 2);
+            for (int t = 0; t < window; t++) {
+                ring[t] = Arrays.copyOf(ring[t], capacity);
+            }
+            sum = Arrays.copyOf(sum, capacity);
+            sumSq = Arrays.copyOf(sumSq, capacity);
+            observations = Arrays.copyOf(observations, capacity);
+            double[][] grown = new double[capacity][];
+            for (int i = 0; i < capacity; i++) {
+                grown[i] = i < cross.length ? Arrays.copyOf(cross[i], capacity) : new double[capacity];
+            }
+            cross = grown;
+        }
+        return index;
+    }
+
+    // Доходности бара по номерам монет; NaN - доходности нет (первая цена или разрыв), окно монеты начинается заново
+    public void add(double[] returns) {
+        if (returns.length != size) {
+            throw new IllegalArgumentException("Ожидается " + size + " доходностей, получено " + returns.length);
+        }
+        double[] incoming = ring[next];
+        double[] evicted = filled == window ? incoming.clone() : new double[incoming.length];
+        for (int i = 0; i < size; i++) {
+            double r = returns[i];
+            if (Double.isNaN(r)) {
+                observations[i] = 0;
+                r = 0;
+            } else if (observations[i] < window) {
+                observations[i]++;
+            }
+            incoming[i] = r;
+            sum[i] += r - evicted[i];
+            sumSq[i] += r * r - evicted[i] * evicted[i];
+        }
+        next = (next + 1) % window;
+        filled = Math.min(window, filled + 1);
+
+        if (++sinceRebuild >= window) {
+            rebuild();
+            return;
+        }
+        int[] bounds = blockBounds(size, blocks);
+        pool.submit(() -> IntStream.range(0, bounds.length - 1).parallel().forEach(block -> {
+            for (int i = bounds[block]; i < bounds[block + 1]; i++) {
+                double ri = incoming[i];
+                double oi = evicted[i];
+                double[] row = cross[i];
+                for (int j = i + 1; j < size; j++) {
+                    row[j] += ri * incoming[j] - oi * evicted[j];
+                }
+            }
+        })).join();
+    }
+
+    // Точный пересчёт сумм по кольцу: O(n²·window) раз в window баров, то есть O(n²) на бар в среднем
+    private void rebuild() {
+        sinceRebuild = 0;
+        Arrays.fill(sum, 0);
+        Arrays.fill(sumSq, 0);
+        for (double[] bar : ring) {
+            for (int i = 0; i < size; i++) {
+                sum[i] += bar[i];
+                sumSq[i] += bar[i] * bar[i];
+            }
+        }
+        int[] bounds = blockBounds(size, blocks);
+        pool.submit(() -> IntStream.range(0, bounds.length - 1).parallel().forEach(block -> {
+            for (int i = bounds[block]; i < bounds[block + 1]; i++) {
+                double[] row = cross[i];
+                Arrays.fill(row, 0);
+                for (double[] bar : ring) {
+                    double ri = bar[i];
+                    if (ri == 0) {
+                        continue;
+                    }
+                    for (int j = i + 1; j < size; j++) {
+                        row[j] += ri * bar[j];
+                    }
+                }
+            }
+        })).join();
+    }
+
+    public boolean ready(int index) {
+        return observations[index] >= window;
+    }
+
+    // NaN, если окно одной из монет не заполнено или цена не менялась
+    public double correlation(int i, int j) {
+        if (i == j || !ready(i) || !ready(j)) {
+            return Double.NaN;
+        }
+        double c = i < j ? cross[i][j] : cross[j][i];
+        double covariance = window * c - sum[i] * sum[j];
+        double varianceI = window * sumSq[i] - sum[i] * sum[i];
+        double varianceJ = window * sumSq[j] - sum[j] * sum[j];
+        // Почти постоянный ряд (монета без обновлений) даёт шум вместо корреляции
+        double floor = 1e-12 * window * window;
+        if (varianceI <= floor || varianceJ <= floor) {
+            return Double.NaN;
+        }
+        return Math.max(-1, Math.min(1, covariance / Math.sqrt(varianceI * varianceJ)));
+    }
+
+    // Для каждой монеты с заполненным окном - k самых и k наименее коррелированных с ней монет
+    public List<CoinPeers> topPeers(int k) {
+        return pool.submit(() -> IntStream.range(0, size).parallel()
+                .filter(this::ready)
+                .mapToObj(i -> peersOf(i, k))
+                .toList()).join();
+    }
+
+    private CoinPeers peersOf(int i, int k) {
+        Peer[] most = new Peer[k];
+        Peer[] least = new Peer[k];
+        int mostCount = 0;
+        int leastCount = 0;
+        for (int j = 0; j < size; j++) {
+            double value = correlation(i, j);
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            mostCount = insert(most, mostCount, j, value, -1);
+            leastCount = insert(least, leastCount, j, value, 1);
+        }
+        return new CoinPeers(i, List.of(Arrays.copyOf(most, mostCount)), List.of(Arrays.copyOf(least, leastCount)));
+    }
+
+    // Вставка в отсортированный массив из не более чем top.length элементов: sign -1 - по убыванию, 1 - по возрастанию
+    private static int insert(Peer[] top, int count, int index, double value, int sign) {
+        int position = count;
+        while (position > 0 && sign * Double.compare(value, top[position - 1].correlation()) < 0) {
+            position--;
+        }
+        if (position >= top.length) {
+            return count;
+        }
+        int moved = Math.min(count, top.length - 1) - position;
+        System.arraycopy(top, position, top, position + 1, moved);
+        top[position] = new Peer(index, value);
+        return Math.min(count + 1, top.length);
+    }
+
+    // Границы блоков строк: в строке i треугольника size - i - 1 пар, блоки получают примерно поровну
+    static int[] blockBounds(int size, int blocks) {
+        long pairs = (long) size * (size - 1) / 2;
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
+        long accumulated = 0;
+        long target = Math.max(1, pairs / blocks);
+        for (int i = 0; i < size; i++) {
+            accumulated += size - i - 1;
+            if (accumulated >= target && i + 1 < size) {
+                bounds.add(i + 1);
+                accumulated = 0;
+            }
+        }
+        bounds.add(size);
+        return bounds.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
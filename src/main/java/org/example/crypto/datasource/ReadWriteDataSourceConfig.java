@@ -0,0 +1,56 @@
+package org.example.crypto.datasource;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Включается, когда задана хотя бы одна реплика; без реплик работает обычный DataSource Spring Boot
+@Configuration
+@ConditionalOnProperty("crypto.datasource.replicas[0].url")
+public class ReadWriteDataSourceConfig {
+
+    @Bean
+    public ReadWriteRoutingDataSource dataSource(
+            DataSourceProperties properties,
+            Environment environment,
+            ReplicaLagMonitor lagMonitor,
+            MeterRegistry meterRegistry,
+            @Value("${crypto.datasource.replica-pool-size:10}") int replicaPoolSize
+    ) {
+        // Основной пул собирается как у Spring Boot: spring.datasource.* и spring.datasource.hikari.*
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        primary.setPoolName("primary");
+        primary.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (ReplicaLagMonitor.Replica replica : lagMonitor.getReplicas()) {
+            HikariConfig config = new HikariConfig();
+            primary.copyStateTo(config);
+            config.setPoolName(replica.name());
+            config.setJdbcUrl(replica.url());
+            config.setUsername(replica.username());
+            config.setPassword(replica.password());
+            config.setMaximumPoolSize(replicaPoolSize);
+            config.setReadOnly(true);
+            // Недоступная при старте реплика не мешает запуску: до восстановления чтение идёт с основного сервера
+            config.setInitializationFailTimeout(-1);
+            replicas.put(replica.name(), new HikariDataSource(config));
+        }
+
+        return new ReadWriteRoutingDataSource(primary, replicas, lagMonitor, meterRegistry);
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.crypto.datasource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+// Соединение для транзакции readOnly = true берётся из пула успевающей реплики, всё остальное - с основного сервера.
+// Флаг readOnly выставляется уже после начала транзакции, поэтому выбор пула откладывается до первого запроса.
+public class ReadWriteRoutingDataSource extends LazyConnectionDataSourceProxy implements Closeable {
+
+    private final DataSource primary;
+    private final Map<String, DataSource> replicas;
+
+    public ReadWriteRoutingDataSource(DataSource primary, Map<String, DataSource> replicas,
+                                      ReplicaLagMonitor lagMonitor, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = Map.copyOf(replicas);
+
+        Router router = new Router(lagMonitor, meterRegistry);
+        router.setDefaultTargetDataSource(primary);
+        router.setTargetDataSources(new HashMap<>(replicas));
+        router.afterPropertiesSet();
+        setTargetDataSource(router);
+        afterPropertiesSet();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (DataSource replica : replicas.values()) {
+            closeQuietly(replica);
+        }
+        closeQuietly(primary);
+    }
+
+    private static void closeQuietly(DataSource dataSource) throws IOException {
+        if (dataSource instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
+
+    static class Router extends AbstractRoutingDataSource {
+
+        private final ReplicaLagMonitor lagMonitor;
+        private final Counter replicaReads;
+        private final Counter fallbackReads;
+
+        Router(ReplicaLagMonitor lagMonitor, MeterRegistry meterRegistry) {
+            this.lagMonitor = lagMonitor;
+            this.replicaReads = meterRegistry.counter("crypto.datasource.reads", "target", "replica");
+            this.fallbackReads = meterRegistry.counter("crypto.datasource.reads", "target", "primary");
+        }
+
+        @Override
+        protected Object determineCurrentLookupKey() {
+            if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                return null;
+            }
+            return lagMonitor.pickReplica()
+                    .<Object>map(replica -> {
+                        replicaReads.increment();
+                        return replica.name();
+                    })
+                    .orElseGet(() -> {
+                        fallbackReads.increment();
+                        return null;
+                    });
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package org.example.crypto.datasource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Отставание реплик чтения из crypto.datasource.replicas. Реплика, отстающая больше max-lag-seconds
+// или недоступная, исключается, и чтение уходит на основной сервер.
+@Component
+public class ReplicaLagMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+    // Если вся полученная WAL применена и поток репликации жив, реплика не отстаёт, даже когда
+    // на основном сервере давно не было записей и pg_last_xact_replay_timestamp() старый
+    private static final String LAG_SQL =
+            "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0 " +
+            "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() " +
+            "AND EXISTS (SELECT 1 FROM pg_stat_wal_receiver WHERE status = 'streaming') THEN 0 " +
+            "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 'Infinity') END";
+
+    public record Replica(String name, String url, String username, String password) {
+    }
+
+    interface LagProbe {
+        double lagSeconds(Replica replica) throws SQLException;
+    }
+
+    private final List<Replica> replicas;
+    private final LagProbe probe;
+    private final double maxLagSeconds;
+    private final double[] lagSeconds;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Value("${crypto.datasource.lag-check-interval-ms:5000}")
+    private long checkIntervalMs = 5000;
+
+    @Value("${crypto.datasource.lag-check-timeout-seconds:2}")
+    private int checkTimeoutSeconds = 2;
+
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public ReplicaLagMonitor(
+            Environment environment,
+            @Value("${spring.datasource.username:postgres}") String dbUsername,
+            @Value("${spring.datasource.password:admin}") String dbPassword,
+            @Value("${crypto.datasource.max-lag-seconds:30}") double maxLagSeconds,
+            ObjectProvider<MeterRegistry> meterRegistry
+    ) {
+        this(bindReplicas(environment, dbUsername, dbPassword), null, maxLagSeconds,
+                meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
+    ReplicaLagMonitor(List<Replica> replicas, LagProbe probe, double maxLagSeconds, MeterRegistry meterRegistry) {
+        this.replicas = List.copyOf(replicas);
+        this.probe = probe != null ? probe : this::queryLag;
+        this.maxLagSeconds = maxLagSeconds;
+        this.lagSeconds = new double[replicas.size()];
+        Arrays.fill(lagSeconds, Double.POSITIVE_INFINITY);
+        for (int i = 0; i < this.replicas.size(); i++) {
+            int index = i;
+            Gauge.builder("crypto.datasource.replica.lag", this, monitor -> monitor.lagSeconds[index])
+                    .description("Отставание реплики чтения, секунды")
+                    .tag("replica", this.replicas.get(i).name())
+                    .baseUnit("seconds")
+                    .register(meterRegistry);
+        }
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (replicas.isEmpty() || scheduler != null) {
+            return;
+        }
+        // Первая проверка синхронно: до неё все реплики считаются отстающими
+        check();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "replica-lag-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::check, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+        logger.info("Контроль отставания реплик запущен: {}, допустимо {} с", replicas.stream().map(Replica::name).toList(), maxLagSeconds);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    // Реплика для очередного чтения по кругу среди успевающих, пусто - читать с основного сервера
+    public Optional<Replica> pickReplica() {
+        int size = replicas.size();
+        if (size == 0) {
+            return Optional.empty();
+        }
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % size;
+            if (isAvailable(index)) {
+                return Optional.of(replicas.get(index));
+            }
+        }
+        return Optional.empty();
+    }
+
+    boolean isAvailable(int index) {
+        return lagSeconds[index] <= maxLagSeconds;
+    }
+
+    void check() {
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get(i);
+            boolean wasAvailable = isAvailable(i);
+            double lag;
+            try {
+                lag = probe.lagSeconds(replica);
+            } catch (SQLException e) {
+                logger.debug("Реплика {} недоступна: {}", replica.name(), e.getMessage());
+                lag = Double.POSITIVE_INFINITY;
+            }
+            lagSeconds[i] = lag;
+
+            if (wasAvailable && !isAvailable(i)) {
+                logger.warn("Реплика {} исключена из чтения, отставание {} с", replica.name(), lag);
+            } else if (!wasAvailable && isAvailable(i)) {
+                logger.info("Реплика {} используется для чтения, отставание {} с", replica.name(), lag);
+            }
+        }
+    }
+
+    private double queryLag(Replica replica) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(replica.url(), connectionProperties(replica, checkTimeoutSeconds));
+             Statement statement = connection.createStatement()) {
+            statement.setQueryTimeout(checkTimeoutSeconds);
+            try (ResultSet rs = statement.executeQuery(LAG_SQL)) {
+                rs.next();
+                return rs.getDouble(1);
+            }
+        }
+    }
+
+    // Таймауты задаются только этому соединению: DriverManager.setLoginTimeout действует на всю JVM
+    // и ограничил бы подключения пула и Spark. socketTimeout прерывает чтение, если реплика зависла
+    // и не отвечает даже на отмену запроса по setQueryTimeout
+    static Properties connectionProperties(Replica replica, int timeoutSeconds) {
+        Properties properties = new Properties();
+        properties.setProperty("user", replica.username());
+        properties.setProperty("password", replica.password());
+        properties.setProperty("loginTimeout", String.valueOf(timeoutSeconds));
+        properties.setProperty("connectTimeout", String.valueOf(timeoutSeconds));
+        properties.setProperty("socketTimeout", String.valueOf(timeoutSeconds * 2));
+        return properties;
+    }
+
+    // Имя, логин и пароль реплики необязательны: по умолчанию replica-N и учётные данные основного сервера
+    private static List<Replica> bindReplicas(Environment environment, String dbUsername, String dbPassword) {
+        List<Replica> configured = Binder.get(environment)
+                .bind("crypto.datasource.replicas", Bindable.listOf(Replica.class))
+                .orElse(List.of());
+        List<Replica> replicas = new ArrayList<>();
+        for (Replica replica : configured) {
+            if (replica.url() == null || replica.url().isBlank()) {
+                continue;
+            }
+            replicas.add(new Replica(
+                    replica.name() != null ? replica.name() : "replica-" + (replicas.size() + 1),
+                    replica.url(),
+                    replica.username() != null ? replica.username() : dbUsername,
+                    replica.password() != null ? replica.password() : dbPassword));
+        }
+        return replicas;
+    }
+}
@@ -0,0 +1,119 @@
+package org.example.crypto.export;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.TimeStampVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// Arrow IPC в потоковом формате: схема, затем пачки по batchRows строк, затем маркер конца.
+// Векторы пачки переиспользуются, поэтому в памяти (вне кучи) лежит только одна пачка.
+// Arrow обращается к внутренностям java.nio: JVM нужен флаг --add-opens=java.base/java.nio=ALL-UNNAMED.
+class ArrowExportWriter implements ExportWriter {
+
+    private final OutputStream out;
+    private final int batchRows;
+    private BufferAllocator allocator;
+    private VectorSchemaRoot root;
+    private ArrowStreamWriter writer;
+    private FieldVector[] vectors;
+    private int rows;
+
+    ArrowExportWriter(OutputStream out, int batchRows) {
+        this.out = new BufferedOutputStream(out, 1 << 16);
+        this.batchRows = Math.max(1, batchRows);
+    }
+
+    @Override
+    public void begin(List<ExportColumn> columns) throws IOException {
+        Schema schema = new Schema(columns.stream()
+                .map(column -> new Field(column.name(), FieldType.nullable(arrowType(column.kind())), null))
+                .toList());
+        allocator = new RootAllocator();
+        root = VectorSchemaRoot.create(schema, allocator);
+        vectors = root.getFieldVectors().toArray(FieldVector[]::new);
+        writer = new ArrowStreamWriter(root, null, Channels.newChannel(out));
+        writer.start();
+        root.allocateNew();
+    }
+
+    @Override
+    public void write(ExportRow row) throws IOException {
+        for (int i = 0; i < vectors.length; i++) {
+            FieldVector vector = vectors[i];
+            if (row.isNull(i)) {
+                vector.setNull(rows);
+                continue;
+            }
+            switch (row.kind(i)) {
+                case INTEGER -> ((BigIntVector) vector).setSafe(rows, row.longValue(i));
+                case FLOAT -> ((Float8Vector) vector).setSafe(rows, row.doubleValue(i));
+                case BOOLEAN -> ((BitVector) vector).setSafe(rows, (int) row.longValue(i));
+                case DATE -> ((DateDayVector) vector).setSafe(rows, (int) row.longValue(i));
+                case TIMESTAMP, TIMESTAMP_TZ -> ((TimeStampVector) vector).setSafe(rows, row.longValue(i));
+                default -> ((VarCharVector) vector).setSafe(rows, row.text(i).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (++rows == batchRows) {
+            flushBatch();
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (rows > 0) {
+            flushBatch();
+        }
+        writer.end();
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        if (root != null) {
+            root.close();
+        }
+        if (allocator != null) {
+            allocator.close();
+        }
+    }
+
+    private void flushBatch() throws IOException {
+        root.setRowCount(rows);
+        writer.writeBatch();
+        root.allocateNew();
+        rows = 0;
+    }
+
+    private static ArrowType arrowType(ExportColumn.Kind kind) {
+        return switch (kind) {
+            case INTEGER -> new ArrowType.Int(64, true);
+            case FLOAT -> new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+            case BOOLEAN -> ArrowType.Bool.INSTANCE;
+            case DATE -> new ArrowType.Date(DateUnit.DAY);
+            case TIMESTAMP -> new ArrowType.Timestamp(TimeUnit.MICROSECOND, null);
+            case TIMESTAMP_TZ -> new ArrowType.Timestamp(TimeUnit.MICROSECOND, "UTC");
+            default -> ArrowType.Utf8.INSTANCE;
+        };
+    }
+}
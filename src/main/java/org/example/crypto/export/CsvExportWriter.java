@@ -0,0 +1,98 @@
+package org.example.crypto.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+// CSV (RFC 4180) в gzip: заголовок с именами колонок, пустое поле - NULL, время в ISO-8601
+class CsvExportWriter implements ExportWriter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream out;
+    private GZIPOutputStream gzip;
+    private Writer writer;
+
+    CsvExportWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void begin(List<ExportColumn> columns) throws IOException {
+        gzip = new GZIPOutputStream(out, BUFFER_SIZE);
+        writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8), BUFFER_SIZE);
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeText(columns.get(i).name());
+        }
+        writer.write('\n');
+    }
+
+    @Override
+    public void write(ExportRow row) throws IOException {
+        for (int i = 0; i < row.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            if (row.isNull(i)) {
+                continue;
+            }
+            switch (row.kind(i)) {
+                case INTEGER -> writer.write(Long.toString(row.longValue(i)));
+                case FLOAT -> writer.write(Double.toString(row.doubleValue(i)));
+                case BOOLEAN -> writer.write(row.longValue(i) != 0 ? "true" : "false");
+                case DATE -> writer.write(LocalDate.ofEpochDay(row.longValue(i)).toString());
+                case TIMESTAMP -> writer.write(localTime(row.longValue(i)).toString());
+                case TIMESTAMP_TZ -> writer.write(instant(row.longValue(i)).toString());
+                default -> writeText(row.text(i));
+            }
+        }
+        writer.write('\n');
+    }
+
+    @Override
+    public void finish() throws IOException {
+        writer.flush();
+        gzip.finish();
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        // Буферы gzip и writer освобождает сборщик мусора, закрывать их - значит закрыть и поток ответа
+    }
+
+    private void writeText(String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private static Instant instant(long micros) {
+        return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000), Math.floorMod(micros, 1_000_000) * 1000L);
+    }
+
+    private static LocalDateTime localTime(long micros) {
+        return LocalDateTime.ofInstant(instant(micros), ZoneOffset.UTC);
+    }
+}
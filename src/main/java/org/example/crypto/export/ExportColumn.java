@@ -0,0 +1,22 @@
+package org.example.crypto.export;
+
+// Колонка выгрузки. Тип сводится к одному из нескольких видов по имени типа PostgreSQL;
+// numeric выгружается как float8, всё незнакомое - текстом.
+public record ExportColumn(String name, Kind kind) {
+
+    public enum Kind {
+        TEXT, INTEGER, FLOAT, BOOLEAN, DATE, TIMESTAMP, TIMESTAMP_TZ
+    }
+
+    public static Kind kindOf(String typeName) {
+        return switch (typeName.toLowerCase()) {
+            case "int2", "int4", "int8", "smallint", "integer", "bigint", "serial", "bigserial" -> Kind.INTEGER;
+            case "float4", "float8", "real", "double precision", "numeric" -> Kind.FLOAT;
+            case "bool", "boolean" -> Kind.BOOLEAN;
+            case "date" -> Kind.DATE;
+            case "timestamp" -> Kind.TIMESTAMP;
+            case "timestamptz" -> Kind.TIMESTAMP_TZ;
+            default -> Kind.TEXT;
+        };
+    }
+}
@@ -0,0 +1,58 @@
+package org.example.crypto.export;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+// GET /export/tables - доступные таблицы и колонки.
+// GET /export/{table}?coins=bitcoin,ethereum&from=2024-01-01&to=2024-04-01&format=csv|arrow - выгрузка в поток ответа.
+// Запрос проверяется до начала ответа, поэтому ошибка в параметрах - это 400/404, а не оборванный файл.
+@RestController
+public class ExportController {
+
+    private final ExportService service;
+
+    public ExportController(ExportService service) {
+        this.service = service;
+    }
+
+    @GetMapping("/export/tables")
+    public Map<String, List<ExportColumn>> tables() {
+        return service.tables();
+    }
+
+    @GetMapping("/export/{table}")
+    public ResponseEntity<StreamingResponseBody> export(@PathVariable String table,
+                                                        @RequestParam(required = false) List<String> coins,
+                                                        @RequestParam(required = false) String from,
+                                                        @RequestParam(required = false) String to,
+                                                        @RequestParam(defaultValue = "csv") String format) {
+        ExportFormat exportFormat;
+        ExportService.ExportQuery query;
+        try {
+            exportFormat = ExportFormat.parse(format);
+            query = service.prepare(table, coins, ExportService.parseTime(from), ExportService.parseTime(to));
+        } catch (NoSuchElementException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        StreamingResponseBody body = out -> service.export(query, exportFormat, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.contentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"" + table + exportFormat.extension() + "\"")
+                .body(body);
+    }
+}
@@ -0,0 +1,33 @@
+package org.example.crypto.export;
+
+// Формат выгрузки: CSV в gzip - для ручного разбора и импорта куда угодно, Arrow IPC (stream) - колоночный,
+// без разбора текста, читается pyarrow/pandas/polars и DuckDB напрямую
+public enum ExportFormat {
+
+    CSV(".csv.gz", "application/gzip"),
+    ARROW(".arrow", "application/vnd.apache.arrow.stream");
+
+    private final String extension;
+    private final String contentType;
+
+    ExportFormat(String extension, String contentType) {
+        this.extension = extension;
+        this.contentType = contentType;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    public static ExportFormat parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неизвестный формат выгрузки: " + value + ", доступны csv и arrow");
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.example.crypto.export;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.ParentCommand;
+import picocli.CommandLine.Unmatched;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+
+// Выгрузка из командной строки: export tables - список таблиц, export table <имя> ... - выгрузка в файл.
+// Поднимает только DataSource и ExportService, без веб-сервера и загрузки цен.
+@Command(name = "export", mixinStandardHelpOptions = true, description = "Выгрузка истории цен и таблиц анализа",
+        subcommands = {ExportMain.Tables.class, ExportMain.Table.class})
+public class ExportMain implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExportMain.class);
+
+    @CommandLine.Spec
+    CommandLine.Model.CommandSpec spec;
+
+    // Остальные аргументы - параметры Spring, например --spring.datasource.url=...
+    @Unmatched
+    List<String> springArgs = new ArrayList<>();
+
+    @Configuration
+    @ImportAutoConfiguration({DataSourceAutoConfiguration.class, JdbcTemplateAutoConfiguration.class,
+            DataSourceTransactionManagerAutoConfiguration.class})
+    @Import(ExportService.class)
+    static class Context {
+    }
+
+    public static void main(String[] args) {
+        System.exit(new CommandLine(new ExportMain()).execute(args));
+    }
+
+    @Override
+    public void run() {
+        throw new CommandLine.ParameterException(spec.commandLine(), "Укажите подкоманду: tables или table");
+    }
+
+    ConfigurableApplicationContext context(List<String> extraArgs) {
+        List<String> args = new ArrayList<>(springArgs);
+        args.addAll(extraArgs);
+        return new SpringApplicationBuilder(Context.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .run(args.toArray(String[]::new));
+    }
+
+    @Command(name = "tables", mixinStandardHelpOptions = true, description = "Таблицы, доступные для выгрузки")
+    static class Tables implements Callable<Integer> {
+
+        @ParentCommand
+        ExportMain parent;
+
+        @Unmatched
+        List<String> springArgs = new ArrayList<>();
+
+        @Override
+        public Integer call() {
+            try (ConfigurableApplicationContext ctx = parent.context(springArgs)) {
+                Map<String, List<ExportColumn>> tables = ctx.getBean(ExportService.class).tables();
+                tables.forEach((table, columns) -> System.out.println(table + ": " + columns.stream()
+                        .map(column -> column.name() + " " + column.kind().name().toLowerCase())
+                        .collect(Collectors.joining(", "))));
+            }
+            return 0;
+        }
+    }
+
+    @Command(name = "table", mixinStandardHelpOptions = true, description = "Выгрузка таблицы в файл")
+    static class Table implements Callable<Integer> {
+
+        @ParentCommand
+        ExportMain parent;
+
+        @CommandLine.Parameters(index = "0", description = "coin_price_history или таблица spark_*")
+        String table;
+
+        @Option(names = "--coins", split = ",", description = "Монеты; по умолчанию все")
+        List<String> coins = new ArrayList<>();
+
+        @Option(names = "--from", description = "Начало, включительно: 2024-03-01 или 2024-03-01T12:00:00Z")
+        String from;
+
+        @Option(names = "--to", description = "Конец, не включая")
+        String to;
+
+        @Option(names = "--format", defaultValue = "csv", description = "csv (gzip) или arrow")
+        String format;
+
+        @Option(names = {"-o", "--output"}, description = "Файл; по умолчанию <таблица>.csv.gz или <таблица>.arrow")
+        Path output;
+
+        @Unmatched
+        List<String> springArgs = new ArrayList<>();
+
+        @Override
+        public Integer call() throws Exception {
+            ExportFormat exportFormat = ExportFormat.parse(format);
+            Path target = output != null ? output : Paths.get(table + exportFormat.extension());
+            try (ConfigurableApplicationContext ctx = parent.context(springArgs)) {
+                ExportService service = ctx.getBean(ExportService.class);
+                ExportService.ExportQuery query = service.prepare(table, coins, ExportService.parseTime(from),
+                        ExportService.parseTime(to));
+                ExportService.ExportStats stats;
+                try (OutputStream out = Files.newOutputStream(target)) {
+                    stats = service.export(query, exportFormat, out);
+                }
+                logger.info("Записано в {}: {} строк, {} МБ, {} строк/с, {} МБ/с", target.toAbsolutePath(),
+                        stats.rows(), String.format(Locale.ROOT, "%.1f", stats.bytes() / 1e6),
+                        String.format(Locale.ROOT, "%.0f", stats.rowsPerSecond()),
+                        String.format(Locale.ROOT, "%.1f", stats.megabytesPerSecond()));
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.example.crypto.export;
+
+import java.util.List;
+
+// Текущая строка выгрузки в примитивных массивах по колонкам. Один экземпляр на выгрузку: курсор перезаписывает
+// его для каждой строки, так что числа и время не упаковываются в объекты. Время - микросекунды от эпохи (UTC),
+// дата - дни от эпохи.
+public final class ExportRow {
+
+    private final List<ExportColumn> columns;
+    private final boolean[] nulls;
+    private final long[] longs;
+    private final double[] doubles;
+    private final String[] texts;
+
+    public ExportRow(List<ExportColumn> columns) {
+        this.columns = List.copyOf(columns);
+        int n = columns.size();
+        this.nulls = new boolean[n];
+        this.longs = new long[n];
+        this.doubles = new double[n];
+        this.texts = new String[n];
+    }
+
+    public List<ExportColumn> columns() {
+        return columns;
+    }
+
+    public int size() {
+        return columns.size();
+    }
+
+    public ExportColumn.Kind kind(int column) {
+        return columns.get(column).kind();
+    }
+
+    public boolean isNull(int column) {
+        return nulls[column];
+    }
+
+    public long longValue(int column) {
+        return longs[column];
+    }
+
+    public double doubleValue(int column) {
+        return doubles[column];
+    }
+
+    public String text(int column) {
+        return texts[column];
+    }
+
+    public void setNull(int column) {
+        nulls[column] = true;
+        texts[column] = null;
+    }
+
+    public void setLong(int column, long value) {
+        nulls[column] = false;
+        longs[column] = value;
+    }
+
+    public void setDouble(int column, double value) {
+        nulls[column] = false;
+        doubles[column] = value;
+    }
+
+    public void setText(int column, String value) {
+        nulls[column] = value == null;
+        texts[column] = value;
+    }
+}
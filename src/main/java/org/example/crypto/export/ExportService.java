@@ -0,0 +1,297 @@
+package org.example.crypto.export;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+// Потоковая выгрузка coin_price_history и таблиц spark_* с фильтром по монетам и времени.
+// Строки читаются серверным курсором порциями по fetch-size и сразу пишутся в поток вывода,
+// поэтому память не зависит от объёма истории. Набор таблиц и колонок берётся из information_schema,
+// имя таблицы из запроса в SQL попадает только после сверки с ним.
+@Service
+public class ExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExportService.class);
+
+    private static final String TABLES_SQL =
+            "SELECT table_name, column_name, udt_name FROM information_schema.columns " +
+            "WHERE table_schema = current_schema() " +
+            "AND (table_name = 'coin_price_history' OR table_name LIKE 'spark\\_%') " +
+            "ORDER BY table_name, ordinal_position";
+
+    // Ось времени таблицы - первая найденная из этих колонок: время тика, день или неделя результата,
+    // и только потом время прогона анализа
+    private static final List<String> TIME_COLUMNS =
+            List.of("timestamp", "date", "week_start", "week", "analysis_timestamp");
+
+    public record ExportQuery(String table, List<ExportColumn> columns, String sql, List<Object> args) {
+    }
+
+    public record ExportStats(String table, ExportFormat format, long rows, long bytes, double seconds) {
+
+        public double rowsPerSecond() {
+            return seconds > 0 ? rows / seconds : 0;
+        }
+
+        public double megabytesPerSecond() {
+            return seconds > 0 ? bytes / 1e6 / seconds : 0;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${crypto.export.fetch-size:10000}")
+    private int fetchSize = 10000;
+
+    @Value("${crypto.export.arrow-batch-rows:65536}")
+    private int arrowBatchRows = 65536;
+
+    @Autowired
+    public ExportService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                         ObjectProvider<MeterRegistry> meterRegistry) {
+        this(jdbcTemplate, transactionManager, meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
+    public ExportService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                         MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Курсор с fetchSize работает только в транзакции; readOnly отправляет выгрузку на реплику, если она есть
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.meterRegistry = meterRegistry;
+    }
+
+    // Таблицы, доступные для выгрузки, с колонками в порядке объявления
+    public Map<String, List<ExportColumn>> tables() {
+        Map<String, List<ExportColumn>> tables = new LinkedHashMap<>();
+        jdbcTemplate.query(TABLES_SQL, rs -> {
+            tables.computeIfAbsent(rs.getString(1), table -> new ArrayList<>())
+                    .add(new ExportColumn(rs.getString(2), ExportColumn.kindOf(rs.getString(3))));
+        });
+        return tables;
+    }
+
+    public ExportQuery prepare(String table, Collection<String> coins, Instant from, Instant to) {
+        List<ExportColumn> columns = tables().get(table);
+        if (columns == null) {
+            throw new NoSuchElementException("Таблица недоступна для выгрузки: " + table);
+        }
+        return query(table, columns, coins, from, to);
+    }
+
+    // Диапазон времени полуоткрытый: [from, to)
+    static ExportQuery query(String table, List<ExportColumn> columns, Collection<String> coins, Instant from,
+                             Instant to) {
+        List<String> names = columns.stream().map(ExportColumn::name).toList();
+        StringBuilder sql = new StringBuilder("SELECT ");
+        sql.append(String.join(", ", names.stream().map(ExportService::quote).toList()));
+        sql.append(" FROM ").append(quote(table));
+        List<String> conditions = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        if (coins != null && !coins.isEmpty()) {
+            if (!names.contains("coin_id")) {
+                throw new IllegalArgumentException("В " + table + " нет колонки coin_id, фильтр по монетам невозможен");
+            }
+            conditions.add("coin_id = ANY(?)");
+            args.add(coins.stream().map(coin -> coin.trim().toLowerCase()).toArray(String[]::new));
+        }
+        if (from != null || to != null) {
+            String timeColumn = TIME_COLUMNS.stream().filter(names::contains).findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException(
+                            "В " + table + " нет колонки времени, фильтр по времени невозможен"));
+            if (from != null) {
+                conditions.add(quote(timeColumn) + " >= ?");
+                args.add(from.atOffset(ZoneOffset.UTC));
+            }
+            if (to != null) {
+                conditions.add(quote(timeColumn) + " < ?");
+                args.add(to.atOffset(ZoneOffset.UTC));
+            }
+        }
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        return new ExportQuery(table, columns, sql.toString(), args);
+    }
+
+    public ExportStats export(ExportQuery query, ExportFormat format, OutputStream out) throws IOException {
+        CountingOutputStream counted = new CountingOutputStream(out);
+        long started = System.nanoTime();
+        long[] rows = {0};
+        try (ExportWriter writer = ExportWriter.create(format, counted, arrowBatchRows)) {
+            writer.begin(query.columns());
+            ExportRow row = new ExportRow(query.columns());
+            readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(query.sql());
+                statement.setFetchSize(fetchSize);
+                for (int i = 0; i < query.args().size(); i++) {
+                    Object arg = query.args().get(i);
+                    if (arg instanceof String[] values) {
+                        statement.setArray(i + 1, connection.createArrayOf("varchar", values));
+                    } else {
+                        statement.setObject(i + 1, arg);
+                    }
+                }
+                return statement;
+            }, rs -> {
+                read(rs, row);
+                try {
+                    writer.write(row);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                rows[0]++;
+            }));
+            writer.finish();
+        } catch (UncheckedIOException e) {
+            // Обычно клиент закрыл соединение; транзакция откатывается и курсор закрывается вместе с ней
+            logger.warn("Выгрузка {} прервана после {} строк: {}", query.table(), rows[0], e.getCause().getMessage());
+            throw e.getCause();
+        }
+        long elapsed = System.nanoTime() - started;
+        ExportStats stats = new ExportStats(query.table(), format, rows[0], counted.count, elapsed / 1e9);
+        String formatTag = format.name().toLowerCase();
+        meterRegistry.counter("crypto.export.rows", "table", query.table(), "format", formatTag).increment(rows[0]);
+        meterRegistry.counter("crypto.export.bytes", "table", query.table(), "format", formatTag)
+                .increment(counted.count);
+        meterRegistry.timer("crypto.export.duration", "table", query.table(), "format", formatTag)
+                .record(elapsed, TimeUnit.NANOSECONDS);
+        logger.info("Выгрузка {} ({}): {} строк, {} МБ за {} с - {} строк/с, {} МБ/с", query.table(), formatTag,
+                stats.rows(), String.format(Locale.ROOT, "%.1f", stats.bytes() / 1e6),
+                String.format(Locale.ROOT, "%.2f", stats.seconds()),
+                String.format(Locale.ROOT, "%.0f", stats.rowsPerSecond()),
+                String.format(Locale.ROOT, "%.1f", stats.megabytesPerSecond()));
+        return stats;
+    }
+
+    private static void read(ResultSet rs, ExportRow row) throws SQLException {
+        for (int i = 0; i < row.size(); i++) {
+            int index = i + 1;
+            switch (row.kind(i)) {
+                case INTEGER -> {
+                    long value = rs.getLong(index);
+                    if (rs.wasNull()) {
+                        row.setNull(i);
+                    } else {
+                        row.setLong(i, value);
+                    }
+                }
+                case FLOAT -> {
+                    double value = rs.getDouble(index);
+                    if (rs.wasNull()) {
+                        row.setNull(i);
+                    } else {
+                        row.setDouble(i, value);
+                    }
+                }
+                case BOOLEAN -> {
+                    boolean value = rs.getBoolean(index);
+                    if (rs.wasNull()) {
+                        row.setNull(i);
+                    } else {
+                        row.setLong(i, value ? 1 : 0);
+                    }
+                }
+                case DATE -> {
+                    LocalDate value = rs.getObject(index, LocalDate.class);
+                    if (value == null) {
+                        row.setNull(i);
+                    } else {
+                        row.setLong(i, value.toEpochDay());
+                    }
+                }
+                case TIMESTAMP -> {
+                    LocalDateTime value = rs.getObject(index, LocalDateTime.class);
+                    if (value == null) {
+                        row.setNull(i);
+                    } else {
+                        row.setLong(i, micros(value.toInstant(ZoneOffset.UTC)));
+                    }
+                }
+                case TIMESTAMP_TZ -> {
+                    OffsetDateTime value = rs.getObject(index, OffsetDateTime.class);
+                    if (value == null) {
+                        row.setNull(i);
+                    } else {
+                        row.setLong(i, micros(value.toInstant()));
+                    }
+                }
+                default -> row.setText(i, rs.getString(index));
+            }
+        }
+    }
+
+    static long micros(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000L), instant.getNano() / 1000);
+    }
+
+    // 2024-03-01 - начало дня UTC, иначе ISO-8601 с зоной: 2024-03-01T12:00:00Z
+    public static Instant parseTime(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return value.length() == 10 ? LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant()
+                    : OffsetDateTime.parse(value).toInstant();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Ожидается дата 2024-03-01 или время 2024-03-01T12:00:00Z: " + value);
+        }
+    }
+
+    private static String quote(String identifier) {
+        return '"' + identifier.replace("\"", "\"\"") + '"';
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
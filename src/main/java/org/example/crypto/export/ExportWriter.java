@@ -0,0 +1,29 @@
+package org.example.crypto.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+// Пишет строки прямо в поток ответа или файла. Память не зависит от числа строк:
+// CSV буферизуется на уровне gzip, Arrow держит в памяти одну пачку строк.
+public interface ExportWriter extends Closeable {
+
+    void begin(List<ExportColumn> columns) throws IOException;
+
+    void write(ExportRow row) throws IOException;
+
+    // Дописывает хвост формата и сбрасывает буферы; сам поток не закрывает
+    void finish() throws IOException;
+
+    // Освобождает буферы писателя, в том числе после ошибки; поток вывода остаётся открытым
+    @Override
+    void close();
+
+    static ExportWriter create(ExportFormat format, OutputStream out, int arrowBatchRows) {
+        return switch (format) {
+            case CSV -> new CsvExportWriter(out);
+            case ARROW -> new ArrowExportWriter(out, arrowBatchRows);
+        };
+    }
+}
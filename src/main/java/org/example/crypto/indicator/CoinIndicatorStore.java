@@ -0,0 +1,126 @@
+package org.example.crypto.indicator;
+
+import org.example.crypto.repository.CoinKeyResolver;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+// Таблица coin_indicator и чтение истории тиков для бэкфилла индикаторов.
+// Для Grafana есть представление serving_indicators с coin_id и symbol.
+@Repository
+public class CoinIndicatorStore {
+
+    // Пересчёт после смены периодов переписывает уже сохранённые значения
+    private static final String UPSERT_SQL =
+            "INSERT INTO coin_indicator (ts, price, sma, ema, rsi, macd, macd_signal, macd_histogram, " +
+            "bollinger_upper, bollinger_lower, coin_key) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (coin_key, ts) DO UPDATE SET price = EXCLUDED.price, sma = EXCLUDED.sma, ema = EXCLUDED.ema, " +
+            "rsi = EXCLUDED.rsi, macd = EXCLUDED.macd, macd_signal = EXCLUDED.macd_signal, " +
+            "macd_histogram = EXCLUDED.macd_histogram, bollinger_upper = EXCLUDED.bollinger_upper, " +
+            "bollinger_lower = EXCLUDED.bollinger_lower";
+
+    // Один проход по первичному ключу (coin_key, ts): для каждой монеты - тики новее её точки отсчёта
+    private static final String HISTORY_SQL =
+            "SELECT c.coin_id, c.symbol, t.ts, t.price FROM coin_tick t " +
+            "JOIN coin c ON c.coin_key = t.coin_key " +
+            "JOIN unnest(?::varchar[], ?::timestamptz[]) AS s(coin_id, since) ON s.coin_id = c.coin_id " +
+            "WHERE t.ts > s.since ORDER BY t.coin_key, t.ts";
+
+    public record Row(String coinId, String symbol, IndicatorValues values) {
+    }
+
+    @FunctionalInterface
+    public interface TickConsumer {
+        void accept(String coinId, String symbol, Instant timestamp, double price);
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CoinKeyResolver coinKeyResolver;
+    private final TransactionTemplate transactionTemplate;
+    // Запись всегда в собственной транзакции: бэкфилл пишет порции изнутри долгой транзакции чтения истории,
+    // и присоединённые к ней порции откатились бы вместе с ней, хотя состояние индикаторов их уже прошло
+    private final TransactionTemplate writeTransactionTemplate;
+
+    @Value("${crypto.indicators.batch-size:1000}")
+    private int batchSize = 1000;
+
+    @Value("${crypto.indicators.backfill-fetch-size:10000}")
+    private int fetchSize = 10000;
+
+    public CoinIndicatorStore(JdbcTemplate jdbcTemplate, CoinKeyResolver coinKeyResolver,
+                              PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.coinKeyResolver = coinKeyResolver;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.writeTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.writeTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public void write(List<Row> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        writeTransactionTemplate.executeWithoutResult(status -> {
+            int[] keys = new int[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                keys[i] = coinKeyResolver.keyOf(rows.get(i).coinId(), rows.get(i).symbol());
+            }
+            jdbcTemplate.batchUpdate(UPSERT_SQL, IntStream.range(0, rows.size()).boxed().toList(), batchSize, (ps, index) -> {
+                IndicatorValues values = rows.get(index).values();
+                ps.setObject(1, OffsetDateTime.ofInstant(values.timestamp(), ZoneOffset.UTC));
+                ps.setDouble(2, values.price());
+                setNullableDouble(ps, 3, values.sma());
+                setNullableDouble(ps, 4, values.ema());
+                setNullableDouble(ps, 5, values.rsi());
+                setNullableDouble(ps, 6, values.macd());
+                setNullableDouble(ps, 7, values.macdSignal());
+                setNullableDouble(ps, 8, values.macdHistogram());
+                setNullableDouble(ps, 9, values.bollingerUpper());
+                setNullableDouble(ps, 10, values.bollingerLower());
+                ps.setInt(11, keys[index]);
+            });
+        });
+    }
+
+    // PostgreSQL отдаёт строки порциями по fetchSize только внутри транзакции, иначе весь результат ляжет в память.
+    // Транзакция не readOnly: реплика может не успеть получить последние тики
+    public void readHistory(Map<String, Instant> since, TickConsumer consumer) {
+        if (since.isEmpty()) {
+            return;
+        }
+        String[] coinIds = since.keySet().toArray(String[]::new);
+        Timestamp[] from = since.values().stream().map(Timestamp::from).toArray(Timestamp[]::new);
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(HISTORY_SQL);
+            statement.setFetchSize(fetchSize);
+            statement.setArray(1, connection.createArrayOf("varchar", coinIds));
+            statement.setArray(2, connection.createArrayOf("timestamptz", from));
+            return statement;
+        }, rs -> {
+            consumer.accept(rs.getString(1), rs.getString(2), rs.getObject(3, OffsetDateTime.class).toInstant(),
+                    rs.getDouble(4));
+        }));
+    }
+
+    private static void setNullableDouble(PreparedStatement ps, int index, Double value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.DOUBLE);
+        } else {
+            ps.setDouble(index, value);
+        }
+    }
+}
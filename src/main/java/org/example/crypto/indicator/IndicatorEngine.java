@@ -0,0 +1,352 @@
+package org.example.crypto.indicator;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.Getter;
+import org.example.crypto.cluster.CoinShardingService;
+import org.example.crypto.model.CoinPriceHistory;
+import org.example.crypto.service.TicksIngestedEvent;
+import org.example.crypto.service.TrackedCoinRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Индикаторы считаются по тикам по мере их сохранения (TicksIngestedEvent), а не пересчётом всей истории.
+// Состояние монет периодически сохраняется в файл. После рестарта оно восстанавливается, и одним проходом
+// по coin_tick дочитываются тики после снимка (для монет без снимка - за backfill-days).
+// Пока идёт бэкфилл, живые тики откладываются и применяются следом. Результаты пишутся в coin_indicator пачками.
+@Component
+public class IndicatorEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndicatorEngine.class);
+
+    private static final int SNAPSHOT_MAGIC = 0x494E4431;
+
+    private final CoinIndicatorStore store;
+    private final Supplier<List<String>> ownedCoins;
+    private final IndicatorState.Periods periods;
+    private final Path snapshotFile;
+    private final Duration backfillDepth;
+    private final int batchSize;
+
+    @Getter
+    @Value("${crypto.indicators.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${crypto.indicators.flush-interval-ms:5000}")
+    private long flushIntervalMs = 5000;
+
+    @Value("${crypto.indicators.snapshot-interval-seconds:300}")
+    private long snapshotIntervalSeconds = 300;
+
+    private final Map<String, IndicatorState> states = new HashMap<>();
+    private final Map<String, String> symbols = new HashMap<>();
+    private List<CoinIndicatorStore.Row> pending = new ArrayList<>();
+    // Живые тики, пришедшие во время бэкфилла; null - бэкфилл не идёт
+    private List<CoinPriceHistory> deferred;
+
+    private final Counter updates;
+    private final Counter skipped;
+    private final Timer flushTimer;
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public IndicatorEngine(CoinIndicatorStore store, TrackedCoinRegistry trackedCoinRegistry,
+                           CoinShardingService coinShardingService, ObjectProvider<MeterRegistry> meterRegistry,
+                           @Value("${crypto.indicators.sma-period:20}") int smaPeriod,
+                           @Value("${crypto.indicators.ema-period:20}") int emaPeriod,
+                           @Value("${crypto.indicators.rsi-period:14}") int rsiPeriod,
+                           @Value("${crypto.indicators.macd-fast:12}") int macdFast,
+                           @Value("${crypto.indicators.macd-slow:26}") int macdSlow,
+                           @Value("${crypto.indicators.macd-signal:9}") int macdSignal,
+                           @Value("${crypto.indicators.bollinger-period:20}") int bollingerPeriod,
+                           @Value("${crypto.indicators.bollinger-width:2.0}") double bollingerWidth,
+                           @Value("${crypto.indicators.snapshot-file:data/indicators/state.bin}") String snapshotFile,
+                           @Value("${crypto.indicators.backfill-days:30}") int backfillDays,
+                           @Value("${crypto.indicators.batch-size:1000}") int batchSize) {
+        this(store, () -> coinShardingService.filterOwned(trackedCoinRegistry.snapshot()),
+                new IndicatorState.Periods(smaPeriod, emaPeriod, rsiPeriod, macdFast, macdSlow, macdSignal,
+                        bollingerPeriod, bollingerWidth),
+                Paths.get(snapshotFile), Duration.ofDays(backfillDays), batchSize,
+                meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
+    public IndicatorEngine(CoinIndicatorStore store, Supplier<List<String>> ownedCoins, IndicatorState.Periods periods,
+                           Path snapshotFile, Duration backfillDepth, int batchSize, MeterRegistry meterRegistry) {
+        this.store = store;
+        this.ownedCoins = ownedCoins;
+        this.periods = periods;
+        this.snapshotFile = snapshotFile;
+        this.backfillDepth = backfillDepth;
+        this.batchSize = batchSize;
+        this.updates = meterRegistry.counter("crypto.indicators.ticks", "result", "applied");
+        this.skipped = meterRegistry.counter("crypto.indicators.ticks", "result", "skipped");
+        this.flushTimer = meterRegistry.timer("crypto.indicators.flush");
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            logger.info("Индикаторы отключены");
+            return;
+        }
+        restore();
+        // Тики копятся с самого старта: живой тик до начала бэкфилла создал бы состояние монеты,
+        // и бэкфилл начал бы её историю с этого тика, пропустив всё до него
+        synchronized (this) {
+            deferred = new ArrayList<>();
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "indicator-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::checkpointQuietly, snapshotIntervalSeconds, snapshotIntervalSeconds,
+                TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        checkpointQuietly();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (scheduler != null) {
+            scheduler.execute(this::backfill);
+        }
+    }
+
+    @EventListener
+    public void onTicksIngested(TicksIngestedEvent event) {
+        if (!enabled || event.getTicks().isEmpty()) {
+            return;
+        }
+        boolean full;
+        synchronized (this) {
+            if (deferred != null) {
+                deferred.addAll(event.getTicks());
+                return;
+            }
+            for (CoinPriceHistory tick : event.getTicks()) {
+                if (tick.getPrice() != null) {
+                    apply(tick.getCoinId(), tick.getSymbol(), tick.getTimestamp(), tick.getPrice());
+                }
+            }
+            full = pending.size() >= batchSize;
+        }
+        if (full) {
+            flushQuietly();
+        }
+    }
+
+    // Одним проходом по coin_tick доводит состояние своих монет до последних сохранённых тиков
+    void backfill() {
+        synchronized (this) {
+            if (deferred == null) {
+                deferred = new ArrayList<>();
+            }
+        }
+        long started = System.nanoTime();
+        long[] ticks = {0};
+        try {
+            Instant horizon = Instant.now().minus(backfillDepth);
+            Map<String, Instant> since = new LinkedHashMap<>();
+            synchronized (this) {
+                for (String coinId : ownedCoins.get()) {
+                    IndicatorState state = states.get(coinId);
+                    since.put(coinId, state != null && state.lastTimestamp() != null ? state.lastTimestamp() : horizon);
+                }
+            }
+            store.readHistory(since, (coinId, symbol, timestamp, price) -> {
+                boolean full;
+                synchronized (this) {
+                    apply(coinId, symbol, timestamp, price);
+                    full = pending.size() >= batchSize;
+                }
+                ticks[0]++;
+                if (full) {
+                    flush();
+                }
+            });
+            logger.info("Бэкфилл индикаторов: {} монет, {} тиков за {} мс",
+                    since.size(), ticks[0], (System.nanoTime() - started) / 1_000_000);
+        } catch (Exception e) {
+            logger.error("Ошибка бэкфилла индикаторов после {} тиков: {}", ticks[0], e.getMessage(), e);
+        } finally {
+            synchronized (this) {
+                for (CoinPriceHistory tick : deferred) {
+                    if (tick.getPrice() != null) {
+                        apply(tick.getCoinId(), tick.getSymbol(), tick.getTimestamp(), tick.getPrice());
+                    }
+                }
+                deferred = null;
+            }
+            flushQuietly();
+        }
+    }
+
+    private void apply(String coinId, String symbol, Instant timestamp, double price) {
+        IndicatorValues values = states.computeIfAbsent(coinId, id -> new IndicatorState(periods)).update(timestamp, price);
+        if (values == null) {
+            skipped.increment();
+            return;
+        }
+        symbols.put(coinId, symbol);
+        pending.add(new CoinIndicatorStore.Row(coinId, symbol, values));
+        updates.increment();
+    }
+
+    // Время последнего учтённого тика монеты; null - монета ещё не встречалась
+    public synchronized Instant lastTimestamp(String coinId) {
+        IndicatorState state = states.get(coinId);
+        return state != null ? state.lastTimestamp() : null;
+    }
+
+    // Порция уходит в БД вне блокировки; при ошибке строки возвращаются в начало очереди
+    public void flush() {
+        List<CoinIndicatorStore.Row> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+        try {
+            flushTimer.record(() -> store.write(batch));
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                batch.addAll(pending);
+                pending = batch;
+            }
+            throw e;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("Не удалось записать индикаторы: {}", e.getMessage());
+        }
+    }
+
+    // Снимок фиксирует состояние только вместе с записанными строками: иначе после рестарта
+    // значения, которые не успели попасть в БД, не пересчитались бы
+    public void checkpoint() throws IOException {
+        byte[] snapshot;
+        List<CoinIndicatorStore.Row> batch;
+        synchronized (this) {
+            snapshot = serialize();
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+        try {
+            store.write(batch);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                batch.addAll(pending);
+                pending = batch;
+            }
+            throw e;
+        }
+        Files.createDirectories(snapshotFile.toAbsolutePath().getParent());
+        Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        Files.write(temp, snapshot);
+        Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void checkpointQuietly() {
+        try {
+            checkpoint();
+        } catch (Exception e) {
+            logger.error("Не удалось сохранить снимок индикаторов: {}", e.getMessage());
+        }
+    }
+
+    private byte[] serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            periods.writeTo(out);
+            out.writeInt(states.size());
+            for (Map.Entry<String, IndicatorState> entry : states.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(symbols.getOrDefault(entry.getKey(), ""));
+                entry.getValue().writeTo(out);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    // Снимок с другими периодами не подходит: монеты пересчитываются бэкфиллом с нуля
+    synchronized void restore() {
+        if (!Files.exists(snapshotFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                logger.warn("Файл {} не является снимком индикаторов, он будет перезаписан", snapshotFile);
+                return;
+            }
+            IndicatorState.Periods saved = IndicatorState.Periods.readFrom(in);
+            if (!saved.equals(periods)) {
+                logger.info("Периоды индикаторов изменились ({} -> {}), снимок не используется", saved, periods);
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String coinId = in.readUTF();
+                String symbol = in.readUTF();
+                states.put(coinId, IndicatorState.readFrom(in, periods));
+                symbols.put(coinId, symbol);
+            }
+            logger.info("Состояние индикаторов восстановлено для {} монет", count);
+        } catch (IOException e) {
+            states.clear();
+            symbols.clear();
+            logger.warn("Снимок индикаторов {} не прочитан, монеты будут пересчитаны: {}", snapshotFile, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package org.example.crypto.indicator;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+
+// Состояние индикаторов одной монеты. Каждый тик обновляет его за O(1): SMA и полосы Боллинджера - по кольцевому
+// буферу с бегущими средним и суммой квадратов отклонений, EMA и MACD - по экспоненте, RSI - сглаживанием Уайлдера.
+// Периоды считаются в тиках. Пока окна не заполнены, значения индикатора - null.
+public final class IndicatorState {
+
+    public record Periods(int sma, int ema, int rsi, int macdFast, int macdSlow, int macdSignal,
+                          int bollinger, double bollingerWidth) {
+        public static final Periods DEFAULT = new Periods(20, 20, 14, 12, 26, 9, 20, 2.0);
+
+        public Periods {
+            if (sma < 1 || ema < 1 || rsi < 1 || macdFast < 1 || macdSlow <= macdFast || macdSignal < 1 || bollinger < 2) {
+                throw new IllegalArgumentException("Некорректные периоды индикаторов: " + this);
+            }
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            for (int period : new int[]{sma, ema, rsi, macdFast, macdSlow, macdSignal, bollinger}) {
+                out.writeInt(period);
+            }
+            out.writeDouble(bollingerWidth);
+        }
+
+        static Periods readFrom(DataInputStream in) throws IOException {
+            return new Periods(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                    in.readInt(), in.readDouble());
+        }
+    }
+
+    private final Periods periods;
+    private final RollingWindow smaWindow;
+    private final RollingWindow bollingerWindow;
+    private final Ema ema;
+    private final Ema macdFast;
+    private final Ema macdSlow;
+    private final Ema macdSignal;
+    private final Ema rsiGain;
+    private final Ema rsiLoss;
+    private Instant lastTimestamp;
+    private double lastPrice;
+
+    public IndicatorState(Periods periods) {
+        this.periods = periods;
+        this.smaWindow = new RollingWindow(periods.sma());
+        this.bollingerWindow = new RollingWindow(periods.bollinger());
+        this.ema = Ema.standard(periods.ema());
+        this.macdFast = Ema.standard(periods.macdFast());
+        this.macdSlow = Ema.standard(periods.macdSlow());
+        this.macdSignal = Ema.standard(periods.macdSignal());
+        this.rsiGain = Ema.wilder(periods.rsi());
+        this.rsiLoss = Ema.wilder(periods.rsi());
+    }
+
+    public Instant lastTimestamp() {
+        return lastTimestamp;
+    }
+
+    // Тик не новее последнего учтённого (повтор после журнала или бэкфилла) пропускается, результат - null
+    public IndicatorValues update(Instant timestamp, double price) {
+        if (lastTimestamp != null && !timestamp.isAfter(lastTimestamp)) {
+            return null;
+        }
+        Double rsi = null;
+        if (lastTimestamp != null) {
+            double change = price - lastPrice;
+            rsiGain.add(Math.max(change, 0));
+            rsiLoss.add(Math.max(-change, 0));
+            if (rsiGain.ready()) {
+                double loss = rsiLoss.value();
+                rsi = loss == 0 ? 100.0 : 100 - 100 / (1 + rsiGain.value() / loss);
+            }
+        }
+        lastTimestamp = timestamp;
+        lastPrice = price;
+
+        smaWindow.add(price);
+        bollingerWindow.add(price);
+        ema.add(price);
+        macdFast.add(price);
+        macdSlow.add(price);
+
+        Double macd = null;
+        Double signal = null;
+        if (macdSlow.ready()) {
+            macd = macdFast.value() - macdSlow.value();
+            macdSignal.add(macd);
+            signal = macdSignal.ready() ? macdSignal.value() : null;
+        }
+        Double upper = null;
+        Double lower = null;
+        if (bollingerWindow.full()) {
+            double width = periods.bollingerWidth() * bollingerWindow.standardDeviation();
+            upper = bollingerWindow.mean() + width;
+            lower = bollingerWindow.mean() - width;
+        }
+        return new IndicatorValues(timestamp, price,
+                smaWindow.full() ? smaWindow.mean() : null,
+                ema.ready() ? ema.value() : null,
+                rsi, macd, signal, upper, lower);
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(lastTimestamp == null ? Long.MIN_VALUE : lastTimestamp.getEpochSecond());
+        out.writeInt(lastTimestamp == null ? 0 : lastTimestamp.getNano());
+        out.writeDouble(lastPrice);
+        smaWindow.writeTo(out);
+        bollingerWindow.writeTo(out);
+        for (Ema average : new Ema[]{ema, macdFast, macdSlow, macdSignal, rsiGain, rsiLoss}) {
+            average.writeTo(out);
+        }
+    }
+
+    static IndicatorState readFrom(DataInputStream in, Periods periods) throws IOException {
+        IndicatorState state = new IndicatorState(periods);
+        long seconds = in.readLong();
+        int nanos = in.readInt();
+        state.lastTimestamp = seconds == Long.MIN_VALUE ? null : Instant.ofEpochSecond(seconds, nanos);
+        state.lastPrice = in.readDouble();
+        state.smaWindow.readFrom(in);
+        state.bollingerWindow.readFrom(in);
+        for (Ema average : new Ema[]{state.ema, state.macdFast, state.macdSlow, state.macdSignal, state.rsiGain, state.rsiLoss}) {
+            average.readFrom(in);
+        }
+        return state;
+    }
+
+    // Кольцевой буфер последних size значений. Среднее и сумма квадратов отклонений (m2) обновляются
+    // по Уэлфорду при замене старого значения новым, без пересчёта окна и без вычитания больших сумм
+    static final class RollingWindow {
+        private final double[] values;
+        private int count;
+        private int next;
+        private double mean;
+        private double m2;
+
+        RollingWindow(int size) {
+            this.values = new double[size];
+        }
+
+        void add(double value) {
+            if (count < values.length) {
+                count++;
+                double delta = value - mean;
+                mean += delta / count;
+                m2 += delta * (value - mean);
+            } else {
+                double evicted = values[next];
+                double previousMean = mean;
+                mean += (value - evicted) / count;
+                m2 += (value - evicted) * (value - mean + evicted - previousMean);
+            }
+            values[next] = value;
+            next = (next + 1) % values.length;
+        }
+
+        boolean full() {
+            return count == values.length;
+        }
+
+        double mean() {
+            return mean;
+        }
+
+        // Стандартное отклонение генеральной совокупности окна, как в классических полосах Боллинджера
+        double standardDeviation() {
+            return Math.sqrt(Math.max(m2, 0) / count);
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(count);
+            out.writeInt(next);
+            out.writeDouble(mean);
+            out.writeDouble(m2);
+            for (double value : values) {
+                out.writeDouble(value);
+            }
+        }
+
+        void readFrom(DataInputStream in) throws IOException {
+            count = in.readInt();
+            next = in.readInt();
+            mean = in.readDouble();
+            m2 = in.readDouble();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = in.readDouble();
+            }
+        }
+    }
+
+    // Экспоненциальное среднее, затравка - простое среднее первых period значений.
+    // Уайлдер сглаживает с alpha = 1/period вместо 2/(period + 1)
+    static final class Ema {
+        private final int period;
+        private final double alpha;
+        private int count;
+        private double value;
+
+        private Ema(int period, double alpha) {
+            this.period = period;
+            this.alpha = alpha;
+        }
+
+        static Ema standard(int period) {
+            return new Ema(period, 2.0 / (period + 1));
+        }
+
+        static Ema wilder(int period) {
+            return new Ema(period, 1.0 / period);
+        }
+
+        void add(double x) {
+            if (count < period) {
+                count++;
+                value += (x - value) / count;
+            } else {
+                value += alpha * (x - value);
+            }
+        }
+
+        boolean ready() {
+            return count >= period;
+        }
+
+        double value() {
+            return value;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(count);
+            out.writeDouble(value);
+        }
+
+        void readFrom(DataInputStream in) throws IOException {
+            count = in.readInt();
+            value = in.readDouble();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package org.example.crypto.indicator;
+
+import java.time.Instant;
+
+// Индикаторы монеты на момент тика; null - окно индикатора ещё не заполнено
+public record IndicatorValues(Instant timestamp, double price, Double sma, Double ema, Double rsi,
+                              Double macd, Double macdSignal, Double bollingerUpper, Double bollingerLower) {
+
+    public Double macdHistogram() {
+        return macd != null && macdSignal != null ? macd - macdSignal : null;
+    }
+}
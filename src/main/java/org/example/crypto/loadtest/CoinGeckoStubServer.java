@@ -0,0 +1,248 @@
+package org.example.crypto.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.example.crypto.service.CoinGeckoResponseCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Локальная заглушка CoinGecko для нагрузочных прогонов без сети и без расхода квоты.
+// Отвечает на /coins/markets, /coins/{id}/market_chart[/range] и /coins/{id}: сначала из записанных ответов
+// (каталог кеша в режиме record), иначе синтетикой. Время заглушки идёт в speed раз быстрее реального,
+// поэтому цены меняются чаще. Задержка, 429 и зависшие запросы добавляются с заданной вероятностью.
+public class CoinGeckoStubServer implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoinGeckoStubServer.class);
+
+    private static final Pattern MARKET_CHART = Pattern.compile(".*/coins/([^/]+)/market_chart(/range)?");
+    private static final Pattern COIN = Pattern.compile(".*/coins/([^/]+)");
+    private static final long HOUR_SECONDS = 3600;
+    private static final long DAY_SECONDS = 86400;
+
+    public record Faults(Duration latency, Duration jitter, double rateLimitRate, double timeoutRate, Duration timeoutHold) {
+        public static final Faults NONE = new Faults(Duration.ZERO, Duration.ZERO, 0, 0, Duration.ZERO);
+    }
+
+    public record Stats(long requests, long rateLimited, long timedOut, long replayed) {
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SyntheticMarket market;
+    private final double speed;
+    private final Faults faults;
+    private final Path recordedDirectory;
+    private final int universe;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+
+    private final Instant startedAt = Instant.now();
+    private final long startedNanos = System.nanoTime();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public CoinGeckoStubServer(SyntheticMarket market, double speed, Faults faults, Path recordedDirectory, int universe) {
+        this.market = market;
+        this.speed = speed;
+        this.faults = faults;
+        this.recordedDirectory = recordedDirectory;
+        this.universe = universe;
+    }
+
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "coingecko-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        logger.info("Заглушка CoinGecko слушает {}, время x{}", baseUrl(), speed);
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/api/v3";
+    }
+
+    public Stats stats() {
+        return new Stats(requests.get(), rateLimited.get(), timedOut.get(), replayed.get());
+    }
+
+    // Время заглушки: от момента старта идёт в speed раз быстрее
+    Instant now() {
+        long elapsedNanos = System.nanoTime() - startedNanos;
+        return startedAt.plusNanos((long) (elapsedNanos * speed));
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long delay = faults.latency().toMillis()
+                    + (faults.jitter().isZero() ? 0 : random.nextLong(faults.jitter().toMillis() + 1));
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            double roll = random.nextDouble();
+            if (roll < faults.rateLimitRate()) {
+                rateLimited.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 429, "{\"status\":{\"error_code\":429,\"error_message\":\"rate limited\"}}");
+                return;
+            }
+            if (roll < faults.rateLimitRate() + faults.timeoutRate()) {
+                // Соединение держится дольше таймаута клиента и закрывается без ответа
+                timedOut.incrementAndGet();
+                Thread.sleep(faults.timeoutHold().toMillis());
+                return;
+            }
+
+            URI uri = exchange.getRequestURI();
+            if (recordedDirectory != null) {
+                byte[] recorded = CoinGeckoResponseCache.readRecorded(recordedDirectory, uri);
+                if (recorded != null) {
+                    replayed.incrementAndGet();
+                    send(exchange, 200, recorded);
+                    return;
+                }
+            }
+            Object body = respond(uri);
+            if (body == null) {
+                send(exchange, 404, "{\"error\":\"not found\"}");
+            } else {
+                send(exchange, 200, objectMapper.writeValueAsBytes(body));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            send(exchange, 500, "{\"error\":\"" + e.getMessage() + "\"}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Object respond(URI uri) {
+        String path = uri.getRawPath();
+        Map<String, List<String>> params = UriComponentsBuilder.fromUri(uri).build().getQueryParams();
+        Instant now = now();
+
+        if (path.endsWith("/coins/markets")) {
+            return markets(first(params, "ids", ""), now);
+        }
+        Matcher chart = MARKET_CHART.matcher(path);
+        if (chart.matches()) {
+            String coinId = chart.group(1);
+            if (chart.group(2) != null) {
+                Instant from = Instant.ofEpochSecond(Long.parseLong(first(params, "from", "0")));
+                Instant to = Instant.ofEpochSecond(Long.parseLong(first(params, "to", Long.toString(now.getEpochSecond()))));
+                return marketChart(coinId, from, to.isAfter(now) ? now : to);
+            }
+            long days = Long.parseLong(first(params, "days", "1"));
+            Instant from = now.minusSeconds(days * DAY_SECONDS);
+            return "daily".equals(first(params, "interval", "")) || days > 90
+                    ? points(coinId, from, now, DAY_SECONDS)
+                    : points(coinId, from, now, HOUR_SECONDS);
+        }
+        Matcher coin = COIN.matcher(path);
+        if (coin.matches()) {
+            ObjectNode node = objectMapper.createObjectNode();
+            node.put("id", coin.group(1));
+            node.put("symbol", market.symbol(coin.group(1)));
+            node.put("name", coin.group(1));
+            return node;
+        }
+        return null;
+    }
+
+    private ArrayNode markets(String ids, Instant now) {
+        ArrayNode result = objectMapper.createArrayNode();
+        for (String id : ids.split(",")) {
+            if (id.isBlank()) {
+                continue;
+            }
+            ObjectNode node = result.addObject();
+            node.put("id", id);
+            node.put("symbol", market.symbol(id));
+            node.put("current_price", market.price(id, now));
+            node.put("market_cap", market.marketCap(id, now));
+            node.put("market_cap_rank", market.rank(id, universe));
+            node.put("total_volume", market.volume(id, now));
+            node.put("last_updated", market.lastUpdated(id, now).toString());
+        }
+        return result;
+    }
+
+    // Как у CoinGecko: почасовые точки для диапазонов до 90 дней, дневные - для более длинных
+    private ObjectNode marketChart(String coinId, Instant from, Instant to) {
+        long span = to.getEpochSecond() - from.getEpochSecond();
+        return points(coinId, from, to, span > 90 * DAY_SECONDS ? DAY_SECONDS : HOUR_SECONDS);
+    }
+
+    private ObjectNode points(String coinId, Instant from, Instant to, long stepSeconds) {
+        ObjectNode node = objectMapper.createObjectNode();
+        ArrayNode prices = node.putArray("prices");
+        ArrayNode marketCaps = node.putArray("market_caps");
+        ArrayNode volumes = node.putArray("total_volumes");
+        long first = Math.floorDiv(from.getEpochSecond() + stepSeconds - 1, stepSeconds) * stepSeconds;
+        for (long second = first; second <= to.getEpochSecond(); second += stepSeconds) {
+            Instant at = Instant.ofEpochSecond(second);
+            long millis = at.toEpochMilli();
+            prices.addArray().add(millis).add(market.price(coinId, at));
+            marketCaps.addArray().add(millis).add(market.marketCap(coinId, at));
+            volumes.addArray().add(millis).add(market.volume(coinId, at));
+        }
+        return node;
+    }
+
+    private static String first(Map<String, List<String>> params, String name, String defaultValue) {
+        List<String> values = params.get(name);
+        return values == null || values.isEmpty() || values.get(0) == null ? defaultValue : values.get(0);
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        send(exchange, status, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
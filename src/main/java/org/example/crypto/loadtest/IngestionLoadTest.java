@@ -0,0 +1,197 @@
+package org.example.crypto.loadtest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.crypto.model.CoinPriceHistory;
+import org.example.crypto.cluster.CoinShardingService;
+import org.example.crypto.service.CoinGeckoMarketDataSource;
+import org.example.crypto.service.CoinGeckoService;
+import org.example.crypto.service.MarketDataSource;
+import org.example.crypto.service.PollingPlanner;
+import org.example.crypto.service.TrackedCoinRegistry;
+import org.example.crypto.wal.TickIngestBuffer;
+import org.example.crypto.wal.TickWriteAheadLog;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Нагрузочный прогон загрузки цен без сети: заглушка CoinGecko и настоящий путь опроса -
+// CoinGeckoService.pollPages (параллельные страницы, PollingPlanner, запись в журнал тиков с fsync)
+// поверх CoinGeckoMarketDataSource (таймауты, повторы, разбор JSON). Выгрузки журнала в БД нет.
+// Запуск: java -Dloader.main=org.example.crypto.loadtest.IngestionLoadTest -cp app.jar
+//         org.springframework.boot.loader.launch.PropertiesLauncher --coins 10000 --rate-limit 0.02
+@Command(name = "ingestion-load-test", mixinStandardHelpOptions = true,
+        description = "Пропускная способность загрузки цен на заглушке CoinGecko")
+public class IngestionLoadTest implements Callable<Integer> {
+
+    @Option(names = "--coins", defaultValue = "10000", description = "Число синтетических монет")
+    int coins;
+
+    @Option(names = "--rounds", defaultValue = "3", description = "Сколько раз опросить все монеты")
+    int rounds;
+
+    @Option(names = "--page-size", defaultValue = "250")
+    int pageSize;
+
+    @Option(names = "--concurrency", defaultValue = "4", description = "Страниц в полёте одновременно")
+    int concurrency;
+
+    @Option(names = "--speed", defaultValue = "60", description = "Во сколько раз время заглушки быстрее реального")
+    double speed;
+
+    @Option(names = "--latency-ms", defaultValue = "50")
+    long latencyMs;
+
+    @Option(names = "--jitter-ms", defaultValue = "50")
+    long jitterMs;
+
+    @Option(names = "--rate-limit", defaultValue = "0", description = "Доля ответов 429")
+    double rateLimitRate;
+
+    @Option(names = "--timeouts", defaultValue = "0", description = "Доля зависших запросов")
+    double timeoutRate;
+
+    @Option(names = "--client-timeout-ms", defaultValue = "2000")
+    long clientTimeoutMs;
+
+    @Option(names = "--retries", defaultValue = "2")
+    int retries;
+
+    @Option(names = "--retry-delay-ms", defaultValue = "200")
+    long retryDelayMs;
+
+    @Option(names = "--recorded", description = "Каталог кеша ответов CoinGecko, записанного с record: true")
+    Path recorded;
+
+    @Option(names = "--wal-dir", description = "Каталог журнала тиков; по умолчанию временный")
+    Path walDirectory;
+
+    public static void main(String[] args) {
+        System.exit(new CommandLine(new IngestionLoadTest()).execute(args));
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        List<String> coinIds = new ArrayList<>();
+        for (int i = 0; i < coins; i++) {
+            coinIds.add(String.format("coin-%05d", i));
+        }
+
+        CoinGeckoStubServer.Faults faults = new CoinGeckoStubServer.Faults(Duration.ofMillis(latencyMs),
+                Duration.ofMillis(jitterMs), rateLimitRate, timeoutRate, Duration.ofMillis(clientTimeoutMs * 2));
+        Path wal = walDirectory != null ? walDirectory : Files.createTempDirectory("ingestion-load-test-wal");
+
+        try (CoinGeckoStubServer stub = new CoinGeckoStubServer(new SyntheticMarket(42, Duration.ofMinutes(1)),
+                speed, faults, recorded, coins);
+             TickWriteAheadLog log = new TickWriteAheadLog(wal, 64 * 1024 * 1024)) {
+            stub.start(0);
+            TimedSource source = new TimedSource(new CoinGeckoMarketDataSource(
+                    CoinGeckoMarketDataSource.webClient(stub.baseUrl(), null, null, null),
+                    Duration.ofMillis(clientTimeoutMs), retries, Duration.ofMillis(retryDelayMs), registry));
+            // Файла списка нет: отслеживаются синтетические монеты по умолчанию
+            TrackedCoinRegistry coinRegistry = new TrackedCoinRegistry(
+                    Files.createTempDirectory("ingestion-load-test-coins").resolve("coins_to_track.json"), coinIds, false);
+            coinRegistry.start();
+            CoinGeckoService service = new CoinGeckoService(null, null,
+                    new CoinShardingService(null, registry, "load-test"),
+                    new TickIngestBuffer(log, registry), event -> { }, coinRegistry,
+                    new PollingPlanner(60, 300, 1800, Double.MAX_VALUE, pageSize, registry), source);
+            service.setPollingConcurrency(concurrency);
+            service.setPageIntervalMs(0);
+
+            long ticks = 0;
+            long started = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                ticks += service.fetchAndSaveCoinData().size();
+            }
+            double seconds = (System.nanoTime() - started) / 1e9;
+
+            CoinGeckoStubServer.Stats stats = stub.stats();
+            List<Long> sorted = new ArrayList<>(source.pageMillis);
+            Collections.sort(sorted);
+            System.out.printf("Монет: %d, раундов: %d, страниц: %d (ошибок %d), в полёте до %d%n",
+                    coins, rounds, sorted.size(), source.failedPages.get(), source.maxInFlight.get());
+            System.out.printf("Тиков: %d за %.1f с: %.0f тиков/с, %.1f страниц/с%n",
+                    ticks, seconds, ticks / seconds, sorted.size() / seconds);
+            System.out.printf("Страница, мс: p50 %d, p95 %d, p99 %d, max %d%n",
+                    percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                    sorted.isEmpty() ? 0 : sorted.get(sorted.size() - 1));
+            System.out.printf("Повторы: 429 - %.0f, таймаут - %.0f, прочие HTTP - %.0f%n",
+                    retries(registry, "rate-limit"), retries(registry, "timeout"), retries(registry, "http-error"));
+            System.out.printf("Заглушка: запросов %d, 429 - %d, зависших %d, из записи %d%n",
+                    stats.requests(), stats.rateLimited(), stats.timedOut(), stats.replayed());
+            double walMillis = registry.timer("crypto.wal.append").totalTime(TimeUnit.MILLISECONDS);
+            System.out.printf("Журнал: %d КБ, запись %.0f мс (%.0f%% времени)%n",
+                    log.getDurablePosition() / 1024, walMillis, walMillis / 10 / seconds);
+        }
+        return 0;
+    }
+
+    // Время страницы и число страниц в полёте снимаются на границе источника данных,
+    // всё остальное - расписание, параллельность и запись - остаётся кодом сервиса
+    private static class TimedSource implements MarketDataSource {
+
+        private final MarketDataSource delegate;
+        private final List<Long> pageMillis = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger failedPages = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        TimedSource(MarketDataSource delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public MarketsPage fetchMarkets(List<String> coinIds) {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            long started = System.nanoTime();
+            try {
+                return delegate.fetchMarkets(coinIds);
+            } catch (RuntimeException e) {
+                failedPages.incrementAndGet();
+                throw e;
+            } finally {
+                inFlight.decrementAndGet();
+                pageMillis.add((System.nanoTime() - started) / 1_000_000);
+            }
+        }
+
+        @Override
+        public List<CoinPriceHistory> fetchMarketChart(String coinId, int days) {
+            return delegate.fetchMarketChart(coinId, days);
+        }
+
+        @Override
+        public Mono<List<CoinPriceHistory>> fetchMarketChartRange(String coinId, Instant from, Instant to) {
+            return delegate.fetchMarketChartRange(coinId, from, to);
+        }
+
+        @Override
+        public String fetchSymbol(String coinId) {
+            return delegate.fetchSymbol(coinId);
+        }
+    }
+
+    private static long percentile(List<Long> sorted, double p) {
+        return sorted.isEmpty() ? 0 : sorted.get((int) Math.min(sorted.size() - 1, Math.floor(p * sorted.size())));
+    }
+
+    private static double retries(MeterRegistry registry, String cause) {
+        return registry.find("crypto.coingecko.retries").tag("cause", cause).counters().stream()
+                .mapToDouble(Counter::count).sum();
+    }
+}
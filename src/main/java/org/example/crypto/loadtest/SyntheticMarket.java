@@ -0,0 +1,72 @@
+package org.example.crypto.loadtest;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.SplittableRandom;
+
+// Детерминированные синтетические котировки: одна и та же монета в один и тот же момент всегда даёт одну цену,
+// поэтому заглушка не хранит состояние и выдерживает любое число монет. Цена меняется раз в updateInterval
+// (у каждой монеты своя фаза): медленный цикл, суточный цикл и шум на каждом шаге.
+public class SyntheticMarket {
+
+    private static final double MONTH_SECONDS = 30 * 86400.0;
+    private static final double DAY_SECONDS = 86400.0;
+
+    private final long seed;
+    private final long updateSeconds;
+
+    public SyntheticMarket(long seed, Duration updateInterval) {
+        this.seed = seed;
+        this.updateSeconds = Math.max(1, updateInterval.getSeconds());
+    }
+
+    // Момент последнего изменения цены не позже at
+    public Instant lastUpdated(String coinId, Instant at) {
+        long phase = Math.floorMod(hash(coinId), updateSeconds);
+        long step = Math.floorDiv(at.getEpochSecond() - phase, updateSeconds);
+        return Instant.ofEpochSecond(step * updateSeconds + phase);
+    }
+
+    public double price(String coinId, Instant at) {
+        long h = hash(coinId);
+        double t = lastUpdated(coinId, at).getEpochSecond();
+        double base = Math.pow(10, unit(h) * 6 - 2);
+        double slow = 0.3 * Math.sin(2 * Math.PI * t / MONTH_SECONDS + unit(h >>> 7) * 2 * Math.PI);
+        double daily = 0.05 * Math.sin(2 * Math.PI * t / DAY_SECONDS + unit(h >>> 13) * 2 * Math.PI);
+        double noise = 0.01 * (new SplittableRandom(h ^ (long) t).nextDouble() * 2 - 1);
+        return base * Math.exp(slow + daily + noise);
+    }
+
+    public double volume(String coinId, Instant at) {
+        return price(coinId, at) * supply(coinId) * 0.05;
+    }
+
+    public double marketCap(String coinId, Instant at) {
+        return price(coinId, at) * supply(coinId);
+    }
+
+    public String symbol(String coinId) {
+        String letters = coinId.replaceAll("[^a-z0-9]", "");
+        return letters.length() <= 5 ? letters : letters.substring(0, 3) + Long.toString(Math.floorMod(hash(coinId), 1296), 36);
+    }
+
+    public int rank(String coinId, int universe) {
+        return 1 + (int) Math.floorMod(hash(coinId), Math.max(1, universe));
+    }
+
+    private double supply(String coinId) {
+        return Math.pow(10, 6 + unit(hash(coinId) >>> 21) * 4);
+    }
+
+    private long hash(String coinId) {
+        long h = seed ^ 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < coinId.length(); i++) {
+            h = (h ^ coinId.charAt(i)) * 0x100000001B3L;
+        }
+        return h ^ (h >>> 31);
+    }
+
+    private static double unit(long h) {
+        return (h >>> 11) * 0x1.0p-53;
+    }
+}
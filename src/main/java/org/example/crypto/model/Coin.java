@@ -0,0 +1,25 @@
+package org.example.crypto.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+@Entity
+@Table(name = "coin")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class Coin {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "coin_key")
+    private Integer coinKey;
+
+    @Column(name = "coin_id", nullable = false, unique = true)
+    private String coinId;
+
+    @Column(name = "symbol", nullable = false)
+    private String symbol;
+}
@@ -1,16 +1,10 @@
 package org.example.crypto.model;
 
-import jakarta.persistence.*;
 import lombok.*;
 import java.time.Instant;
 
-@Entity
-@Table(
-        name = "coin_price_history",
-        indexes = {
-                @Index(name = "idx_coin_time", columnList = "coin_id, timestamp")
-        }
-)
+// Тик вместе с coin_id и symbol: в таком виде он идёт через загрузку, журнал и события,
+// а в БД раскладывается на coin и coin_tick
 @Getter
 @Setter
 @NoArgsConstructor
@@ -20,34 +14,17 @@ import java.time.Instant;
 @EqualsAndHashCode(onlyExplicitlyIncluded = true)
 public class CoinPriceHistory {
 
-    @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    private Long id;
-
     @EqualsAndHashCode.Include
-    @Column(name = "coin_id", nullable = false)
     private String coinId;
 
-    @Column(name = "symbol", nullable = false)
     private String symbol;
 
-    @Column(name = "price", nullable = false)
     private Double price;
 
-    @Column(name = "volume")
     private Double volume;
 
-    @Column(name = "market_cap")
     private Double marketCap;
 
     @EqualsAndHashCode.Include
-    @Column(name = "timestamp", nullable = false)
     private Instant timestamp;
-
-    @PrePersist
-    protected void onCreate() {
-        if (timestamp == null) {
-            timestamp = Instant.now();
-        }
-    }
 }
@@ -0,0 +1,46 @@
+package org.example.crypto.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+// Тик хранится с целочисленным ключом монеты вместо coin_id и symbol, схему создаёт TickStorageMigration
+@Entity
+@Table(name = "coin_tick")
+@IdClass(CoinTick.Key.class)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class CoinTick {
+
+    @Id
+    @Column(name = "coin_key", nullable = false)
+    private Integer coinKey;
+
+    @Id
+    @Column(name = "ts", nullable = false)
+    private Instant ts;
+
+    @Column(name = "price", nullable = false)
+    private Double price;
+
+    @Column(name = "volume")
+    private Double volume;
+
+    @Column(name = "market_cap")
+    private Double marketCap;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private Integer coinKey;
+        private Instant ts;
+    }
+}
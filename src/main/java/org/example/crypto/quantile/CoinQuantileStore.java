@@ -0,0 +1,155 @@
+package org.example.crypto.quantile;
+
+import org.example.crypto.repository.CoinKeyResolver;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Таблица coin_quantile_day: по строке на монету и день (UTC) с дайджестами цены и объёма.
+// Рядом лежат готовые дневные p5/p50/p95/p99 цены - для панелей Grafana через serving_price_quantiles,
+// квантили за произвольный период собираются слиянием дайджестов в QuantileSketchService.
+@Repository
+public class CoinQuantileStore {
+
+    // Строка дня хранит полный дайджест: в памяти он уже слит с ранее сохранённым
+    private static final String UPSERT_SQL =
+            "INSERT INTO coin_quantile_day (day, updated_at, price_p05, price_p50, price_p95, price_p99, tick_count, " +
+            "coin_key, price_digest, volume_digest) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (coin_key, day) DO UPDATE SET updated_at = EXCLUDED.updated_at, " +
+            "price_p05 = EXCLUDED.price_p05, price_p50 = EXCLUDED.price_p50, price_p95 = EXCLUDED.price_p95, " +
+            "price_p99 = EXCLUDED.price_p99, tick_count = EXCLUDED.tick_count, " +
+            "price_digest = EXCLUDED.price_digest, volume_digest = EXCLUDED.volume_digest";
+
+    private static final String LOAD_SQL =
+            "SELECT c.coin_id, c.symbol, q.day, q.price_digest, q.volume_digest FROM coin_quantile_day q " +
+            "JOIN coin c ON c.coin_key = q.coin_key " +
+            "JOIN unnest(?::varchar[], ?::date[]) AS k(coin_id, day) ON k.coin_id = c.coin_id AND k.day = q.day";
+
+    private static final String RANGE_SQL =
+            "SELECT c.coin_id, c.symbol, q.day, q.price_digest, q.volume_digest FROM coin_quantile_day q " +
+            "JOIN coin c ON c.coin_key = q.coin_key WHERE c.coin_id = ? AND q.day BETWEEN ? AND ? ORDER BY q.day";
+
+    // Тики закрытых дней, для которых ещё нет строки: по первичному ключу, монета за монетой
+    private static final String MISSING_TICKS_SQL =
+            "SELECT c.coin_id, c.symbol, t.ts, t.price, t.volume FROM coin_tick t " +
+            "JOIN coin c ON c.coin_key = t.coin_key " +
+            "WHERE c.coin_id = ANY(?) AND t.ts >= ? AND t.ts < ? AND NOT EXISTS (" +
+            "SELECT 1 FROM coin_quantile_day q WHERE q.coin_key = t.coin_key " +
+            "AND q.day = (t.ts AT TIME ZONE 'UTC')::date) " +
+            "ORDER BY t.coin_key, t.ts";
+
+    public record Key(String coinId, LocalDate day) {
+    }
+
+    public record DayDigest(String coinId, String symbol, LocalDate day, TDigest price, TDigest volume) {
+    }
+
+    @FunctionalInterface
+    public interface TickConsumer {
+        void accept(String coinId, String symbol, Instant timestamp, double price, Double volume);
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CoinKeyResolver coinKeyResolver;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${crypto.quantiles.backfill-fetch-size:10000}")
+    private int fetchSize = 10000;
+
+    public CoinQuantileStore(JdbcTemplate jdbcTemplate, CoinKeyResolver coinKeyResolver,
+                             PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.coinKeyResolver = coinKeyResolver;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public List<DayDigest> load(Collection<Key> keys) {
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+        String[] coinIds = keys.stream().map(Key::coinId).toArray(String[]::new);
+        Date[] days = keys.stream().map(key -> Date.valueOf(key.day())).toArray(Date[]::new);
+        return jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(LOAD_SQL);
+            statement.setArray(1, connection.createArrayOf("varchar", coinIds));
+            statement.setArray(2, connection.createArrayOf("date", days));
+            return statement;
+        }, (rs, rowNum) -> new DayDigest(rs.getString(1), rs.getString(2), rs.getDate(3).toLocalDate(),
+                TDigest.fromBytes(rs.getBytes(4)), TDigest.fromBytes(rs.getBytes(5))));
+    }
+
+    public List<DayDigest> range(String coinId, LocalDate from, LocalDate to) {
+        return jdbcTemplate.query(RANGE_SQL, (rs, rowNum) -> new DayDigest(rs.getString(1), rs.getString(2),
+                rs.getDate(3).toLocalDate(), TDigest.fromBytes(rs.getBytes(4)), TDigest.fromBytes(rs.getBytes(5))),
+                coinId, Date.valueOf(from), Date.valueOf(to));
+    }
+
+    public void write(Collection<DayDigest> digests) {
+        if (digests.isEmpty()) {
+            return;
+        }
+        List<DayDigest> rows = new ArrayList<>(digests);
+        int[] keys = rows.stream().mapToInt(row -> coinKeyResolver.keyOf(row.coinId(), row.symbol())).toArray();
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        transactionTemplate.executeWithoutResult(status ->
+                jdbcTemplate.batchUpdate(UPSERT_SQL, IntStream.range(0, rows.size()).boxed().toList(), 500, (ps, index) -> {
+                    DayDigest row = rows.get(index);
+                    ps.setDate(1, Date.valueOf(row.day()));
+                    ps.setObject(2, now);
+                    setQuantile(ps, 3, row.price(), 0.05);
+                    setQuantile(ps, 4, row.price(), 0.50);
+                    setQuantile(ps, 5, row.price(), 0.95);
+                    setQuantile(ps, 6, row.price(), 0.99);
+                    ps.setInt(7, (int) row.price().count());
+                    ps.setInt(8, keys[index]);
+                    ps.setBytes(9, row.price().toBytes());
+                    ps.setBytes(10, row.volume().toBytes());
+                }));
+    }
+
+    // Стриминг тиков закрытых дней [from, to) без строки в coin_quantile_day; fetchSize работает только в транзакции
+    public void readMissingDays(List<String> coinIds, LocalDate from, LocalDate to, TickConsumer consumer) {
+        if (coinIds.isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(MISSING_TICKS_SQL);
+            statement.setFetchSize(fetchSize);
+            statement.setArray(1, connection.createArrayOf("varchar", coinIds.toArray()));
+            statement.setTimestamp(2, Timestamp.from(from.atStartOfDay(ZoneOffset.UTC).toInstant()));
+            statement.setTimestamp(3, Timestamp.from(to.atStartOfDay(ZoneOffset.UTC).toInstant()));
+            return statement;
+        }, rs -> {
+            // wasNull относится к последнему прочитанному столбцу, поэтому проверяется сразу после объёма
+            double volume = rs.getDouble(5);
+            boolean noVolume = rs.wasNull();
+            consumer.accept(rs.getString(1), rs.getString(2), rs.getObject(3, OffsetDateTime.class).toInstant(),
+                    rs.getDouble(4), noVolume ? null : volume);
+        }));
+    }
+
+    private static void setQuantile(PreparedStatement ps, int index, TDigest digest, double q) throws SQLException {
+        double value = digest.quantile(q);
+        if (Double.isNaN(value)) {
+            ps.setNull(index, Types.DOUBLE);
+        } else {
+            ps.setDouble(index, value);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.example.crypto.quantile;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+// GET /quantiles/{coinId}?from=2024-03-01&to=2024-03-31&q=0.05,0.5,0.95,0.99 - квантили цены и объёма за дни
+// [from, to] (UTC). По умолчанию - последние 7 дней, включая сегодняшний.
+@RestController
+public class QuantileController {
+
+    private static final List<Double> DEFAULT_QUANTILES = List.of(0.05, 0.5, 0.95, 0.99);
+
+    private final QuantileSketchService service;
+
+    public QuantileController(QuantileSketchService service) {
+        this.service = service;
+    }
+
+    @GetMapping("/quantiles/{coinId}")
+    public QuantileSketchService.Summary quantiles(
+            @PathVariable String coinId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(name = "q", required = false) List<Double> qs) {
+        LocalDate end = to != null ? to : LocalDate.now(ZoneOffset.UTC);
+        LocalDate start = from != null ? from : end.minusDays(6);
+        if (start.isAfter(end)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from позже to");
+        }
+        List<Double> quantiles = qs == null || qs.isEmpty() ? DEFAULT_QUANTILES : qs;
+        if (quantiles.stream().anyMatch(q -> q < 0 || q > 1)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Квантили задаются долями из [0, 1]");
+        }
+        return service.summarize(coinId.toLowerCase(), start, end, quantiles);
+    }
+}
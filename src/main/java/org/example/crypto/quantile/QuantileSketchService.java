@@ -0,0 +1,265 @@
+package org.example.crypto.quantile;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.crypto.cluster.CoinShardingService;
+import org.example.crypto.model.CoinPriceHistory;
+import org.example.crypto.service.TicksIngestedEvent;
+import org.example.crypto.service.TrackedCoinRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Дневные t-digest цены и объёма по монетам. На загрузке тик только добавляется в дайджест-приращение дня (O(1)),
+// раз в flush-interval приращения сливаются с сохранённым дайджестом дня и строка переписывается целиком.
+// Дайджесты текущих дней держатся в памяти, из БД читаются только при первом обращении к дню.
+// Закрытые дни без строки (например, до включения) досчитываются при старте за backfill-days.
+@Component
+public class QuantileSketchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(QuantileSketchService.class);
+
+    public record Summary(String coinId, LocalDate from, LocalDate to, int days, long count,
+                         Map<String, Double> price, Map<String, Double> volume) {
+    }
+
+    private final CoinQuantileStore store;
+    private final Supplier<List<String>> ownedCoins;
+    private final double compression;
+    private final int backfillDays;
+    private final Clock clock;
+
+    @Value("${crypto.quantiles.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${crypto.quantiles.flush-interval-ms:10000}")
+    private long flushIntervalMs = 10000;
+
+    // Приращения с прошлого сброса; меняются в потоке загрузки под блокировкой
+    private Map<CoinQuantileStore.Key, CoinQuantileStore.DayDigest> pending = new LinkedHashMap<>();
+    // Время последнего учтённого тика монеты: повторно пришедший тик без новых данных не искажает распределение
+    private final Map<String, Instant> lastTimestamps = new HashMap<>();
+    // Полные дайджесты недавних дней; только поток сброса
+    private final Map<CoinQuantileStore.Key, CoinQuantileStore.DayDigest> recent = new HashMap<>();
+
+    private final Timer flushTimer;
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public QuantileSketchService(CoinQuantileStore store, TrackedCoinRegistry trackedCoinRegistry,
+                                 CoinShardingService coinShardingService, ObjectProvider<MeterRegistry> meterRegistry,
+                                 @Value("${crypto.quantiles.compression:100}") double compression,
+                                 @Value("${crypto.quantiles.backfill-days:30}") int backfillDays) {
+        this(store, () -> coinShardingService.filterOwned(trackedCoinRegistry.snapshot()), compression, backfillDays,
+                Clock.systemUTC(), meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
+    public QuantileSketchService(CoinQuantileStore store, Supplier<List<String>> ownedCoins, double compression,
+                                 int backfillDays, Clock clock, MeterRegistry meterRegistry) {
+        this.store = store;
+        this.ownedCoins = ownedCoins;
+        this.compression = compression;
+        this.backfillDays = backfillDays;
+        this.clock = clock;
+        this.flushTimer = meterRegistry.timer("crypto.quantiles.flush");
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            logger.info("Квантильные дайджесты отключены");
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "quantile-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (scheduler != null && backfillDays > 0) {
+            scheduler.execute(this::backfill);
+        }
+    }
+
+    @EventListener
+    public void onTicksIngested(TicksIngestedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            for (CoinPriceHistory tick : event.getTicks()) {
+                if (tick.getPrice() == null || tick.getTimestamp() == null) {
+                    continue;
+                }
+                Instant last = lastTimestamps.get(tick.getCoinId());
+                if (last != null && !tick.getTimestamp().isAfter(last)) {
+                    continue;
+                }
+                lastTimestamps.put(tick.getCoinId(), tick.getTimestamp());
+                add(pending, tick.getCoinId(), tick.getSymbol(), tick.getTimestamp(), tick.getPrice(), tick.getVolume());
+            }
+        }
+    }
+
+    private void add(Map<CoinQuantileStore.Key, CoinQuantileStore.DayDigest> digests, String coinId, String symbol,
+                     Instant timestamp, double price, Double volume) {
+        LocalDate day = LocalDate.ofInstant(timestamp, ZoneOffset.UTC);
+        CoinQuantileStore.DayDigest digest = digests.computeIfAbsent(new CoinQuantileStore.Key(coinId, day),
+                key -> new CoinQuantileStore.DayDigest(coinId, symbol, day, new TDigest(compression),
+                        new TDigest(compression)));
+        digest.price().add(price);
+        if (volume != null) {
+            digest.volume().add(volume);
+        }
+    }
+
+    void flush() {
+        Map<CoinQuantileStore.Key, CoinQuantileStore.DayDigest> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new LinkedHashMap<>();
+        }
+        long started = System.nanoTime();
+        List<CoinQuantileStore.Key> unknown = batch.keySet().stream().filter(key -> !recent.containsKey(key)).toList();
+        for (CoinQuantileStore.DayDigest stored : store.load(unknown)) {
+            recent.put(new CoinQuantileStore.Key(stored.coinId(), stored.day()), stored);
+        }
+        List<CoinQuantileStore.DayDigest> changed = new ArrayList<>(batch.size());
+        for (Map.Entry<CoinQuantileStore.Key, CoinQuantileStore.DayDigest> entry : batch.entrySet()) {
+            CoinQuantileStore.DayDigest delta = entry.getValue();
+            CoinQuantileStore.DayDigest full = recent.get(entry.getKey());
+            if (full == null) {
+                recent.put(entry.getKey(), delta);
+                changed.add(delta);
+                continue;
+            }
+            full.price().add(delta.price());
+            full.volume().add(delta.volume());
+            changed.add(full);
+        }
+        try {
+            store.write(changed);
+        } catch (RuntimeException e) {
+            // Слитые в память дни забываются и перечитаются из БД, а приращения возвращаются в очередь сброса
+            batch.keySet().forEach(recent::remove);
+            synchronized (this) {
+                batch.forEach((key, delta) -> pending.merge(key, delta, (newer, older) -> {
+                    newer.price().add(older.price());
+                    newer.volume().add(older.volume());
+                    return newer;
+                }));
+            }
+            throw e;
+        }
+        // В памяти остаются вчерашний и сегодняшний дни: тики могут прийти с запозданием
+        LocalDate oldest = LocalDate.now(clock.withZone(ZoneOffset.UTC)).minusDays(1);
+        recent.keySet().removeIf(key -> key.day().isBefore(oldest));
+        flushTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("Не удалось сохранить квантильные дайджесты: {}", e.getMessage());
+        }
+    }
+
+    // Закрытые дни без строки за backfill-days: один проход по coin_tick, дайджесты монеты пишутся при переходе к следующей
+    void backfill() {
+        LocalDate today = LocalDate.now(clock.withZone(ZoneOffset.UTC));
+        Map<CoinQuantileStore.Key, CoinQuantileStore.DayDigest> coinDays = new LinkedHashMap<>();
+        String[] current = {null};
+        long[] ticks = {0};
+        long started = System.nanoTime();
+        try {
+            store.readMissingDays(ownedCoins.get(), today.minusDays(backfillDays), today,
+                    (coinId, symbol, timestamp, price, volume) -> {
+                        if (!coinId.equals(current[0]) && !coinDays.isEmpty()) {
+                            store.write(coinDays.values());
+                            coinDays.clear();
+                        }
+                        current[0] = coinId;
+                        add(coinDays, coinId, symbol, timestamp, price, volume);
+                        ticks[0]++;
+                    });
+            store.write(coinDays.values());
+            logger.info("Бэкфилл квантильных дайджестов: {} тиков за {} мс", ticks[0],
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (Exception e) {
+            logger.error("Бэкфилл квантильных дайджестов не удался: {}", e.getMessage());
+        }
+    }
+
+    // Квантили за дни [from, to] слиянием дневных дайджестов; qs - доли из [0, 1]
+    public Summary summarize(String coinId, LocalDate from, LocalDate to, List<Double> qs) {
+        TDigest price = new TDigest(compression);
+        TDigest volume = new TDigest(compression);
+        List<CoinQuantileStore.DayDigest> days = store.range(coinId, from, to);
+        for (CoinQuantileStore.DayDigest day : days) {
+            price.add(day.price());
+            volume.add(day.volume());
+        }
+        return new Summary(coinId, from, to, days.size(), price.count(), quantiles(price, qs), quantiles(volume, qs));
+    }
+
+    private static Map<String, Double> quantiles(TDigest digest, List<Double> qs) {
+        Map<String, Double> result = new LinkedHashMap<>();
+        result.put("min", digest.count() == 0 ? null : digest.min());
+        for (double q : qs) {
+            double value = digest.quantile(q);
+            result.put(label(q), Double.isNaN(value) ? null : value);
+        }
+        result.put("max", digest.count() == 0 ? null : digest.max());
+        return result;
+    }
+
+    // 0.05 -> p5, 0.999 -> p99.9
+    static String label(double q) {
+        return "p" + BigDecimal.valueOf(q).movePointRight(2).stripTrailingZeros().toPlainString();
+    }
+}
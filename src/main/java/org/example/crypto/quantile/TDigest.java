@@ -0,0 +1,261 @@
+package org.example.crypto.quantile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+// t-digest (вариант со слиянием): распределение хранится как не более ~compression центроидов (среднее и вес).
+// Центроиды у краёв мельче, чем в середине (функция масштаба k1 через arcsin), поэтому хвосты p1/p99 точнее медианы.
+// Новые значения копятся в буфере и вливаются одной сортировкой. Два дайджеста сливаются в один,
+// так недельные и месячные квантили собираются из дневных без исходных тиков.
+public final class TDigest {
+
+    private static final int FORMAT = 1;
+
+    private final double compression;
+    private double[] means;
+    private double[] weights;
+    private int centroids;
+    private double[] bufferMeans;
+    private double[] bufferWeights;
+    private int buffered;
+    private double totalWeight;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public TDigest(double compression) {
+        if (compression < 10) {
+            throw new IllegalArgumentException("Сжатие t-digest должно быть не меньше 10: " + compression);
+        }
+        this.compression = compression;
+        int capacity = (int) Math.ceil(compression) + 8;
+        this.means = new double[capacity];
+        this.weights = new double[capacity];
+        this.bufferMeans = new double[capacity * 4];
+        this.bufferWeights = new double[capacity * 4];
+    }
+
+    public double compression() {
+        return compression;
+    }
+
+    public long count() {
+        return Math.round(totalWeight);
+    }
+
+    public double min() {
+        return totalWeight == 0 ? Double.NaN : min;
+    }
+
+    public double max() {
+        return totalWeight == 0 ? Double.NaN : max;
+    }
+
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    private void add(double mean, double weight) {
+        if (Double.isNaN(mean) || Double.isInfinite(mean)) {
+            return;
+        }
+        if (buffered == bufferMeans.length) {
+            compress();
+        }
+        bufferMeans[buffered] = mean;
+        bufferWeights[buffered] = weight;
+        buffered++;
+        totalWeight += weight;
+        min = Math.min(min, mean);
+        max = Math.max(max, mean);
+    }
+
+    public void add(TDigest other) {
+        other.compress();
+        for (int i = 0; i < other.centroids; i++) {
+            add(other.means[i], other.weights[i]);
+        }
+        // Крайние центроиды - средние, настоящие границы переносятся отдельно
+        if (other.totalWeight > 0) {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+    }
+
+    // Слияние центроидов и буфера за один проход по отсортированному списку
+    private void compress() {
+        if (buffered == 0) {
+            return;
+        }
+        int n = centroids + buffered;
+        double[] allMeans = new double[n];
+        double[] allWeights = new double[n];
+        System.arraycopy(means, 0, allMeans, 0, centroids);
+        System.arraycopy(weights, 0, allWeights, 0, centroids);
+        System.arraycopy(bufferMeans, 0, allMeans, centroids, buffered);
+        System.arraycopy(bufferWeights, 0, allWeights, centroids, buffered);
+        buffered = 0;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(allMeans[a], allMeans[b]));
+
+        int merged = 0;
+        double weightSoFar = 0;
+        double limit = totalWeight * quantileOfK(kOfQuantile(0) + 1);
+        double currentMean = allMeans[order[0]];
+        double currentWeight = allWeights[order[0]];
+        for (int i = 1; i < n; i++) {
+            double mean = allMeans[order[i]];
+            double weight = allWeights[order[i]];
+            if (weightSoFar + currentWeight + weight <= limit) {
+                currentWeight += weight;
+                currentMean += (mean - currentMean) * weight / currentWeight;
+            } else {
+                merged = emit(merged, currentMean, currentWeight);
+                weightSoFar += currentWeight;
+                limit = totalWeight * quantileOfK(kOfQuantile(weightSoFar / totalWeight) + 1);
+                currentMean = mean;
+                currentWeight = weight;
+            }
+        }
+        centroids = emit(merged, currentMean, currentWeight);
+    }
+
+    private int emit(int index, double mean, double weight) {
+        if (index == means.length) {
+            means = Arrays.copyOf(means, index * 2);
+            weights = Arrays.copyOf(weights, index * 2);
+        }
+        means[index] = mean;
+        weights[index] = weight;
+        return index + 1;
+    }
+
+    private double kOfQuantile(double q) {
+        return compression / (2 * Math.PI) * Math.asin(2 * Math.min(1, Math.max(0, q)) - 1);
+    }
+
+    private double quantileOfK(double k) {
+        double angle = 2 * Math.PI * k / compression;
+        return angle >= Math.PI / 2 ? 1 : (Math.sin(angle) + 1) / 2;
+    }
+
+    // Квантиль q из [0, 1]: линейная интерполяция между центрами центроидов, у краёв - до min и max
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Квантиль вне [0, 1]: " + q);
+        }
+        compress();
+        if (centroids == 0) {
+            return Double.NaN;
+        }
+        if (centroids == 1) {
+            return q == 0 ? min : q == 1 ? max : means[0];
+        }
+        double index = q * totalWeight;
+        double leftCenter = weights[0] / 2;
+        if (index <= leftCenter) {
+            return interpolate(min, means[0], index / leftCenter);
+        }
+        double cumulative = leftCenter;
+        for (int i = 0; i + 1 < centroids; i++) {
+            double step = (weights[i] + weights[i + 1]) / 2;
+            if (index <= cumulative + step) {
+                return interpolate(means[i], means[i + 1], (index - cumulative) / step);
+            }
+            cumulative += step;
+        }
+        double rightSpan = weights[centroids - 1] / 2;
+        return interpolate(means[centroids - 1], max, Math.min(1, (index - cumulative) / rightSpan));
+    }
+
+    // Доля значений не больше value: для поиска выбросов относительно распределения за период
+    public double cdf(double value) {
+        compress();
+        if (centroids == 0) {
+            return Double.NaN;
+        }
+        if (value < min) {
+            return 0;
+        }
+        if (value >= max) {
+            return 1;
+        }
+        double cumulative = 0;
+        double previousMean = min;
+        double previousCenter = 0;
+        for (int i = 0; i < centroids; i++) {
+            double center = cumulative + weights[i] / 2;
+            if (value < means[i]) {
+                double fraction = means[i] == previousMean ? 0 : (value - previousMean) / (means[i] - previousMean);
+                return (previousCenter + fraction * (center - previousCenter)) / totalWeight;
+            }
+            cumulative += weights[i];
+            previousMean = means[i];
+            previousCenter = center;
+        }
+        double fraction = max == previousMean ? 1 : (value - previousMean) / (max - previousMean);
+        return (previousCenter + fraction * (totalWeight - previousCenter)) / totalWeight;
+    }
+
+    private static double interpolate(double from, double to, double fraction) {
+        return from + (to - from) * fraction;
+    }
+
+    int centroidCount() {
+        compress();
+        return centroids;
+    }
+
+    // Формат: версия, сжатие, min, max, число центроидов, затем пары (среднее double, вес int)
+    public byte[] toBytes() {
+        compress();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + centroids * 12);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT);
+            out.writeFloat((float) compression);
+            out.writeDouble(min);
+            out.writeDouble(max);
+            out.writeInt(centroids);
+            for (int i = 0; i < centroids; i++) {
+                out.writeDouble(means[i]);
+                out.writeInt((int) Math.round(weights[i]));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static TDigest fromBytes(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            int format = in.readByte();
+            if (format != FORMAT) {
+                throw new IllegalArgumentException("Неизвестный формат t-digest: " + format);
+            }
+            TDigest digest = new TDigest(in.readFloat());
+            double min = in.readDouble();
+            double max = in.readDouble();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                double mean = in.readDouble();
+                int weight = in.readInt();
+                digest.centroids = digest.emit(digest.centroids, mean, weight);
+                digest.totalWeight += weight;
+            }
+            if (count > 0) {
+                digest.min = min;
+                digest.max = max;
+            }
+            return digest;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Повреждённый t-digest", e);
+        }
+    }
+}
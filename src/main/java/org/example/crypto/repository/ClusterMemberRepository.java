@@ -0,0 +1,31 @@
+package org.example.crypto.repository;
+
+import org.example.crypto.model.ClusterMember;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface ClusterMemberRepository extends JpaRepository<ClusterMember, String> {
+
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO cluster_member (node_id, started_at, last_heartbeat) VALUES (:nodeId, :now, :now) " +
+            "ON CONFLICT (node_id) DO UPDATE SET last_heartbeat = EXCLUDED.last_heartbeat", nativeQuery = true)
+    void heartbeat(@Param("nodeId") String nodeId, @Param("now") Instant now);
+
+    // Состав кластера читается с основного сервера: отставание реплики больше TTL участника
+    @Transactional
+    List<ClusterMember> findByLastHeartbeatAfter(Instant threshold);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ClusterMember m WHERE m.lastHeartbeat < :threshold")
+    int deleteExpired(@Param("threshold") Instant threshold);
+}
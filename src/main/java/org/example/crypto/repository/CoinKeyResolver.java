@@ -0,0 +1,36 @@
+package org.example.crypto.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Ключи из справочника coin кешируются: монет единицы, а тиков миллионы
+@Repository
+public class CoinKeyResolver {
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO coin (coin_id, symbol) VALUES (?, ?) " +
+            "ON CONFLICT (coin_id) DO UPDATE SET symbol = EXCLUDED.symbol RETURNING coin_key";
+
+    private record CachedKey(int key, String symbol) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, CachedKey> cache = new ConcurrentHashMap<>();
+
+    public CoinKeyResolver(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public int keyOf(String coinId, String symbol) {
+        CachedKey cached = cache.get(coinId);
+        if (cached != null && cached.symbol().equals(symbol)) {
+            return cached.key();
+        }
+        Integer key = jdbcTemplate.queryForObject(UPSERT_SQL, Integer.class, coinId, symbol);
+        cache.put(coinId, new CachedKey(key, symbol));
+        return key;
+    }
+}
@@ -0,0 +1,115 @@
+package org.example.crypto.repository;
+
+import org.example.crypto.model.CoinPriceHistory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+@Repository
+public class CoinPriceHistoryBulkWriter {
+
+    // Повтор тика (журнал, повторный бэкфилл) не создаёт дубликат: (coin_key, ts) - первичный ключ
+    private static final String INSERT_SQL =
+            "INSERT INTO coin_tick (ts, price, volume, market_cap, coin_key) VALUES (?, ?, ?, ?, ?) " +
+            "ON CONFLICT DO NOTHING";
+
+    private static final String MARK_DIRTY_SQL =
+            "INSERT INTO coin_tick_dirty_day (day) VALUES (?) ON CONFLICT (day) DO UPDATE SET claimed = false";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CoinKeyResolver coinKeyResolver;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${crypto.bulk-writer.batch-size:1000}")
+    private int batchSize = 1000;
+
+    public CoinPriceHistoryBulkWriter(JdbcTemplate jdbcTemplate, CoinKeyResolver coinKeyResolver,
+                                      PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.coinKeyResolver = coinKeyResolver;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public int write(List<CoinPriceHistory> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+
+        int[] keys = new int[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            keys[i] = coinKeyResolver.keyOf(rows.get(i).getCoinId(), rows.get(i).getSymbol());
+        }
+        Set<LocalDate> closedDays = closedDays(rows, LocalDate.now(ZoneOffset.UTC));
+
+        // Отметка о закрытом дне пишется в той же транзакции, что и тики: архив Parquet перевыгрузит этот день
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_SQL, new IndexedBatch(rows, keys), batchSize, (ps, indexed) -> {
+                CoinPriceHistory history = indexed.row();
+                ps.setObject(1, OffsetDateTime.ofInstant(history.getTimestamp(), ZoneOffset.UTC));
+                ps.setDouble(2, history.getPrice());
+                setNullableDouble(ps, 3, history.getVolume());
+                setNullableDouble(ps, 4, history.getMarketCap());
+                ps.setInt(5, indexed.key());
+            });
+            for (LocalDate day : closedDays) {
+                jdbcTemplate.update(MARK_DIRTY_SQL, day);
+            }
+        });
+        return rows.size();
+    }
+
+    static Set<LocalDate> closedDays(List<CoinPriceHistory> rows, LocalDate today) {
+        Set<LocalDate> days = new TreeSet<>();
+        for (CoinPriceHistory row : rows) {
+            LocalDate day = LocalDate.ofInstant(row.getTimestamp(), ZoneOffset.UTC);
+            if (day.isBefore(today)) {
+                days.add(day);
+            }
+        }
+        return days;
+    }
+
+    private record Indexed(CoinPriceHistory row, int key) {
+    }
+
+    private static final class IndexedBatch extends java.util.AbstractList<Indexed> {
+        private final List<CoinPriceHistory> rows;
+        private final int[] keys;
+
+        IndexedBatch(List<CoinPriceHistory> rows, int[] keys) {
+            this.rows = rows;
+            this.keys = keys;
+        }
+
+        @Override
+        public Indexed get(int index) {
+            return new Indexed(rows.get(index), keys[index]);
+        }
+
+        @Override
+        public int size() {
+            return rows.size();
+        }
+    }
+
+    private static void setNullableDouble(PreparedStatement ps, int index, Double value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.DOUBLE);
+        } else {
+            ps.setDouble(index, value);
+        }
+    }
+}
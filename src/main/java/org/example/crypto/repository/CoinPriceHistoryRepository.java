@@ -1,21 +1,25 @@
 package org.example.crypto.repository;
 
 import org.example.crypto.model.CoinPriceHistory;
+import org.example.crypto.model.CoinTick;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
-public interface CoinPriceHistoryRepository extends JpaRepository<CoinPriceHistory, Long> {
+public interface CoinPriceHistoryRepository extends JpaRepository<CoinTick, CoinTick.Key> {
 
 
-    List<CoinPriceHistory> findByCoinIdOrderByTimestampDesc(String coinId, Pageable pageable);
+    @Query("SELECT new org.example.crypto.model.CoinPriceHistory(c.coinId, c.symbol, t.price, t.volume, t.marketCap, t.ts) " +
+            "FROM CoinTick t JOIN Coin c ON c.coinKey = t.coinKey " +
+            "WHERE c.coinId = :coinId ORDER BY t.ts DESC")
+    List<CoinPriceHistory> findByCoinIdOrderByTimestampDesc(@Param("coinId") String coinId, Pageable pageable);
 
 
-    @Query("SELECT DISTINCT c.coinId FROM CoinPriceHistory c")
+    @Query("SELECT c.coinId FROM Coin c")
     List<String> findAllDistinctCoinIds();
 }
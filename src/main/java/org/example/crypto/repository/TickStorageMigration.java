@@ -0,0 +1,282 @@
+package org.example.crypto.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+
+// Схема тиков: справочник coin с целочисленным ключом и узкая таблица coin_tick (coin_key, ts, price, volume, market_cap).
+// Первичный ключ (coin_key, ts) обслуживает выборки по монете, BRIN по ts - диапазоны времени (архив, свежие тики).
+// Старая coin_price_history переносится один раз и остаётся как coin_price_history_legacy, на её месте - представление.
+// Здесь же создаются таблицы и serving-представления анализа: сторы только читают и пишут.
+@Component
+public class TickStorageMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(TickStorageMigration.class);
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS coin (" +
+                    "coin_key integer GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+                    "coin_id varchar(255) NOT NULL UNIQUE, " +
+                    "symbol varchar(255) NOT NULL)",
+            // Столбцы по 8 байт идут первыми, int - последним: так в строке нет выравнивающих пропусков
+            "CREATE TABLE IF NOT EXISTS coin_tick (" +
+                    "ts timestamp(6) with time zone NOT NULL, " +
+                    "price float8 NOT NULL, " +
+                    "volume float8, " +
+                    "market_cap float8, " +
+                    "coin_key integer NOT NULL REFERENCES coin (coin_key), " +
+                    "PRIMARY KEY (coin_key, ts))",
+            "CREATE INDEX IF NOT EXISTS coin_tick_ts_brin ON coin_tick USING brin (ts)",
+            "CREATE TABLE IF NOT EXISTS coin_tick_dirty_day (" +
+                    "day date PRIMARY KEY, " +
+                    "claimed boolean NOT NULL DEFAULT false)",
+            // Таблицы анализа ссылаются на coin: CoinIndicatorStore, CoinCorrelationStore, JdbcAlertSink,
+            // CoinQuantileStore и BacktestStore
+            "CREATE TABLE IF NOT EXISTS coin_indicator (" +
+                    "ts timestamp(6) with time zone NOT NULL, " +
+                    "price float8 NOT NULL, " +
+                    "sma float8, " +
+                    "ema float8, " +
+                    "rsi float8, " +
+                    "macd float8, " +
+                    "macd_signal float8, " +
+                    "macd_histogram float8, " +
+                    "bollinger_upper float8, " +
+                    "bollinger_lower float8, " +
+                    "coin_key integer NOT NULL REFERENCES coin (coin_key), " +
+                    "PRIMARY KEY (coin_key, ts))",
+            "CREATE TABLE IF NOT EXISTS coin_correlation (" +
+                    "computed_at timestamp(6) with time zone NOT NULL, " +
+                    "correlation float8 NOT NULL, " +
+                    "coin_key integer NOT NULL REFERENCES coin (coin_key), " +
+                    "peer_key integer NOT NULL REFERENCES coin (coin_key), " +
+                    "direction varchar(8) NOT NULL, " +
+                    "rank smallint NOT NULL, " +
+                    "PRIMARY KEY (coin_key, direction, rank))",
+            "CREATE TABLE IF NOT EXISTS coin_alert (" +
+                    "fired_at timestamp(6) with time zone NOT NULL, " +
+                    "tick_ts timestamp(6) with time zone NOT NULL, " +
+                    "value float8 NOT NULL, " +
+                    "threshold float8 NOT NULL, " +
+                    "window_seconds integer, " +
+                    "coin_key integer NOT NULL REFERENCES coin (coin_key), " +
+                    "rule_id varchar(100) NOT NULL, " +
+                    "type varchar(16) NOT NULL, " +
+                    "direction varchar(8) NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS coin_alert_fired_at_idx ON coin_alert (fired_at)",
+            "CREATE TABLE IF NOT EXISTS coin_quantile_day (" +
+                    "day date NOT NULL, " +
+                    "updated_at timestamp(6) with time zone NOT NULL, " +
+                    "price_p05 float8, " +
+                    "price_p50 float8, " +
+                    "price_p95 float8, " +
+                    "price_p99 float8, " +
+                    "tick_count integer NOT NULL, " +
+                    "coin_key integer NOT NULL REFERENCES coin (coin_key), " +
+                    "price_digest bytea NOT NULL, " +
+                    "volume_digest bytea NOT NULL, " +
+                    "PRIMARY KEY (coin_key, day))",
+            "CREATE TABLE IF NOT EXISTS backtest_run (" +
+                    "run_id bigint GENERATED ALWAYS AS IDENTITY PRIMARY KEY, " +
+                    "started_at timestamp(6) with time zone NOT NULL, " +
+                    "history_from timestamp(6) with time zone NOT NULL, " +
+                    "history_to timestamp(6) with time zone NOT NULL, " +
+                    "bars bigint, " +
+                    "seconds float8, " +
+                    "bars_per_second float8, " +
+                    "bar_minutes integer NOT NULL, " +
+                    "coins integer NOT NULL, " +
+                    "parameter_sets integer NOT NULL, " +
+                    "parallelism integer NOT NULL, " +
+                    "cost_bps float8 NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS backtest_result (" +
+                    "run_id bigint NOT NULL REFERENCES backtest_run (run_id) ON DELETE CASCADE, " +
+                    "total_return float8 NOT NULL, " +
+                    "max_drawdown float8 NOT NULL, " +
+                    "sharpe float8, " +
+                    "exposure float8 NOT NULL, " +
+                    "bars integer NOT NULL, " +
+                    "trades integer NOT NULL, " +
+                    "coin_key integer NOT NULL REFERENCES coin (coin_key), " +
+                    "strategy varchar(32) NOT NULL, " +
+                    "parameters varchar(200) NOT NULL, " +
+                    "PRIMARY KEY (run_id, coin_key, strategy, parameters))"
+    };
+
+    // Представления для Grafana: символ монеты вместо coin_key
+    private static final String[] SERVING_VIEWS = {
+            "CREATE OR REPLACE VIEW serving_indicators AS " +
+                    "SELECT c.coin_id, c.symbol, i.ts, i.price, i.sma, i.ema, i.rsi, i.macd, i.macd_signal, " +
+                    "i.macd_histogram, i.bollinger_upper, i.bollinger_lower " +
+                    "FROM coin_indicator i JOIN coin c ON c.coin_key = i.coin_key",
+            "CREATE OR REPLACE VIEW serving_correlation AS " +
+                    "SELECT c.symbol, p.symbol AS peer_symbol, x.direction, x.rank, x.correlation, x.computed_at " +
+                    "FROM coin_correlation x JOIN coin c ON c.coin_key = x.coin_key JOIN coin p ON p.coin_key = x.peer_key",
+            "CREATE OR REPLACE VIEW serving_alerts AS " +
+                    "SELECT a.fired_at, c.symbol, a.rule_id, a.type, a.direction, a.value, a.threshold, " +
+                    "a.window_seconds, a.tick_ts FROM coin_alert a JOIN coin c ON c.coin_key = a.coin_key " +
+                    "WHERE a.fired_at > now() - interval '1 day'",
+            "CREATE OR REPLACE VIEW serving_price_quantiles AS " +
+                    "SELECT c.coin_id, c.symbol, q.day, q.tick_count, q.price_p05, q.price_p50, q.price_p95, q.price_p99 " +
+                    "FROM coin_quantile_day q JOIN coin c ON c.coin_key = q.coin_key",
+            "CREATE OR REPLACE VIEW serving_backtest AS " +
+                    "SELECT r.run_id, c.symbol, r.strategy, r.parameters, r.total_return, r.max_drawdown, r.sharpe, " +
+                    "r.trades, r.exposure FROM backtest_result r JOIN coin c ON c.coin_key = r.coin_key " +
+                    "WHERE r.run_id = (SELECT max(run_id) FROM backtest_run WHERE seconds IS NOT NULL)"
+    };
+
+    private static final String VIEW =
+            "CREATE OR REPLACE VIEW coin_price_history AS " +
+            "SELECT c.coin_id, c.symbol, t.price, t.volume, t.market_cap, t.ts AS timestamp " +
+            "FROM coin_tick t JOIN coin c ON c.coin_key = t.coin_key";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${crypto.storage.migration.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${crypto.storage.migration.lock-key:727362}")
+    private long lockKey = 727362;
+
+    @Value("${crypto.storage.drop-legacy:false}")
+    private boolean dropLegacy;
+
+    public TickStorageMigration(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @PostConstruct
+    public void migrate() {
+        if (!enabled) {
+            return;
+        }
+        // Реплики стартуют одновременно: схему и перенос выполняет одна, остальные ждут блокировку
+        boolean migrated = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            jdbcTemplate.queryForObject("SELECT pg_advisory_xact_lock(?)", Object.class, lockKey);
+            for (String ddl : SCHEMA) {
+                jdbcTemplate.execute(ddl);
+            }
+            boolean legacy = "r".equals(relationKind("coin_price_history"));
+            if (legacy) {
+                copyLegacyTable();
+            }
+            if (relationKind("coin_price_history") == null) {
+                jdbcTemplate.execute(VIEW);
+            }
+            for (String view : SERVING_VIEWS) {
+                jdbcTemplate.execute(view);
+            }
+            return legacy;
+        }));
+
+        if (migrated) {
+            // Статистика нужна планировщику до первых запросов, ANALYZE читает лишь выборку строк
+            jdbcTemplate.execute("ANALYZE coin");
+            jdbcTemplate.execute("ANALYZE coin_tick");
+            // Сравнение - полные проходы по обеим таблицам: только после переноса и не задерживая старт
+            Thread thread = new Thread(this::compareAndDropLegacy, "tick-storage-compare");
+            thread.setDaemon(true);
+            thread.start();
+        } else if (dropLegacy) {
+            dropLegacyTable();
+        }
+    }
+
+    private void compareAndDropLegacy() {
+        try {
+            compareWithLegacy();
+        } catch (Exception e) {
+            logger.warn("Не удалось сравнить хранение тиков с coin_price_history_legacy: {}", e.getMessage());
+        }
+        if (dropLegacy) {
+            dropLegacyTable();
+        }
+    }
+
+    private void dropLegacyTable() {
+        if (relationKind("coin_price_history_legacy") != null) {
+            jdbcTemplate.execute("DROP TABLE IF EXISTS coin_price_history_legacy");
+            logger.info("Таблица coin_price_history_legacy удалена");
+        }
+    }
+
+    private void copyLegacyTable() {
+        long started = System.currentTimeMillis();
+        jdbcTemplate.update("INSERT INTO coin (coin_id, symbol) " +
+                "SELECT DISTINCT ON (coin_id) coin_id, symbol FROM coin_price_history " +
+                "WHERE coin_id IS NOT NULL AND symbol IS NOT NULL ORDER BY coin_id, timestamp DESC " +
+                "ON CONFLICT (coin_id) DO NOTHING");
+        // Порядок по времени держит BRIN по ts компактным
+        int ticks = jdbcTemplate.update("INSERT INTO coin_tick (ts, price, volume, market_cap, coin_key) " +
+                "SELECT h.timestamp, h.price, h.volume, h.market_cap, c.coin_key " +
+                "FROM coin_price_history h JOIN coin c ON c.coin_id = h.coin_id " +
+                "WHERE h.timestamp IS NOT NULL AND h.price IS NOT NULL " +
+                "ORDER BY h.timestamp ON CONFLICT DO NOTHING");
+        jdbcTemplate.execute("ALTER TABLE coin_price_history RENAME TO coin_price_history_legacy");
+        // Отметки архива по старой таблице больше не нужны: архив прежнего формата пересобирается с нуля
+        jdbcTemplate.execute("DROP FUNCTION IF EXISTS coin_price_history_mark_dirty_day() CASCADE");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS coin_price_history_dirty_day");
+        logger.info("coin_price_history перенесена в coin_tick: {} тиков за {} мс", ticks, System.currentTimeMillis() - started);
+    }
+
+    private void compareWithLegacy() {
+        jdbcTemplate.execute("ANALYZE coin_price_history_legacy");
+
+        long legacyBytes = relationSize("coin_price_history_legacy");
+        long newBytes = relationSize("coin_tick") + relationSize("coin");
+        logger.info("Размер хранения тиков: было {} МБ, стало {} МБ ({}%)",
+                legacyBytes / (1024 * 1024), newBytes / (1024 * 1024), percent(newBytes, legacyBytes));
+
+        // Типичная выборка анализа - полный проход с агрегацией по монете
+        long legacyMs = scanMillis("SELECT coin_id, count(*), avg(price), sum(volume) " +
+                "FROM coin_price_history_legacy GROUP BY coin_id");
+        long newMs = scanMillis("SELECT coin_key, count(*), avg(price), sum(volume) " +
+                "FROM coin_tick GROUP BY coin_key");
+        logger.info("Полный проход с агрегацией по монете: было {} мс, стало {} мс ({}%)",
+                legacyMs, newMs, percent(newMs, legacyMs));
+    }
+
+    private String relationKind(String name) {
+        return jdbcTemplate.query("SELECT relkind::text FROM pg_class WHERE oid = to_regclass(?)",
+                rs -> rs.next() ? rs.getString(1) : null, name);
+    }
+
+    private long relationSize(String name) {
+        Long size = jdbcTemplate.queryForObject("SELECT pg_total_relation_size(to_regclass(?))", Long.class, name);
+        return size != null ? size : 0;
+    }
+
+    // Лучшее из трёх прогонов, чтобы первый не платил за прогрев кеша
+    private long scanMillis(String sql) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long started = System.nanoTime();
+            jdbcTemplate.query(sql, rs -> {
+            });
+            best = Math.min(best, (System.nanoTime() - started) / 1_000_000);
+        }
+        return best;
+    }
+
+    private static long percent(long value, long base) {
+        return base == 0 ? 100 : Math.round(value * 100.0 / base);
+    }
+
+    // Схема должна существовать до того, как Hibernate проверит или обновит её
+    @Component
+    static class EntityManagerFactoryDependency extends EntityManagerFactoryDependsOnPostProcessor {
+        EntityManagerFactoryDependency() {
+            super(TickStorageMigration.class);
+        }
+    }
+}
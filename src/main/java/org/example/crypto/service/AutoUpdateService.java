@@ -3,7 +3,8 @@ package org.example.crypto.service;
 import lombok.Getter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.example.crypto.spark.SparkBatchProcessor;
+import org.example.crypto.spark.SparkRunner;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
@@ -20,24 +21,38 @@ public class AutoUpdateService {
     private static final Logger logger = LogManager.getLogger(AutoUpdateService.class);
 
     private final CoinGeckoService coinGeckoService;
-    private final SparkBatchProcessor sparkBatchProcessor;
+    private final SparkRunner sparkRunner;
 
-    private ScheduledExecutorService scheduler;
+    // Опрос и анализ - на разных потоках: прогон Spark длится минутами и задерживал бы опрос монет,
+    // срок которых уже подошёл
+    private ScheduledExecutorService pollingScheduler;
+    private ScheduledExecutorService analysisScheduler;
 
+    @Value("${crypto.polling.check-interval-ms:60000}")
+    private long pollCheckIntervalMs = 60000;
+
+    @Value("${crypto.spark.analysis-interval-ms:60000}")
+    private long analysisIntervalMs = 60000;
+
+    @Getter
+    private volatile boolean autoUpdateEnabled = false;
+
+    // При шардировании цены грузят все реплики, а Spark-анализ запускает только лидер
     @Getter
-    private boolean autoUpdateEnabled = false;
+    private volatile boolean analysisEnabled = true;
 
     public AutoUpdateService(
             CoinGeckoService coinGeckoService,
-            SparkBatchProcessor sparkBatchProcessor
+            SparkRunner sparkRunner
     ) {
         this.coinGeckoService = coinGeckoService;
-        this.sparkBatchProcessor = sparkBatchProcessor;
+        this.sparkRunner = sparkRunner;
     }
 
     @PostConstruct
     public void init() {
-        scheduler = Executors.newScheduledThreadPool(1);
+        pollingScheduler = newScheduler("auto-update-polling");
+        analysisScheduler = newScheduler("auto-update-analysis");
         logger.info("Сервис автообновления инициализирован");
     }
 
@@ -46,7 +61,7 @@ public class AutoUpdateService {
         stopAutoUpdate();
     }
 
-    public void startAutoUpdate() {
+    public synchronized void startAutoUpdate() {
         if (autoUpdateEnabled) {
             logger.warn("Автообновление уже запущено");
             return;
@@ -54,57 +69,95 @@ public class AutoUpdateService {
 
         autoUpdateEnabled = true;
 
-        scheduler.scheduleAtFixedRate(
-                this::updateDataAndSpark,
-                0,
-                1,
-                TimeUnit.MINUTES
-        );
+        // После stopAutoUpdate() пулы остановлены, а при смене лидера сервис запускается повторно
+        if (pollingScheduler == null || pollingScheduler.isShutdown()) {
+            pollingScheduler = newScheduler("auto-update-polling");
+        }
+        if (analysisScheduler == null || analysisScheduler.isShutdown()) {
+            analysisScheduler = newScheduler("auto-update-analysis");
+        }
+
+        pollingScheduler.scheduleAtFixedRate(this::updateData, 0, pollCheckIntervalMs, TimeUnit.MILLISECONDS);
+        // Задержка отсчитывается от конца прогона: долгий анализ не копит очередь запусков
+        analysisScheduler.scheduleWithFixedDelay(this::runAnalysis, 0, analysisIntervalMs, TimeUnit.MILLISECONDS);
 
         logger.info("Автообновление с Spark анализом запущено");
     }
 
-    public void stopAutoUpdate() {
+    // При потере лидерства идущий прогон останавливается, а не дорабатывает до записи
+    public void setAnalysisEnabled(boolean analysisEnabled) {
+        this.analysisEnabled = analysisEnabled;
+        if (!analysisEnabled) {
+            sparkRunner.cancelAnalysis();
+        }
+    }
+
+    public synchronized void stopAutoUpdate() {
         if (!autoUpdateEnabled) {
             logger.warn("Автообновление уже остановлено");
             return;
         }
 
         autoUpdateEnabled = false;
+        sparkRunner.cancelAnalysis();
 
-        if (scheduler != null) {
-            scheduler.shutdown();
-            try {
-                if (!scheduler.awaitTermination(30, TimeUnit.SECONDS)) {
-                    scheduler.shutdownNow();
-                }
-            } catch (InterruptedException e) {
+        shutdown(pollingScheduler);
+        shutdown(analysisScheduler);
+
+        logger.info("Автообновление остановлено");
+    }
+
+    private static ScheduledExecutorService newScheduler(String name) {
+        return Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static void shutdown(ScheduledExecutorService scheduler) {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(30, TimeUnit.SECONDS)) {
                 scheduler.shutdownNow();
-                Thread.currentThread().interrupt();
             }
+        } catch (InterruptedException e) {
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
         }
-
-        logger.info("Автообновление остановлено");
     }
 
-    private void updateDataAndSpark() {
+    private void updateData() {
         try {
             logger.debug("Запуск автообновления данных");
-            coinGeckoService.fetchAndSaveCoinData();
+            coinGeckoService.pollDueCoins();
             logger.info(
                     "Данные успешно обновлены в {}",
                     LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"))
             );
+        } catch (Exception e) {
+            logger.error("Ошибка при автообновлении данных", e);
+        }
+    }
 
-            logger.debug("Запуск Spark анализа после обновления");
-            sparkBatchProcessor.runDailyAnalysis();
+    private void runAnalysis() {
+        if (!analysisEnabled) {
+            return;
+        }
+        try {
+            logger.debug("Запуск Spark анализа");
+            if (!sparkRunner.runSparkAnalysis()) {
+                return;
+            }
             logger.info(
                     "Spark анализ завершён в {}",
                     LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"))
             );
-
         } catch (Exception e) {
-            logger.error("Ошибка при автообновлении или Spark анализе", e);
+            logger.error("Ошибка при Spark анализе", e);
         }
     }
 
@@ -0,0 +1,254 @@
+package org.example.crypto.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.crypto.model.CoinPriceHistory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+// MarketDataSource поверх HTTP API CoinGecko. Тот же класс работает и с локальной заглушкой
+// (crypto.coingecko.base-url), поэтому нагрузочный прогон проходит через настоящие повторы и разбор ответов.
+@Component
+public class CoinGeckoMarketDataSource implements MarketDataSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoinGeckoMarketDataSource.class);
+
+    private final WebClient webClient;
+    private final Duration marketsTimeout;
+    private final int marketsRetries;
+    private final Duration marketsRetryDelay;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public CoinGeckoMarketDataSource(
+            @Value("${crypto.coingecko.base-url:https://api.coingecko.com/api/v3}") String baseUrl,
+            @Value("${crypto.coingecko.api-key:}") String apiKey,
+            @Value("${crypto.coingecko.api-key-header:x-cg-demo-api-key}") String apiKeyHeader,
+            @Value("${crypto.coingecko.markets.timeout-ms:15000}") long marketsTimeoutMs,
+            @Value("${crypto.coingecko.markets.retries:2}") int marketsRetries,
+            @Value("${crypto.coingecko.markets.retry-delay-ms:3000}") long marketsRetryDelayMs,
+            CoinGeckoResponseCache responseCache,
+            ObjectProvider<MeterRegistry> meterRegistry
+    ) {
+        this(webClient(baseUrl, apiKey, apiKeyHeader, responseCache), Duration.ofMillis(marketsTimeoutMs), marketsRetries,
+                Duration.ofMillis(marketsRetryDelayMs), meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+        logger.info("Источник данных CoinGecko: {}", baseUrl);
+    }
+
+    public CoinGeckoMarketDataSource(WebClient webClient, Duration marketsTimeout, int marketsRetries,
+                                     Duration marketsRetryDelay, MeterRegistry meterRegistry) {
+        this.webClient = webClient;
+        this.marketsTimeout = marketsTimeout;
+        this.marketsRetries = marketsRetries;
+        this.marketsRetryDelay = marketsRetryDelay;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public static WebClient webClient(String baseUrl, String apiKey, String apiKeyHeader, ExchangeFilterFunction filter) {
+        WebClient.Builder builder = WebClient.builder()
+                .baseUrl(baseUrl);
+        if (filter != null) {
+            builder.filter(filter);
+        }
+        // У каждой реплики свой ключ CoinGecko и свой лимит запросов
+        if (apiKey != null && !apiKey.isBlank()) {
+            builder.defaultHeader(apiKeyHeader, apiKey);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public MarketsPage fetchMarkets(List<String> coinIds) {
+        String ids = String.join(",", coinIds);
+
+        Mono<MarketsPage> responseMono = webClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/coins/markets")
+                        .queryParam("vs_currency", "usd")
+                        .queryParam("ids", ids)
+                        .queryParam("order", "market_cap_desc")
+                        .queryParam("per_page", coinIds.size())
+                        .queryParam("page", 1)
+                        .queryParam("sparkline", false)
+                        .build())
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .timeout(marketsTimeout)
+                .retryWhen(retry("markets", marketsRetries, marketsRetryDelay))
+                .doOnError(e -> meterRegistry.counter("crypto.coingecko.failures", "endpoint", "markets").increment())
+                .map(jsonArray -> {
+                    List<CoinPriceHistory> result = new ArrayList<>();
+                    Map<String, Integer> ranks = new HashMap<>();
+                    if (jsonArray != null && jsonArray.isArray()) {
+                        for (JsonNode coinNode : jsonArray) {
+                            CoinPriceHistory history = new CoinPriceHistory();
+                            history.setCoinId(coinNode.get("id").asText());
+                            history.setSymbol(coinNode.get("symbol").asText());
+                            history.setPrice(coinNode.get("current_price").asDouble());
+                            history.setVolume(coinNode.has("total_volume") ? coinNode.get("total_volume").asDouble() : null);
+                            history.setMarketCap(coinNode.has("market_cap") ? coinNode.get("market_cap").asDouble() : null);
+                            String lastUpdated = coinNode.get("last_updated").asText();
+                            history.setTimestamp(lastUpdated != null ? Instant.parse(lastUpdated) : Instant.now());
+                            result.add(history);
+                            JsonNode rank = coinNode.get("market_cap_rank");
+                            if (rank != null && rank.isNumber()) {
+                                ranks.put(history.getCoinId(), rank.asInt());
+                            }
+                        }
+                    }
+                    return new MarketsPage(result, ranks);
+                });
+
+        return responseMono.block();
+    }
+
+    @Override
+    public List<CoinPriceHistory> fetchMarketChart(String coinId, int days) {
+        Mono<JsonNode> response = webClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/coins/{id}/market_chart")
+                        .queryParam("vs_currency", "usd")
+                        .queryParam("days", days)
+                        .queryParam("interval", "daily")
+                        .build(coinId))
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .timeout(Duration.ofSeconds(30))
+                .retryWhen(retry("market_chart", 3, Duration.ofSeconds(25)));
+
+        JsonNode data = response.block();
+        if (data == null) {
+            logger.warn("Не удалось получить исторические данные для {}", coinId);
+            return new ArrayList<>();
+        }
+        return parseMarketChart(coinId, data);
+    }
+
+    @Override
+    public Mono<List<CoinPriceHistory>> fetchMarketChartRange(String coinId, Instant from, Instant to) {
+        return webClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/coins/{id}/market_chart/range")
+                        .queryParam("vs_currency", "usd")
+                        .queryParam("from", from.getEpochSecond())
+                        .queryParam("to", to.getEpochSecond())
+                        .build(coinId))
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .timeout(Duration.ofSeconds(30))
+                .retryWhen(retry("market_chart_range", 3, Duration.ofSeconds(25)))
+                .map(data -> parseMarketChart(coinId, data))
+                .doOnError(e -> {
+                    meterRegistry.counter("crypto.coingecko.failures", "endpoint", "market_chart_range").increment();
+                    logger.error("Ошибка при загрузке диапазона {} - {} для {}: {}", from, to, coinId, e.getMessage());
+                });
+    }
+
+    @Override
+    public String fetchSymbol(String coinId) {
+        try {
+            Mono<JsonNode> response = webClient.get()
+                    .uri(uriBuilder -> uriBuilder
+                            .path("/coins/{id}")
+                            .queryParam("localization", "false")
+                            .queryParam("tickers", "false")
+                            .queryParam("market_data", "false")
+                            .queryParam("community_data", "false")
+                            .queryParam("developer_data", "false")
+                            .queryParam("sparkline", "false")
+                            .build(coinId))
+                    .retrieve()
+                    .bodyToMono(JsonNode.class)
+                    .timeout(Duration.ofSeconds(10));
+
+            JsonNode data = response.block();
+            if (data != null && data.has("symbol")) {
+                return data.get("symbol").asText();
+            }
+        } catch (Exception e) {
+            logger.warn("Не удалось получить символ для {}, используем ID как символ", coinId);
+        }
+
+        return coinId;
+    }
+
+    private Retry retry(String endpoint, int attempts, Duration delay) {
+        return Retry.fixedDelay(attempts, delay)
+                .filter(ex -> ex instanceof WebClientResponseException || ex instanceof TimeoutException)
+                .doBeforeRetry(signal -> meterRegistry.counter("crypto.coingecko.retries", "endpoint", endpoint,
+                        "cause", cause(signal.failure())).increment());
+    }
+
+    private static String cause(Throwable failure) {
+        if (failure instanceof WebClientResponseException.TooManyRequests) {
+            return "rate-limit";
+        }
+        return failure instanceof TimeoutException ? "timeout" : "http-error";
+    }
+
+    static List<CoinPriceHistory> parseMarketChart(String coinId, JsonNode data) {
+        List<CoinPriceHistory> historicalData = new ArrayList<>();
+
+        try {
+            JsonNode prices = data.get("prices");
+            JsonNode marketCaps = data.get("market_caps");
+            JsonNode totalVolumes = data.get("total_volumes");
+
+            if (prices != null && prices.isArray()) {
+                for (int i = 0; i < prices.size(); i++) {
+                    JsonNode pricePoint = prices.get(i);
+                    if (pricePoint != null && pricePoint.isArray() && pricePoint.size() >= 2) {
+
+                        CoinPriceHistory history = new CoinPriceHistory();
+                        history.setCoinId(coinId);
+                        history.setSymbol(coinId);
+
+                        long timestamp = pricePoint.get(0).asLong();
+                        history.setTimestamp(Instant.ofEpochMilli(timestamp));
+
+                        history.setPrice(pricePoint.get(1).asDouble());
+
+                        if (marketCaps != null && marketCaps.isArray() && i < marketCaps.size()) {
+                            JsonNode marketCapPoint = marketCaps.get(i);
+                            if (marketCapPoint != null && marketCapPoint.isArray() && marketCapPoint.size() >= 2) {
+                                history.setMarketCap(marketCapPoint.get(1).asDouble());
+                            }
+                        }
+
+                        if (totalVolumes != null && totalVolumes.isArray() && i < totalVolumes.size()) {
+                            JsonNode volumePoint = totalVolumes.get(i);
+                            if (volumePoint != null && volumePoint.isArray() && volumePoint.size() >= 2) {
+                                history.setVolume(volumePoint.get(1).asDouble());
+                            }
+                        }
+
+                        historicalData.add(history);
+                    }
+                }
+            }
+
+        } catch (Exception e) {
+            logger.error("Ошибка парсинга исторических данных для {}: {}", coinId, e.getMessage(), e);
+        }
+
+        return historicalData;
+    }
+}
@@ -0,0 +1,472 @@
+package org.example.crypto.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Дисковый кеш ответов CoinGecko для WebClient. Ключ - путь и отсортированные параметры запроса без ключа API,
+// тело хранится в gzip, рядом - метаданные с ETag и Last-Modified для условных запросов.
+// Срок жизни зависит от вида запроса: описание монеты живёт долго, диапазон market_chart из закрытых дней
+// не меняется вовсе, /coins/markets по умолчанию не кешируется. В режиме offline запросы в сеть не уходят.
+@Component
+public class CoinGeckoResponseCache implements ExchangeFilterFunction {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoinGeckoResponseCache.class);
+
+    private static final Set<String> API_KEY_PARAMS = Set.of("x_cg_demo_api_key", "x_cg_pro_api_key");
+    private static final long IMMUTABLE = -1;
+
+    public enum Mode {
+        OFF, ONLINE, OFFLINE
+    }
+
+    enum Endpoint {
+        MARKETS, COIN, CHART, CHART_CLOSED, OTHER;
+
+        String tag() {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+
+    private static final class Entry {
+        final String hash;
+        final String key;
+        volatile Instant storedAt;
+        volatile String etag;
+        volatile String lastModified;
+        final String contentType;
+        final long size;
+
+        Entry(String hash, String key, Instant storedAt, String etag, String lastModified, String contentType, long size) {
+            this.hash = hash;
+            this.key = key;
+            this.storedAt = storedAt;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.size = size;
+        }
+    }
+
+    private final Path directory;
+    private final Mode mode;
+    private final boolean record;
+    private final long maxBytes;
+    private final long coinTtlSeconds;
+    private final long chartTtlSeconds;
+    private final long marketsTtlSeconds;
+    private final MeterRegistry meterRegistry;
+
+    // Порядок доступа: первым вытесняется давно не читавшийся ответ
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    @Autowired
+    public CoinGeckoResponseCache(
+            @Value("${crypto.coingecko.cache.directory:data/http-cache}") String directory,
+            @Value("${crypto.coingecko.cache.mode:online}") String mode,
+            @Value("${crypto.coingecko.cache.record:false}") boolean record,
+            @Value("${crypto.coingecko.cache.max-size-mb:256}") long maxSizeMb,
+            @Value("${crypto.coingecko.cache.coin-ttl-seconds:604800}") long coinTtlSeconds,
+            @Value("${crypto.coingecko.cache.chart-ttl-seconds:3600}") long chartTtlSeconds,
+            @Value("${crypto.coingecko.cache.markets-ttl-seconds:0}") long marketsTtlSeconds,
+            ObjectProvider<MeterRegistry> meterRegistry
+    ) {
+        this(Paths.get(directory), Mode.valueOf(mode.trim().toUpperCase()), record, maxSizeMb * 1024 * 1024,
+                coinTtlSeconds, chartTtlSeconds, marketsTtlSeconds, meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
+    public CoinGeckoResponseCache(Path directory, Mode mode, boolean record, long maxBytes,
+                                  long coinTtlSeconds, long chartTtlSeconds, long marketsTtlSeconds,
+                                  MeterRegistry meterRegistry) {
+        this.directory = directory.toAbsolutePath();
+        this.mode = mode;
+        this.record = record;
+        this.maxBytes = maxBytes;
+        this.coinTtlSeconds = coinTtlSeconds;
+        this.chartTtlSeconds = chartTtlSeconds;
+        this.marketsTtlSeconds = marketsTtlSeconds;
+        this.meterRegistry = meterRegistry;
+        meterRegistry.gauge("crypto.coingecko.cache.size", totalBytes);
+    }
+
+    @PostConstruct
+    public void load() throws IOException {
+        if (mode == Mode.OFF) {
+            return;
+        }
+        Files.createDirectories(directory);
+        List<Entry> loaded = new ArrayList<>();
+        Map<String, Long> accessed = new HashMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path meta : files.filter(p -> p.getFileName().toString().endsWith(".meta")).toList()) {
+                Entry entry = readMeta(meta);
+                if (entry == null || !Files.exists(bodyFile(entry.hash))) {
+                    Files.deleteIfExists(meta);
+                    continue;
+                }
+                loaded.add(entry);
+                accessed.put(entry.hash, Files.getLastModifiedTime(bodyFile(entry.hash)).toMillis());
+            }
+        }
+        loaded.sort(Comparator.comparingLong(e -> accessed.get(e.hash)));
+        synchronized (entries) {
+            for (Entry entry : loaded) {
+                entries.put(entry.hash, entry);
+                totalBytes.addAndGet(entry.size);
+            }
+        }
+        evict();
+        logger.info("Кеш ответов CoinGecko ({}): {} записей, {} КБ в {}",
+                mode.name().toLowerCase(), loaded.size(), totalBytes.get() / 1024, directory);
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        if (mode == Mode.OFF || request.method() != HttpMethod.GET) {
+            return next.exchange(request);
+        }
+        String key = cacheKey(request.url());
+        String hash = sha256(key);
+        Endpoint endpoint = classify(request.url(), LocalDate.now(ZoneOffset.UTC));
+        long ttl = ttlSeconds(endpoint);
+        Entry entry = lookup(hash);
+
+        if (mode == Mode.OFFLINE) {
+            if (entry == null) {
+                count(endpoint, "offline-miss");
+                return Mono.just(ClientResponse.create(HttpStatus.GATEWAY_TIMEOUT)
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN_VALUE)
+                        .body("Нет в кеше: " + key)
+                        .build());
+            }
+            count(endpoint, "hit");
+            return cached(entry);
+        }
+
+        if (entry != null && isFresh(entry, ttl, Instant.now())) {
+            count(endpoint, "hit");
+            return cached(entry);
+        }
+
+        ClientRequest outgoing = request;
+        if (entry != null && (entry.etag != null || entry.lastModified != null)) {
+            outgoing = ClientRequest.from(request).headers(headers -> {
+                if (entry.etag != null) {
+                    headers.setIfNoneMatch(entry.etag);
+                }
+                if (entry.lastModified != null) {
+                    headers.set(HttpHeaders.IF_MODIFIED_SINCE, entry.lastModified);
+                }
+            }).build();
+        }
+
+        return next.exchange(outgoing).flatMap(response -> {
+            if (response.statusCode().value() == HttpStatus.NOT_MODIFIED.value() && entry != null) {
+                count(endpoint, "revalidated");
+                HttpHeaders headers = response.headers().asHttpHeaders();
+                return response.releaseBody()
+                        .then(Mono.fromCallable(() -> {
+                            refresh(entry, headers);
+                            return entry;
+                        }).subscribeOn(Schedulers.boundedElastic()))
+                        .flatMap(this::cached);
+            }
+            count(endpoint, "miss");
+            if (!response.statusCode().is2xxSuccessful() || (ttl == 0 && !record)) {
+                return Mono.just(response);
+            }
+            HttpHeaders headers = response.headers().asHttpHeaders();
+            return DataBufferUtils.join(response.body(BodyExtractors.toDataBuffers()))
+                    .map(CoinGeckoResponseCache::toBytes)
+                    .defaultIfEmpty(new byte[0])
+                    .publishOn(Schedulers.boundedElastic())
+                    .map(bytes -> {
+                        store(hash, key, headers, bytes);
+                        return response.mutate()
+                                .body(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(bytes)))
+                                .build();
+                    });
+        });
+    }
+
+    // Тело записанного ответа для воспроизведения вне приложения (заглушка CoinGecko) или null
+    public static byte[] readRecorded(Path directory, URI uri) throws IOException {
+        Path body = directory.resolve(sha256(cacheKey(uri)) + ".gz");
+        if (!Files.exists(body)) {
+            return null;
+        }
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(body))) {
+            return in.readAllBytes();
+        }
+    }
+
+    // Путь и параметры без ключа API; параметры и список ids отсортированы, чтобы одинаковые запросы давали один ключ
+    static String cacheKey(URI uri) {
+        MultiValueMap<String, String> params = UriComponentsBuilder.fromUri(uri).build().getQueryParams();
+        TreeMap<String, List<String>> sorted = new TreeMap<>();
+        params.forEach((name, values) -> {
+            if (!API_KEY_PARAMS.contains(name.toLowerCase())) {
+                List<String> normalized = new ArrayList<>();
+                for (String value : values) {
+                    normalized.add("ids".equals(name) && value != null ? sortedIds(value) : value);
+                }
+                normalized.sort(Comparator.nullsFirst(Comparator.naturalOrder()));
+                sorted.put(name, normalized);
+            }
+        });
+        StringBuilder key = new StringBuilder(uri.getRawPath() != null ? uri.getRawPath() : "/");
+        char separator = '?';
+        for (Map.Entry<String, List<String>> param : sorted.entrySet()) {
+            for (String value : param.getValue()) {
+                key.append(separator).append(param.getKey());
+                if (value != null) {
+                    key.append('=').append(value);
+                }
+                separator = '&';
+            }
+        }
+        return key.toString();
+    }
+
+    static Endpoint classify(URI uri, LocalDate today) {
+        String path = uri.getRawPath() != null ? uri.getRawPath() : "";
+        if (path.endsWith("/coins/markets")) {
+            return Endpoint.MARKETS;
+        }
+        if (path.endsWith("/market_chart/range")) {
+            String to = UriComponentsBuilder.fromUri(uri).build().getQueryParams().getFirst("to");
+            // Часовые точки закрытого дня больше не меняются; интервал загрузки истории кончается ровно в полночь
+            if (to != null && to.matches("\\d+")
+                    && Long.parseLong(to) <= today.atStartOfDay(ZoneOffset.UTC).toEpochSecond()) {
+                return Endpoint.CHART_CLOSED;
+            }
+            return Endpoint.CHART;
+        }
+        if (path.endsWith("/market_chart")) {
+            return Endpoint.CHART;
+        }
+        if (path.matches(".*/coins/[^/]+") && !path.endsWith("/coins/list")) {
+            return Endpoint.COIN;
+        }
+        return Endpoint.OTHER;
+    }
+
+    private long ttlSeconds(Endpoint endpoint) {
+        return switch (endpoint) {
+            case MARKETS -> marketsTtlSeconds;
+            case COIN -> coinTtlSeconds;
+            case CHART -> chartTtlSeconds;
+            case CHART_CLOSED -> IMMUTABLE;
+            case OTHER -> 0;
+        };
+    }
+
+    private static boolean isFresh(Entry entry, long ttl, Instant now) {
+        return ttl == IMMUTABLE || (ttl > 0 && entry.storedAt.plusSeconds(ttl).isAfter(now));
+    }
+
+    private Entry lookup(String hash) {
+        synchronized (entries) {
+            return entries.get(hash);
+        }
+    }
+
+    private Mono<ClientResponse> cached(Entry entry) {
+        return Mono.fromCallable(() -> {
+            Path body = bodyFile(entry.hash);
+            byte[] bytes;
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(body))) {
+                bytes = in.readAllBytes();
+            }
+            Files.setLastModifiedTime(body, FileTime.from(Instant.now()));
+            return ClientResponse.create(HttpStatus.OK)
+                    .header(HttpHeaders.CONTENT_TYPE, entry.contentType)
+                    .body(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(bytes)))
+                    .build();
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private void store(String hash, String key, HttpHeaders headers, byte[] bytes) {
+        MediaType contentType = headers.getContentType();
+        try {
+            Path body = bodyFile(hash);
+            Path tmp = directory.resolve(hash + ".gz.tmp");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                out.write(bytes);
+            }
+            Files.move(tmp, body, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Entry entry = new Entry(hash, key, Instant.now(), headers.getETag(), headers.getFirst(HttpHeaders.LAST_MODIFIED),
+                    contentType != null ? contentType.toString() : MediaType.APPLICATION_JSON_VALUE, Files.size(body));
+            writeMeta(entry);
+            Entry previous;
+            synchronized (entries) {
+                previous = entries.put(hash, entry);
+            }
+            totalBytes.addAndGet(entry.size - (previous != null ? previous.size : 0));
+            evict();
+        } catch (IOException e) {
+            // Ответ всё равно отдаётся вызывающему, кеш просто не пополнится
+            logger.warn("Не удалось сохранить ответ {} в кеш: {}", key, e.getMessage());
+        }
+    }
+
+    private void refresh(Entry entry, HttpHeaders headers) throws IOException {
+        entry.storedAt = Instant.now();
+        if (headers.getETag() != null) {
+            entry.etag = headers.getETag();
+        }
+        if (headers.getFirst(HttpHeaders.LAST_MODIFIED) != null) {
+            entry.lastModified = headers.getFirst(HttpHeaders.LAST_MODIFIED);
+        }
+        writeMeta(entry);
+    }
+
+    private void evict() {
+        while (totalBytes.get() > maxBytes) {
+            Entry eldest;
+            synchronized (entries) {
+                Iterator<Entry> iterator = entries.values().iterator();
+                if (!iterator.hasNext()) {
+                    return;
+                }
+                eldest = iterator.next();
+                iterator.remove();
+            }
+            totalBytes.addAndGet(-eldest.size);
+            try {
+                Files.deleteIfExists(directory.resolve(eldest.hash + ".meta"));
+                Files.deleteIfExists(bodyFile(eldest.hash));
+            } catch (IOException e) {
+                logger.warn("Не удалось удалить {} из кеша: {}", eldest.key, e.getMessage());
+            }
+            meterRegistry.counter("crypto.coingecko.cache.evictions").increment();
+        }
+    }
+
+    private void writeMeta(Entry entry) throws IOException {
+        Properties meta = new Properties();
+        meta.setProperty("key", entry.key);
+        meta.setProperty("storedAt", entry.storedAt.toString());
+        meta.setProperty("contentType", entry.contentType);
+        meta.setProperty("size", Long.toString(entry.size));
+        if (entry.etag != null) {
+            meta.setProperty("etag", entry.etag);
+        }
+        if (entry.lastModified != null) {
+            meta.setProperty("lastModified", entry.lastModified);
+        }
+        Path tmp = directory.resolve(entry.hash + ".meta.tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            meta.store(writer, null);
+        }
+        Files.move(tmp, directory.resolve(entry.hash + ".meta"), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Entry readMeta(Path file) {
+        Properties meta = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            meta.load(reader);
+            String name = file.getFileName().toString();
+            return new Entry(name.substring(0, name.length() - ".meta".length()),
+                    meta.getProperty("key"),
+                    Instant.parse(meta.getProperty("storedAt")),
+                    meta.getProperty("etag"),
+                    meta.getProperty("lastModified"),
+                    meta.getProperty("contentType", MediaType.APPLICATION_JSON_VALUE),
+                    Long.parseLong(meta.getProperty("size")));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Повреждённая запись кеша {}: {}", file.getFileName(), e.getMessage());
+            return null;
+        }
+    }
+
+    private Path bodyFile(String hash) {
+        return directory.resolve(hash + ".gz");
+    }
+
+    private void count(Endpoint endpoint, String result) {
+        meterRegistry.counter("crypto.coingecko.cache.requests", "endpoint", endpoint.tag(), "result", result).increment();
+    }
+
+    private static String sortedIds(String ids) {
+        String[] parts = ids.split(",");
+        Arrays.sort(parts);
+        return String.join(",", parts);
+    }
+
+    private static byte[] toBytes(DataBuffer buffer) {
+        try {
+            byte[] bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            return bytes;
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
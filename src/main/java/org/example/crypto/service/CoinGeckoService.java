@@ -1,158 +1,183 @@
 package org.example.crypto.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.Getter;
+import lombok.Setter;
+import org.example.crypto.cluster.CoinShardingService;
 import org.example.crypto.model.CoinPriceHistory;
+import org.example.crypto.repository.CoinPriceHistoryBulkWriter;
 import org.example.crypto.repository.CoinPriceHistoryRepository;
+import org.example.crypto.wal.TickIngestBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
-import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.util.retry.Retry;
+import reactor.core.scheduler.Schedulers;
 
 import javax.annotation.PostConstruct;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
 @Service
 public class CoinGeckoService {
 
     private static final Logger logger = LoggerFactory.getLogger(CoinGeckoService.class);
 
-    private WebClient webClient;
-    private final ObjectMapper objectMapper;
     private final CoinPriceHistoryRepository priceHistoryRepository;
+    private final CoinPriceHistoryBulkWriter bulkWriter;
+    private final CoinShardingService coinShardingService;
+    private final TickIngestBuffer tickIngestBuffer;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TrackedCoinRegistry trackedCoinRegistry;
+    private final PollingPlanner pollingPlanner;
+    private final MarketDataSource marketDataSource;
 
-    @Value("${crypto.coingecko.base-url:https://api.coingecko.com/api/v3}")
-    private String baseUrl;
+    // CoinGecko отдаёт почасовые точки для диапазонов от 1 до 90 дней
+    @Value("${crypto.coingecko.backfill.chunk-days:90}")
+    private int backfillChunkDays = 90;
 
-    @Value("${crypto.coingecko.request-timeout:30000}")
-    private int requestTimeout;
+    @Value("${crypto.coingecko.backfill.concurrency:2}")
+    private int backfillConcurrency = 2;
 
-    @Value("${crypto.coingecko.coins-to-track:bitcoin,ethereum,ethereum-classic,ripple,cardano,solana,dogecoin,polkadot,shiba-inu,polygon,litecoin,tron,stellar,vechain,monero,eos,theta,axie-infinity,crypto-com-chain,uniswap}")
-    private List<String> defaultCoins;
+    @Setter
+    @Value("${crypto.polling.page-interval-ms:2500}")
+    private long pageIntervalMs = 2500;
 
-    private final Path coinsFile = Paths.get("coins_to_track.json");
+    @Setter
+    @Value("${crypto.polling.concurrency:1}")
+    private int pollingConcurrency = 1;
 
-    @Getter
-    List<String> coinsToTrack;
+    @Value("${crypto.coingecko.backfill.request-interval-ms:2500}")
+    private long backfillRequestIntervalMs = 2500;
 
     @Autowired
-    public CoinGeckoService(CoinPriceHistoryRepository priceHistoryRepository) {
-        this.objectMapper = new ObjectMapper();
+    public CoinGeckoService(CoinPriceHistoryRepository priceHistoryRepository,
+                            CoinPriceHistoryBulkWriter bulkWriter,
+                            CoinShardingService coinShardingService,
+                            TickIngestBuffer tickIngestBuffer,
+                            ApplicationEventPublisher eventPublisher,
+                            TrackedCoinRegistry trackedCoinRegistry,
+                            PollingPlanner pollingPlanner,
+                            MarketDataSource marketDataSource) {
         this.priceHistoryRepository = priceHistoryRepository;
+        this.bulkWriter = bulkWriter;
+        this.coinShardingService = coinShardingService;
+        this.tickIngestBuffer = tickIngestBuffer;
+        this.eventPublisher = eventPublisher;
+        this.trackedCoinRegistry = trackedCoinRegistry;
+        this.pollingPlanner = pollingPlanner;
+        this.marketDataSource = marketDataSource;
     }
 
     @PostConstruct
     public void init() {
-        this.webClient = WebClient.builder()
-                .baseUrl(baseUrl)
-                .build();
-
-        coinsToTrack = loadCoinsFromFile();
-        logger.info("CoinGeckoService инициализирован. Base URL: {}, Отслеживаемые монеты: {}", baseUrl, coinsToTrack);
+        logger.info("CoinGeckoService инициализирован. Отслеживаемые монеты: {}", getCoinsToTrack());
+    }
 
-        initializeHistoricalDataIfNeeded(90);
+    public List<String> getCoinsToTrack() {
+        return trackedCoinRegistry.snapshot();
     }
 
-    private List<String> loadCoinsFromFile() {
-        if (Files.exists(coinsFile)) {
-            try {
-                String json = Files.readString(coinsFile);
-                List<String> coins = objectMapper.readValue(json, new TypeReference<List<String>>() {});
-                if (!coins.isEmpty()) {
-                    return coins;
-                }
-            } catch (IOException e) {
-                logger.warn("Не удалось прочитать coins_to_track.json, используем дефолтные монеты", e);
-            }
+    public void addTrackedCoin(String coinId) {
+        if (coinId != null) {
+            addTrackedCoins(List.of(coinId));
         }
-        return new ArrayList<>(defaultCoins);
     }
 
-    private void saveCoinsToFile() {
-        try {
-            String json = objectMapper.writeValueAsString(coinsToTrack);
-            Files.writeString(coinsFile, json);
-        } catch (IOException e) {
-            logger.error("Не удалось сохранить coins_to_track.json", e);
+    public void removeTrackedCoin(String coinId) {
+        if (coinId != null) {
+            removeTrackedCoins(List.of(coinId));
         }
     }
 
-    public void addTrackedCoin(String coinId) {
-        if (coinId != null) {
-            String id = coinId.trim().toLowerCase();
-            if (!coinsToTrack.contains(id)) {
-                coinsToTrack.add(id);
-                saveCoinsToFile();
-                logger.info("Монета добавлена: {}", id);
-            } else {
-                logger.info("Монета уже отслеживается: {}", id);
-            }
+    public List<String> addTrackedCoins(Collection<String> coinIds) {
+        List<String> added = trackedCoinRegistry.addAll(coinIds);
+        if (added.isEmpty()) {
+            logger.info("Монеты уже отслеживаются: {}", coinIds);
+        } else {
+            logger.info("Монеты добавлены: {}", added);
         }
+        return added;
     }
 
-    public void removeTrackedCoin(String coinId) {
-        if (coinId != null) {
-            String id = coinId.trim().toLowerCase();
-            if (coinsToTrack.remove(id)) {
-                saveCoinsToFile();
-                logger.info("Монета удалена: {}", id);
-            } else {
-                logger.warn("Монета {} не найдена в списке отслеживаемых", id);
-            }
+    public List<String> removeTrackedCoins(Collection<String> coinIds) {
+        List<String> removed = trackedCoinRegistry.removeAll(coinIds);
+        if (removed.isEmpty()) {
+            logger.warn("Монеты {} не найдены в списке отслеживаемых", coinIds);
+        } else {
+            logger.info("Монеты удалены: {}", removed);
         }
+        return removed;
     }
 
     public void initializeHistoricalDataIfNeeded(int daysBack) {
+        initializeHistoricalDataIfNeeded(daysBack, (processed, total) -> {});
+    }
+
+    public void initializeHistoricalDataIfNeeded(int daysBack, BiConsumer<Integer, Integer> progressListener) {
         long existingRecords = priceHistoryRepository.count();
 
         if (existingRecords < 100) {
             logger.info("Обнаружено мало данных ({} записей), загружаем исторические данные...", existingRecords);
-            fetchAndSaveHistoricalData(daysBack);
+            fetchAndSaveHistoricalData(daysBack, progressListener);
         } else {
             logger.info("Данные уже существуют ({} записей), пропускаем загрузку истории", existingRecords);
         }
     }
 
     public void fetchAndSaveHistoricalData(int daysBack) {
+        fetchAndSaveHistoricalData(daysBack, (processed, total) -> {});
+    }
+
+    public void fetchAndSaveHistoricalData(int daysBack, BiConsumer<Integer, Integer> progressListener) {
         logger.info("Загрузка исторических данных за последние {} дней", daysBack);
 
         List<CoinPriceHistory> allHistoricalData = new ArrayList<>();
+        List<String> coins = trackedCoinRegistry.snapshot();
         int processedCoins = 0;
 
-        for (String coinId : coinsToTrack) {
+        for (String coinId : coins) {
+            // Прерывание могло прийти во время HTTP-запроса, который сам его не выбрасывает
+            if (Thread.currentThread().isInterrupted()) {
+                logger.info("Загрузка исторических данных прервана на {}/{} монетах", processedCoins, coins.size());
+                return;
+            }
             try {
                 logger.info("Загрузка исторических данных для монеты: {}", coinId);
                 List<CoinPriceHistory> coinHistory = fetchCoinHistoricalData(coinId, daysBack);
 
                 if (!coinHistory.isEmpty()) {
-                    priceHistoryRepository.saveAll(coinHistory);
+                    bulkWriter.write(coinHistory);
                     allHistoricalData.addAll(coinHistory);
                     logger.info("Сохранено {} записей для {}", coinHistory.size(), coinId);
                 }
 
                 processedCoins++;
-                logger.info("Прогресс: {}/{} монет обработано", processedCoins, coinsToTrack.size());
+                logger.info("Прогресс: {}/{} монет обработано", processedCoins, coins.size());
+                progressListener.accept(processedCoins, coins.size());
 
 
-                if (processedCoins < coinsToTrack.size()) {
+                if (processedCoins < coins.size()) {
                     Thread.sleep(25000);
                 }
 
+            } catch (InterruptedException e) {
+                // Реплика потеряла лидерство: загрузка не должна доработать до конца и запустить опрос
+                Thread.currentThread().interrupt();
+                logger.info("Загрузка исторических данных прервана на {}/{} монетах", processedCoins, coins.size());
+                return;
             } catch (Exception e) {
                 logger.error("Ошибка при загрузке исторических данных для {}: {}", coinId, e.getMessage(), e);
             }
@@ -162,178 +187,201 @@ public class CoinGeckoService {
     }
 
     private List<CoinPriceHistory> fetchCoinHistoricalData(String coinId, int days) {
-        Mono<JsonNode> response = webClient.get()
-                .uri(uriBuilder -> uriBuilder
-                        .path("/coins/{id}/market_chart")
-                        .queryParam("vs_currency", "usd")
-                        .queryParam("days", days)
-                        .queryParam("interval", "daily")
-                        .build(coinId))
-                .retrieve()
-                .bodyToMono(JsonNode.class)
-                .timeout(Duration.ofSeconds(30))
-                .retryWhen(Retry.fixedDelay(3, Duration.ofSeconds(25))
-                        .filter(ex -> ex instanceof WebClientResponseException || ex instanceof java.util.concurrent.TimeoutException)
-                );
-
-        JsonNode data = response.block();
-        if (data == null) {
-            logger.warn("Не удалось получить исторические данные для {}", coinId);
-            return new ArrayList<>();
-        }
-
-        List<CoinPriceHistory> historicalData = new ArrayList<>();
-
-        try {
-            JsonNode prices = data.get("prices");
-            JsonNode marketCaps = data.get("market_caps");
-            JsonNode totalVolumes = data.get("total_volumes");
+        List<CoinPriceHistory> historicalData = marketDataSource.fetchMarketChart(coinId, days);
 
-            if (prices != null && prices.isArray()) {
-                for (int i = 0; i < prices.size(); i++) {
-                    JsonNode pricePoint = prices.get(i);
-                    if (pricePoint != null && pricePoint.isArray() && pricePoint.size() >= 2) {
+        if (!historicalData.isEmpty()) {
+            String symbol = marketDataSource.fetchSymbol(coinId);
+            for (CoinPriceHistory history : historicalData) {
+                history.setSymbol(symbol);
+            }
+        }
 
-                        CoinPriceHistory history = new CoinPriceHistory();
-                        history.setCoinId(coinId);
-                        history.setSymbol(coinId);
+        return historicalData;
+    }
 
-                        long timestamp = pricePoint.get(0).asLong();
-                        history.setTimestamp(Instant.ofEpochMilli(timestamp));
+    public long fetchAndSaveHourlyHistory(Instant from, Instant to) {
+        List<TimeChunk> chunks = splitIntoChunks(from, to, Duration.ofDays(backfillChunkDays));
+        List<String> coins = trackedCoinRegistry.snapshot();
+        logger.info("Почасовая загрузка истории {} - {}: {} монет, {} интервалов на монету",
+                from, to, coins.size(), chunks.size());
 
-                        history.setPrice(pricePoint.get(1).asDouble());
+        List<RangeRequest> requests = new ArrayList<>();
+        for (String coinId : coins) {
+            for (TimeChunk chunk : chunks) {
+                requests.add(new RangeRequest(coinId, chunk));
+            }
+        }
 
-                        if (marketCaps != null && marketCaps.isArray() && i < marketCaps.size()) {
-                            JsonNode marketCapPoint = marketCaps.get(i);
-                            if (marketCapPoint != null && marketCapPoint.isArray() && marketCapPoint.size() >= 2) {
-                                history.setMarketCap(marketCapPoint.get(1).asDouble());
-                            }
-                        }
+        Map<String, String> symbols = new ConcurrentHashMap<>();
+        List<RangeRequest> failed = Collections.synchronizedList(new ArrayList<>());
+        long total = fetchRanges(requests, new ConcurrentHashMap<>(), symbols, failed);
+
+        // Повторный проход по упавшим интервалам. Соседние интервалы уже записаны, поэтому склейка идёт
+        // только внутри интервала, а точки на границах отбрасывает идемпотентная запись
+        if (!failed.isEmpty()) {
+            List<RangeRequest> retry = List.copyOf(failed);
+            failed.clear();
+            logger.warn("Не загружено интервалов: {}, повторяем", retry.size());
+            total += fetchRanges(retry, new ConcurrentHashMap<>(), symbols, failed);
+        }
+        if (!failed.isEmpty()) {
+            List<HourlyBackfillException.Gap> gaps = failed.stream()
+                    .map(request -> new HourlyBackfillException.Gap(request.coinId(), request.chunk().from(),
+                            request.chunk().to()))
+                    .toList();
+            gaps.forEach(gap -> logger.error("Пропуск в истории {}: {} - {}", gap.coinId(), gap.from(), gap.to()));
+            throw new HourlyBackfillException(total, gaps);
+        }
+        logger.info("Почасовая загрузка истории завершена. Всего сохранено {} записей", total);
+        return total;
+    }
 
-                        if (totalVolumes != null && totalVolumes.isArray() && i < totalVolumes.size()) {
-                            JsonNode volumePoint = totalVolumes.get(i);
-                            if (volumePoint != null && volumePoint.isArray() && volumePoint.size() >= 2) {
-                                history.setVolume(volumePoint.get(1).asDouble());
+    private long fetchRanges(List<RangeRequest> requests, Map<String, Instant> lastWritten,
+                             Map<String, String> symbols, List<RangeRequest> failed) {
+        // Запросы выпускаются не чаще одного в request-interval, в полёте не больше concurrency;
+        // flatMapSequential сохраняет порядок интервалов внутри монеты для склейки границ.
+        // Интервал, не загрузившийся после повторов источника, попадает в failed
+        Long saved = Flux.fromIterable(requests)
+                .delayElements(Duration.ofMillis(backfillRequestIntervalMs))
+                .flatMapSequential(request -> marketDataSource
+                        .fetchMarketChartRange(request.coinId(), request.chunk().from(), request.chunk().to())
+                        .map(points -> Map.entry(request, points))
+                        .onErrorResume(e -> {
+                            failed.add(request);
+                            return Mono.empty();
+                        }), backfillConcurrency)
+                .concatMap(entry -> Mono.fromCallable(() -> {
+                            RangeRequest request = entry.getKey();
+                            List<CoinPriceHistory> points = stitchChunk(request.coinId(), entry.getValue(), lastWritten);
+                            if (points.isEmpty()) {
+                                return 0;
                             }
-                        }
-
-                        historicalData.add(history);
-                    }
-                }
-            }
+                            String symbol = symbols.computeIfAbsent(request.coinId(), marketDataSource::fetchSymbol);
+                            points.forEach(point -> point.setSymbol(symbol));
+                            int written = bulkWriter.write(points);
+                            logger.info("Сохранено {} почасовых записей для {} ({} - {})",
+                                    written, request.coinId(), request.chunk().from(), request.chunk().to());
+                            return written;
+                        })
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .reduce(0L, Long::sum)
+                .block();
+        return saved != null ? saved : 0L;
+    }
 
-            if (!historicalData.isEmpty()) {
-                String symbol = getCoinSymbol(coinId);
-                for (CoinPriceHistory history : historicalData) {
-                    history.setSymbol(symbol);
-                }
+    // Границы интервалов - начала суток UTC, последний закрытый интервал кончается в полночь перед to,
+    // и только хвост текущих суток зависит от момента запуска. Так повторная загрузка запрашивает закрытые
+    // интервалы теми же from/to, и они отдаются из кеша CoinGecko (в том числе в режиме offline)
+    static List<TimeChunk> splitIntoChunks(Instant from, Instant to, Duration chunkSize) {
+        List<TimeChunk> chunks = new ArrayList<>();
+        Duration step = Duration.ofDays(Math.max(1, chunkSize.toDays()));
+        Instant todayStart = to.truncatedTo(ChronoUnit.DAYS);
+        Instant chunkStart = from.truncatedTo(ChronoUnit.DAYS);
+        while (chunkStart.isBefore(todayStart)) {
+            Instant chunkEnd = chunkStart.plus(step);
+            if (chunkEnd.isAfter(todayStart)) {
+                chunkEnd = todayStart;
             }
-
-        } catch (Exception e) {
-            logger.error("Ошибка парсинга исторических данных для {}: {}", coinId, e.getMessage(), e);
+            chunks.add(new TimeChunk(chunkStart, chunkEnd));
+            chunkStart = chunkEnd;
         }
-
-        return historicalData;
+        if (chunkStart.isBefore(to)) {
+            chunks.add(new TimeChunk(chunkStart, to));
+        }
+        return chunks;
     }
 
-    String getCoinSymbol(String coinId) {
-        try {
-            Mono<JsonNode> response = webClient.get()
-                    .uri(uriBuilder -> uriBuilder
-                            .path("/coins/{id}")
-                            .queryParam("localization", "false")
-                            .queryParam("tickers", "false")
-                            .queryParam("market_data", "false")
-                            .queryParam("community_data", "false")
-                            .queryParam("developer_data", "false")
-                            .queryParam("sparkline", "false")
-                            .build(coinId))
-                    .retrieve()
-                    .bodyToMono(JsonNode.class)
-                    .timeout(Duration.ofSeconds(10));
-
-            JsonNode data = response.block();
-            if (data != null && data.has("symbol")) {
-                return data.get("symbol").asText();
+    // Соседние интервалы пересекаются на границе, поэтому пропускаем всё, что не новее уже записанного
+    static List<CoinPriceHistory> stitchChunk(String coinId, List<CoinPriceHistory> points, Map<String, Instant> lastWritten) {
+        List<CoinPriceHistory> result = new ArrayList<>();
+        Instant last = lastWritten.get(coinId);
+        for (CoinPriceHistory point : points) {
+            if (last == null || point.getTimestamp().isAfter(last)) {
+                result.add(point);
+                last = point.getTimestamp();
             }
-        } catch (Exception e) {
-            logger.warn("Не удалось получить символ для {}, используем ID как символ", coinId);
         }
-
-        return coinId;
+        if (last != null) {
+            lastWritten.put(coinId, last);
+        }
+        return result;
     }
 
+    // Внеочередной опрос всех монет
     public List<CoinPriceHistory> fetchAndSaveCoinData() {
         logger.info("Загрузка и сохранение текущих цен для отслеживаемых монет");
+        // Снимок на весь цикл: изменения списка применяются со следующего цикла и не рвут страницы
+        List<String> coins = coinShardingService.filterOwned(trackedCoinRegistry.snapshot());
+        return pollPages(pollingPlanner.allPages(coins));
+    }
 
-        List<CoinPriceHistory> allHistory = new ArrayList<>();
-        int batchSize = 5;
-        int totalCoins = coinsToTrack.size();
-
-        for (int i = 0; i < totalCoins; i += batchSize) {
-            int end = Math.min(i + batchSize, totalCoins);
-            List<String> batch = coinsToTrack.subList(i, end);
-            logger.info("Загрузка батча монет {}", batch);
-
-            try {
-                List<CoinPriceHistory> batchHistory = fetchBatch(batch);
-                priceHistoryRepository.saveAll(batchHistory);
-                allHistory.addAll(batchHistory);
-            } catch (Exception e) {
-                logger.error("Ошибка при загрузке/сохранении батча монет {}: {}", batch, e.getMessage(), e);
-            }
+    // Плановый опрос: только уровни, у которых подошёл срок
+    public List<CoinPriceHistory> pollDueCoins() {
+        List<String> coins = coinShardingService.filterOwned(trackedCoinRegistry.snapshot());
+        return pollPages(pollingPlanner.duePages(coins, Instant.now()));
+    }
 
-            if (end < totalCoins) {
-                try {
-                    Thread.sleep(30000);
-                } catch (InterruptedException ignored) {}
+    List<CoinPriceHistory> pollPages(List<PollingPlanner.Page> pages) {
+        List<CoinPriceHistory> allHistory = new ArrayList<>();
+        AtomicLong nextStart = new AtomicLong(System.nanoTime());
+        // В полёте не больше concurrency страниц, запросы начинаются не чаще раза в page-interval-ms.
+        // Сохранение идёт по одной странице: медленная запись в журнал задерживает выдачу новых запросов
+        try {
+            Flux.fromIterable(pages)
+                    .flatMap(page -> Mono.fromCallable(() -> {
+                                        logger.info("Загрузка страницы {}: {} монет", page.tier(), page.coinIds().size());
+                                        awaitRequestSlot(nextStart);
+                                        return marketDataSource.fetchMarkets(page.coinIds());
+                                    })
+                                    .subscribeOn(Schedulers.boundedElastic())
+                                    .map(result -> new PolledPage(page, result))
+                                    .onErrorResume(e -> {
+                                        logger.error("Ошибка при загрузке страницы монет {}: {}", page.coinIds(), e.getMessage(), e);
+                                        return Mono.empty();
+                                    }),
+                            Math.max(1, pollingConcurrency))
+                    .doOnNext(polled -> {
+                        MarketDataSource.MarketsPage result = polled.result();
+                        try {
+                            pollingPlanner.recordPoll(polled.page(), result.ticks(), result.ranks(), Instant.now());
+                            if (tickIngestBuffer.isEnabled()) {
+                                tickIngestBuffer.append(result.ticks());
+                            } else {
+                                bulkWriter.write(result.ticks());
+                            }
+                            allHistory.addAll(result.ticks());
+                            eventPublisher.publishEvent(new TicksIngestedEvent(this, result.ticks()));
+                        } catch (Exception e) {
+                            logger.error("Ошибка при сохранении страницы монет {}: {}", polled.page().coinIds(), e.getMessage(), e);
+                        }
+                    })
+                    .blockLast();
+        } catch (RuntimeException e) {
+            // Остановка автообновления прерывает поток опроса, страницы в полёте отменяются
+            if (!(e.getCause() instanceof InterruptedException)) {
+                throw e;
             }
+            Thread.currentThread().interrupt();
         }
 
         logger.info("Сохранено {} исторических записей", allHistory.size());
         return allHistory;
     }
 
-    private List<CoinPriceHistory> fetchBatch(List<String> batch) {
-        String ids = String.join(",", batch);
-
-        Mono<List<CoinPriceHistory>> responseMono = webClient.get()
-                .uri(uriBuilder -> uriBuilder
-                        .path("/coins/markets")
-                        .queryParam("vs_currency", "usd")
-                        .queryParam("ids", ids)
-                        .queryParam("order", "market_cap_desc")
-                        .queryParam("per_page", batch.size())
-                        .queryParam("page", 1)
-                        .queryParam("sparkline", false)
-                        .build())
-                .retrieve()
-                .bodyToMono(JsonNode.class)
-                .timeout(Duration.ofSeconds(15))
-                .retryWhen(Retry.fixedDelay(2, Duration.ofSeconds(3))
-                        .filter(ex -> ex instanceof WebClientResponseException || ex instanceof java.util.concurrent.TimeoutException)
-                )
-                .map(jsonArray -> {
-                    List<CoinPriceHistory> result = new ArrayList<>();
-                    if (jsonArray != null && jsonArray.isArray()) {
-                        for (JsonNode coinNode : jsonArray) {
-                            CoinPriceHistory history = new CoinPriceHistory();
-                            history.setCoinId(coinNode.get("id").asText());
-                            history.setSymbol(coinNode.get("symbol").asText());
-                            history.setPrice(coinNode.get("current_price").asDouble());
-                            history.setVolume(coinNode.has("total_volume") ? coinNode.get("total_volume").asDouble() : null);
-                            history.setMarketCap(coinNode.has("market_cap") ? coinNode.get("market_cap").asDouble() : null);
-                            String lastUpdated = coinNode.get("last_updated").asText();
-                            history.setTimestamp(lastUpdated != null ? Instant.parse(lastUpdated) : Instant.now());
-                            result.add(history);
-                        }
-                    }
-                    return result;
-                });
-
-        return responseMono.block();
+    private void awaitRequestSlot(AtomicLong nextStart) throws InterruptedException {
+        long slot = nextStart.getAndAdd(TimeUnit.MILLISECONDS.toNanos(pageIntervalMs));
+        long waitNanos = slot - System.nanoTime();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
     }
 
+    private record PolledPage(PollingPlanner.Page page, MarketDataSource.MarketsPage result) {
+    }
 
+    record TimeChunk(Instant from, Instant to) {
+    }
 
-}
\ No newline at end of file
+    private record RangeRequest(String coinId, TimeChunk chunk) {
+    }
+}
@@ -0,0 +1,29 @@
+package org.example.crypto.service;
+
+import java.time.Instant;
+import java.util.List;
+
+// Почасовая загрузка истории завершилась с пропусками: эти интервалы не загрузились и после повторного прохода.
+// Остальные интервалы уже записаны; запись идемпотентна, поэтому загрузку можно просто повторить.
+public class HourlyBackfillException extends RuntimeException {
+
+    public record Gap(String coinId, Instant from, Instant to) {
+    }
+
+    private final long saved;
+    private final List<Gap> gaps;
+
+    public HourlyBackfillException(long saved, List<Gap> gaps) {
+        super("Не загружено интервалов: " + gaps.size() + ", сохранено записей: " + saved);
+        this.saved = saved;
+        this.gaps = List.copyOf(gaps);
+    }
+
+    public long getSaved() {
+        return saved;
+    }
+
+    public List<Gap> getGaps() {
+        return gaps;
+    }
+}
@@ -0,0 +1,28 @@
+package org.example.crypto.service;
+
+import org.example.crypto.model.CoinPriceHistory;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+// Источник рыночных данных для CoinGeckoService: загрузка, повторы и разбор ответов.
+// Запись тиков, расписание опроса и склейка интервалов остаются в сервисе.
+public interface MarketDataSource {
+
+    record MarketsPage(List<CoinPriceHistory> ticks, Map<String, Integer> ranks) {
+    }
+
+    // Текущие цены одной страницей /coins/markets
+    MarketsPage fetchMarkets(List<String> coinIds);
+
+    // Дневные точки за последние days дней; пустой список, если данных нет
+    List<CoinPriceHistory> fetchMarketChart(String coinId, int days);
+
+    // Почасовые точки за [from, to]; ошибка, если интервал не загрузился после всех повторов
+    Mono<List<CoinPriceHistory>> fetchMarketChartRange(String coinId, Instant from, Instant to);
+
+    // Символ монеты или сам coinId, если его не удалось получить
+    String fetchSymbol(String coinId);
+}
@@ -0,0 +1,319 @@
+package org.example.crypto.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.crypto.model.CoinPriceHistory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Распределяет монеты по уровням частоты опроса. Монета стоит запроса, если она волатильна, крупная
+// и CoinGecko часто обновляет её last_updated; монеты без новых данных опрашивать чаще бесполезно.
+// Каждый уровень опрашивается целыми страницами /coins/markets, а уровни подбираются так,
+// чтобы укладываться в бюджет запросов в минуту.
+@Component
+public class PollingPlanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(PollingPlanner.class);
+
+    // Предел ids на страницу /coins/markets
+    static final int MAX_PAGE_SIZE = 250;
+
+    private static final double EWMA_ALPHA = 0.2;
+
+    // Тик планировщика может прийти чуть раньше срока уровня
+    private static final Duration SCHEDULE_SLACK = Duration.ofSeconds(5);
+
+    public enum Tier {
+        HOT, WARM, COLD
+    }
+
+    public record Page(Tier tier, List<String> coinIds) {
+    }
+
+    // Курс, ранг и наблюдаемая частота обновлений одной монеты
+    static final class CoinStats {
+        Tier tier = Tier.HOT;
+        Double lastPrice;
+        Instant lastPolled;
+        Instant lastUpdated;
+        Integer marketCapRank;
+        // Средний модуль доходности за минуту
+        double volatility;
+        // Средний интервал между обновлениями last_updated на стороне CoinGecko, секунды; 0 - ещё неизвестно
+        double updateIntervalSeconds;
+    }
+
+    private final Map<String, CoinStats> stats = new HashMap<>();
+    private final Map<Tier, Instant> nextPoll = new EnumMap<>(Tier.class);
+    private final Map<Tier, Duration> intervals = new EnumMap<>(Tier.class);
+    private final double budgetPerMinute;
+    private final int pageSize;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${crypto.polling.volatility-weight:0.7}")
+    private double volatilityWeight = 0.7;
+
+    @Value("${crypto.polling.rank-weight:0.3}")
+    private double rankWeight = 0.3;
+
+    // Монета не поднимается на уровень, где новые данные приносит меньше этой доли опросов
+    @Value("${crypto.polling.min-useful-fraction:0.25}")
+    private double minUsefulFraction = 0.25;
+
+    private boolean overBudgetReported;
+
+    @Autowired
+    public PollingPlanner(
+            @Value("${crypto.polling.hot-interval-seconds:60}") long hotSeconds,
+            @Value("${crypto.polling.warm-interval-seconds:300}") long warmSeconds,
+            @Value("${crypto.polling.cold-interval-seconds:1800}") long coldSeconds,
+            @Value("${crypto.polling.budget-per-minute:10}") double budgetPerMinute,
+            @Value("${crypto.polling.page-size:250}") int pageSize,
+            MeterRegistry meterRegistry
+    ) {
+        intervals.put(Tier.HOT, Duration.ofSeconds(hotSeconds));
+        intervals.put(Tier.WARM, Duration.ofSeconds(warmSeconds));
+        intervals.put(Tier.COLD, Duration.ofSeconds(coldSeconds));
+        this.budgetPerMinute = budgetPerMinute;
+        this.pageSize = Math.min(Math.max(1, pageSize), MAX_PAGE_SIZE);
+        this.meterRegistry = meterRegistry;
+
+        for (Tier tier : Tier.values()) {
+            String name = tier.name().toLowerCase();
+            Gauge.builder("crypto.polling.tier.coins", this, planner -> planner.coinsIn(tier))
+                    .description("Монет на уровне опроса")
+                    .tag("tier", name)
+                    .register(meterRegistry);
+            Gauge.builder("crypto.polling.freshness", this, planner -> planner.averageAgeSeconds(tier, Instant.now()))
+                    .description("Средний возраст последней цены монет уровня")
+                    .tag("tier", name)
+                    .baseUnit("seconds")
+                    .register(meterRegistry);
+        }
+    }
+
+    // Страницы уровней, у которых подошёл срок. Уровни пересчитываются на каждом вызове.
+    public synchronized List<Page> duePages(List<String> coins, Instant now) {
+        retier(coins);
+        List<Page> pages = new ArrayList<>();
+        for (Tier tier : Tier.values()) {
+            Instant next = nextPoll.get(tier);
+            List<String> tierCoins = coinsOf(coins, tier);
+            if (tierCoins.isEmpty() || (next != null && now.plus(SCHEDULE_SLACK).isBefore(next))) {
+                continue;
+            }
+            pages.addAll(paginate(tier, tierCoins));
+            nextPoll.put(tier, now.plus(intervals.get(tier)));
+        }
+        return pages;
+    }
+
+    // Внеочередной опрос всех монет (CLI), страницы максимального размера без учёта уровней
+    public synchronized List<Page> allPages(List<String> coins) {
+        retier(coins);
+        return paginate(Tier.HOT, coins);
+    }
+
+    public synchronized void recordPoll(Page page, List<CoinPriceHistory> ticks, Map<String, Integer> ranks, Instant now) {
+        String tierName = page.tier().name().toLowerCase();
+        meterRegistry.counter("crypto.polling.requests", "tier", tierName).increment();
+        DistributionSummary staleness = DistributionSummary.builder("crypto.polling.staleness")
+                .description("Возраст цены в момент опроса")
+                .tag("tier", tierName)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Counter changed = meterRegistry.counter("crypto.polling.updates", "tier", tierName, "changed", "true");
+        Counter unchanged = meterRegistry.counter("crypto.polling.updates", "tier", tierName, "changed", "false");
+
+        for (CoinPriceHistory tick : ticks) {
+            CoinStats coin = stats.computeIfAbsent(tick.getCoinId(), id -> new CoinStats());
+            Instant updated = tick.getTimestamp();
+            if (coin.lastUpdated != null && !updated.isAfter(coin.lastUpdated)) {
+                unchanged.increment();
+            } else {
+                changed.increment();
+                if (coin.lastPrice != null && coin.lastPrice > 0 && tick.getPrice() != null && tick.getPrice() > 0) {
+                    double minutes = Math.max(1.0, Duration.between(coin.lastUpdated, updated).toSeconds() / 60.0);
+                    double perMinute = Math.abs(Math.log(tick.getPrice() / coin.lastPrice)) / Math.sqrt(minutes);
+                    coin.volatility = ewma(coin.volatility, perMinute);
+                }
+                coin.lastUpdated = updated;
+                coin.lastPrice = tick.getPrice();
+            }
+            // Опрос приходится на случайный момент между обновлениями, поэтому возраст цены в среднем
+            // равен половине интервала обновления, какой бы ни была частота опроса
+            double age = Math.max(0, Duration.between(updated, now).toMillis() / 1000.0);
+            staleness.record(age);
+            coin.updateIntervalSeconds = coin.updateIntervalSeconds == 0 ? 2 * age : ewma(coin.updateIntervalSeconds, 2 * age);
+            coin.lastPolled = now;
+            Integer rank = ranks.get(tick.getCoinId());
+            if (rank != null) {
+                coin.marketCapRank = rank;
+            }
+        }
+    }
+
+    // Жадно: монеты по убыванию ценности получают самый частый уровень, который ещё укладывается в бюджет
+    synchronized void retier(List<String> coins) {
+        stats.keySet().retainAll(coins);
+        for (String coin : coins) {
+            stats.computeIfAbsent(coin, id -> new CoinStats());
+        }
+
+        double maxVolatility = stats.values().stream().mapToDouble(s -> s.volatility).max().orElse(0);
+        List<String> ordered = new ArrayList<>(coins);
+        Map<String, Double> scores = new HashMap<>();
+        for (String coin : coins) {
+            scores.put(coin, score(stats.get(coin), maxVolatility));
+        }
+        ordered.sort(Comparator.comparing((String coin) -> scores.get(coin)).reversed());
+
+        // Все монеты хотя бы на холодном уровне, поднимаем из него
+        Map<Tier, Integer> counts = new EnumMap<>(Tier.class);
+        for (Tier tier : Tier.values()) {
+            counts.put(tier, 0);
+        }
+        counts.put(Tier.COLD, coins.size());
+        double floor = cost(counts);
+        if (floor > budgetPerMinute) {
+            if (!overBudgetReported) {
+                logger.warn("Даже редкий опрос {} монет требует {} запросов в минуту при бюджете {}",
+                        coins.size(), String.format("%.2f", floor), budgetPerMinute);
+                overBudgetReported = true;
+            }
+        } else {
+            overBudgetReported = false;
+        }
+
+        Map<String, Tier> assigned = new HashMap<>();
+        for (String coin : ordered) {
+            CoinStats coinStats = stats.get(coin);
+            Tier target = Tier.COLD;
+            for (Tier tier : Tier.values()) {
+                if (tier == Tier.COLD) {
+                    break;
+                }
+                if (!isUseful(coinStats, tier)) {
+                    continue;
+                }
+                counts.merge(Tier.COLD, -1, Integer::sum);
+                counts.merge(tier, 1, Integer::sum);
+                if (cost(counts) <= Math.max(budgetPerMinute, floor)) {
+                    target = tier;
+                    break;
+                }
+                counts.merge(tier, -1, Integer::sum);
+                counts.merge(Tier.COLD, 1, Integer::sum);
+            }
+            assigned.put(coin, target);
+        }
+
+        int moved = 0;
+        for (Map.Entry<String, Tier> entry : assigned.entrySet()) {
+            CoinStats coinStats = stats.get(entry.getKey());
+            if (coinStats.tier != entry.getValue()) {
+                coinStats.tier = entry.getValue();
+                moved++;
+            }
+        }
+        if (moved > 0) {
+            logger.info("Уровни опроса пересчитаны: {} монет сменили уровень, hot={}, warm={}, cold={}",
+                    moved, coinsIn(Tier.HOT), coinsIn(Tier.WARM), coinsIn(Tier.COLD));
+        }
+    }
+
+    synchronized Tier tierOf(String coin) {
+        CoinStats coinStats = stats.get(coin);
+        return coinStats != null ? coinStats.tier : null;
+    }
+
+    // Запросов в минуту при данном числе монет на уровнях
+    double cost(Map<Tier, Integer> counts) {
+        double perMinute = 0;
+        for (Map.Entry<Tier, Integer> entry : counts.entrySet()) {
+            int pages = (entry.getValue() + pageSize - 1) / pageSize;
+            perMinute += pages * 60.0 / intervals.get(entry.getKey()).toSeconds();
+        }
+        return perMinute;
+    }
+
+    private double score(CoinStats coin, double maxVolatility) {
+        // Ещё не опрошенная монета идёт первой, чтобы узнать о ней хоть что-то
+        if (coin.lastPolled == null) {
+            return Double.MAX_VALUE;
+        }
+        double volatility = maxVolatility > 0 ? coin.volatility / maxVolatility : 0;
+        double rank = coin.marketCapRank != null ? 1.0 / (1.0 + Math.log(coin.marketCapRank)) : 0;
+        return usefulFraction(coin, Tier.HOT) * (volatilityWeight * volatility + rankWeight * rank);
+    }
+
+    private boolean isUseful(CoinStats coin, Tier tier) {
+        return usefulFraction(coin, tier) >= minUsefulFraction;
+    }
+
+    // Доля опросов уровня, которые застанут новое значение
+    private double usefulFraction(CoinStats coin, Tier tier) {
+        if (coin.updateIntervalSeconds <= 0) {
+            return 1;
+        }
+        return Math.min(1, intervals.get(tier).toSeconds() / coin.updateIntervalSeconds);
+    }
+
+    private List<Page> paginate(Tier tier, List<String> coins) {
+        List<Page> pages = new ArrayList<>();
+        for (int i = 0; i < coins.size(); i += pageSize) {
+            pages.add(new Page(tier, List.copyOf(coins.subList(i, Math.min(i + pageSize, coins.size())))));
+        }
+        return pages;
+    }
+
+    private List<String> coinsOf(List<String> coins, Tier tier) {
+        List<String> result = new ArrayList<>();
+        for (String coin : coins) {
+            if (stats.get(coin).tier == tier) {
+                result.add(coin);
+            }
+        }
+        return result;
+    }
+
+    private synchronized int coinsIn(Tier tier) {
+        int count = 0;
+        for (CoinStats coin : stats.values()) {
+            if (coin.tier == tier) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    synchronized double averageAgeSeconds(Tier tier, Instant now) {
+        double total = 0;
+        int count = 0;
+        for (CoinStats coin : stats.values()) {
+            if (coin.tier == tier && coin.lastUpdated != null) {
+                total += Duration.between(coin.lastUpdated, now).toMillis() / 1000.0;
+                count++;
+            }
+        }
+        return count == 0 ? Double.NaN : total / count;
+    }
+
+    private static double ewma(double current, double sample) {
+        return current + EWMA_ALPHA * (sample - current);
+    }
+}
@@ -5,6 +5,7 @@ import org.example.crypto.repository.CoinPriceHistoryRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -19,10 +20,12 @@ public class PriceHistoryService {
         this.coinPriceHistoryRepository = coinPriceHistoryRepository;
     }
 
+    @Transactional(readOnly = true)
     public List<String> getAllCoinIds() {
         return coinPriceHistoryRepository.findAllDistinctCoinIds();
     }
 
+    @Transactional(readOnly = true)
     public CoinPriceHistory getLastPriceForCoin(String coinId) {
         List<CoinPriceHistory> prices = coinPriceHistoryRepository
                 .findByCoinIdOrderByTimestampDesc(coinId, PageRequest.of(0, 1));
@@ -0,0 +1,18 @@
+package org.example.crypto.service;
+
+import lombok.Getter;
+import org.example.crypto.model.CoinPriceHistory;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.List;
+
+@Getter
+public class TicksIngestedEvent extends ApplicationEvent {
+
+    private final List<CoinPriceHistory> ticks;
+
+    public TicksIngestedEvent(Object source, List<CoinPriceHistory> ticks) {
+        super(source);
+        this.ticks = List.copyOf(ticks);
+    }
+}
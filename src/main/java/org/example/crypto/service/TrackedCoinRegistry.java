@@ -0,0 +1,212 @@
+package org.example.crypto.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Список отслеживаемых монет. Читатели берут неизменяемый снимок и работают с ним весь цикл загрузки,
+// изменения публикуют новый снимок и не ждут идущую загрузку. Файл пишется через временный файл
+// и переименование, внешние правки файла подхватываются без перезапуска.
+@Component
+public class TrackedCoinRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrackedCoinRegistry.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path file;
+    private final List<String> defaultCoins;
+    private final boolean watch;
+
+    private volatile List<String> coins = List.of();
+    private WatchService watchService;
+    private Thread watcher;
+
+    @Autowired
+    public TrackedCoinRegistry(
+            @Value("${crypto.coins.file:coins_to_track.json}") String file,
+            @Value("${crypto.coingecko.coins-to-track:bitcoin,ethereum,ethereum-classic,ripple,cardano,solana,dogecoin,polkadot,shiba-inu,polygon,litecoin,tron,stellar,vechain,monero,eos,theta,axie-infinity,crypto-com-chain,uniswap}") List<String> defaultCoins,
+            @Value("${crypto.coins.watch:true}") boolean watch
+    ) {
+        this(Paths.get(file), defaultCoins, watch);
+    }
+
+    public TrackedCoinRegistry(Path file, List<String> defaultCoins, boolean watch) {
+        this.file = file.toAbsolutePath();
+        this.defaultCoins = normalize(defaultCoins);
+        this.watch = watch;
+    }
+
+    @PostConstruct
+    public void start() {
+        List<String> loaded = readFile();
+        coins = loaded != null && !loaded.isEmpty() ? loaded : defaultCoins;
+        if (watch) {
+            startWatcher();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {
+            }
+            watchService = null;
+        }
+        if (watcher != null) {
+            watcher.interrupt();
+            watcher = null;
+        }
+    }
+
+    public List<String> snapshot() {
+        return coins;
+    }
+
+    // Возвращают монеты, которые действительно добавились или удалились
+    public synchronized List<String> addAll(Collection<String> coinIds) {
+        Set<String> updated = new LinkedHashSet<>(coins);
+        List<String> added = new ArrayList<>();
+        for (String id : normalize(coinIds)) {
+            if (updated.add(id)) {
+                added.add(id);
+            }
+        }
+        if (!added.isEmpty()) {
+            publish(List.copyOf(updated));
+        }
+        return added;
+    }
+
+    public synchronized List<String> removeAll(Collection<String> coinIds) {
+        Set<String> updated = new LinkedHashSet<>(coins);
+        List<String> removed = new ArrayList<>();
+        for (String id : normalize(coinIds)) {
+            if (updated.remove(id)) {
+                removed.add(id);
+            }
+        }
+        if (!removed.isEmpty()) {
+            publish(List.copyOf(updated));
+        }
+        return removed;
+    }
+
+    private void publish(List<String> updated) {
+        coins = updated;
+        try {
+            write(updated);
+        } catch (IOException e) {
+            // Список в памяти уже обновлён, файл догонит при следующем изменении
+            logger.error("Не удалось сохранить {}: {}", file.getFileName(), e.getMessage(), e);
+        }
+    }
+
+    private void write(List<String> updated) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(tmp, objectMapper.writeValueAsString(updated));
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Внешняя правка файла; собственные записи дают тот же список и ничего не меняют
+    synchronized void reload() {
+        List<String> loaded = readFile();
+        if (loaded == null || loaded.equals(coins)) {
+            return;
+        }
+        if (loaded.isEmpty()) {
+            logger.warn("{} пуст, список монет не изменён", file.getFileName());
+            return;
+        }
+        coins = loaded;
+        logger.info("Список монет перечитан из {}: {}", file.getFileName(), loaded);
+    }
+
+    private List<String> readFile() {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return normalize(objectMapper.readValue(Files.readString(file), new TypeReference<List<String>>() {}));
+        } catch (IOException e) {
+            logger.warn("Не удалось прочитать {}, список монет не изменён: {}", file.getFileName(), e.getMessage());
+            return null;
+        }
+    }
+
+    private synchronized void startWatcher() {
+        try {
+            watchService = file.getFileSystem().newWatchService();
+            file.getParent().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            logger.warn("Слежение за {} недоступно: {}", file.getFileName(), e.getMessage());
+            return;
+        }
+        WatchService service = watchService;
+        watcher = new Thread(() -> watch(service), "tracked-coins-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watch(WatchService service) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = service.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || file.getFileName().equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+                if (changed) {
+                    // Редакторы пишут файл в несколько приёмов: ждём, пока события утихнут
+                    WatchKey more;
+                    while ((more = service.poll(200, TimeUnit.MILLISECONDS)) != null) {
+                        more.pollEvents();
+                        more.reset();
+                    }
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // остановка
+        }
+    }
+
+    private static List<String> normalize(Collection<String> coinIds) {
+        Set<String> ids = new LinkedHashSet<>();
+        for (String id : coinIds) {
+            if (id != null && !id.isBlank()) {
+                ids.add(id.trim().toLowerCase());
+            }
+        }
+        return List.copyOf(ids);
+    }
+}
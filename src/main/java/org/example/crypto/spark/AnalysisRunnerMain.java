@@ -0,0 +1,31 @@
+package org.example.crypto.spark;
+
+import org.example.crypto.datasource.ReplicaLagMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+// Точка входа для анализа вне процесса приложения: spark-submit или отдельная JVM.
+// Поднимает только Spark-компоненты, без веб-сервера, JPA и загрузки цен.
+public class AnalysisRunnerMain {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisRunnerMain.class);
+
+    public static void main(String[] args) {
+        int exitCode = 0;
+        try (ConfigurableApplicationContext ctx = new SpringApplicationBuilder(
+                SparkSessionFactory.class, ReplicaLagMonitor.class, ParquetArchiveJob.class, SparkBatchProcessor.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .run(args)) {
+            ctx.getBean(SparkBatchProcessor.class).runDailyAnalysis();
+        } catch (Exception e) {
+            logger.error("Анализ завершился с ошибкой: {}", e.getMessage(), e);
+            exitCode = 1;
+        }
+        System.exit(exitCode);
+    }
+}
@@ -0,0 +1,353 @@
+package org.example.crypto.spark;
+
+import lombok.Getter;
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.functions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Архив закрытых дней coin_tick в Parquet, разбитый по date (и при необходимости coin_key).
+// Архив содержит дни до closedBefore, кроме отмеченных в coin_tick_dirty_day: в такие дни после выгрузки
+// дописывались тики (бэкфилл), они читаются из PostgreSQL, пока следующий прогон не перепишет раздел дня целиком.
+@Component
+public class ParquetArchiveJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParquetArchiveJob.class);
+
+    private static final String STATE_FILE = "_archive_state.properties";
+    private static final String STAGING_DIR = "_staging";
+    private static final String TRASH_DIR = "_trash";
+    // Версия формата: архив другой версии пересобирается с нуля
+    private static final int LAYOUT = 2;
+
+    static final String[] TICK_COLUMNS = {"coin_key", "ts", "price", "volume", "market_cap"};
+
+    // Дни [from, to) по UTC; to == null - без верхней границы
+    record DayRange(LocalDate from, LocalDate to) {
+    }
+
+    public record ArchiveState(LocalDate closedBefore) {
+        static final ArchiveState EMPTY = new ArchiveState(LocalDate.EPOCH);
+
+        boolean isEmpty() {
+            return closedBefore.equals(LocalDate.EPOCH);
+        }
+    }
+
+    @Getter
+    @Value("${crypto.spark.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${crypto.spark.archive.path:data/archive/coin_price_history}")
+    private String archivePath;
+
+    @Value("${crypto.spark.archive.partition-by-coin:false}")
+    private boolean partitionByCoin;
+
+    @Value("${crypto.spark.archive.interval-minutes:60}")
+    private long intervalMinutes;
+
+    @Value("${crypto.spark.archive.read-partitions:4}")
+    private int readPartitions;
+
+    @Value("${spring.datasource.url:jdbc:postgresql://localhost:5432/cryptodb}")
+    private String dbUrl;
+
+    @Value("${spring.datasource.username:postgres}")
+    private String dbUsername;
+
+    @Value("${spring.datasource.password:admin}")
+    private String dbPassword;
+
+    private volatile long lastRunMillis;
+
+    public synchronized void archiveIfDue(SparkSession spark) {
+        if (!enabled || System.currentTimeMillis() - lastRunMillis < intervalMinutes * 60_000) {
+            return;
+        }
+        try {
+            archive(spark);
+        } catch (Exception e) {
+            // Архив не обязателен: без него анализ читает недостающее из PostgreSQL
+            logger.error("Ошибка архивации в Parquet: {}", e.getMessage(), e);
+        } finally {
+            lastRunMillis = System.currentTimeMillis();
+        }
+    }
+
+    public synchronized ArchiveState readState() {
+        Path stateFile = root().resolve(STATE_FILE);
+        if (!Files.exists(stateFile)) {
+            return ArchiveState.EMPTY;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(stateFile)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!Integer.toString(LAYOUT).equals(properties.getProperty("layout"))) {
+            return ArchiveState.EMPTY;
+        }
+        return new ArchiveState(LocalDate.parse(properties.getProperty("closedBefore")));
+    }
+
+    // История цен целиком в прежнем виде (coin_id, symbol, ..., timestamp): архив из Parquet
+    // плюс не архивированные тики из JDBC, имена монет подтягиваются из маленького справочника coin
+    public Dataset<Row> loadPriceHistory(SparkSession spark, String url, Properties properties) {
+        ArchiveState state = enabled ? readState() : ArchiveState.EMPTY;
+
+        Dataset<Row> ticks;
+        if (state.isEmpty()) {
+            ticks = readTicks(spark, url, "TRUE", properties);
+        } else {
+            List<String> dirtyDays = spark.read().jdbc(url, "(SELECT day::text AS day FROM coin_tick_dirty_day) AS dirty", properties)
+                    .collectAsList().stream().map(row -> row.getString(0)).toList();
+            String recentDays = tsCondition(dayRanges(new DayRange(state.closedBefore(), null),
+                    dirtyDays.stream().map(LocalDate::parse).toList()));
+            Dataset<Row> recent = readTicks(spark, url, recentDays, properties);
+            ticks = readArchive(spark, state, dirtyDays).unionByName(recent);
+        }
+
+        Dataset<Row> coins = spark.read().jdbc(url, "coin", properties).select("coin_key", "coin_id", "symbol");
+        return ticks.join(functions.broadcast(coins), "coin_key")
+                .select(functions.col("coin_id"), functions.col("symbol"), functions.col("price"),
+                        functions.col("volume"), functions.col("market_cap"), functions.col("ts").as("timestamp"));
+    }
+
+    // Тики архива в колонках coin_tick. При partition-by-coin coin_key есть только в пути раздела,
+    // поэтому набор читается от корня, а не списком файлов: иначе Spark не восстановит колонку
+    Dataset<Row> readArchive(SparkSession spark, ArchiveState state, List<String> dirtyDays) {
+        Dataset<Row> archived = spark.read().parquet(root().toString())
+                .where(functions.col("date").lt(functions.lit(state.closedBefore().toString()).cast("date")));
+        if (!dirtyDays.isEmpty()) {
+            archived = archived.where(functions.not(functions.col("date").cast("string").isin(dirtyDays.toArray())));
+        }
+        return archived.select(tickColumns());
+    }
+
+    void archive(SparkSession spark) throws IOException, SQLException {
+        Path root = root();
+        ArchiveState state = readState();
+        if (state.isEmpty()) {
+            // Архива нет или он старого формата
+            deleteRecursively(root);
+        }
+        Files.createDirectories(root);
+        deleteRecursively(root.resolve(STAGING_DIR));
+        deleteRecursively(root.resolve(TRASH_DIR));
+
+        LocalDate closedBefore = LocalDate.now(ZoneOffset.UTC);
+        List<LocalDate> dirtyDays = claimDirtyDays(closedBefore);
+        if (!closedBefore.isAfter(state.closedBefore()) && dirtyDays.isEmpty()) {
+            return;
+        }
+
+        String condition = tsCondition(dayRanges(new DayRange(state.closedBefore(), closedBefore), dirtyDays));
+
+        String query = "(SELECT " + String.join(", ", TICK_COLUMNS) + ", (ts AT TIME ZONE 'UTC')::date AS date " +
+                "FROM coin_tick WHERE " + condition + ") AS closed_days";
+        Dataset<Row> closedDays = spark.read().jdbc(dbUrl, query, coinKeyPredicates(), connectionProperties());
+
+        String[] partitionColumns = partitionByCoin ? new String[]{"date", "coin_key"} : new String[]{"date"};
+        Column[] partitionCols = Arrays.stream(partitionColumns).map(functions::col).toArray(Column[]::new);
+
+        Path staging = root.resolve(STAGING_DIR);
+        // Один файл на раздел: дни выгружаются только целиком, поэтому уплотнять нечего
+        closedDays.repartition(partitionCols)
+                .sortWithinPartitions("coin_key", "ts")
+                .write()
+                .mode(SaveMode.Overwrite)
+                .partitionBy(partitionColumns)
+                .parquet(staging.toString());
+
+        // Раздел дня заменяется целиком. Пока состояние не записано, новые дни отсекаются по closedBefore,
+        // а переписанные остаются в coin_tick_dirty_day и читаются из PostgreSQL
+        Path trash = root.resolve(TRASH_DIR);
+        Files.createDirectories(trash);
+        int days = 0;
+        try (Stream<Path> partitions = Files.list(staging)) {
+            for (Path partition : partitions.filter(Files::isDirectory).toList()) {
+                Path target = root.resolve(partition.getFileName().toString());
+                if (Files.exists(target)) {
+                    Files.move(target, trash.resolve(target.getFileName()), StandardCopyOption.ATOMIC_MOVE);
+                }
+                Files.move(partition, target, StandardCopyOption.ATOMIC_MOVE);
+                days++;
+            }
+        }
+
+        writeState(root, new ArchiveState(closedBefore));
+        releaseDirtyDays(dirtyDays);
+        deleteRecursively(staging);
+        deleteRecursively(trash);
+        logger.info("Архив Parquet обновлён: {} дней (из них переписано {}), дни до {}", days, dirtyDays.size(), closedBefore);
+    }
+
+    // Архив из готового набора тиков с колонкой date (синтетические данные нагрузочных прогонов).
+    // Прежний архив удаляется целиком, дни до closedBefore считаются выгруженными
+    public synchronized void replaceArchive(Dataset<Row> ticks, LocalDate closedBefore) throws IOException {
+        Path root = root();
+        deleteRecursively(root);
+
+        String[] partitionColumns = partitionByCoin ? new String[]{"date", "coin_key"} : new String[]{"date"};
+        ticks.select(functions.col("coin_key"), functions.col("ts"), functions.col("price"),
+                        functions.col("volume"), functions.col("market_cap"), functions.col("date"))
+                .write()
+                .mode(SaveMode.Overwrite)
+                .partitionBy(partitionColumns)
+                .parquet(root.toString());
+
+        writeState(root, new ArchiveState(closedBefore));
+    }
+
+    // Дни, в которые после выгрузки попали новые тики. claimed сбрасывает запись тика в том же дне,
+    // поэтому отметка, обновлённая во время выгрузки, переживёт releaseDirtyDays
+    private List<LocalDate> claimDirtyDays(LocalDate closedBefore) throws SQLException {
+        List<LocalDate> days = new ArrayList<>();
+        try (Connection connection = DriverManager.getConnection(dbUrl, dbUsername, dbPassword);
+             PreparedStatement statement = connection.prepareStatement(
+                     "UPDATE coin_tick_dirty_day SET claimed = true WHERE day < ? RETURNING day")) {
+            statement.setObject(1, closedBefore);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    days.add(rs.getObject(1, LocalDate.class));
+                }
+            }
+        }
+        return new ArrayList<>(new TreeSet<>(days));
+    }
+
+    private void releaseDirtyDays(List<LocalDate> days) throws SQLException {
+        if (days.isEmpty()) {
+            return;
+        }
+        try (Connection connection = DriverManager.getConnection(dbUrl, dbUsername, dbPassword);
+             PreparedStatement statement = connection.prepareStatement(
+                     "DELETE FROM coin_tick_dirty_day WHERE day = ANY (?) AND claimed")) {
+            Array array = connection.createArrayOf("date", days.toArray());
+            statement.setArray(1, array);
+            statement.executeUpdate();
+        }
+    }
+
+    // Чтение coin_tick параллельно по ключу монеты: ключ первичного индекса, поэтому каждое чтение - диапазон индекса
+    private Dataset<Row> readTicks(SparkSession spark, String url, String condition, Properties properties) {
+        String query = "(SELECT " + String.join(", ", TICK_COLUMNS) + " FROM coin_tick WHERE " + condition + ") AS ticks";
+        return spark.read().jdbc(url, query, coinKeyPredicates(), properties);
+    }
+
+    private String[] coinKeyPredicates() {
+        int partitions = Math.max(1, readPartitions);
+        String[] predicates = new String[partitions];
+        for (int i = 0; i < partitions; i++) {
+            predicates[i] = "coin_key % " + partitions + " = " + i;
+        }
+        return predicates;
+    }
+
+    private void writeState(Path root, ArchiveState state) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("layout", Integer.toString(LAYOUT));
+        properties.setProperty("closedBefore", state.closedBefore().toString());
+
+        Path tmp = root.resolve(STATE_FILE + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp)) {
+            properties.store(writer, null);
+        }
+        Files.move(tmp, root.resolve(STATE_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Properties connectionProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("driver", "org.postgresql.Driver");
+        properties.setProperty("user", dbUsername);
+        properties.setProperty("password", dbPassword);
+        return properties;
+    }
+
+    private Path root() {
+        return Paths.get(archivePath);
+    }
+
+    // Отдельные дни добавляются к основному диапазону, соседние и перекрывающиеся сливаются
+    static List<DayRange> dayRanges(DayRange base, Collection<LocalDate> days) {
+        List<DayRange> ranges = new ArrayList<>();
+        ranges.add(base);
+        days.forEach(day -> ranges.add(new DayRange(day, day.plusDays(1))));
+        ranges.sort(Comparator.comparing(DayRange::from));
+
+        List<DayRange> merged = new ArrayList<>();
+        for (DayRange range : ranges) {
+            DayRange last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && (last.to() == null || !range.from().isAfter(last.to()))) {
+                LocalDate to = last.to() == null || range.to() == null ? null
+                        : range.to().isAfter(last.to()) ? range.to() : last.to();
+                merged.set(merged.size() - 1, new DayRange(last.from(), to));
+            } else {
+                merged.add(range);
+            }
+        }
+        return merged;
+    }
+
+    // Условие только сравнивает ts с константами: PostgreSQL берёт диапазоны по BRIN, а не проверяет
+    // выражение от ts на каждой строке таблицы
+    static String tsCondition(List<DayRange> ranges) {
+        return ranges.stream()
+                .map(range -> range.to() == null ? "ts >= " + startOf(range.from())
+                        : "(ts >= " + startOf(range.from()) + " AND ts < " + startOf(range.to()) + ")")
+                .collect(Collectors.joining(" OR "));
+    }
+
+    private static String startOf(LocalDate day) {
+        return "'" + day + "'::date AT TIME ZONE 'UTC'";
+    }
+
+    private static Column[] tickColumns() {
+        return Arrays.stream(TICK_COLUMNS).map(functions::col).toArray(Column[]::new);
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted((a, b) -> b.getNameCount() - a.getNameCount()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package org.example.crypto.spark;
+
+import org.apache.spark.executor.TaskMetrics;
+import org.apache.spark.scheduler.SparkListener;
+import org.apache.spark.scheduler.SparkListenerTaskEnd;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.example.crypto.datasource.ReplicaLagMonitor;
+import org.example.crypto.spark.analysis.PostgresCopySink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Unmatched;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Нагрузочный прогон Spark-анализа на синтетической истории растущего размера. Для каждого размера база
+// и архив заполняются заново, затем runDailyAnalysis() запускается с замером времени, пикового heap,
+// объёма shuffle и числа строк результата. Строки отчёта дописываются в CSV - это кривая стоимости релиза.
+// Прогон стирает тики и справочник монет, поэтому запускается только на отдельной базе.
+@Command(name = "spark-scale-test", mixinStandardHelpOptions = true,
+        description = "Кривая стоимости Spark-анализа на синтетических данных")
+public class ScaleTestMain implements Callable<Integer> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScaleTestMain.class);
+
+    private static final String REPORT_HEADER = "scale,coins,days,interval_minutes,input_rows,target,generate_seconds,"
+            + "analysis_seconds,rows_per_second,peak_heap_mb,shuffle_write_mb,shuffle_read_mb,spill_mb,output_rows";
+
+    // Прогон переписывает справочник coin, поэтому очищается всё, что на него ссылается.
+    // CASCADE не используется: таблица со ссылкой на coin, которой нет в списке, остановит TRUNCATE, а не сотрётся молча
+    private static final List<String> WIPED_TABLES = List.of("coin_tick", "coin_tick_dirty_day", "coin_indicator",
+            "coin_correlation", "coin_alert", "coin_quantile_day", "backtest_result", "backtest_run", "coin");
+
+    @Option(names = "--scales", split = ",", defaultValue = "10x30,100x90,300x365,1000x1095",
+            description = "Размеры прогонов: монетыxдни[@минуты]")
+    List<String> scales;
+
+    @Option(names = "--interval-minutes", defaultValue = "1", description = "Шаг тиков, если не задан в размере")
+    int intervalMinutes;
+
+    @Option(names = "--target", defaultValue = "parquet", description = "Куда писать историю: parquet (архив) или postgres")
+    String target;
+
+    @Option(names = "--report", defaultValue = "data/scale/report.csv")
+    Path report;
+
+    @Option(names = "--seed", defaultValue = "42")
+    long seed;
+
+    @Option(names = "--wipe", description = "Разрешить очистку непустой coin_tick")
+    boolean wipe;
+
+    // Остальные аргументы - параметры Spring, например --spring.datasource.url=...
+    @Unmatched
+    List<String> springArgs = new ArrayList<>();
+
+    public static void main(String[] args) {
+        System.exit(new CommandLine(new ScaleTestMain()).execute(args));
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        boolean parquet = "parquet".equalsIgnoreCase(target);
+        if (!parquet && !"postgres".equalsIgnoreCase(target)) {
+            throw new CommandLine.ParameterException(new CommandLine(this), "Неизвестный --target: " + target);
+        }
+        List<String> args = new ArrayList<>(springArgs);
+        // Синтетический архив не должен затереть настоящий
+        if (args.stream().noneMatch(arg -> arg.startsWith("--crypto.spark.archive.path="))) {
+            args.add("--crypto.spark.archive.path=data/scale/archive");
+        }
+        args.add("--crypto.spark.archive.enabled=" + parquet);
+
+        try (ConfigurableApplicationContext ctx = new SpringApplicationBuilder(
+                SparkSessionFactory.class, ReplicaLagMonitor.class, ParquetArchiveJob.class, SparkBatchProcessor.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .run(args.toArray(String[]::new))) {
+            Environment env = ctx.getEnvironment();
+            String url = env.getProperty("spring.datasource.url", "jdbc:postgresql://localhost:5432/cryptodb");
+            String user = env.getProperty("spring.datasource.username", "postgres");
+            String password = env.getProperty("spring.datasource.password", "admin");
+
+            // Проверка один раз до прогона: после первого размера coin_tick заполнена уже синтетикой
+            checkWipeAllowed(url, user, password);
+            for (String spec : scales) {
+                SyntheticHistoryGenerator.Scale scale = SyntheticHistoryGenerator.Scale.parse(spec, intervalMinutes);
+                String line = runScale(ctx, scale, parquet, url, user, password);
+                appendReport(line);
+                logger.info("Размер {}: {}", scale, line);
+            }
+        }
+        logger.info("Отчёт: {}", report.toAbsolutePath());
+        return 0;
+    }
+
+    private String runScale(ConfigurableApplicationContext ctx, SyntheticHistoryGenerator.Scale scale, boolean parquet,
+                            String url, String user, String password) throws IOException, SQLException {
+        resetDatabase(url, user, password, scale.coins());
+        LocalDate closedBefore = LocalDate.now(ZoneOffset.UTC);
+
+        SparkSession spark = ctx.getBean(SparkSessionFactory.class).builder("CryptoDailyAnalysis").getOrCreate();
+        long generateStarted = System.nanoTime();
+        Dataset<Row> ticks = new SyntheticHistoryGenerator(seed).generate(spark, scale, closedBefore);
+        if (parquet) {
+            ctx.getBean(ParquetArchiveJob.class).replaceArchive(ticks, closedBefore);
+        } else {
+            new PostgresCopySink(url, user, password, 8).append(ticks.drop("date"), "coin_tick");
+            try (Connection connection = DriverManager.getConnection(url, user, password);
+                 Statement statement = connection.createStatement()) {
+                statement.execute("ANALYZE coin_tick");
+            }
+        }
+        double generateSeconds = (System.nanoTime() - generateStarted) / 1e9;
+
+        // runDailyAnalysis подхватывает эту же сессию и останавливает её в конце
+        MetricsListener listener = new MetricsListener();
+        spark.sparkContext().addSparkListener(listener);
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP).toList();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        long analysisStarted = System.nanoTime();
+        Map<String, Long> output = ctx.getBean(SparkBatchProcessor.class).runDailyAnalysis();
+        double analysisSeconds = (System.nanoTime() - analysisStarted) / 1e9;
+
+        long peakHeap = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        long outputRows = output.values().stream().mapToLong(Long::longValue).sum();
+        logger.info("Строк результата по таблицам: {}", output);
+
+        return String.join(",", scale.toString(), Integer.toString(scale.coins()), Integer.toString(scale.days()),
+                Integer.toString(scale.intervalMinutes()), Long.toString(scale.rows()), parquet ? "parquet" : "postgres",
+                format(generateSeconds), format(analysisSeconds), format(scale.rows() / analysisSeconds),
+                format(peakHeap / 1048576.0), format(listener.shuffleWrite.get() / 1048576.0),
+                format(listener.shuffleRead.get() / 1048576.0), format(listener.spilled.get() / 1048576.0),
+                Long.toString(outputRows));
+    }
+
+    private void checkWipeAllowed(String url, String user, String password) throws SQLException {
+        if (wipe) {
+            return;
+        }
+        List<String> nonEmpty = new ArrayList<>();
+        try (Connection connection = DriverManager.getConnection(url, user, password);
+             Statement statement = connection.createStatement()) {
+            // Тики могли быть выгружены в архив или удалены, а результаты анализа и справочник остаться
+            for (String table : existingTables(connection)) {
+                try (ResultSet rs = statement.executeQuery("SELECT EXISTS (SELECT 1 FROM " + table + ")")) {
+                    rs.next();
+                    if (rs.getBoolean(1)) {
+                        nonEmpty.add(table);
+                    }
+                }
+            }
+        }
+        if (!nonEmpty.isEmpty()) {
+            throw new IllegalStateException("Таблицы " + nonEmpty + " не пусты: прогон их стирает, " +
+                    "запустите его на отдельной базе с --wipe");
+        }
+    }
+
+    private static List<String> existingTables(Connection connection) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT to_regclass(?) IS NOT NULL")) {
+            for (String table : WIPED_TABLES) {
+                statement.setString(1, table);
+                try (ResultSet rs = statement.executeQuery()) {
+                    rs.next();
+                    if (rs.getBoolean(1)) {
+                        tables.add(table);
+                    }
+                }
+            }
+        }
+        return tables;
+    }
+
+    private void resetDatabase(String url, String user, String password, int coins) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, user, password);
+             Statement statement = connection.createStatement()) {
+            statement.execute("TRUNCATE " + String.join(", ", existingTables(connection)));
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO coin (coin_key, coin_id, symbol) " +
+                            "SELECT g, 'synthetic-' || lpad(g::text, 6, '0'), 's' || g FROM generate_series(1, ?) g")) {
+                insert.setInt(1, coins);
+                insert.executeUpdate();
+            }
+            // Ключи заданы явно: счётчик identity сдвигается за них
+            statement.execute("SELECT setval(pg_get_serial_sequence('coin', 'coin_key'), " + coins + ")");
+        }
+    }
+
+    private void appendReport(String line) throws IOException {
+        if (report.getParent() != null) {
+            Files.createDirectories(report.getParent());
+        }
+        if (!Files.exists(report)) {
+            Files.writeString(report, REPORT_HEADER + System.lineSeparator());
+        }
+        Files.writeString(report, line + System.lineSeparator(), StandardOpenOption.APPEND);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    // Объём shuffle и сброса на диск по завершённым задачам
+    static class MetricsListener extends SparkListener {
+        final AtomicLong shuffleWrite = new AtomicLong();
+        final AtomicLong shuffleRead = new AtomicLong();
+        final AtomicLong spilled = new AtomicLong();
+
+        @Override
+        public void onTaskEnd(SparkListenerTaskEnd taskEnd) {
+            TaskMetrics metrics = taskEnd.taskMetrics();
+            if (metrics == null) {
+                return;
+            }
+            shuffleWrite.addAndGet(metrics.shuffleWriteMetrics().bytesWritten());
+            shuffleRead.addAndGet(metrics.shuffleReadMetrics().totalBytesRead());
+            spilled.addAndGet(metrics.diskBytesSpilled());
+        }
+    }
+}
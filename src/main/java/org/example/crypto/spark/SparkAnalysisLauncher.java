@@ -0,0 +1,237 @@
+package org.example.crypto.spark;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import org.apache.spark.launcher.SparkAppHandle;
+import org.apache.spark.launcher.SparkLauncher;
+import org.example.crypto.cluster.WriteFence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.jar.JarFile;
+
+// Запуск AnalysisRunnerMain в отдельном процессе. С spark-home - через spark-submit
+// (любой master, включая standalone и local-cluster), без него - дочерней JVM с тем же jar.
+@Component
+public class SparkAnalysisLauncher {
+
+    private static final Logger logger = LoggerFactory.getLogger(SparkAnalysisLauncher.class);
+
+    private static final String BOOT_LAUNCHER = "org.springframework.boot.loader.launch.PropertiesLauncher";
+
+    private final SparkSessionFactory sparkSessionFactory;
+    private final MeterRegistry meterRegistry;
+
+    @Getter
+    @Value("${crypto.spark.launcher.enabled:false}")
+    private boolean enabled;
+
+    @Value("${crypto.spark.launcher.spark-home:}")
+    private String sparkHome;
+
+    @Value("${crypto.spark.launcher.deploy-mode:client}")
+    private String deployMode;
+
+    @Value("${crypto.spark.launcher.driver-memory:2g}")
+    private String driverMemory;
+
+    @Value("${crypto.spark.launcher.timeout-minutes:30}")
+    private long timeoutMinutes;
+
+    @Value("${crypto.spark.launcher.app-resource:}")
+    private String appResource;
+
+    @Value("${spring.datasource.url:jdbc:postgresql://localhost:5432/cryptodb}")
+    private String dbUrl;
+
+    @Value("${spring.datasource.username:postgres}")
+    private String dbUsername;
+
+    @Value("${spring.datasource.password:admin}")
+    private String dbPassword;
+
+    // Запущенный анализ, чтобы его можно было остановить при потере лидерства
+    private volatile SparkAppHandle runningHandle;
+    private volatile Process runningProcess;
+
+    public SparkAnalysisLauncher(SparkSessionFactory sparkSessionFactory, MeterRegistry meterRegistry) {
+        this.sparkSessionFactory = sparkSessionFactory;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public void run() throws IOException, InterruptedException, TimeoutException {
+        run(WriteFence.NONE);
+    }
+
+    public void run(WriteFence fence) throws IOException, InterruptedException, TimeoutException {
+        String mode = sparkHome.isBlank() ? "process" : "spark-submit";
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "failed";
+        try {
+            if (sparkHome.isBlank()) {
+                runChildJvm(fence);
+            } else {
+                runSparkSubmit(fence);
+            }
+            outcome = "finished";
+        } finally {
+            sample.stop(meterRegistry.timer("crypto.spark.analysis.run", "mode", mode, "outcome", outcome));
+        }
+    }
+
+    public void cancel() {
+        SparkAppHandle handle = runningHandle;
+        if (handle != null) {
+            logger.warn("Остановка Spark анализа {}", handle.getAppId() != null ? handle.getAppId() : "");
+            handle.kill();
+        }
+        Process process = runningProcess;
+        if (process != null) {
+            logger.warn("Остановка Spark анализа, pid {}", process.pid());
+            process.destroyForcibly();
+        }
+    }
+
+    private void runSparkSubmit(WriteFence fence) throws IOException, InterruptedException, TimeoutException {
+        Path jar = applicationJar();
+        SparkLauncher launcher = new SparkLauncher(childEnvironment())
+                .setSparkHome(sparkHome)
+                .setAppName("CryptoDailyAnalysis")
+                .setMaster(sparkSessionFactory.getMaster())
+                .setDeployMode(deployMode)
+                .setAppResource(jar.toString())
+                .redirectToLog(AnalysisRunnerMain.class.getName());
+        boolean bootJar = isBootJar(jar);
+        submitConf(bootJar).forEach(launcher::setConf);
+        // Дочерний процесс не видит выбора лидера приложения: токен передаётся ему аргументами
+        launcher.addAppArgs(fence.arguments().toArray(String[]::new));
+        launcher.setMainClass(bootJar ? BOOT_LAUNCHER : AnalysisRunnerMain.class.getName());
+
+        CountDownLatch finished = new CountDownLatch(1);
+        SparkAppHandle handle = launcher.startApplication(new SparkAppHandle.Listener() {
+            @Override
+            public void stateChanged(SparkAppHandle h) {
+                logger.info("Spark анализ {}: {}", h.getAppId() != null ? h.getAppId() : "", h.getState());
+                if (h.getState().isFinal()) {
+                    finished.countDown();
+                }
+            }
+
+            @Override
+            public void infoChanged(SparkAppHandle h) {
+            }
+        });
+
+        runningHandle = handle;
+        try {
+            if (!finished.await(timeoutMinutes, TimeUnit.MINUTES)) {
+                handle.kill();
+                throw new TimeoutException("Spark анализ не завершился за " + timeoutMinutes + " мин");
+            }
+        } finally {
+            runningHandle = null;
+        }
+        if (handle.getState() != SparkAppHandle.State.FINISHED) {
+            throw new IllegalStateException("Spark анализ завершился со статусом " + handle.getState());
+        }
+    }
+
+    // Параметры spark-submit: память драйвера, затем crypto.spark.* (могут её переопределить)
+    Map<String, String> submitConf(boolean bootJar) {
+        Map<String, String> conf = new LinkedHashMap<>();
+        conf.put(SparkLauncher.DRIVER_MEMORY, driverMemory);
+        conf.putAll(sparkSessionFactory.sparkConf());
+        if (bootJar) {
+            // Spring Boot jar: зависимости вложены, поэтому запускаем через загрузчик Boot
+            conf.put(SparkLauncher.DRIVER_EXTRA_JAVA_OPTIONS, "-Dloader.main=" + AnalysisRunnerMain.class.getName());
+        }
+        return conf;
+    }
+
+    List<String> childCommand(WriteFence fence, List<String> jvmArguments) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Xmx" + driverMemory);
+        // Флаги --add-opens родительской JVM нужны Spark и в дочерней
+        for (String argument : jvmArguments) {
+            if (argument.startsWith("--add-opens") || argument.startsWith("--add-exports")) {
+                command.add(argument);
+            }
+        }
+
+        String classpath = appResource.isBlank() ? System.getProperty("java.class.path") : appResource;
+        command.add("-cp");
+        command.add(classpath);
+        if (!classpath.contains(File.pathSeparator) && isBootJar(Paths.get(classpath))) {
+            command.add("-Dloader.main=" + AnalysisRunnerMain.class.getName());
+            command.add(BOOT_LAUNCHER);
+        } else {
+            command.add(AnalysisRunnerMain.class.getName());
+        }
+        command.add("--crypto.spark.master=" + sparkSessionFactory.getMaster());
+        command.addAll(fence.arguments());
+        return command;
+    }
+
+    private void runChildJvm(WriteFence fence) throws IOException, InterruptedException, TimeoutException {
+        List<String> command = childCommand(fence, ManagementFactory.getRuntimeMXBean().getInputArguments());
+
+        ProcessBuilder builder = new ProcessBuilder(command).inheritIO();
+        builder.environment().putAll(childEnvironment());
+        Process process = builder.start();
+        logger.info("Spark анализ запущен в отдельной JVM, pid {}", process.pid());
+
+        runningProcess = process;
+        try {
+            if (!process.waitFor(timeoutMinutes, TimeUnit.MINUTES)) {
+                process.destroyForcibly();
+                throw new TimeoutException("Spark анализ не завершился за " + timeoutMinutes + " мин");
+            }
+        } finally {
+            runningProcess = null;
+        }
+        if (process.exitValue() != 0) {
+            throw new IllegalStateException("Spark анализ завершился с кодом " + process.exitValue());
+        }
+    }
+
+    // Параметры БД передаются через окружение, чтобы пароль не попадал в командную строку
+    private Map<String, String> childEnvironment() {
+        return Map.of(
+                "SPRING_DATASOURCE_URL", dbUrl,
+                "SPRING_DATASOURCE_USERNAME", dbUsername,
+                "SPRING_DATASOURCE_PASSWORD", dbPassword);
+    }
+
+    private Path applicationJar() {
+        String path = appResource.isBlank() ? System.getProperty("java.class.path") : appResource;
+        if (path.contains(File.pathSeparator) || !path.endsWith(".jar")) {
+            throw new IllegalStateException("Для spark-submit нужен собранный jar: задайте crypto.spark.launcher.app-resource");
+        }
+        return Paths.get(path).toAbsolutePath();
+    }
+
+    private static boolean isBootJar(Path path) throws IOException {
+        if (!path.toString().endsWith(".jar")) {
+            return false;
+        }
+        try (JarFile jar = new JarFile(path.toFile())) {
+            return jar.getManifest() != null && jar.getManifest().getMainAttributes().getValue("Spring-Boot-Version") != null;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.example.crypto.spark;
 
+import org.example.crypto.cluster.LeaderElectionService;
+import org.example.crypto.cluster.WriteFence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,15 +16,37 @@ public class SparkRunner {
     @Autowired
     private SparkBatchProcessor sparkBatchProcessor;
 
-    public void runSparkAnalysis() {
-        logger.info("Запуск встроенного Spark анализа");
+    @Autowired
+    private SparkAnalysisLauncher sparkAnalysisLauncher;
+
+    @Autowired
+    private LeaderElectionService leaderElectionService;
 
+    public boolean runSparkAnalysis() {
         try {
-            sparkBatchProcessor.runDailyAnalysis();
+            // Токен берётся до запуска: если лидерство сменится во время прогона, его результат не запишется
+            WriteFence fence = leaderElectionService.fence();
+            if (sparkAnalysisLauncher.isEnabled()) {
+                logger.info("Запуск Spark анализа в отдельном процессе");
+                sparkAnalysisLauncher.run(fence);
+            } else {
+                logger.info("Запуск встроенного Spark анализа");
+                sparkBatchProcessor.runDailyAnalysis(fence);
+            }
 
             logger.info("Spark анализ завершен успешно");
+            return true;
         } catch (Exception e) {
             logger.error("Ошибка Spark анализа: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+
+    public void cancelAnalysis() {
+        if (sparkAnalysisLauncher.isEnabled()) {
+            sparkAnalysisLauncher.cancel();
+        } else {
+            sparkBatchProcessor.cancel();
         }
     }
-}
\ No newline at end of file
+}
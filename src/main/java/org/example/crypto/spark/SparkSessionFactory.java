@@ -0,0 +1,73 @@
+package org.example.crypto.spark;
+
+import lombok.Getter;
+import org.apache.spark.sql.SparkSession;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Параметры Spark берутся из crypto.spark.*, произвольные ключи - из crypto.spark.conf
+@Component
+public class SparkSessionFactory {
+
+    private final Environment environment;
+
+    @Getter
+    @Value("${crypto.spark.master:local[*]}")
+    private String master;
+
+    @Value("${crypto.spark.executor-memory:}")
+    private String executorMemory;
+
+    @Value("${crypto.spark.executor-cores:}")
+    private String executorCores;
+
+    @Value("${crypto.spark.shuffle-partitions:}")
+    private String shufflePartitions;
+
+    public SparkSessionFactory(Environment environment) {
+        this.environment = environment;
+    }
+
+    public Map<String, String> sparkConf() {
+        Map<String, String> conf = new LinkedHashMap<>();
+        conf.put("spark.sql.adaptive.enabled", "true");
+        putIfSet(conf, "spark.executor.memory", executorMemory);
+        putIfSet(conf, "spark.executor.cores", executorCores);
+        putIfSet(conf, "spark.sql.shuffle.partitions", shufflePartitions);
+        conf.putAll(Binder.get(environment)
+                .bind("crypto.spark.conf", Bindable.mapOf(String.class, String.class))
+                .orElse(Map.of()));
+        return conf;
+    }
+
+    public SparkSession.Builder builder(String appName) {
+        return builder(appName, Map.of());
+    }
+
+    // defaults - значения сессии по умолчанию, настройки crypto.spark.* их переопределяют
+    public SparkSession.Builder builder(String appName, Map<String, String> defaults) {
+        SparkSession.Builder builder = SparkSession.builder()
+                .appName(appName)
+                .master(master);
+        sessionConf(defaults).forEach(builder::config);
+        return builder;
+    }
+
+    Map<String, String> sessionConf(Map<String, String> defaults) {
+        Map<String, String> conf = new LinkedHashMap<>(defaults);
+        conf.putAll(sparkConf());
+        return conf;
+    }
+
+    private static void putIfSet(Map<String, String> conf, String key, String value) {
+        if (value != null && !value.isBlank()) {
+            conf.put(key, value);
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package org.example.crypto.spark;
+
+import lombok.Getter;
+import org.apache.spark.api.java.function.VoidFunction2;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.functions;
+import org.apache.spark.sql.streaming.StreamingQuery;
+import org.apache.spark.sql.streaming.Trigger;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+
+@Component
+public class SparkStreamingProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(SparkStreamingProcessor.class);
+
+    private static final String QUERY_NAME = "crypto_ticks";
+
+    // Spark выставляет id запроса локальным свойством потока, в котором выполняется микробатч
+    private static final String QUERY_ID_PROPERTY = "sql.streaming.queryId";
+
+    private static final StructType TICK_SCHEMA = new StructType()
+            .add("coin_id", DataTypes.StringType)
+            .add("symbol", DataTypes.StringType)
+            .add("price", DataTypes.DoubleType)
+            .add("volume", DataTypes.DoubleType)
+            .add("market_cap", DataTypes.DoubleType)
+            .add("timestamp", DataTypes.TimestampType);
+
+    private static final List<String> DDL = List.of(
+            "CREATE TABLE IF NOT EXISTS spark_stream_progress (query_name varchar PRIMARY KEY, batch_id bigint NOT NULL)",
+            "ALTER TABLE spark_stream_progress ADD COLUMN IF NOT EXISTS query_id varchar",
+            "CREATE TABLE IF NOT EXISTS spark_stream_daily_stats (coin_id varchar NOT NULL, symbol varchar NOT NULL, " +
+                    "date date NOT NULL, tick_count bigint NOT NULL, price_sum double precision NOT NULL, " +
+                    "volume_sum double precision NOT NULL, daily_avg_price double precision, daily_volume double precision, " +
+                    "price_change_pct double precision, volume_change_pct double precision, updated_at timestamptz, " +
+                    "PRIMARY KEY (coin_id, date))",
+            "CREATE TABLE IF NOT EXISTS spark_stream_weekly_volatility (coin_id varchar NOT NULL, symbol varchar NOT NULL, " +
+                    "week timestamp NOT NULL, record_count bigint NOT NULL, price_sum double precision NOT NULL, " +
+                    "price_sq_sum double precision NOT NULL, min_price double precision, max_price double precision, " +
+                    "price_range double precision, volatility_pct double precision, updated_at timestamptz, " +
+                    "PRIMARY KEY (coin_id, week))",
+            "CREATE TABLE IF NOT EXISTS spark_stream_latest_market_cap (coin_id varchar PRIMARY KEY, symbol varchar NOT NULL, " +
+                    "market_cap double precision, timestamp timestamp NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS spark_stream_market_dominance (coin_id varchar PRIMARY KEY, symbol varchar NOT NULL, " +
+                    "market_cap double precision, market_dominance_pct double precision, analysis_timestamp timestamptz)"
+    );
+
+    private static final String UPSERT_DAILY =
+            "INSERT INTO spark_stream_daily_stats AS s (coin_id, symbol, date, tick_count, price_sum, volume_sum, " +
+            "daily_avg_price, daily_volume, updated_at) VALUES (?, ?, ?, ?, ?, ?, ? / ?, ?, now()) " +
+            "ON CONFLICT (coin_id, date) DO UPDATE SET tick_count = s.tick_count + EXCLUDED.tick_count, " +
+            "price_sum = s.price_sum + EXCLUDED.price_sum, volume_sum = s.volume_sum + EXCLUDED.volume_sum, " +
+            "daily_avg_price = (s.price_sum + EXCLUDED.price_sum) / (s.tick_count + EXCLUDED.tick_count), " +
+            "daily_volume = s.volume_sum + EXCLUDED.volume_sum, updated_at = now()";
+
+    // Изменение пересчитывается и для следующего дня: опоздавший тик меняет его базу
+    private static final String UPDATE_DAILY_CHANGE =
+            "UPDATE spark_stream_daily_stats d SET " +
+            "price_change_pct = round(((d.daily_avg_price - p.daily_avg_price) / NULLIF(p.daily_avg_price, 0) * 100)::numeric, 2), " +
+            "volume_change_pct = round(((d.daily_volume - p.daily_volume) / NULLIF(p.daily_volume, 0) * 100)::numeric, 2) " +
+            "FROM spark_stream_daily_stats p WHERE p.coin_id = d.coin_id AND p.date = d.date - 1 " +
+            "AND d.coin_id = ? AND d.date IN (?, ?::date + 1)";
+
+    private static final String UPSERT_WEEKLY =
+            "INSERT INTO spark_stream_weekly_volatility AS s (coin_id, symbol, week, record_count, price_sum, price_sq_sum, " +
+            "min_price, max_price, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, now()) " +
+            "ON CONFLICT (coin_id, week) DO UPDATE SET record_count = s.record_count + EXCLUDED.record_count, " +
+            "price_sum = s.price_sum + EXCLUDED.price_sum, price_sq_sum = s.price_sq_sum + EXCLUDED.price_sq_sum, " +
+            "min_price = LEAST(s.min_price, EXCLUDED.min_price), max_price = GREATEST(s.max_price, EXCLUDED.max_price), " +
+            "updated_at = now()";
+
+    private static final String UPDATE_WEEKLY_VOLATILITY =
+            "UPDATE spark_stream_weekly_volatility SET price_range = max_price - min_price, " +
+            "volatility_pct = CASE WHEN record_count >= 3 THEN round((sqrt(GREATEST(price_sq_sum - price_sum * price_sum / record_count, 0) " +
+            "/ (record_count - 1)) / NULLIF(price_sum / record_count, 0) * 100)::numeric, 2) END " +
+            "WHERE coin_id = ? AND week = ?";
+
+    private static final String UPSERT_LATEST_MARKET_CAP =
+            "INSERT INTO spark_stream_latest_market_cap AS s (coin_id, symbol, market_cap, timestamp) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (coin_id) DO UPDATE SET symbol = EXCLUDED.symbol, market_cap = EXCLUDED.market_cap, " +
+            "timestamp = EXCLUDED.timestamp WHERE EXCLUDED.timestamp > s.timestamp";
+
+    private static final String REFRESH_DOMINANCE =
+            "INSERT INTO spark_stream_market_dominance (coin_id, symbol, market_cap, market_dominance_pct, analysis_timestamp) " +
+            "SELECT coin_id, symbol, market_cap, round((market_cap / NULLIF(sum(market_cap) OVER (), 0) * 100)::numeric, 2), now() " +
+            "FROM spark_stream_latest_market_cap " +
+            "ON CONFLICT (coin_id) DO UPDATE SET symbol = EXCLUDED.symbol, market_cap = EXCLUDED.market_cap, " +
+            "market_dominance_pct = EXCLUDED.market_dominance_pct, analysis_timestamp = EXCLUDED.analysis_timestamp";
+
+    // Последний применённый батч. id запроса хранится в контрольной точке: с новой контрольной точкой
+    // у запроса новый id, и номера батчей снова идут с нуля
+    record Progress(String queryId, long batchId) {
+    }
+
+    @Getter
+    @Value("${crypto.spark.streaming.enabled:false}")
+    private boolean enabled;
+
+    @Value("${crypto.spark.streaming.landing-dir:data/landing/ticks}")
+    private String landingDir;
+
+    @Value("${crypto.spark.streaming.checkpoint-dir:data/spark-checkpoints/ticks}")
+    private String checkpointDir;
+
+    @Value("${crypto.spark.streaming.trigger-interval:5 seconds}")
+    private String triggerInterval;
+
+    @Value("${crypto.spark.streaming.watermark:1 hour}")
+    private String watermark;
+
+    @Value("${spring.datasource.url:jdbc:postgresql://localhost:5432/cryptodb}")
+    private String dbUrl;
+
+    @Value("${spring.datasource.username:postgres}")
+    private String dbUsername;
+
+    @Value("${spring.datasource.password:admin}")
+    private String dbPassword;
+
+    private final SparkSessionFactory sparkSessionFactory;
+
+    private SparkSession spark;
+    private StreamingQuery query;
+
+    public SparkStreamingProcessor(SparkSessionFactory sparkSessionFactory) {
+        this.sparkSessionFactory = sparkSessionFactory;
+    }
+
+    public synchronized boolean isRunning() {
+        return query != null && query.isActive();
+    }
+
+    public synchronized void start() {
+        if (isRunning()) {
+            return;
+        }
+        logger.info("Запуск потокового Spark анализа, каталог {}", landingDir);
+
+        try {
+            createTables();
+
+            // Микробатчи маленькие: без crypto.spark.shuffle-partitions хватает 4 разделов вместо 200
+            spark = sparkSessionFactory.builder("CryptoStreamingAnalysis", Map.of("spark.sql.shuffle.partitions", "4"))
+                    .getOrCreate();
+
+            Dataset<Row> ticks = spark.readStream()
+                    .schema(TICK_SCHEMA)
+                    .option("maxFilesPerTrigger", 1000)
+                    .option("cleanSource", "delete")
+                    .json(landingDir)
+                    .withWatermark("timestamp", watermark)
+                    // Опрос без изменений возвращает тот же last_updated, такие повторы отбрасываем
+                    .dropDuplicatesWithinWatermark("coin_id", "timestamp");
+
+            String url = dbUrl;
+            String user = dbUsername;
+            String password = dbPassword;
+            VoidFunction2<Dataset<Row>, Long> upsert = (batch, batchId) -> upsertBatch(batch, batchId, url, user, password);
+
+            query = ticks.writeStream()
+                    .queryName(QUERY_NAME)
+                    .option("checkpointLocation", checkpointDir)
+                    .trigger(Trigger.ProcessingTime(triggerInterval))
+                    .foreachBatch(upsert)
+                    .start();
+        } catch (Exception e) {
+            logger.error("Не удалось запустить потоковый анализ: {}", e.getMessage(), e);
+            stop();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        try {
+            if (query != null) {
+                query.stop();
+            }
+        } catch (Exception e) {
+            logger.warn("Ошибка остановки потокового запроса: {}", e.getMessage());
+        } finally {
+            query = null;
+            if (spark != null) {
+                spark.stop();
+                spark = null;
+                logger.info("Потоковый Spark анализ остановлен");
+            }
+        }
+    }
+
+    // Окна дня и недели хранятся в PostgreSQL как суммируемые статистики (count, sum, sum of squares, min, max),
+    // поэтому каждый микробатч обрабатывает только новые тики
+    private static void upsertBatch(Dataset<Row> batch, long batchId, String url, String user, String password) throws SQLException {
+        batch.persist();
+        try {
+            writeBatch(batch, batchId, url, user, password);
+        } finally {
+            batch.unpersist();
+        }
+    }
+
+    private static void writeBatch(Dataset<Row> batch, long batchId, String url, String user, String password) throws SQLException {
+        String queryId = queryId(batch);
+        Dataset<Row> daily = batch
+                .groupBy(functions.col("coin_id"), functions.col("symbol"), functions.to_date(functions.col("timestamp")).alias("date"))
+                .agg(functions.count("price").alias("tick_count"),
+                        functions.sum("price").alias("price_sum"),
+                        functions.coalesce(functions.sum("volume"), functions.lit(0d)).alias("volume_sum"));
+
+        Dataset<Row> weekly = batch
+                .groupBy(functions.col("coin_id"), functions.col("symbol"), functions.date_trunc("week", functions.col("timestamp")).alias("week"))
+                .agg(functions.count("price").alias("record_count"),
+                        functions.sum("price").alias("price_sum"),
+                        functions.sum(functions.col("price").multiply(functions.col("price"))).alias("price_sq_sum"),
+                        functions.min("price").alias("min_price"),
+                        functions.max("price").alias("max_price"));
+
+        Dataset<Row> latest = batch
+                .groupBy("coin_id")
+                .agg(functions.max_by(functions.struct("symbol", "market_cap", "timestamp"), functions.col("timestamp")).alias("latest"))
+                .select("coin_id", "latest.symbol", "latest.market_cap", "latest.timestamp");
+
+        List<Row> dailyRows = daily.collectAsList();
+        List<Row> weeklyRows = weekly.collectAsList();
+        List<Row> latestRows = latest.collectAsList();
+
+        try (Connection connection = DriverManager.getConnection(url, user, password)) {
+            connection.setAutoCommit(false);
+
+            // foreachBatch может повторить батч после сбоя, поэтому номер батча фиксируется в той же транзакции
+            if (!claimBatch(connection, queryId, batchId)) {
+                connection.rollback();
+                logger.info("Батч {} запроса {} уже применён, пропускаем", batchId, queryId);
+                return;
+            }
+
+            try (PreparedStatement upsert = connection.prepareStatement(UPSERT_DAILY);
+                 PreparedStatement change = connection.prepareStatement(UPDATE_DAILY_CHANGE)) {
+                for (Row row : dailyRows) {
+                    upsert.setString(1, row.getString(0));
+                    upsert.setString(2, row.getString(1));
+                    upsert.setDate(3, row.getDate(2));
+                    upsert.setLong(4, row.getLong(3));
+                    upsert.setDouble(5, row.getDouble(4));
+                    upsert.setDouble(6, row.getDouble(5));
+                    upsert.setDouble(7, row.getDouble(4));
+                    upsert.setLong(8, row.getLong(3));
+                    upsert.setDouble(9, row.getDouble(5));
+                    upsert.addBatch();
+
+                    change.setString(1, row.getString(0));
+                    change.setDate(2, row.getDate(2));
+                    change.setDate(3, row.getDate(2));
+                    change.addBatch();
+                }
+                upsert.executeBatch();
+                change.executeBatch();
+            }
+
+            try (PreparedStatement upsert = connection.prepareStatement(UPSERT_WEEKLY);
+                 PreparedStatement volatility = connection.prepareStatement(UPDATE_WEEKLY_VOLATILITY)) {
+                for (Row row : weeklyRows) {
+                    upsert.setString(1, row.getString(0));
+                    upsert.setString(2, row.getString(1));
+                    upsert.setTimestamp(3, row.getTimestamp(2));
+                    upsert.setLong(4, row.getLong(3));
+                    upsert.setDouble(5, row.getDouble(4));
+                    upsert.setDouble(6, row.getDouble(5));
+                    upsert.setDouble(7, row.getDouble(6));
+                    upsert.setDouble(8, row.getDouble(7));
+                    upsert.addBatch();
+
+                    volatility.setString(1, row.getString(0));
+                    volatility.setTimestamp(2, row.getTimestamp(2));
+                    volatility.addBatch();
+                }
+                upsert.executeBatch();
+                volatility.executeBatch();
+            }
+
+            try (PreparedStatement upsert = connection.prepareStatement(UPSERT_LATEST_MARKET_CAP)) {
+                for (Row row : latestRows) {
+                    if (row.isNullAt(2)) {
+                        continue;
+                    }
+                    upsert.setString(1, row.getString(0));
+                    upsert.setString(2, row.getString(1));
+                    upsert.setDouble(3, row.getDouble(2));
+                    upsert.setTimestamp(4, row.getTimestamp(3));
+                    upsert.addBatch();
+                }
+                upsert.executeBatch();
+            }
+            if (!latestRows.isEmpty()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate(REFRESH_DOMINANCE);
+                }
+            }
+
+            connection.commit();
+        }
+    }
+
+    static String queryId(Dataset<Row> batch) {
+        String queryId = batch.sparkSession().sparkContext().getLocalProperty(QUERY_ID_PROPERTY);
+        if (queryId == null) {
+            throw new IllegalStateException("Батч выполняется вне потокового запроса: нет " + QUERY_ID_PROPERTY);
+        }
+        return queryId;
+    }
+
+    static boolean isNewBatch(Progress applied, String queryId, long batchId) {
+        return applied == null || !queryId.equals(applied.queryId()) || batchId > applied.batchId();
+    }
+
+    // Строка прогресса блокируется до конца транзакции батча
+    private static boolean claimBatch(Connection connection, String queryId, long batchId) throws SQLException {
+        Progress applied = null;
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT query_id, batch_id FROM spark_stream_progress WHERE query_name = ? FOR UPDATE")) {
+            ps.setString(1, QUERY_NAME);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    applied = new Progress(rs.getString(1), rs.getLong(2));
+                }
+            }
+        }
+        if (!isNewBatch(applied, queryId, batchId)) {
+            return false;
+        }
+        if (applied != null && !queryId.equals(applied.queryId())) {
+            logger.warn("Новая контрольная точка потокового запроса: id {} вместо {}, прогресс начинается заново",
+                    queryId, applied.queryId());
+        }
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO spark_stream_progress (query_name, query_id, batch_id) VALUES (?, ?, ?) " +
+                "ON CONFLICT (query_name) DO UPDATE SET query_id = EXCLUDED.query_id, batch_id = EXCLUDED.batch_id")) {
+            ps.setString(1, QUERY_NAME);
+            ps.setString(2, queryId);
+            ps.setLong(3, batchId);
+            ps.executeUpdate();
+        }
+        return true;
+    }
+
+    private void createTables() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(dbUrl, dbUsername, dbPassword);
+             Statement statement = connection.createStatement()) {
+            for (String ddl : DDL) {
+                statement.execute(ddl);
+            }
+        }
+    }
+}
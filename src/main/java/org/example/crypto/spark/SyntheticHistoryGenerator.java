@@ -0,0 +1,167 @@
+package org.example.crypto.spark;
+
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.RowFactory;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructType;
+
+import java.io.Serializable;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// Синтетическая история тиков для нагрузочных прогонов анализа: coins монет x days дней с шагом intervalMinutes.
+// Цены открытия дней - геометрическое случайное блуждание со своей волатильностью у каждой монеты и редкими скачками;
+// внутри дня - броуновский мост между открытиями соседних дней. Поэтому каждый (монета, день) генерируется
+// независимо, а раздел Spark совпадает с одним днём и пишет один файл на раздел архива.
+public class SyntheticHistoryGenerator {
+
+    static final StructType SCHEMA = new StructType()
+            .add("coin_key", DataTypes.IntegerType, false)
+            .add("ts", DataTypes.TimestampType, false)
+            .add("price", DataTypes.DoubleType, false)
+            .add("volume", DataTypes.DoubleType, false)
+            .add("market_cap", DataTypes.DoubleType, false)
+            .add("date", DataTypes.DateType, false);
+
+    // Размер прогона в виде "монетыxдни" или "монетыxдни@минуты", например 1000x1095@1
+    public record Scale(int coins, int days, int intervalMinutes) {
+        public Scale {
+            if (coins < 1 || days < 1 || intervalMinutes < 1 || 1440 % intervalMinutes != 0) {
+                throw new IllegalArgumentException("Некорректный размер: " + coins + "x" + days + "@" + intervalMinutes);
+            }
+        }
+
+        public static Scale parse(String spec, int defaultIntervalMinutes) {
+            String[] parts = spec.trim().split("@");
+            String[] size = parts[0].split("x");
+            if (size.length != 2) {
+                throw new IllegalArgumentException("Ожидается монетыxдни[@минуты]: " + spec);
+            }
+            int interval = parts.length > 1 ? Integer.parseInt(parts[1]) : defaultIntervalMinutes;
+            return new Scale(Integer.parseInt(size[0]), Integer.parseInt(size[1]), interval);
+        }
+
+        public int stepsPerDay() {
+            return 1440 / intervalMinutes;
+        }
+
+        public long rows() {
+            return (long) coins * days * stepsPerDay();
+        }
+
+        @Override
+        public String toString() {
+            return coins + "x" + days + "@" + intervalMinutes;
+        }
+    }
+
+    private final long seed;
+
+    public SyntheticHistoryGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    // Тики (coin_key, ts, price, volume, market_cap, date) за days дней до closedBefore; coin_key от 1 до coins
+    public Dataset<Row> generate(SparkSession spark, Scale scale, LocalDate closedBefore) {
+        Market market = Market.create(seed, scale, closedBefore.minusDays(scale.days()));
+        Broadcast<Market> broadcast = JavaSparkContext.fromSparkContext(spark.sparkContext()).broadcast(market);
+        int coins = scale.coins();
+        // Номера идут день за днём, поэтому каждый из days разделов - ровно один день всех монет
+        return spark.range(0, (long) coins * scale.days(), 1, scale.days())
+                .flatMap((FlatMapFunction<Long, Row>) id ->
+                        broadcast.value().day((int) (id % coins), (int) (id / coins)).iterator(), Encoders.row(SCHEMA));
+    }
+
+    static final class Market implements Serializable {
+
+        private final long seed;
+        private final int stepsPerDay;
+        private final int intervalMinutes;
+        private final long firstDayEpochSecond;
+        private final double[] dailySigma;
+        private final double[] baseVolume;
+        private final double[] supply;
+        // Логарифм цены открытия: days + 1 значение на монету, последнее - открытие следующего за периодом дня
+        private final double[][] logOpen;
+
+        private Market(long seed, Scale scale, LocalDate firstDay) {
+            this.seed = seed;
+            this.stepsPerDay = scale.stepsPerDay();
+            this.intervalMinutes = scale.intervalMinutes();
+            this.firstDayEpochSecond = firstDay.atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+            this.dailySigma = new double[scale.coins()];
+            this.baseVolume = new double[scale.coins()];
+            this.supply = new double[scale.coins()];
+            this.logOpen = new double[scale.coins()][scale.days() + 1];
+        }
+
+        static Market create(long seed, Scale scale, LocalDate firstDay) {
+            Market market = new Market(seed, scale, firstDay);
+            for (int coin = 0; coin < scale.coins(); coin++) {
+                SplittableRandom random = new SplittableRandom(mix(seed, coin, -1));
+                // Годовая волатильность 40-160%, цены от центов до десятков тысяч
+                double sigma = (0.4 + 1.2 * random.nextDouble()) / Math.sqrt(365);
+                market.dailySigma[coin] = sigma;
+                market.supply[coin] = Math.pow(10, 6 + 4 * random.nextDouble());
+                double[] open = market.logOpen[coin];
+                open[0] = Math.log(10) * (6 * random.nextDouble() - 2);
+                market.baseVolume[coin] = Math.exp(open[0]) * market.supply[coin] * (0.01 + 0.1 * random.nextDouble());
+                for (int day = 1; day < open.length; day++) {
+                    double shock = random.nextGaussian();
+                    if (random.nextDouble() < 0.02) {
+                        shock *= 4;
+                    }
+                    open[day] = open[day - 1] - 0.5 * sigma * sigma + sigma * shock;
+                }
+            }
+            return market;
+        }
+
+        List<Row> day(int coin, int day) {
+            SplittableRandom random = new SplittableRandom(mix(seed, coin, day));
+            int steps = stepsPerDay;
+            double[] walk = new double[steps + 1];
+            for (int i = 1; i <= steps; i++) {
+                walk[i] = walk[i - 1] + random.nextGaussian();
+            }
+            double stepSigma = dailySigma[coin] / Math.sqrt(steps);
+            double from = logOpen[coin][day];
+            double to = logOpen[coin][day + 1];
+            long dayStart = firstDayEpochSecond + day * 86400L;
+            Date date = Date.valueOf(LocalDate.ofEpochDay(Math.floorDiv(dayStart, 86400L)));
+
+            List<Row> rows = new ArrayList<>(steps);
+            double previous = from;
+            for (int i = 0; i < steps; i++) {
+                double fraction = (double) i / steps;
+                // Мост: случайное блуждание, прижатое к открытиям этого и следующего дня
+                double logPrice = from + fraction * (to - from) + stepSigma * (walk[i] - fraction * walk[steps]);
+                double price = Math.exp(logPrice);
+                double move = Math.abs(logPrice - previous) / stepSigma;
+                double volume = baseVolume[coin] / steps * Math.exp(0.5 * random.nextGaussian()) * (1 + move);
+                previous = logPrice;
+                rows.add(RowFactory.create(coin + 1, new Timestamp((dayStart + i * intervalMinutes * 60L) * 1000),
+                        price, volume, price * supply[coin], date));
+            }
+            return rows;
+        }
+
+        private static long mix(long seed, long coin, long day) {
+            long h = seed * 0x9E3779B97F4A7C15L + coin * 0xC2B2AE3D27D4EB4FL + day * 0x165667B19E3779F9L;
+            h ^= h >>> 33;
+            h *= 0xFF51AFD7ED558CCDL;
+            return h ^ (h >>> 33);
+        }
+    }
+}
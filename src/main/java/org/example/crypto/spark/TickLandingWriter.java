@@ -0,0 +1,66 @@
+package org.example.crypto.spark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.example.crypto.model.CoinPriceHistory;
+import org.example.crypto.service.TicksIngestedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+public class TickLandingWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(TickLandingWriter.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Value("${crypto.spark.streaming.enabled:false}")
+    private boolean enabled;
+
+    @Value("${crypto.spark.streaming.landing-dir:data/landing/ticks}")
+    private String landingDir;
+
+    // Файл пишется под скрытым именем и переименовывается целиком: файловый источник Spark
+    // игнорирует имена с точкой в начале и никогда не видит недописанный файл
+    @EventListener
+    public void onTicksIngested(TicksIngestedEvent event) {
+        if (!enabled || event.getTicks().isEmpty()) {
+            return;
+        }
+
+        StringBuilder lines = new StringBuilder();
+        for (CoinPriceHistory tick : event.getTicks()) {
+            ObjectNode node = objectMapper.createObjectNode();
+            node.put("coin_id", tick.getCoinId());
+            node.put("symbol", tick.getSymbol());
+            node.put("price", tick.getPrice());
+            node.put("volume", tick.getVolume());
+            node.put("market_cap", tick.getMarketCap());
+            node.put("timestamp", tick.getTimestamp().toString());
+            lines.append(node).append('\n');
+        }
+
+        try {
+            Path dir = Paths.get(landingDir);
+            Files.createDirectories(dir);
+            String name = "ticks-" + System.currentTimeMillis() + "-" + sequence.incrementAndGet() + ".json";
+            Path temp = dir.resolve("." + name + ".tmp");
+            Files.writeString(temp, lines, StandardCharsets.UTF_8);
+            Files.move(temp, dir.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.error("Не удалось записать тики в каталог {}: {}", landingDir, e.getMessage());
+        }
+    }
+}
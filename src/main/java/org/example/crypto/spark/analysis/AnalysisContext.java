@@ -0,0 +1,106 @@
+package org.example.crypto.spark.analysis;
+
+import lombok.Getter;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.storage.StorageLevel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Промежуточные наборы строятся при первом обращении, кешируются и освобождаются
+// после последнего анализа, который их читает
+public class AnalysisContext implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisContext.class);
+
+    private final AnalysisRegistry registry;
+    private final Map<String, Dataset<Row>> datasets = new HashMap<>();
+    private final Map<String, Integer> remainingConsumers;
+    private final List<Dataset<Row>> analysisResults = new ArrayList<>();
+
+    private final ResultSink sink;
+
+    @Getter
+    private final Timestamp analysisTimestamp;
+
+    public AnalysisContext(AnalysisRegistry registry, Dataset<Row> priceHistory, ResultSink sink,
+                           Timestamp analysisTimestamp) {
+        this.registry = registry;
+        this.sink = sink;
+        this.analysisTimestamp = analysisTimestamp;
+        this.remainingConsumers = registry.consumerCounts();
+        datasets.put(Intermediates.PRICE_HISTORY, priceHistory);
+    }
+
+    public Dataset<Row> get(String name) {
+        Dataset<Row> dataset = datasets.get(name);
+        if (dataset == null) {
+            dataset = registry.getIntermediate(name).builder().apply(this).persist(StorageLevel.MEMORY_AND_DISK());
+            datasets.put(name, dataset);
+            logger.debug("Промежуточный набор {} закеширован", name);
+        }
+        return dataset;
+    }
+
+    public void save(Dataset<Row> result, String table, SaveMode mode) {
+        if (mode == SaveMode.Overwrite) {
+            sink.replace(result, table);
+        } else if (mode == SaveMode.Append) {
+            sink.append(result, table);
+        } else {
+            throw new IllegalArgumentException("Режим записи не поддерживается: " + mode);
+        }
+    }
+
+    // Компактная таблица для Grafana: текущий снимок с индексами под запросы панелей
+    public void publish(Dataset<Row> result, String table, String... indexes) {
+        sink.replace(result, table, List.of(indexes));
+    }
+
+    // Результат, который пишется в несколько таблиц, вычисляется один раз
+    public Dataset<Row> reuse(Dataset<Row> result) {
+        Dataset<Row> cached = result.persist(StorageLevel.MEMORY_AND_DISK());
+        analysisResults.add(cached);
+        return cached;
+    }
+
+    public void run(SparkAnalysis analysis) {
+        try {
+            analysis.run(this);
+        } finally {
+            analysisResults.forEach(Dataset::unpersist);
+            analysisResults.clear();
+        }
+
+        for (String name : registry.requiredBy(analysis)) {
+            if (remainingConsumers.merge(name, -1, Integer::sum) == 0) {
+                release(name);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (String name : Map.copyOf(datasets).keySet()) {
+            release(name);
+        }
+    }
+
+    // История принадлежит вызывающему коду, её кеш он освобождает сам
+    private void release(String name) {
+        if (Intermediates.PRICE_HISTORY.equals(name)) {
+            return;
+        }
+        Dataset<Row> dataset = datasets.remove(name);
+        if (dataset != null) {
+            dataset.unpersist();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.example.crypto.spark.analysis;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class AnalysisRegistry {
+
+    private final Map<String, Intermediate> intermediates = new LinkedHashMap<>();
+
+    @Getter
+    private final List<SparkAnalysis> analyses = new ArrayList<>();
+
+    public static AnalysisRegistry withDefaults() {
+        AnalysisRegistry registry = new AnalysisRegistry();
+        Intermediates.defaults().forEach(registry::intermediate);
+        return registry
+                .analysis(new MarketCapWeeklyRanking())
+                .analysis(new VolumeWeeklyRanking())
+                .analysis(new VolumeAnalysis())
+                .analysis(new DailyPriceChange())
+                .analysis(new MarketDominanceAnalysis())
+                .analysis(new LastPriceInfo())
+                .analysis(new AveragePriceAnalysis())
+                .analysis(new WeeklyVolatility());
+    }
+
+    public AnalysisRegistry intermediate(Intermediate intermediate) {
+        if (isKnown(intermediate.name())) {
+            throw new IllegalArgumentException("Промежуточный набор уже зарегистрирован: " + intermediate.name());
+        }
+        requireKnown(intermediate.name(), intermediate.dependsOn());
+        intermediates.put(intermediate.name(), intermediate);
+        return this;
+    }
+
+    public AnalysisRegistry analysis(SparkAnalysis analysis) {
+        requireKnown(analysis.name(), analysis.intermediates());
+        analyses.add(analysis);
+        return this;
+    }
+
+    Intermediate getIntermediate(String name) {
+        Intermediate intermediate = intermediates.get(name);
+        if (intermediate == null) {
+            throw new IllegalArgumentException("Неизвестный промежуточный набор: " + name);
+        }
+        return intermediate;
+    }
+
+    // Все наборы, нужные анализу, включая зависимости зависимостей
+    Set<String> requiredBy(SparkAnalysis analysis) {
+        Set<String> required = new LinkedHashSet<>();
+        for (String name : analysis.intermediates()) {
+            collect(name, required);
+        }
+        return required;
+    }
+
+    // Сколько анализов прямо или через другие наборы читают каждый набор
+    Map<String, Integer> consumerCounts() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (SparkAnalysis analysis : analyses) {
+            for (String name : requiredBy(analysis)) {
+                counts.merge(name, 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    private void collect(String name, Set<String> required) {
+        if (!required.add(name) || Intermediates.PRICE_HISTORY.equals(name)) {
+            return;
+        }
+        for (String dependency : intermediates.get(name).dependsOn()) {
+            collect(dependency, required);
+        }
+    }
+
+    private boolean isKnown(String name) {
+        return Intermediates.PRICE_HISTORY.equals(name) || intermediates.containsKey(name);
+    }
+
+    private void requireKnown(String owner, List<String> dependencies) {
+        for (String dependency : dependencies) {
+            if (!isKnown(dependency)) {
+                throw new IllegalArgumentException(owner + " зависит от незарегистрированного набора " + dependency);
+            }
+        }
+    }
+}
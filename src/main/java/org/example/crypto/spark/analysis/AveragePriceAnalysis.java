@@ -0,0 +1,45 @@
+package org.example.crypto.spark.analysis;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.functions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+public class AveragePriceAnalysis implements SparkAnalysis {
+
+    private static final Logger logger = LoggerFactory.getLogger(AveragePriceAnalysis.class);
+
+    @Override
+    public String name() {
+        return "avg_price";
+    }
+
+    @Override
+    public List<String> intermediates() {
+        return List.of(Intermediates.PRICE_HISTORY);
+    }
+
+    @Override
+    public void run(AnalysisContext context) {
+        Dataset<Row> avgPrice = context.get(Intermediates.PRICE_HISTORY).groupBy("symbol")
+                .agg(
+                        functions.avg("price").alias("avg_price"),
+                        functions.min("price").alias("min_price"),
+                        functions.max("price").alias("max_price"),
+                        functions.count("price").alias("record_count")
+                );
+
+        Dataset<Row> resultWithTimestamp = context.reuse(avgPrice
+                .withColumn("analysis_timestamp", functions.lit(context.getAnalysisTimestamp())));
+
+        logger.info("Средняя цена монет:");
+        resultWithTimestamp.show();
+
+        context.save(resultWithTimestamp, "spark_avg_price_history", SaveMode.Append);
+        context.publish(resultWithTimestamp, "serving_avg_price", "symbol");
+    }
+}
@@ -0,0 +1,56 @@
+package org.example.crypto.spark.analysis;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.expressions.Window;
+import org.apache.spark.sql.expressions.WindowSpec;
+import org.apache.spark.sql.functions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+public class DailyPriceChange implements SparkAnalysis {
+
+    private static final Logger logger = LoggerFactory.getLogger(DailyPriceChange.class);
+
+    @Override
+    public String name() {
+        return "daily_price_change";
+    }
+
+    @Override
+    public List<String> intermediates() {
+        return List.of(Intermediates.DAILY_COIN_AGG);
+    }
+
+    @Override
+    public void run(AnalysisContext context) {
+        WindowSpec window = Window.partitionBy("coin_id", "symbol").orderBy("date");
+
+        Dataset<Row> dailyChange = context.get(Intermediates.DAILY_COIN_AGG)
+                .withColumn("prev_day_avg", functions.lag("daily_avg_price", 1).over(window))
+                .filter(functions.col("prev_day_avg").isNotNull()) // Исключаем первый день
+                .withColumn("price_change_pct",
+                        functions.round(
+                                functions.col("daily_avg_price")
+                                        .minus(functions.col("prev_day_avg"))
+                                        .divide(functions.col("prev_day_avg"))
+                                        .multiply(100),
+                                2)
+                )
+                .withColumn("start_price", functions.col("prev_day_avg"))
+                .withColumn("end_price", functions.col("daily_avg_price"));
+
+        Dataset<Row> resultWithTimestamp = context.reuse(dailyChange
+                .withColumn("analysis_timestamp", functions.lit(context.getAnalysisTimestamp()))
+                .select("coin_id", "symbol", "date", "start_price", "end_price", "price_change_pct", "analysis_timestamp"));
+
+        logger.info("Изменение цены между днями:");
+        resultWithTimestamp.show(20);
+
+        context.save(resultWithTimestamp, "spark_daily_change_history", SaveMode.Append);
+        context.publish(resultWithTimestamp, "serving_daily_change", "date", "symbol, date");
+    }
+}
@@ -0,0 +1,10 @@
+package org.example.crypto.spark.analysis;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+
+import java.util.List;
+import java.util.function.Function;
+
+public record Intermediate(String name, List<String> dependsOn, Function<AnalysisContext, Dataset<Row>> builder) {
+}
@@ -0,0 +1,65 @@
+package org.example.crypto.spark.analysis;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.expressions.Window;
+import org.apache.spark.sql.functions;
+
+import java.util.List;
+
+public final class Intermediates {
+
+    // Вся история цен: подаётся в AnalysisContext готовой, не строится реестром
+    public static final String PRICE_HISTORY = "price_history";
+
+    // Последний тик каждой монеты в каждой неделе, с колонкой week_start
+    public static final String LATEST_PER_COIN_WEEK = "latest_per_coin_week";
+
+    // Дневные агрегаты по (coin_id, symbol, date): daily_volume, daily_avg_price
+    public static final String DAILY_COIN_AGG = "daily_coin_agg";
+
+    // Последний тик каждой монеты
+    public static final String LATEST_PER_COIN = "latest_per_coin";
+
+    private Intermediates() {
+    }
+
+    static List<Intermediate> defaults() {
+        return List.of(
+                new Intermediate(LATEST_PER_COIN_WEEK, List.of(PRICE_HISTORY), Intermediates::latestPerCoinWeek),
+                new Intermediate(DAILY_COIN_AGG, List.of(PRICE_HISTORY), Intermediates::dailyCoinAgg),
+                new Intermediate(LATEST_PER_COIN, List.of(PRICE_HISTORY), Intermediates::latestPerCoin)
+        );
+    }
+
+    private static Dataset<Row> latestPerCoinWeek(AnalysisContext context) {
+        Dataset<Row> coinData = context.get(PRICE_HISTORY);
+        return coinData
+                .withColumn("week_start", functions.date_trunc("week", coinData.col("timestamp")))
+                .withColumn("rank", functions.row_number().over(Window
+                        .partitionBy("coin_id", "week_start")
+                        .orderBy(functions.desc("timestamp"))))
+                .filter(functions.col("rank").equalTo(1))
+                .drop("rank");
+    }
+
+    private static Dataset<Row> dailyCoinAgg(AnalysisContext context) {
+        Dataset<Row> coinData = context.get(PRICE_HISTORY);
+        return coinData
+                .withColumn("date", functions.to_date(coinData.col("timestamp")))
+                .groupBy("coin_id", "symbol", "date")
+                .agg(
+                        functions.sum("volume").alias("daily_volume"),
+                        functions.avg("price").alias("daily_avg_price")
+                );
+    }
+
+    private static Dataset<Row> latestPerCoin(AnalysisContext context) {
+        return context.get(PRICE_HISTORY)
+                .withColumn("rank", functions.row_number().over(Window
+                        .partitionBy("coin_id")
+                        .orderBy(functions.desc("timestamp"))))
+                .filter(functions.col("rank").equalTo(1))
+                .drop("rank");
+    }
+}
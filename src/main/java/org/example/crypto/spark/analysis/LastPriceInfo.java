@@ -0,0 +1,45 @@
+package org.example.crypto.spark.analysis;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.functions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+public class LastPriceInfo implements SparkAnalysis {
+
+    private static final Logger logger = LoggerFactory.getLogger(LastPriceInfo.class);
+
+    @Override
+    public String name() {
+        return "last_price";
+    }
+
+    @Override
+    public List<String> intermediates() {
+        return List.of(Intermediates.LATEST_PER_COIN);
+    }
+
+    @Override
+    public void run(AnalysisContext context) {
+        Dataset<Row> lastPrice = context.get(Intermediates.LATEST_PER_COIN)
+                .select(
+                        functions.col("coin_id"),
+                        functions.col("symbol"),
+                        functions.col("price"),
+                        functions.col("timestamp").alias("last_collected")
+                );
+
+        Dataset<Row> resultWithTimestamp = context.reuse(lastPrice
+                .withColumn("analysis_timestamp", functions.lit(context.getAnalysisTimestamp())));
+
+        logger.info("Последняя цена и дата сбора:");
+        resultWithTimestamp.show();
+
+        context.save(resultWithTimestamp, "spark_last_price_history", SaveMode.Append);
+        context.publish(resultWithTimestamp, "serving_last_price", "symbol");
+    }
+}
@@ -0,0 +1,47 @@
+package org.example.crypto.spark.analysis;
+
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.functions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+public class MarketDominanceAnalysis implements SparkAnalysis {
+
+    private static final Logger logger = LoggerFactory.getLogger(MarketDominanceAnalysis.class);
+
+    @Override
+    public String name() {
+        return "market_dominance";
+    }
+
+    @Override
+    public List<String> intermediates() {
+        return List.of(Intermediates.LATEST_PER_COIN);
+    }
+
+    @Override
+    public void run(AnalysisContext context) {
+        Column totalMarketCap = functions.sum("market_cap").over();
+        Dataset<Row> dominance = context.get(Intermediates.LATEST_PER_COIN)
+                .withColumn("total_market_cap", totalMarketCap)
+                .withColumn("market_dominance_pct",
+                        functions.round(functions.col("market_cap")
+                                .divide(functions.col("total_market_cap"))
+                                .multiply(100), 2))
+                .select("coin_id", "symbol", "market_cap", "market_dominance_pct");
+
+        Dataset<Row> resultWithTimestamp = context.reuse(dominance
+                .withColumn("analysis_timestamp", functions.lit(context.getAnalysisTimestamp())));
+
+        logger.info("Market dominance по монетам:");
+        resultWithTimestamp.show();
+
+        context.save(resultWithTimestamp, "spark_market_dominance_history", SaveMode.Append);
+        context.publish(resultWithTimestamp, "serving_market_dominance", "symbol");
+    }
+}
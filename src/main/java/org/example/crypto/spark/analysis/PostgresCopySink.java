@@ -0,0 +1,313 @@
+package org.example.crypto.spark.analysis;
+
+import lombok.Getter;
+import org.apache.spark.api.java.function.ForeachPartitionFunction;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.types.DataType;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.DecimalType;
+import org.apache.spark.sql.types.StructField;
+import org.apache.spark.sql.types.StructType;
+import org.apache.spark.util.LongAccumulator;
+import org.example.crypto.cluster.WriteFence;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// Разделы результата грузятся параллельно через COPY в теневую таблицу,
+// которая затем одной транзакцией подменяет целевую или вливается в неё
+public class PostgresCopySink implements ResultSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostgresCopySink.class);
+
+    private static final int COPY_BUFFER_CHARS = 1 << 20;
+
+    interface ConnectionFactory {
+        Connection open() throws SQLException;
+    }
+
+    // Загрузка результата в теневую таблицу, возвращает число строк
+    interface Copier {
+        long copy(Dataset<Row> result, String table);
+    }
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxPartitions;
+    private final WriteFence fence;
+    private final ConnectionFactory connectionFactory;
+    private final Copier copier;
+
+    // Строк записано по таблицам за время жизни приёмника (отчёт прогона)
+    @Getter
+    private final Map<String, Long> rowsWritten = new LinkedHashMap<>();
+
+    public PostgresCopySink(String url, String user, String password, int maxPartitions) {
+        this(url, user, password, maxPartitions, WriteFence.NONE);
+    }
+
+    // С токеном лидера результат фиксируется только пока эпоха лидерства не сменилась
+    public PostgresCopySink(String url, String user, String password, int maxPartitions, WriteFence fence) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxPartitions = maxPartitions;
+        this.fence = fence;
+        this.connectionFactory = () -> DriverManager.getConnection(url, user, password);
+        this.copier = this::copy;
+    }
+
+    PostgresCopySink(ConnectionFactory connectionFactory, Copier copier, WriteFence fence) {
+        this.url = null;
+        this.user = null;
+        this.password = null;
+        this.maxPartitions = 1;
+        this.fence = fence;
+        this.connectionFactory = connectionFactory;
+        this.copier = copier;
+    }
+
+    @Override
+    public void append(Dataset<Row> result, String table) {
+        String staging = table + "_staging";
+        try {
+            try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+                fence.check(connection);
+                statement.execute("CREATE TABLE IF NOT EXISTS " + quote(table) + " (" + columnDefinitions(result.schema()) + ")");
+                statement.execute("DROP TABLE IF EXISTS " + quote(staging));
+                statement.execute("CREATE UNLOGGED TABLE " + quote(staging) + " (" + columnDefinitions(result.schema()) + ")");
+            }
+
+            long rows = copier.copy(result, staging);
+
+            String columns = columnList(result.schema());
+            inTransaction(statement -> {
+                statement.execute("INSERT INTO " + quote(table) + " (" + columns + ") SELECT " + columns + " FROM " + quote(staging));
+                statement.execute("DROP TABLE " + quote(staging));
+            });
+            rowsWritten.merge(table, rows, Long::sum);
+            logger.debug("{}: дописано {} строк", table, rows);
+        } catch (SQLException | RuntimeException e) {
+            dropLeftover(staging);
+            throw new IllegalStateException("Не удалось записать результат в " + table, e);
+        }
+    }
+
+    @Override
+    public void replace(Dataset<Row> result, String table) {
+        replace(result, table, List.of());
+    }
+
+    @Override
+    public void replace(Dataset<Row> result, String table, List<String> indexes) {
+        String shadow = table + "_shadow";
+        String old = table + "_old";
+        try {
+            boolean exists;
+            try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+                fence.check(connection);
+                exists = tableExists(connection, table);
+                statement.execute("DROP TABLE IF EXISTS " + quote(shadow));
+                // Без объявленных индексов LIKE сохраняет созданные вручную поверх таблицы результата
+                statement.execute(exists && indexes.isEmpty()
+                        ? "CREATE TABLE " + quote(shadow) + " (LIKE " + quote(table) + " INCLUDING ALL)"
+                        : "CREATE TABLE " + quote(shadow) + " (" + columnDefinitions(result.schema()) + ")");
+            }
+
+            long rows = copier.copy(result, shadow);
+
+            // Индексы строятся после загрузки: так быстрее, чем поддерживать их на каждой строке COPY
+            try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+                for (int i = 0; i < indexes.size(); i++) {
+                    statement.execute("CREATE INDEX " + quote(indexName(table, i) + "_new") + " ON " + quote(shadow)
+                            + " (" + indexes.get(i) + ")");
+                }
+                statement.execute("ANALYZE " + quote(shadow));
+            }
+
+            inTransaction(statement -> {
+                if (exists) {
+                    statement.execute("DROP TABLE IF EXISTS " + quote(old));
+                    statement.execute("ALTER TABLE " + quote(table) + " RENAME TO " + quote(old));
+                }
+                statement.execute("ALTER TABLE " + quote(shadow) + " RENAME TO " + quote(table));
+                if (exists) {
+                    statement.execute("DROP TABLE " + quote(old));
+                }
+                for (int i = 0; i < indexes.size(); i++) {
+                    statement.execute("ALTER INDEX " + quote(indexName(table, i) + "_new") + " RENAME TO " + quote(indexName(table, i)));
+                }
+            });
+            rowsWritten.put(table, rows);
+            logger.debug("{}: заменено, {} строк", table, rows);
+        } catch (SQLException | RuntimeException e) {
+            dropLeftover(shadow);
+            throw new IllegalStateException("Не удалось заменить таблицу " + table, e);
+        }
+    }
+
+    private interface TransactionBody {
+        void run(Statement statement) throws SQLException;
+    }
+
+    // Целевая таблица меняется только здесь: одной транзакцией после проверки токена лидера
+    private void inTransaction(TransactionBody body) throws SQLException {
+        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(false);
+            try {
+                fence.check(connection);
+                body.run(statement);
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    // Недогруженная теневая таблица удаляется, целевая остаётся прежней. Имя теневой таблицы общее
+    // для прогонов, поэтому после потери лидерства её не трогаем: она может принадлежать новому лидеру
+    private void dropLeftover(String table) {
+        try {
+            inTransaction(statement -> statement.execute("DROP TABLE IF EXISTS " + quote(table)));
+        } catch (SQLException | RuntimeException e) {
+            logger.warn("Не удалось удалить {}: {}", table, e.getMessage());
+        }
+    }
+
+    private static String indexName(String table, int index) {
+        return table + "_" + (index + 1) + "_idx";
+    }
+
+    private long copy(Dataset<Row> result, String table) {
+        Dataset<Row> partitioned = result.rdd().getNumPartitions() > maxPartitions ? result.coalesce(maxPartitions) : result;
+
+        String sql = "COPY " + quote(table) + " (" + columnList(result.schema()) + ") FROM STDIN WITH (FORMAT csv)";
+        String url = this.url;
+        String user = this.user;
+        String password = this.password;
+        LongAccumulator copied = result.sparkSession().sparkContext().longAccumulator();
+        partitioned.foreachPartition((ForeachPartitionFunction<Row>) rows -> copyPartition(rows, sql, url, user, password, copied));
+        return copied.value();
+    }
+
+    private static void copyPartition(Iterator<Row> rows, String sql, String url, String user, String password,
+                                      LongAccumulator copied) throws SQLException {
+        if (!rows.hasNext()) {
+            return;
+        }
+        try (Connection connection = DriverManager.getConnection(url, user, password)) {
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+            try {
+                StringBuilder buffer = new StringBuilder(COPY_BUFFER_CHARS + 4096);
+                while (rows.hasNext()) {
+                    appendCsv(buffer, rows.next());
+                    if (buffer.length() >= COPY_BUFFER_CHARS) {
+                        flush(copyIn, buffer);
+                    }
+                }
+                flush(copyIn, buffer);
+                copied.add(copyIn.endCopy());
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        }
+    }
+
+    private static void flush(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+
+    // NULL - пустое поле без кавычек, строки всегда в кавычках, чтобы пустая строка не стала NULL
+    static void appendCsv(StringBuilder buffer, Row row) {
+        for (int i = 0; i < row.length(); i++) {
+            if (i > 0) {
+                buffer.append(',');
+            }
+            if (row.isNullAt(i)) {
+                continue;
+            }
+            Object value = row.get(i);
+            if (value instanceof String text) {
+                buffer.append('"').append(text.replace("\"", "\"\"")).append('"');
+            } else if (value instanceof BigDecimal decimal) {
+                buffer.append(decimal.toPlainString());
+            } else {
+                buffer.append(value);
+            }
+        }
+        buffer.append('\n');
+    }
+
+    static String columnDefinitions(StructType schema) {
+        return Arrays.stream(schema.fields())
+                .map(field -> quote(field.name()) + " " + sqlType(field))
+                .collect(Collectors.joining(", "));
+    }
+
+    private static String columnList(StructType schema) {
+        return Arrays.stream(schema.fieldNames()).map(PostgresCopySink::quote).collect(Collectors.joining(", "));
+    }
+
+    // Те же типы, что создаёт JDBC-источник Spark для PostgreSQL
+    private static String sqlType(StructField field) {
+        DataType type = field.dataType();
+        if (type.equals(DataTypes.StringType)) {
+            return "TEXT";
+        } else if (type.equals(DataTypes.DoubleType)) {
+            return "DOUBLE PRECISION";
+        } else if (type.equals(DataTypes.FloatType)) {
+            return "REAL";
+        } else if (type.equals(DataTypes.LongType)) {
+            return "BIGINT";
+        } else if (type.equals(DataTypes.IntegerType)) {
+            return "INTEGER";
+        } else if (type.equals(DataTypes.BooleanType)) {
+            return "BOOLEAN";
+        } else if (type.equals(DataTypes.DateType)) {
+            return "DATE";
+        } else if (type.equals(DataTypes.TimestampType)) {
+            return "TIMESTAMP";
+        } else if (type instanceof DecimalType decimal) {
+            return "NUMERIC(" + decimal.precision() + "," + decimal.scale() + ")";
+        }
+        throw new IllegalArgumentException("Неподдерживаемый тип колонки " + field.name() + ": " + type);
+    }
+
+    private static boolean tableExists(Connection connection, String table) throws SQLException {
+        try (var rs = connection.getMetaData().getTables(null, null, table, new String[]{"TABLE"})) {
+            return rs.next();
+        }
+    }
+
+    private static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    private Connection connect() throws SQLException {
+        return connectionFactory.open();
+    }
+}
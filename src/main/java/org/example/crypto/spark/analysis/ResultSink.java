@@ -0,0 +1,18 @@
+package org.example.crypto.spark.analysis;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+
+import java.util.List;
+
+public interface ResultSink {
+
+    // Дописывает результат целиком: читатели видят либо все строки прогона, либо ни одной
+    void append(Dataset<Row> result, String table);
+
+    // Заменяет содержимое таблицы, не оставляя её пустой или недописанной
+    void replace(Dataset<Row> result, String table);
+
+    // То же, с индексами по перечисленным наборам колонок, например "symbol, date"
+    void replace(Dataset<Row> result, String table, List<String> indexes);
+}
@@ -0,0 +1,13 @@
+package org.example.crypto.spark.analysis;
+
+import java.util.List;
+
+// Анализ объявляет промежуточные наборы, которые читает: AnalysisContext строит каждый один раз на прогон
+public interface SparkAnalysis {
+
+    String name();
+
+    List<String> intermediates();
+
+    void run(AnalysisContext context);
+}
@@ -0,0 +1,52 @@
+package org.example.crypto.spark.analysis;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.expressions.Window;
+import org.apache.spark.sql.expressions.WindowSpec;
+import org.apache.spark.sql.functions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+public class VolumeAnalysis implements SparkAnalysis {
+
+    private static final Logger logger = LoggerFactory.getLogger(VolumeAnalysis.class);
+
+    @Override
+    public String name() {
+        return "volume_analysis";
+    }
+
+    @Override
+    public List<String> intermediates() {
+        return List.of(Intermediates.DAILY_COIN_AGG);
+    }
+
+    @Override
+    public void run(AnalysisContext context) {
+        WindowSpec window = Window.partitionBy("coin_id", "symbol").orderBy("date");
+        Dataset<Row> volumeChange = context.get(Intermediates.DAILY_COIN_AGG)
+                .withColumn("prev_day_volume", functions.lag("daily_volume", 1).over(window))
+                .filter(functions.col("prev_day_volume").isNotNull())
+                .withColumn("volume_change_pct",
+                        functions.round(
+                                functions.col("daily_volume")
+                                        .minus(functions.col("prev_day_volume"))
+                                        .divide(functions.col("prev_day_volume"))
+                                        .multiply(100),
+                                2
+                        ));
+
+        Dataset<Row> resultWithTimestamp = volumeChange
+                .withColumn("analysis_timestamp", functions.lit(context.getAnalysisTimestamp()))
+                .select("coin_id", "symbol", "date", "daily_volume", "volume_change_pct", "analysis_timestamp");
+
+        logger.info("Анализ объёма торгов:");
+        resultWithTimestamp.show(20);
+
+        context.save(resultWithTimestamp, "spark_volume_analysis_history", SaveMode.Append);
+    }
+}
@@ -0,0 +1,47 @@
+package org.example.crypto.spark.analysis;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.expressions.Window;
+import org.apache.spark.sql.expressions.WindowSpec;
+import org.apache.spark.sql.functions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+public class VolumeWeeklyRanking implements SparkAnalysis {
+
+    private static final Logger logger = LoggerFactory.getLogger(VolumeWeeklyRanking.class);
+
+    @Override
+    public String name() {
+        return "volume_weekly_ranking";
+    }
+
+    @Override
+    public List<String> intermediates() {
+        return List.of(Intermediates.LATEST_PER_COIN_WEEK);
+    }
+
+    @Override
+    public void run(AnalysisContext context) {
+        Dataset<Row> weeklyAggregated = context.get(Intermediates.LATEST_PER_COIN_WEEK)
+                .groupBy("coin_id", "symbol", "week_start")
+                .agg(functions.sum("volume").alias("weekly_volume"));
+
+        WindowSpec rankingWindow = Window.partitionBy("week_start").orderBy(functions.desc("weekly_volume"));
+
+        Dataset<Row> ranked = context.reuse(weeklyAggregated
+                .withColumn("rank_position", functions.row_number().over(rankingWindow))
+                .withColumn("analysis_timestamp", functions.lit(context.getAnalysisTimestamp()))
+                .select("coin_id", "symbol", "week_start", "weekly_volume", "rank_position", "analysis_timestamp"));
+
+        logger.info("Weekly Volume Ranking:");
+        ranked.show(20);
+
+        context.save(ranked, "spark_volume_weekly_ranking", SaveMode.Overwrite);
+        context.publish(WeeklyRankDelta.withPreviousRank(ranked), "serving_volume_weekly_rank", "week_start, rank_position");
+    }
+}
@@ -0,0 +1,25 @@
+package org.example.crypto.spark.analysis;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.functions;
+
+final class WeeklyRankDelta {
+
+    private WeeklyRankDelta() {
+    }
+
+    // prev_rank - место монеты в предыдущую неделю, rank_delta > 0 - монета поднялась
+    static Dataset<Row> withPreviousRank(Dataset<Row> ranked) {
+        Dataset<Row> previous = ranked.select(
+                functions.col("coin_id").alias("prev_coin_id"),
+                functions.expr("week_start + INTERVAL 7 DAYS").alias("prev_next_week"),
+                functions.col("rank_position").alias("prev_rank"));
+
+        return ranked
+                .join(previous, ranked.col("coin_id").equalTo(previous.col("prev_coin_id"))
+                        .and(ranked.col("week_start").equalTo(previous.col("prev_next_week"))), "left")
+                .drop("prev_coin_id", "prev_next_week")
+                .withColumn("rank_delta", functions.col("prev_rank").minus(functions.col("rank_position")));
+    }
+}
@@ -0,0 +1,63 @@
+package org.example.crypto.spark.analysis;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.functions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+public class WeeklyVolatility implements SparkAnalysis {
+
+    private static final Logger logger = LoggerFactory.getLogger(WeeklyVolatility.class);
+
+    @Override
+    public String name() {
+        return "weekly_volatility";
+    }
+
+    @Override
+    public List<String> intermediates() {
+        return List.of(Intermediates.PRICE_HISTORY);
+    }
+
+    @Override
+    public void run(AnalysisContext context) {
+        Dataset<Row> coinData = context.get(Intermediates.PRICE_HISTORY);
+
+        Dataset<Row> weeklyData = coinData
+                .withColumn("week", functions.date_trunc("week", coinData.col("timestamp")))
+                .groupBy("coin_id", "symbol", "week")
+                .agg(
+                        functions.count("price").alias("record_count"),
+                        functions.max("price").alias("max_price"),
+                        functions.min("price").alias("min_price"),
+                        functions.avg("price").alias("avg_price"),
+                        functions.stddev("price").alias("price_stddev")
+                )
+                .filter(functions.col("record_count").geq(3)); // Только недели с 3+ записями
+
+        Dataset<Row> volatility = weeklyData
+                .withColumn("price_range",
+                        functions.col("max_price").minus(functions.col("min_price")))
+                .withColumn("volatility_pct",
+                        functions.round(
+                                functions.col("price_stddev")
+                                        .divide(functions.col("avg_price"))
+                                        .multiply(100),
+                                2)
+                );
+
+        Dataset<Row> resultWithTimestamp = context.reuse(volatility
+                .withColumn("analysis_timestamp", functions.lit(context.getAnalysisTimestamp()))
+                .select("coin_id", "symbol", "week", "price_range", "volatility_pct", "record_count", "analysis_timestamp"));
+
+        logger.info("Недельная волатильность:");
+        resultWithTimestamp.show(20);
+
+        context.save(resultWithTimestamp, "spark_weekly_volatility_history", SaveMode.Append);
+        context.publish(resultWithTimestamp, "serving_weekly_volatility", "symbol, week");
+    }
+}
@@ -1,29 +1,145 @@
 package org.example.crypto.startup;
 
-import jakarta.annotation.PostConstruct;
+import org.example.crypto.cluster.CoinShardingService;
+import org.example.crypto.cluster.LeaderElectionService;
+import org.example.crypto.cluster.LeadershipChangedEvent;
 import org.example.crypto.service.AutoUpdateService;
 import org.example.crypto.service.CoinGeckoService;
+import org.example.crypto.spark.SparkStreamingProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 @Component
 @Profile("prod")
 public class ProdStartupRunner {
 
+    private static final Logger logger = LoggerFactory.getLogger(ProdStartupRunner.class);
+
     private final CoinGeckoService coinGeckoService;
     private final AutoUpdateService autoUpdateService;
+    private final LeaderElectionService leaderElectionService;
+    private final CoinShardingService coinShardingService;
+    private final SparkStreamingProcessor sparkStreamingProcessor;
+
+    @Value("${crypto.startup.warmup.history-days:90}")
+    private int historyDays;
+
+    private final ExecutorService leaderExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "leader-startup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Future<?> leaderStartup;
 
     public ProdStartupRunner(
             CoinGeckoService coinGeckoService,
-            AutoUpdateService autoUpdateService
+            AutoUpdateService autoUpdateService,
+            LeaderElectionService leaderElectionService,
+            CoinShardingService coinShardingService,
+            SparkStreamingProcessor sparkStreamingProcessor
     ) {
         this.coinGeckoService = coinGeckoService;
         this.autoUpdateService = autoUpdateService;
+        this.leaderElectionService = leaderElectionService;
+        this.coinShardingService = coinShardingService;
+        this.sparkStreamingProcessor = sparkStreamingProcessor;
     }
 
+    // Без выбора лидера каждая шардированная реплика считала бы себя единственной и запускала анализ
     @PostConstruct
+    public void validate() {
+        if (coinShardingService.isEnabled() && !leaderElectionService.isEnabled()) {
+            throw new IllegalStateException("crypto.cluster.sharding.enabled=true требует "
+                    + "crypto.cluster.leader-election.enabled=true: Spark-анализ должен запускать только лидер");
+        }
+    }
+
+    @EventListener(WarmupCompletedEvent.class)
     public void start() {
-        coinGeckoService.initializeHistoricalDataIfNeeded(90);
-        autoUpdateService.startAutoUpdate();
+        if (!leaderElectionService.isEnabled()) {
+            setAnalysisActive(true);
+            autoUpdateService.startAutoUpdate();
+            return;
+        }
+
+        if (coinShardingService.isEnabled()) {
+            coinShardingService.start();
+            // Каждая реплика загружает свою часть монет, анализ включится только у лидера
+            setAnalysisActive(false);
+            autoUpdateService.startAutoUpdate();
+        }
+        leaderElectionService.start();
+    }
+
+    // Без шардирования загрузку и анализ выполняет только лидер, остальные реплики обслуживают чтение
+    @EventListener
+    public synchronized void onLeadershipChanged(LeadershipChangedEvent event) {
+        if (!event.isLeader()) {
+            cancelLeaderStartup();
+        }
+        if (coinShardingService.isEnabled()) {
+            setAnalysisActive(event.isLeader());
+            if (event.isLeader()) {
+                leaderStartup = leaderExecutor.submit(() -> coinGeckoService.initializeHistoricalDataIfNeeded(historyDays));
+            }
+            return;
+        }
+
+        if (event.isLeader()) {
+            leaderStartup = leaderExecutor.submit(() -> {
+                coinGeckoService.initializeHistoricalDataIfNeeded(historyDays);
+                // Под той же блокировкой, что и обработка потери лидерства: после снятия лидерства
+                // задача либо уже прервана, либо её запуск будет тут же остановлен
+                synchronized (this) {
+                    if (Thread.currentThread().isInterrupted() || !leaderElectionService.isLeader()) {
+                        logger.info("Лидерство потеряно во время загрузки истории, автообновление не запускается");
+                        return;
+                    }
+                    setAnalysisActive(true);
+                    autoUpdateService.startAutoUpdate();
+                }
+            });
+        } else {
+            logger.info("Лидерство потеряно, останавливаем автообновление");
+            autoUpdateService.stopAutoUpdate();
+            setAnalysisActive(false);
+        }
+    }
+
+    private void cancelLeaderStartup() {
+        if (leaderStartup != null) {
+            leaderStartup.cancel(true);
+            leaderStartup = null;
+        }
+    }
+
+    // В потоковом режиме поминутный пакетный анализ не запускается: его spark.stop() остановил бы общую сессию
+    private void setAnalysisActive(boolean active) {
+        if (!sparkStreamingProcessor.isEnabled()) {
+            autoUpdateService.setAnalysisEnabled(active);
+            return;
+        }
+        autoUpdateService.setAnalysisEnabled(false);
+        if (active) {
+            sparkStreamingProcessor.start();
+        } else {
+            sparkStreamingProcessor.stop();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        leaderExecutor.shutdownNow();
     }
 }
@@ -0,0 +1,170 @@
+package org.example.crypto.startup;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import org.example.crypto.service.CoinGeckoService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Component
+public class StartupWarmupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupWarmupService.class);
+
+    public enum Phase {
+        PENDING, BACKFILL, COMPLETED, FAILED
+    }
+
+    private final CoinGeckoService coinGeckoService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${crypto.startup.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${crypto.startup.warmup.history-days:90}")
+    private int historyDays;
+
+    // Повторы загрузки истории с удвоением паузы; после последней неудачи приложение всё равно встаёт в готовность
+    @Value("${crypto.startup.warmup.retries:3}")
+    private int retries = 3;
+
+    @Value("${crypto.startup.warmup.retry-delay-ms:10000}")
+    private long retryDelayMs = 10000;
+
+    @Value("${crypto.cluster.leader-election.enabled:false}")
+    private boolean leaderElectionEnabled;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "startup-warmup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Getter
+    private volatile Phase phase = Phase.PENDING;
+
+    @Getter
+    private volatile String failure;
+
+    private final AtomicInteger processedCoins = new AtomicInteger();
+    private final AtomicInteger totalCoins = new AtomicInteger();
+    private final Map<Phase, Duration> phaseDurations = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    public StartupWarmupService(
+            CoinGeckoService coinGeckoService,
+            ApplicationEventPublisher eventPublisher,
+            MeterRegistry meterRegistry
+    ) {
+        this.coinGeckoService = coinGeckoService;
+        this.eventPublisher = eventPublisher;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            logger.info("Прогрев отключён, пропускаем загрузку истории");
+            phase = Phase.COMPLETED;
+            eventPublisher.publishEvent(new WarmupCompletedEvent(this));
+            return;
+        }
+        executor.submit(this::runWarmup);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    void runWarmup() {
+        try {
+            if (leaderElectionEnabled) {
+                logger.info("Включён выбор лидера, загрузку истории выполнит лидер");
+            } else {
+                runPhase(Phase.BACKFILL, this::backfillWithRetries);
+            }
+
+            phase = Phase.COMPLETED;
+            logger.info("Прогрев завершён: {}", phaseDurations);
+        } catch (Exception e) {
+            // Без истории приложение всё равно полезно: чтение из БД работает, а плановый опрос начнёт
+            // дописывать тики. Поэтому ошибка видна в health и метрике, но опрос запускается
+            phase = Phase.FAILED;
+            failure = e.getMessage();
+            meterRegistry.counter("crypto.startup.warmup.failures").increment();
+            logger.error("Ошибка прогрева приложения, продолжаем без загрузки истории: {}", e.getMessage(), e);
+        }
+        eventPublisher.publishEvent(new WarmupCompletedEvent(this));
+    }
+
+    private void backfillWithRetries() {
+        long delay = retryDelayMs;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                coinGeckoService.initializeHistoricalDataIfNeeded(historyDays, (processed, total) -> {
+                    processedCoins.set(processed);
+                    totalCoins.set(total);
+                });
+                return;
+            } catch (RuntimeException e) {
+                if (attempt > retries) {
+                    throw e;
+                }
+                logger.warn("Загрузка истории не удалась (попытка {} из {}): {}, повтор через {} мс",
+                        attempt, retries + 1, e.getMessage(), delay);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                delay *= 2;
+            }
+        }
+    }
+
+    private void runPhase(Phase next, Runnable action) {
+        phase = next;
+        logger.info("Фаза прогрева {} запущена", next);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        long started = System.nanoTime();
+        try {
+            action.run();
+        } finally {
+            sample.stop(meterRegistry.timer("crypto.startup.phase", "phase", next.name().toLowerCase()));
+            Duration duration = Duration.ofNanos(System.nanoTime() - started);
+            phaseDurations.put(next, duration);
+            logger.info("Фаза прогрева {} завершена за {} мс", next, duration.toMillis());
+        }
+    }
+
+    public int getProcessedCoins() {
+        return processedCoins.get();
+    }
+
+    public int getTotalCoins() {
+        return totalCoins.get();
+    }
+
+    public Map<Phase, Duration> getPhaseDurations() {
+        synchronized (phaseDurations) {
+            return new LinkedHashMap<>(phaseDurations);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package org.example.crypto.startup;
+
+import org.springframework.context.ApplicationEvent;
+
+public class WarmupCompletedEvent extends ApplicationEvent {
+
+    public WarmupCompletedEvent(Object source) {
+        super(source);
+    }
+}
@@ -0,0 +1,51 @@
+package org.example.crypto.startup;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Component
+public class WarmupHealthIndicator implements HealthIndicator {
+
+    private final StartupWarmupService warmupService;
+
+    // По умолчанию под трафик встаём сразу: чтение из БД не зависит от догрузки истории
+    @Value("${crypto.startup.warmup.block-readiness:false}")
+    private boolean blockReadiness;
+
+    public WarmupHealthIndicator(StartupWarmupService warmupService) {
+        this.warmupService = warmupService;
+    }
+
+    @Override
+    public Health health() {
+        StartupWarmupService.Phase phase = warmupService.getPhase();
+
+        // Неудачный прогрев не делает под неготовым навсегда: ошибка видна в деталях, а пропуски
+        // истории догружаются обычным бэкфиллом
+        Health.Builder builder;
+        if (phase != StartupWarmupService.Phase.COMPLETED && phase != StartupWarmupService.Phase.FAILED
+                && blockReadiness) {
+            builder = Health.outOfService();
+        } else {
+            builder = Health.up();
+        }
+        if (warmupService.getFailure() != null) {
+            builder.withDetail("error", warmupService.getFailure());
+        }
+
+        Map<String, Object> durations = new LinkedHashMap<>();
+        warmupService.getPhaseDurations().forEach((p, d) -> durations.put(p.name().toLowerCase(), d.toMillis() + "ms"));
+
+        return builder
+                .withDetail("phase", phase.name().toLowerCase())
+                .withDetail("processedCoins", warmupService.getProcessedCoins())
+                .withDetail("totalCoins", warmupService.getTotalCoins())
+                .withDetail("phaseDurations", durations)
+                .build();
+    }
+}
@@ -0,0 +1,50 @@
+package org.example.crypto.stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// GET /stream/prices?coins=bitcoin,ethereum - поток цен в формате Server-Sent Events.
+// Событие price на каждое обновление монеты; комментарий ping раз в heartbeat-seconds держит соединение
+// через прокси и позволяет заметить отключившихся клиентов.
+@RestController
+public class PriceStreamController {
+
+    private final PriceStreamHub hub;
+    private final Duration heartbeat;
+
+    public PriceStreamController(PriceStreamHub hub,
+                                 @Value("${crypto.stream.heartbeat-seconds:15}") long heartbeatSeconds) {
+        this.hub = hub;
+        this.heartbeat = Duration.ofSeconds(heartbeatSeconds);
+    }
+
+    @GetMapping(path = "/stream/prices", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<PriceUpdate>> prices(@RequestParam(required = false) String coins) {
+        if (!hub.hasCapacity()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Слишком много подписчиков");
+        }
+        Set<String> filter = coins == null ? Set.of() : Arrays.stream(coins.split(","))
+                .map(coin -> coin.trim().toLowerCase())
+                .filter(coin -> !coin.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+        Flux<ServerSentEvent<PriceUpdate>> updates = hub.subscribe(filter)
+                .map(update -> ServerSentEvent.builder(update).event("price").build());
+        Flux<ServerSentEvent<PriceUpdate>> pings = Flux.interval(heartbeat)
+                .onBackpressureDrop()
+                .map(tick -> ServerSentEvent.<PriceUpdate>builder().comment("ping").build());
+        // prefetch 1: обновления запрашиваются у хаба по мере отправки клиенту, а не копятся в merge
+        return Flux.merge(1, updates, pings);
+    }
+}
@@ -0,0 +1,130 @@
+package org.example.crypto.stream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.crypto.model.CoinPriceHistory;
+import org.example.crypto.service.TicksIngestedEvent;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Sinks;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Раздача тиков подписчикам /stream/prices. Загрузка публикует каждый тик один раз в общий multicast-поток,
+// подписчики читают из него без запросов к БД. У каждого подписчика свой буфер: по одному последнему значению
+// на монету. Медленный клиент получает свежую цену монеты, а промежуточные значения заменяются, поэтому буфер
+// не растёт и не тормозит загрузку и других подписчиков.
+@Component
+public class PriceStreamHub {
+
+    private final Sinks.Many<PriceUpdate> sink = Sinks.many().multicast().directBestEffort();
+    // Последняя цена каждой монеты: новый подписчик сразу получает текущее состояние
+    private final Map<String, PriceUpdate> latest = new HashMap<>();
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final int maxSubscribers;
+    private final Counter published;
+    private final Counter conflated;
+
+    @Autowired
+    public PriceStreamHub(ObjectProvider<MeterRegistry> meterRegistry,
+                          @Value("${crypto.stream.max-subscribers:5000}") int maxSubscribers) {
+        this(maxSubscribers, meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
+    public PriceStreamHub(int maxSubscribers, MeterRegistry meterRegistry) {
+        this.maxSubscribers = maxSubscribers;
+        this.published = meterRegistry.counter("crypto.stream.published");
+        this.conflated = meterRegistry.counter("crypto.stream.conflated");
+        Gauge.builder("crypto.stream.subscribers", subscribers, AtomicInteger::get).register(meterRegistry);
+    }
+
+    @EventListener
+    public synchronized void onTicksIngested(TicksIngestedEvent event) {
+        for (CoinPriceHistory tick : event.getTicks()) {
+            if (tick.getPrice() == null || tick.getTimestamp() == null) {
+                continue;
+            }
+            PriceUpdate previous = latest.get(tick.getCoinId());
+            if (previous != null && !tick.getTimestamp().isAfter(previous.timestamp())) {
+                continue;
+            }
+            PriceUpdate update = PriceUpdate.of(tick);
+            latest.put(tick.getCoinId(), update);
+            sink.tryEmitNext(update);
+            published.increment();
+        }
+    }
+
+    public boolean hasCapacity() {
+        return subscribers.get() < maxSubscribers;
+    }
+
+    public int subscriberCount() {
+        return subscribers.get();
+    }
+
+    // Пустой набор монет - все монеты
+    public Flux<PriceUpdate> subscribe(Set<String> coins) {
+        return Flux.create(emitter -> {
+            subscribers.incrementAndGet();
+            Conflator conflator = new Conflator(emitter);
+            Disposable upstream;
+            // Снимок и подписка под той же блокировкой, что и публикация: обновление не теряется между ними
+            synchronized (this) {
+                for (PriceUpdate update : latest.values()) {
+                    if (coins.isEmpty() || coins.contains(update.coinId())) {
+                        conflator.offer(update);
+                    }
+                }
+                upstream = sink.asFlux()
+                        .filter(update -> coins.isEmpty() || coins.contains(update.coinId()))
+                        .subscribe(conflator::offer);
+            }
+            emitter.onRequest(n -> conflator.drain());
+            emitter.onDispose(() -> {
+                upstream.dispose();
+                subscribers.decrementAndGet();
+            });
+        });
+    }
+
+    // Отдаёт подписчику не больше, чем он запросил; остальное ждёт в буфере по одному значению на монету
+    private final class Conflator {
+
+        private final FluxSink<PriceUpdate> emitter;
+        private final LinkedHashMap<String, PriceUpdate> pending = new LinkedHashMap<>();
+
+        Conflator(FluxSink<PriceUpdate> emitter) {
+            this.emitter = emitter;
+        }
+
+        synchronized void offer(PriceUpdate update) {
+            if (pending.put(update.coinId(), update) != null) {
+                conflated.increment();
+            }
+            drain();
+        }
+
+        synchronized void drain() {
+            Iterator<PriceUpdate> iterator = pending.values().iterator();
+            while (iterator.hasNext() && emitter.requestedFromDownstream() > 0 && !emitter.isCancelled()) {
+                PriceUpdate update = iterator.next();
+                iterator.remove();
+                emitter.next(update);
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.example.crypto.stream;
+
+import org.example.crypto.model.CoinPriceHistory;
+
+import java.time.Instant;
+
+// Последняя цена монеты в потоке /stream/prices
+public record PriceUpdate(String coinId, String symbol, double price, Double volume, Double marketCap,
+                          Instant timestamp) {
+
+    static PriceUpdate of(CoinPriceHistory tick) {
+        return new PriceUpdate(tick.getCoinId(), tick.getSymbol(), tick.getPrice(), tick.getVolume(),
+                tick.getMarketCap(), tick.getTimestamp());
+    }
+}
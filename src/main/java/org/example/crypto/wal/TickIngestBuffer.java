@@ -0,0 +1,150 @@
+package org.example.crypto.wal;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import org.example.crypto.model.CoinPriceHistory;
+import org.example.crypto.repository.CoinPriceHistoryBulkWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Component
+public class TickIngestBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(TickIngestBuffer.class);
+
+    private final CoinPriceHistoryBulkWriter bulkWriter;
+    private final MeterRegistry meterRegistry;
+
+    @Getter
+    @Value("${crypto.wal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${crypto.wal.directory:data/wal}")
+    private String directory;
+
+    @Value("${crypto.wal.segment-size-mb:64}")
+    private int segmentSizeMb;
+
+    @Value("${crypto.wal.drain-interval-ms:500}")
+    private long drainIntervalMs;
+
+    @Value("${crypto.wal.drain-batch-size:5000}")
+    private int drainBatchSize;
+
+    private TickWriteAheadLog log;
+    private ScheduledExecutorService drainer;
+    private Counter appendedTicks;
+    private Counter drainedTicks;
+    private Timer appendTimer;
+
+    private volatile boolean drainFailing = false;
+
+    @Autowired
+    public TickIngestBuffer(CoinPriceHistoryBulkWriter bulkWriter, MeterRegistry meterRegistry) {
+        this.bulkWriter = bulkWriter;
+        this.meterRegistry = meterRegistry;
+    }
+
+    // Уже открытый журнал без выгрузки в БД: нагрузочный прогон измеряет только приём тиков
+    public TickIngestBuffer(TickWriteAheadLog log, MeterRegistry meterRegistry) {
+        this((CoinPriceHistoryBulkWriter) null, meterRegistry);
+        this.enabled = true;
+        this.log = log;
+        registerMeters();
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            logger.info("Журнал тиков отключён, запись идёт напрямую в БД");
+            return;
+        }
+
+        log = new TickWriteAheadLog(Paths.get(directory), segmentSizeMb * 1024 * 1024);
+        logger.info("Журнал тиков открыт в {}, не выгружено {} байт",
+                directory, log.getDurablePosition() - log.getAcknowledgedPosition());
+
+        registerMeters();
+
+        drainer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "wal-drainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        drainer.scheduleWithFixedDelay(this::drain, 0, drainIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void registerMeters() {
+        appendedTicks = meterRegistry.counter("crypto.wal.ticks", "stage", "appended");
+        drainedTicks = meterRegistry.counter("crypto.wal.ticks", "stage", "drained");
+        appendTimer = meterRegistry.timer("crypto.wal.append");
+        Gauge.builder("crypto.wal.pending.bytes", this, buffer -> buffer.log.getDurablePosition() - buffer.log.getAcknowledgedPosition())
+                .description("Объём журнала, ещё не выгруженный в PostgreSQL")
+                .register(meterRegistry);
+        Gauge.builder("crypto.wal.segments", this, buffer -> buffer.log.getSegmentCount())
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (drainer == null) {
+            return;
+        }
+        drainer.shutdown();
+        try {
+            drainer.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+    }
+
+    // Возвращает управление после того, как тики надёжно записаны в журнал; в БД их выгрузит фоновый поток
+    public void append(List<CoinPriceHistory> ticks) {
+        if (ticks.isEmpty()) {
+            return;
+        }
+        appendTimer.record(() -> log.append(ticks));
+        appendedTicks.increment(ticks.size());
+    }
+
+    void drain() {
+        try {
+            while (true) {
+                TickWriteAheadLog.Batch batch = log.read(log.getAcknowledgedPosition(), drainBatchSize);
+                if (batch.records().isEmpty()) {
+                    break;
+                }
+                bulkWriter.write(batch.records());
+                log.acknowledge(batch.nextPosition());
+                drainedTicks.increment(batch.records().size());
+
+                if (drainFailing) {
+                    drainFailing = false;
+                    logger.info("Выгрузка журнала тиков в БД восстановлена");
+                }
+            }
+        } catch (Exception e) {
+            // Записи остаются в журнале и будут повторены на следующем проходе
+            if (!drainFailing) {
+                drainFailing = true;
+                logger.error("Ошибка выгрузки журнала тиков в БД: {}", e.getMessage());
+            }
+        }
+    }
+}
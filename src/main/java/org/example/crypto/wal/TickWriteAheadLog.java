@@ -0,0 +1,377 @@
+package org.example.crypto.wal;
+
+import org.example.crypto.model.CoinPriceHistory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Журнал тиков из отображённых в память сегментов фиксированного размера.
+// Запись: [длина][crc32][данные]; нулевая длина - конец записанных данных, -1 - переход в следующий сегмент.
+// Позиция в журнале сквозная: сегмент N покрывает [N * segmentSize, (N + 1) * segmentSize).
+public class TickWriteAheadLog implements Closeable {
+
+    private static final int HEADER_SIZE = 8;
+    private static final int END_OF_SEGMENT = -1;
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    // Unsafe.invokeCleaner снимает отображение сразу, не дожидаясь сборки мусора буфера;
+    // без него выгруженные сегменты держат адресное пространство и удалённые файлы
+    private static final MethodHandle INVOKE_CLEANER = findCleaner();
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ConcurrentSkipListMap<Long, MappedByteBuffer> segments = new ConcurrentSkipListMap<>();
+
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+    // read() и acknowledge() вызывает один поток выгрузки; блокировка защищает от снятия отображения
+    // сегмента, который ещё читается, при close() из другого потока
+    private final Object readLock = new Object();
+
+    private long writePosition;
+    private boolean closed;
+    private volatile long durablePosition;
+    private volatile long acknowledgedPosition;
+
+    public record Batch(List<CoinPriceHistory> records, long nextPosition) {
+    }
+
+    public TickWriteAheadLog(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+
+        acknowledgedPosition = readCheckpoint();
+        long firstLiveSegment = acknowledgedPosition / segmentSize;
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(SEGMENT_SUFFIX)).toList()) {
+                String name = file.getFileName().toString();
+                long index = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                if (index < firstLiveSegment) {
+                    Files.deleteIfExists(file);
+                } else {
+                    segments.put(index, map(file));
+                }
+            }
+        }
+
+        writePosition = recover();
+        durablePosition = writePosition;
+    }
+
+    public long append(List<CoinPriceHistory> records) {
+        long end;
+        synchronized (writeLock) {
+            if (closed) {
+                throw new IllegalStateException("Журнал тиков закрыт");
+            }
+            for (CoinPriceHistory record : records) {
+                byte[] payload = encode(record);
+                int size = HEADER_SIZE + payload.length;
+                if (size > segmentSize) {
+                    throw new IllegalArgumentException("Запись больше сегмента журнала: " + size);
+                }
+
+                int offset = offset(writePosition);
+                if (offset + size > segmentSize) {
+                    if (segmentSize - offset >= Integer.BYTES) {
+                        segment(writePosition / segmentSize).putInt(offset, END_OF_SEGMENT);
+                    }
+                    writePosition = (writePosition / segmentSize + 1) * segmentSize;
+                    offset = 0;
+                }
+
+                MappedByteBuffer buffer = segment(writePosition / segmentSize);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                buffer.putInt(offset + Integer.BYTES, (int) crc.getValue());
+                buffer.put(offset + HEADER_SIZE, payload);
+                buffer.putInt(offset, payload.length);
+                writePosition += size;
+            }
+            end = writePosition;
+        }
+        sync(end);
+        return end;
+    }
+
+    // Групповая фиксация: один force() покрывает все записи, сделанные к его началу,
+    // и параллельные писатели, чьи данные уже покрыты, выходят без собственного force()
+    private void sync(long position) {
+        synchronized (syncLock) {
+            if (durablePosition >= position) {
+                return;
+            }
+            long target;
+            List<MappedByteBuffer> dirty;
+            synchronized (writeLock) {
+                target = writePosition;
+                long lastSegment = target == 0 ? 0 : (target - 1) / segmentSize;
+                dirty = new ArrayList<>(segments.subMap(durablePosition / segmentSize, true, lastSegment, true).values());
+            }
+            dirty.forEach(MappedByteBuffer::force);
+            durablePosition = target;
+        }
+    }
+
+    public Batch read(long fromPosition, int maxRecords) {
+        synchronized (readLock) {
+            return readUnlocked(fromPosition, maxRecords);
+        }
+    }
+
+    private Batch readUnlocked(long fromPosition, int maxRecords) {
+        List<CoinPriceHistory> records = new ArrayList<>();
+        long position = Math.max(fromPosition, acknowledgedPosition);
+        long limit = durablePosition;
+
+        while (position < limit && records.size() < maxRecords) {
+            int offset = offset(position);
+            MappedByteBuffer buffer = segments.get(position / segmentSize);
+            if (buffer == null || offset + HEADER_SIZE > segmentSize) {
+                position = nextSegmentStart(position);
+                continue;
+            }
+            int length = buffer.getInt(offset);
+            if (length == END_OF_SEGMENT) {
+                position = nextSegmentStart(position);
+                continue;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(offset + HEADER_SIZE, payload);
+            records.add(decode(payload));
+            position += HEADER_SIZE + length;
+        }
+        return new Batch(records, position);
+    }
+
+    public void acknowledge(long position) throws IOException {
+        synchronized (readLock) {
+            if (position <= acknowledgedPosition) {
+                return;
+            }
+            writeCheckpoint(position);
+            acknowledgedPosition = position;
+
+            // Выгруженные сегменты лежат до подтверждённой позиции и до durablePosition:
+            // ни запись, ни групповая фиксация к ним больше не обращаются
+            for (Long index : new ArrayList<>(segments.headMap(position / segmentSize).keySet())) {
+                unmap(segments.remove(index));
+                Files.deleteIfExists(segmentPath(index));
+            }
+        }
+    }
+
+    public long getAcknowledgedPosition() {
+        return acknowledgedPosition;
+    }
+
+    public long getDurablePosition() {
+        return durablePosition;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() {
+        long end;
+        synchronized (writeLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            end = writePosition;
+        }
+        sync(end);
+        synchronized (readLock) {
+            synchronized (syncLock) {
+                segments.values().forEach(TickWriteAheadLog::unmap);
+                segments.clear();
+            }
+        }
+    }
+
+    private long recover() throws IOException {
+        long position = acknowledgedPosition;
+        while (true) {
+            int offset = offset(position);
+            MappedByteBuffer buffer = segments.get(position / segmentSize);
+            if (buffer == null) {
+                break;
+            }
+            if (offset + HEADER_SIZE > segmentSize) {
+                position = nextSegmentStart(position);
+                continue;
+            }
+            int length = buffer.getInt(offset);
+            if (length == END_OF_SEGMENT) {
+                position = nextSegmentStart(position);
+                continue;
+            }
+            if (length <= 0 || offset + HEADER_SIZE + length > segmentSize) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(offset + HEADER_SIZE, payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(offset + Integer.BYTES)) {
+                break;
+            }
+            position += HEADER_SIZE + length;
+        }
+
+        // Хвост после последней целой записи обнуляем, иначе остатки оборванной записи
+        // могли бы прочитаться как данные после следующего перезапуска
+        long writeSegment = position / segmentSize;
+        MappedByteBuffer buffer = segments.get(writeSegment);
+        if (buffer != null) {
+            for (int i = offset(position); i < segmentSize; i++) {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.force();
+        }
+        for (Long index : new ArrayList<>(segments.tailMap(writeSegment, false).keySet())) {
+            unmap(segments.remove(index));
+            Files.deleteIfExists(segmentPath(index));
+        }
+        return position;
+    }
+
+    private MappedByteBuffer segment(long index) {
+        return segments.computeIfAbsent(index, i -> {
+            try {
+                return map(segmentPath(i));
+            } catch (IOException e) {
+                throw new IllegalStateException("Не удалось создать сегмент журнала " + i, e);
+            }
+        });
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        if (buffer == null || INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact((ByteBuffer) buffer);
+        } catch (Throwable e) {
+            // Отображение освободит сборщик мусора
+        }
+    }
+
+    private static MethodHandle findCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(checkpoint)) {
+            return 0L;
+        }
+        return ByteBuffer.wrap(Files.readAllBytes(checkpoint)).getLong();
+    }
+
+    private void writeCheckpoint(long position) throws IOException {
+        Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, position));
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(CHECKPOINT_FILE),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path segmentPath(long index) {
+        return directory.resolve(String.format("%020d%s", index, SEGMENT_SUFFIX));
+    }
+
+    private int offset(long position) {
+        return (int) (position % segmentSize);
+    }
+
+    private long nextSegmentStart(long position) {
+        return (position / segmentSize + 1) * segmentSize;
+    }
+
+    static byte[] encode(CoinPriceHistory record) {
+        byte[] coinId = record.getCoinId().getBytes(StandardCharsets.UTF_8);
+        byte[] symbol = record.getSymbol().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES + Integer.BYTES + 3 * Double.BYTES + 1
+                + Short.BYTES + coinId.length + Short.BYTES + symbol.length);
+
+        buffer.putLong(record.getTimestamp().getEpochSecond());
+        buffer.putInt(record.getTimestamp().getNano());
+        buffer.putDouble(record.getPrice());
+        byte flags = 0;
+        if (record.getVolume() != null) {
+            flags |= 1;
+        }
+        if (record.getMarketCap() != null) {
+            flags |= 2;
+        }
+        buffer.put(flags);
+        buffer.putDouble(record.getVolume() != null ? record.getVolume() : 0d);
+        buffer.putDouble(record.getMarketCap() != null ? record.getMarketCap() : 0d);
+        buffer.putShort((short) coinId.length).put(coinId);
+        buffer.putShort((short) symbol.length).put(symbol);
+        return buffer.array();
+    }
+
+    static CoinPriceHistory decode(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        CoinPriceHistory record = new CoinPriceHistory();
+        record.setTimestamp(Instant.ofEpochSecond(buffer.getLong(), buffer.getInt()));
+        record.setPrice(buffer.getDouble());
+        byte flags = buffer.get();
+        double volume = buffer.getDouble();
+        double marketCap = buffer.getDouble();
+        record.setVolume((flags & 1) != 0 ? volume : null);
+        record.setMarketCap((flags & 2) != 0 ? marketCap : null);
+        byte[] coinId = new byte[buffer.getShort()];
+        buffer.get(coinId);
+        byte[] symbol = new byte[buffer.getShort()];
+        buffer.get(symbol);
+        record.setCoinId(new String(coinId, StandardCharsets.UTF_8));
+        record.setSymbol(new String(symbol, StandardCharsets.UTF_8));
+        return record;
+    }
+}
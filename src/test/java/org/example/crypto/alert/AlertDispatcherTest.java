@@ -0,0 +1,101 @@
+package org.example.crypto.alert;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AlertDispatcherTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private HttpServer server;
+    private AlertDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    private static Alert alert(String ruleId) {
+        Instant at = Instant.parse("2024-03-10T12:00:00Z");
+        return new Alert(ruleId, AlertRule.Type.PRICE_CHANGE, AlertRule.Direction.UP, "bitcoin", "btc", 6.5, 5,
+                Duration.ofHours(1), at, at);
+    }
+
+    @Test
+    void webhookReceivesAlertsAndFailingSinkDoesNotBlockIt() throws Exception {
+        BlockingQueue<String> bodies = new LinkedBlockingQueue<>();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/hook", exchange -> {
+            bodies.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+        AlertSink failing = new AlertSink() {
+            @Override
+            public String name() {
+                return "broken";
+            }
+
+            @Override
+            public void deliver(List<Alert> alerts) throws IOException {
+                throw new IOException("недоступен");
+            }
+        };
+        String url = "http://localhost:" + server.getAddress().getPort() + "/hook";
+        dispatcher = new AlertDispatcher(List.of(failing, new WebhookAlertSink(url, Duration.ofSeconds(5))), 100, 10,
+                Clock.systemUTC(), registry);
+        dispatcher.init();
+
+        dispatcher.submit(List.of(alert("a"), alert("b")));
+
+        String body = bodies.poll(10, TimeUnit.SECONDS);
+        assertNotNull(body);
+        assertTrue(body.contains("\"ruleId\":\"a\""), body);
+        assertTrue(body.contains("\"tickTimestamp\":\"2024-03-10T12:00:00Z\""), body);
+        assertTrue(body.contains("\"window\":\"PT1H\""), body);
+        dispatcher.shutdown();
+        assertEquals(2, registry.get("crypto.alerts.delivery").tags("sink", "webhook", "result", "ok").counter().count());
+        assertEquals(2, registry.get("crypto.alerts.delivery").tags("sink", "broken", "result", "error").counter().count());
+    }
+
+    @Test
+    void fullQueueDropsAlertsWithoutBlocking() {
+        AlertSink slow = new AlertSink() {
+            @Override
+            public String name() {
+                return "slow";
+            }
+
+            @Override
+            public void deliver(List<Alert> alerts) throws InterruptedException {
+                Thread.sleep(50);
+            }
+        };
+        dispatcher = new AlertDispatcher(List.of(slow), 2, 1, Clock.systemUTC(), registry);
+        dispatcher.init();
+
+        dispatcher.submit(List.of(alert("a"), alert("b"), alert("c"), alert("d"), alert("e")));
+
+        assertTrue(registry.get("crypto.alerts.dropped").counter().count() >= 2);
+    }
+}
@@ -0,0 +1,141 @@
+package org.example.crypto.alert;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.crypto.model.CoinPriceHistory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class AlertEngineTest {
+
+    private static final Instant START = Instant.parse("2024-03-10T00:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AlertEngine engine = new AlertEngine(mock(AlertDispatcher.class),
+            () -> List.of("bitcoin", "ethereum"), Path.of("missing.json"), 4,
+            Clock.fixed(START, ZoneOffset.UTC), registry);
+
+    private static AlertRule rule(String id, AlertRule.Type type, String coin, Duration window, double threshold,
+                                  AlertRule.Direction direction, Duration cooldown) {
+        return new AlertRule(id, type, coin, window, threshold, direction, cooldown);
+    }
+
+    private static CoinPriceHistory tick(String coinId, int minute, double price, Double volume, Double marketCap) {
+        return CoinPriceHistory.builder().coinId(coinId).symbol(coinId.substring(0, 3)).price(price)
+                .volume(volume).marketCap(marketCap).timestamp(START.plusSeconds(minute * 60L)).build();
+    }
+
+    private List<Alert> prices(String coinId, double... prices) {
+        List<Alert> alerts = new ArrayList<>();
+        for (int minute = 0; minute < prices.length; minute++) {
+            alerts.addAll(engine.evaluate(List.of(tick(coinId, minute, prices[minute], 100.0, null))));
+        }
+        return alerts;
+    }
+
+    @Test
+    void priceChangeFiresOnCrossingAndRearmsAfterReturn() {
+        engine.setRules(List.of(
+                rule("up-5", AlertRule.Type.PRICE_CHANGE, "bitcoin", Duration.ofMinutes(2), 5, null, null),
+                rule("up-10", AlertRule.Type.PRICE_CHANGE, "bitcoin", Duration.ofMinutes(2), 10, null, null),
+                rule("down-5", AlertRule.Type.PRICE_CHANGE, "*", Duration.ofMinutes(2), 5,
+                        AlertRule.Direction.DOWN, null)));
+
+        // Изменение за 2 минуты: минута 2 - первое значение (0%), 3 - +12% пересекает оба порога вверх,
+        // 4 - условие держится, повтора нет; 5 - 0%, правила снова взведены; 6 - -10.7%; 8 - снова +12%; 10 - -10%
+        List<Alert> alerts = prices("bitcoin", 100, 100, 100, 112, 112, 112, 100, 112, 112, 112, 100.8);
+
+        assertEquals(List.of("up-5", "up-10", "down-5", "up-5", "up-10", "down-5"),
+                alerts.stream().map(Alert::ruleId).toList());
+        assertEquals(12, alerts.get(0).value(), 1e-9);
+        assertEquals(START.plusSeconds(180), alerts.get(0).tickTimestamp());
+        Alert drop = alerts.get(5);
+        assertEquals(AlertRule.Direction.DOWN, drop.direction());
+        assertEquals(-10, drop.value(), 1e-9);
+        assertEquals(6, registry.get("crypto.alerts.fired").tag("type", "price_change").counter().count());
+        assertEquals(11, registry.get("crypto.alerts.evaluation").timer().count());
+    }
+
+    @Test
+    void cooldownSuppressesRepeatedCrossings() {
+        engine.setRules(List.of(rule("move", AlertRule.Type.PRICE_CHANGE, "*", Duration.ofMinutes(1), 5,
+                AlertRule.Direction.BOTH, Duration.ofMinutes(5))));
+
+        // Пересечения на минутах 2 (вверх), 3 (вниз) и 8 (вверх, cooldown уже прошёл)
+        List<Alert> alerts = prices("ethereum", 100, 100, 110, 100, 100, 100, 100, 100, 110);
+
+        assertEquals(List.of(START.plusSeconds(120), START.plusSeconds(480)),
+                alerts.stream().map(Alert::tickTimestamp).toList());
+        assertEquals(1, registry.get("crypto.alerts.suppressed").counter().count());
+    }
+
+    @Test
+    void volumeSpikeComparesWithMeanOfWindowAndBufferGrowsToCoverIt() {
+        engine.setRules(List.of(rule("spike", AlertRule.Type.VOLUME_SPIKE, "*", Duration.ofMinutes(10), 3, null, null)));
+        List<Alert> alerts = new ArrayList<>();
+        for (int minute = 0; minute < 30; minute++) {
+            double volume = minute == 25 ? 450 : minute % 2 == 0 ? 100 : 200;
+            alerts.addAll(engine.evaluate(List.of(tick("bitcoin", minute, 100, volume, null))));
+        }
+
+        assertEquals(1, alerts.size());
+        assertEquals(START.plusSeconds(25 * 60), alerts.get(0).tickTimestamp());
+        // Среднее по тикам минут 16-24: пять по 100 и четыре по 200
+        assertEquals(450 / (1300.0 / 9), alerts.get(0).value(), 1e-9);
+    }
+
+    @Test
+    void dominanceWaitsForAllMarketCapsAndFiresOnCrossing() {
+        engine.setRules(List.of(rule("btc-50", AlertRule.Type.DOMINANCE, "bitcoin", null, 50,
+                AlertRule.Direction.BOTH, null)));
+
+        assertTrue(engine.evaluate(List.of(tick("bitcoin", 0, 1, null, 40.0))).isEmpty());
+        // Обе капитализации известны: 40% - исходное значение, затем 60% (вверх) и 45% (вниз)
+        assertTrue(engine.evaluate(List.of(tick("ethereum", 1, 1, null, 60.0), tick("bitcoin", 1, 1, null, 40.0)))
+                .isEmpty());
+        List<Alert> up = engine.evaluate(List.of(tick("bitcoin", 2, 1, null, 90.0)));
+        List<Alert> down = engine.evaluate(List.of(tick("bitcoin", 3, 1, null, 49.0)));
+
+        assertEquals(1, up.size());
+        assertEquals(AlertRule.Direction.UP, up.get(0).direction());
+        assertEquals(60, up.get(0).value(), 1e-9);
+        assertEquals(1, down.size());
+        assertEquals(AlertRule.Direction.DOWN, down.get(0).direction());
+    }
+
+    @Test
+    void staleTicksAreSkippedAndRulesReloadFromFile() throws IOException {
+        Path file = directory.resolve("rules.json");
+        Files.writeString(file, """
+                [{"id": "drop", "type": "price_change", "coin": "Bitcoin", "window": "PT1M", "threshold": 5,
+                  "direction": "down", "cooldown": "PT10M"}]
+                """);
+        List<AlertRule> rules = AlertRule.read(file);
+        assertEquals("bitcoin", rules.get(0).coin());
+        assertEquals(AlertRule.Direction.DOWN, rules.get(0).direction());
+        assertEquals(Duration.ofMinutes(10), rules.get(0).cooldown());
+        engine.setRules(rules);
+
+        engine.evaluate(List.of(tick("bitcoin", 5, 100, null, null)));
+        assertTrue(engine.evaluate(List.of(tick("bitcoin", 4, 50, null, null))).isEmpty());
+
+        assertEquals(1, registry.get("crypto.alerts.ticks").tag("result", "stale").counter().count());
+        Files.writeString(file, "[{\"id\": \"a\", \"type\": \"dominance\"}, {\"id\": \"a\", \"type\": \"dominance\"}]");
+        assertThrows(IllegalArgumentException.class, () -> AlertRule.read(file));
+    }
+}
@@ -0,0 +1,109 @@
+package org.example.crypto.backtest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BacktesterTest {
+
+    private static PriceSeries series(String coinId, double[] closes) {
+        long[] times = new long[closes.length];
+        Arrays.setAll(times, i -> i * 3_600_000L);
+        return new PriceSeries(coinId, coinId.toUpperCase(), times, closes);
+    }
+
+    private static double[] randomWalk(int n, long seed) {
+        Random random = new Random(seed);
+        double[] closes = new double[n];
+        closes[0] = 100;
+        for (int i = 1; i < n; i++) {
+            closes[i] = closes[i - 1] * Math.exp(random.nextGaussian() * 0.01);
+        }
+        return closes;
+    }
+
+    @Test
+    void holdingThroughoutEarnsPriceReturnAndTracksDrawdown() {
+        double[] prices = {100, 120, 90, 108};
+        double[] positions = {1, 1, 1, 1};
+
+        Performance performance = Performance.evaluate(prices, positions, 0, 8760);
+
+        assertEquals(0.08, performance.totalReturn(), 1e-12);
+        assertEquals(0.25, performance.maxDrawdown(), 1e-12);
+        assertEquals(1, performance.trades());
+        assertEquals(1.0, performance.exposure(), 1e-12);
+
+        // Комиссия 10 б.п. вычитается из доходности бара входа, один раз
+        Performance withCost = Performance.evaluate(prices, positions, 0.001, 8760);
+        assertEquals((1.2 - 0.001) * 0.75 * 1.2 - 1, withCost.totalReturn(), 1e-12);
+    }
+
+    @Test
+    void positionsDoNotLookAhead() {
+        double[] prices = randomWalk(500, 7);
+        double[] params = {24, 1.5};
+        double[] full = new double[prices.length];
+        Strategy.MEAN_REVERSION.positions(prices, params, full);
+
+        // Позиции на префиксе не зависят от того, что идёт после него
+        double[] prefix = Arrays.copyOf(prices, 300);
+        double[] partial = new double[prefix.length];
+        Strategy.MEAN_REVERSION.positions(prefix, params, partial);
+        assertArrayEquals(partial, Arrays.copyOf(full, 300));
+
+        double[] crossover = new double[prices.length];
+        Strategy.MA_CROSSOVER.positions(prices, new double[]{5, 20}, crossover);
+        for (int t = 0; t < 19; t++) {
+            assertEquals(0, crossover[t], "нет позиции до заполнения медленного окна");
+        }
+    }
+
+    @Test
+    void gridExpandsProductAndDropsInvalidPoints() {
+        ParameterGrid grid = ParameterGrid.parse("ma_crossover:fast=5,50;slow=20,100");
+
+        assertEquals(Strategy.MA_CROSSOVER, grid.strategy());
+        assertEquals(List.of("fast=5;slow=20", "fast=5;slow=100", "fast=50;slow=100"),
+                grid.points().stream().map(grid::describe).toList());
+        assertEquals("window=24;entry=1.5",
+                ParameterGrid.parse("mean-reversion:window=24;entry=1.5").describe(new double[]{24, 1.5}));
+        assertThrows(IllegalArgumentException.class, () -> ParameterGrid.parse("momentum:lookback=6"));
+        ParameterGrid.DEFAULTS.forEach(spec -> assertFalse(ParameterGrid.parse(spec).points().isEmpty()));
+    }
+
+    @Test
+    void parallelRunMatchesSequentialEvaluation() {
+        List<PriceSeries> series = List.of(series("bitcoin", randomWalk(2000, 1)),
+                series("ethereum", randomWalk(1500, 2)), series("solana", randomWalk(1, 3)));
+        List<ParameterGrid> grids = ParameterGrid.DEFAULTS.stream().map(ParameterGrid::parse).toList();
+        int points = grids.stream().mapToInt(grid -> grid.points().size()).sum();
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Backtester backtester = new Backtester(pool, 10, 8760);
+            Backtester.Report report = backtester.run(series, grids);
+
+            // Ряд из одного бара пропускается
+            assertEquals(2 * points, report.results().size());
+            assertEquals((long) points * 3500, report.bars());
+            Backtester sequential = new Backtester(ForkJoinPool.commonPool(), 10, 8760);
+            for (Backtester.Result result : report.results()) {
+                PriceSeries coin = series.stream().filter(s -> s.coinId().equals(result.coinId())).findFirst()
+                        .orElseThrow();
+                ParameterGrid grid = grids.stream().filter(g -> g.strategy() == result.strategy()).findFirst()
+                        .orElseThrow();
+                double[] params = grid.points().stream().filter(p -> grid.describe(p).equals(result.parameters()))
+                        .findFirst().orElseThrow();
+                assertEquals(sequential.evaluate(coin, result.strategy(), params), result.performance());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.example.crypto.cluster;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.crypto.model.ClusterMember;
+import org.example.crypto.repository.ClusterMemberRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CoinShardingServiceTest {
+
+    private static final List<String> COINS = List.of("bitcoin", "ethereum", "solana", "cardano", "ripple",
+            "dogecoin", "polkadot", "litecoin", "tron", "chainlink");
+
+    private ClusterMemberRepository repository;
+    private CoinShardingService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(ClusterMemberRepository.class);
+        when(repository.findByLastHeartbeatAfter(any())).thenReturn(List.of(
+                new ClusterMember("node-a", Instant.now(), Instant.now()),
+                new ClusterMember("node-b", Instant.now(), Instant.now())));
+        service = new CoinShardingService(repository, new SimpleMeterRegistry(), "node-a");
+        ReflectionTestUtils.setField(service, "enabled", true);
+    }
+
+    @Test
+    void ownsOnlyItsShareOfCoins() {
+        service.heartbeat();
+
+        List<String> owned = service.filterOwned(COINS);
+
+        assertFalse(owned.isEmpty());
+        assertTrue(owned.size() < COINS.size());
+    }
+
+    @Test
+    void transientHeartbeatFailureKeepsRingWhileLeaseIsValid() {
+        service.heartbeat();
+        List<String> owned = service.filterOwned(COINS);
+
+        doThrow(new DataAccessResourceFailureException("нет соединения"))
+                .when(repository).heartbeat(eq("node-a"), any());
+        service.heartbeat();
+
+        assertEquals(owned, service.filterOwned(COINS));
+    }
+
+    @Test
+    void expiredHeartbeatDropsStaleRing() {
+        service.heartbeat();
+        assertFalse(service.filterOwned(COINS).isEmpty());
+
+        // Последний успешный heartbeat старше member-ttl-ms: остальные реплики уже исключили узел,
+        // и по старому кольцу он грузил бы монеты, переданные им
+        ReflectionTestUtils.setField(service, "leaseUntil", Instant.now().minusSeconds(1));
+        doThrow(new DataAccessResourceFailureException("нет соединения"))
+                .when(repository).heartbeat(eq("node-a"), any());
+        service.heartbeat();
+
+        assertEquals(List.of(), service.filterOwned(COINS));
+
+        // После восстановления heartbeat узел снова получает свою часть
+        doNothing().when(repository).heartbeat(eq("node-a"), any());
+        service.heartbeat();
+        assertFalse(service.filterOwned(COINS).isEmpty());
+    }
+}
@@ -0,0 +1,52 @@
+package org.example.crypto.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsistentHashRingTest {
+
+    private final List<String> coins = IntStream.range(0, 2000)
+            .mapToObj(i -> "coin-" + i)
+            .collect(Collectors.toList());
+
+    @Test
+    void ownerOfShouldReturnNullForEmptyRing() {
+        assertNull(new ConsistentHashRing(List.of(), 128).ownerOf("bitcoin"));
+    }
+
+    @Test
+    void coinsShouldBeSpreadEvenlyAcrossNodes() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c", "d"), 128);
+
+        Map<String, Integer> counts = new HashMap<>();
+        coins.forEach(coin -> counts.merge(ring.ownerOf(coin), 1, Integer::sum));
+
+        assertEquals(4, counts.size());
+        counts.values().forEach(count -> assertTrue(count > 300 && count < 700, "несбалансированный шард: " + counts));
+    }
+
+    @Test
+    void addingNodeShouldMoveOnlyCoinsToNewNode() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("a", "b", "c"), 128);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("a", "b", "c", "d"), 128);
+
+        int moved = 0;
+        for (String coin : coins) {
+            String oldOwner = before.ownerOf(coin);
+            String newOwner = after.ownerOf(coin);
+            if (!oldOwner.equals(newOwner)) {
+                assertEquals("d", newOwner);
+                moved++;
+            }
+        }
+
+        assertTrue(moved > coins.size() / 8 && moved < coins.size() / 3, "переехало монет: " + moved);
+    }
+}
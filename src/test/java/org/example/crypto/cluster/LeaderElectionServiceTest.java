@@ -0,0 +1,150 @@
+package org.example.crypto.cluster;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+class LeaderElectionServiceTest {
+
+    private Connection connection;
+    private ResultSet tryLockResult;
+    private ResultSet holdsLockResult;
+    private ResultSet epochResult;
+    private ApplicationEventPublisher eventPublisher;
+    private SimpleMeterRegistry meterRegistry;
+    private LeaderElectionService service;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(mock(Statement.class));
+        when(connection.isValid(anyInt())).thenReturn(true);
+
+        tryLockResult = mock(ResultSet.class);
+        PreparedStatement tryLock = mock(PreparedStatement.class);
+        when(tryLock.executeQuery()).thenReturn(tryLockResult);
+        when(connection.prepareStatement(startsWith("SELECT pg_try_advisory_lock"))).thenReturn(tryLock);
+
+        holdsLockResult = mock(ResultSet.class);
+        PreparedStatement holdsLock = mock(PreparedStatement.class);
+        when(holdsLock.executeQuery()).thenReturn(holdsLockResult);
+        when(connection.prepareStatement(startsWith("SELECT count(*) FROM pg_locks"))).thenReturn(holdsLock);
+
+        epochResult = mock(ResultSet.class);
+        when(epochResult.next()).thenReturn(true);
+        when(epochResult.getLong(1)).thenReturn(7L, 8L);
+        PreparedStatement nextEpoch = mock(PreparedStatement.class);
+        when(nextEpoch.executeQuery()).thenReturn(epochResult);
+        when(connection.prepareStatement(startsWith("INSERT INTO cluster_leader_epoch"))).thenReturn(nextEpoch);
+
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        meterRegistry = new SimpleMeterRegistry();
+        service = new LeaderElectionService(() -> connection, eventPublisher, meterRegistry);
+    }
+
+    @Test
+    void tickShouldBecomeLeaderWhenLockAcquired() throws SQLException {
+        when(tryLockResult.next()).thenReturn(true);
+        when(tryLockResult.getBoolean(1)).thenReturn(true);
+
+        service.tick();
+
+        assertTrue(service.isLeader());
+        assertEquals(1.0, meterRegistry.get("crypto.cluster.leader").gauge().value());
+        ArgumentCaptor<LeadershipChangedEvent> captor = ArgumentCaptor.forClass(LeadershipChangedEvent.class);
+        verify(eventPublisher).publishEvent(captor.capture());
+        assertTrue(captor.getValue().isLeader());
+    }
+
+    @Test
+    void tickShouldStayFollowerWhenLockHeldElsewhere() throws SQLException {
+        when(tryLockResult.next()).thenReturn(true);
+        when(tryLockResult.getBoolean(1)).thenReturn(false);
+
+        service.tick();
+
+        assertFalse(service.isLeader());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void tickShouldStepDownWhenLockIsLost() throws SQLException {
+        when(tryLockResult.next()).thenReturn(true);
+        when(tryLockResult.getBoolean(1)).thenReturn(true);
+        service.tick();
+
+        when(holdsLockResult.next()).thenReturn(true);
+        when(holdsLockResult.getLong(1)).thenReturn(0L);
+        service.tick();
+
+        assertFalse(service.isLeader());
+        verify(connection).close();
+        assertEquals(1.0, meterRegistry.get("crypto.cluster.leadership.transitions").tag("type", "lost").counter().count());
+    }
+
+    @Test
+    void tickShouldStepDownWhenConnectionFails() throws SQLException {
+        when(tryLockResult.next()).thenReturn(true);
+        when(tryLockResult.getBoolean(1)).thenReturn(true);
+        service.tick();
+
+        when(connection.isValid(anyInt())).thenThrow(new SQLException("connection reset"));
+        service.tick();
+
+        assertFalse(service.isLeader());
+        verify(connection).close();
+    }
+
+    @Test
+    void fenceShouldCarryEpochOfCurrentLeadership() throws SQLException {
+        ReflectionTestUtils.setField(service, "enabled", true);
+        assertThrows(IllegalStateException.class, () -> service.fence());
+
+        when(tryLockResult.next()).thenReturn(true);
+        when(tryLockResult.getBoolean(1)).thenReturn(true);
+        service.tick();
+        assertEquals(new WriteFence(727361, 7), service.fence());
+
+        // Повторный захват после потери лидерства получает новую эпоху
+        when(holdsLockResult.next()).thenReturn(true);
+        when(holdsLockResult.getLong(1)).thenReturn(0L);
+        service.tick();
+        assertThrows(IllegalStateException.class, () -> service.fence());
+        service.tick();
+        assertEquals(new WriteFence(727361, 8), service.fence());
+    }
+
+    @Test
+    void fenceShouldRejectWriteFromStaleEpoch() throws SQLException {
+        ResultSet current = mock(ResultSet.class);
+        when(current.next()).thenReturn(true);
+        when(current.getLong(1)).thenReturn(8L);
+        PreparedStatement select = mock(PreparedStatement.class);
+        when(select.executeQuery()).thenReturn(current);
+        Connection sinkConnection = mock(Connection.class);
+        when(sinkConnection.prepareStatement(startsWith("SELECT epoch FROM cluster_leader_epoch"))).thenReturn(select);
+
+        assertThrows(WriteFence.FencedWriteException.class, () -> new WriteFence(727361, 7).check(sinkConnection));
+        new WriteFence(727361, 8).check(sinkConnection);
+        WriteFence.NONE.check(sinkConnection);
+        verify(select, times(2)).executeQuery();
+        assertEquals(List.of("--crypto.cluster.fence.lock-key=727361", "--crypto.cluster.fence.epoch=8"),
+                new WriteFence(727361, 8).arguments());
+        assertEquals(List.of(), WriteFence.NONE.arguments());
+    }
+}
@@ -0,0 +1,96 @@
+package org.example.crypto.correlation;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CorrelationEngineTest {
+
+    private static final long HOUR = 3600;
+    // 10:05 - бар 9:00-10:00 уже закрыт с учётом двухминутного запаса
+    private static final Instant NOW = Instant.parse("2024-03-10T10:05:00Z");
+    private static final long LAST_CLOSED = NOW.getEpochSecond() / HOUR - 1;
+
+    private final CoinCorrelationStore store = mock(CoinCorrelationStore.class);
+    private final Clock clock = mock(Clock.class);
+
+    private CorrelationEngine engine() {
+        return new CorrelationEngine(store, clock, Duration.ofHours(1), 4, 2, Duration.ofMinutes(2), 2,
+                new SimpleMeterRegistry());
+    }
+
+    // btc и eth ходят вместе, doge - против них; у eth нет тика в одном из баров
+    private static List<CoinCorrelationStore.Close> closes(long fromBar, long toBar) {
+        double[] btc = {100, 101, 99, 102, 104, 103, 105};
+        double[] eth = {10, 10.2, 9.7, 10.3, 10.9, 10.6, 11.1};
+        double[] doge = {1, 0.98, 1.03, 0.97, 0.93, 0.96, 0.92};
+        List<CoinCorrelationStore.Close> closes = new ArrayList<>();
+        for (long bar = fromBar; bar <= toBar; bar++) {
+            int t = (int) (bar - (LAST_CLOSED - 4));
+            closes.add(new CoinCorrelationStore.Close("bitcoin", bar, btc[t]));
+            if (t != 2) {
+                closes.add(new CoinCorrelationStore.Close("ethereum", bar, eth[t]));
+            }
+            closes.add(new CoinCorrelationStore.Close("dogecoin", bar, doge[t]));
+        }
+        return closes;
+    }
+
+    @Test
+    void firstUpdateLoadsWholeWindowAndNextReadsOnlyNewBar() {
+        when(clock.instant()).thenReturn(NOW);
+        when(store.closes(anyLong(), anyLong(), eq(HOUR))).thenAnswer(invocation ->
+                closes(invocation.getArgument(0), invocation.getArgument(1)));
+        CorrelationEngine engine = engine();
+
+        assertTrue(engine.update());
+        // Окно из 4 доходностей требует 5 закрытий
+        verify(store).closes(LAST_CLOSED - 4, LAST_CLOSED, HOUR);
+        assertFalse(engine.update());
+
+        when(clock.instant()).thenReturn(NOW.plusSeconds(HOUR));
+        assertTrue(engine.update());
+        verify(store).closes(LAST_CLOSED + 1, LAST_CLOSED + 1, HOUR);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<CoinCorrelationStore.Row>> rows = ArgumentCaptor.forClass(List.class);
+        verify(store, times(2)).replace(any(), rows.capture());
+        List<CoinCorrelationStore.Row> latest = rows.getValue();
+
+        CoinCorrelationStore.Row bitcoinMost = latest.stream()
+                .filter(row -> row.coinId().equals("bitcoin") && row.direction().equals("most") && row.rank() == 1)
+                .findFirst().orElseThrow();
+        assertEquals("ethereum", bitcoinMost.peerId());
+        assertTrue(bitcoinMost.correlation() > 0.5);
+        CoinCorrelationStore.Row bitcoinLeast = latest.stream()
+                .filter(row -> row.coinId().equals("bitcoin") && row.direction().equals("least") && row.rank() == 1)
+                .findFirst().orElseThrow();
+        assertEquals("dogecoin", bitcoinLeast.peerId());
+        assertTrue(bitcoinLeast.correlation() < -0.5);
+    }
+
+    @Test
+    void longGapRebuildsWindow() {
+        when(clock.instant()).thenReturn(NOW.minusSeconds(2 * HOUR));
+        when(store.closes(anyLong(), anyLong(), eq(HOUR))).thenReturn(List.of());
+        CorrelationEngine engine = engine();
+        engine.update();
+
+        when(clock.instant()).thenReturn(NOW.plusSeconds(10 * HOUR));
+        engine.update();
+
+        verify(store).closes(LAST_CLOSED + 10 - 4, LAST_CLOSED + 10, HOUR);
+    }
+}
@@ -0,0 +1,145 @@
+package org.example.crypto.correlation;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RollingCorrelationTest {
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    // Монеты с общим рыночным фактором и разной нагрузкой на него, у последней - нагрузка отрицательная
+    private static List<double[]> returns(int coins, int bars, long seed) {
+        Random random = new Random(seed);
+        List<double[]> result = new ArrayList<>();
+        for (int t = 0; t < bars; t++) {
+            double market = random.nextGaussian() * 0.02;
+            double[] bar = new double[coins];
+            for (int i = 0; i < coins; i++) {
+                double beta = i == coins - 1 ? -1.0 : (double) i / coins;
+                bar[i] = beta * market + random.nextGaussian() * 0.01;
+            }
+            result.add(bar);
+        }
+        return result;
+    }
+
+    private static double pearson(List<double[]> bars, int i, int j) {
+        int n = bars.size();
+        double meanI = bars.stream().mapToDouble(bar -> bar[i]).sum() / n;
+        double meanJ = bars.stream().mapToDouble(bar -> bar[j]).sum() / n;
+        double cov = 0;
+        double varI = 0;
+        double varJ = 0;
+        for (double[] bar : bars) {
+            cov += (bar[i] - meanI) * (bar[j] - meanJ);
+            varI += (bar[i] - meanI) * (bar[i] - meanI);
+            varJ += (bar[j] - meanJ) * (bar[j] - meanJ);
+        }
+        return cov / Math.sqrt(varI * varJ);
+    }
+
+    @Test
+    void rollingStatisticsMatchFullRecomputation() {
+        int coins = 40;
+        int window = 24;
+        List<double[]> bars = returns(coins, 100, 1);
+        RollingCorrelation correlation = new RollingCorrelation(window, pool);
+        for (int i = 0; i < coins; i++) {
+            correlation.addCoin();
+        }
+
+        for (int t = 0; t < bars.size(); t++) {
+            correlation.add(bars.get(t));
+            if (t < window - 1) {
+                assertTrue(Double.isNaN(correlation.correlation(0, 1)));
+                continue;
+            }
+            // Проверяются бары и между точными пересчётами, и сразу после них
+            List<double[]> inWindow = bars.subList(t - window + 1, t + 1);
+            for (int[] pair : new int[][]{{0, 1}, {3, 17}, {17, 3}, {38, 39}, {5, 39}}) {
+                assertEquals(pearson(inWindow, pair[0], pair[1]), correlation.correlation(pair[0], pair[1]), 1e-9,
+                        "бар " + t + ", пара " + Arrays.toString(pair));
+            }
+        }
+    }
+
+    @Test
+    void topPeersAreOrderedAndNegativeLoadingIsLeastCorrelated() {
+        int coins = 20;
+        RollingCorrelation correlation = new RollingCorrelation(200, pool);
+        for (int i = 0; i < coins; i++) {
+            correlation.addCoin();
+        }
+        returns(coins, 200, 2).forEach(correlation::add);
+
+        List<RollingCorrelation.CoinPeers> peers = correlation.topPeers(3);
+
+        assertEquals(coins, peers.size());
+        RollingCorrelation.CoinPeers strongest = peers.stream().filter(p -> p.index() == 18).findFirst().orElseThrow();
+        assertEquals(3, strongest.most().size());
+        assertEquals(19, strongest.least().get(0).index());
+        assertTrue(strongest.least().get(0).correlation() < -0.5);
+        for (RollingCorrelation.CoinPeers coin : peers) {
+            for (int k = 1; k < coin.most().size(); k++) {
+                assertTrue(coin.most().get(k - 1).correlation() >= coin.most().get(k).correlation());
+                assertTrue(coin.least().get(k - 1).correlation() <= coin.least().get(k).correlation());
+            }
+            assertTrue(coin.most().stream().noneMatch(peer -> peer.index() == coin.index()));
+        }
+    }
+
+    @Test
+    void newAndInterruptedCoinsWaitForFullWindow() {
+        int window = 5;
+        RollingCorrelation correlation = new RollingCorrelation(window, pool);
+        correlation.addCoin();
+        correlation.addCoin();
+        List<double[]> bars = returns(3, 20, 3);
+        for (int t = 0; t < 10; t++) {
+            correlation.add(new double[]{bars.get(t)[0], bars.get(t)[1]});
+        }
+        correlation.addCoin();
+        for (int t = 10; t < 14; t++) {
+            correlation.add(bars.get(t));
+            assertFalse(correlation.ready(2));
+        }
+        correlation.add(bars.get(14));
+        assertTrue(correlation.ready(2));
+        assertEquals(pearson(bars.subList(10, 15), 0, 2), correlation.correlation(0, 2), 1e-9);
+
+        // Разрыв в ценах монеты начинает её окно заново
+        correlation.add(new double[]{0.01, Double.NaN, 0.02});
+        assertFalse(correlation.ready(1));
+        assertTrue(Double.isNaN(correlation.correlation(0, 1)));
+    }
+
+    @Test
+    void pairBlocksHoldSimilarPairCounts() {
+        int size = 1000;
+        int[] bounds = RollingCorrelation.blockBounds(size, 16);
+
+        assertEquals(0, bounds[0]);
+        assertEquals(size, bounds[bounds.length - 1]);
+        long total = (long) size * (size - 1) / 2;
+        for (int b = 0; b + 1 < bounds.length; b++) {
+            long pairs = 0;
+            for (int i = bounds[b]; i < bounds[b + 1]; i++) {
+                pairs += size - i - 1;
+            }
+            assertTrue(pairs <= total / 16 + size, "блок " + b + ": " + pairs);
+        }
+    }
+}
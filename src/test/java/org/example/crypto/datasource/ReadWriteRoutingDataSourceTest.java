@@ -0,0 +1,135 @@
+package org.example.crypto.datasource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ReadWriteRoutingDataSourceTest {
+
+    private DataSource primary;
+    private DataSource replica;
+    private double replicaLag;
+    private SimpleMeterRegistry meterRegistry;
+    private ReplicaLagMonitor lagMonitor;
+    private ReadWriteRoutingDataSource dataSource;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        primary = dataSourceMock();
+        replica = dataSourceMock();
+        meterRegistry = new SimpleMeterRegistry();
+        lagMonitor = new ReplicaLagMonitor(
+                List.of(new ReplicaLagMonitor.Replica("replica-1", "jdbc:postgresql://replica/cryptodb", "postgres", "admin")),
+                r -> {
+                    if (Double.isNaN(replicaLag)) {
+                        throw new SQLException("connection refused");
+                    }
+                    return replicaLag;
+                },
+                30, meterRegistry);
+        dataSource = new ReadWriteRoutingDataSource(primary, Map.of("replica-1", replica), lagMonitor, meterRegistry);
+
+        // Первое соединение прокси тратит на чтение настроек по умолчанию
+        query();
+        clearInvocations(primary, replica);
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    @Test
+    void writesGoToPrimary() throws SQLException {
+        replicaLag = 0;
+        lagMonitor.check();
+
+        query();
+
+        verify(primary).getConnection();
+        verify(replica, never()).getConnection();
+    }
+
+    @Test
+    void readOnlyTransactionsGoToReplica() throws SQLException {
+        replicaLag = 1.5;
+        lagMonitor.check();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        query();
+
+        verify(replica).getConnection();
+        verify(primary, never()).getConnection();
+        assertEquals(1.5, meterRegistry.get("crypto.datasource.replica.lag").gauge().value());
+    }
+
+    @Test
+    void laggingReplicaFallsBackToPrimaryUntilItCatchesUp() throws SQLException {
+        replicaLag = 120;
+        lagMonitor.check();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        query();
+        verify(primary).getConnection();
+        verify(replica, never()).getConnection();
+        assertEquals(1.0, meterRegistry.get("crypto.datasource.reads").tag("target", "primary").counter().count());
+
+        replicaLag = 0;
+        lagMonitor.check();
+        query();
+        verify(replica).getConnection();
+    }
+
+    @Test
+    void unreachableReplicaIsNotUsed() throws SQLException {
+        replicaLag = Double.NaN;
+        lagMonitor.check();
+
+        assertTrue(lagMonitor.pickReplica().isEmpty());
+    }
+
+    @Test
+    void lagProbeTimeoutsAreSetPerConnection() {
+        int loginTimeout = DriverManager.getLoginTimeout();
+        Properties properties = ReplicaLagMonitor.connectionProperties(lagMonitor.getReplicas().get(0), 2);
+
+        assertEquals("postgres", properties.getProperty("user"));
+        assertEquals("admin", properties.getProperty("password"));
+        assertEquals("2", properties.getProperty("loginTimeout"));
+        assertEquals("2", properties.getProperty("connectTimeout"));
+        assertEquals("4", properties.getProperty("socketTimeout"));
+        // Глобальный таймаут DriverManager остаётся прежним
+        assertEquals(loginTimeout, DriverManager.getLoginTimeout());
+    }
+
+    private void query() throws SQLException {
+        // Прокси открывает настоящее соединение только при первом запросе
+        try (Connection connection = dataSource.getConnection()) {
+            connection.createStatement();
+        }
+    }
+
+    private static DataSource dataSourceMock() throws SQLException {
+        Connection connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(mock(Statement.class));
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(connection.getTransactionIsolation()).thenReturn(Connection.TRANSACTION_READ_COMMITTED);
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        return dataSource;
+    }
+}
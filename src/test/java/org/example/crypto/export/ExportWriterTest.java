@@ -0,0 +1,126 @@
+package org.example.crypto.export;
+
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.TimeStampMicroTZVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExportWriterTest {
+
+    private static final List<ExportColumn> COLUMNS = List.of(
+            new ExportColumn("coin_id", ExportColumn.Kind.TEXT),
+            new ExportColumn("price", ExportColumn.Kind.FLOAT),
+            new ExportColumn("rank_position", ExportColumn.Kind.INTEGER),
+            new ExportColumn("date", ExportColumn.Kind.DATE),
+            new ExportColumn("timestamp", ExportColumn.Kind.TIMESTAMP_TZ));
+
+    private static final Instant TIME = Instant.parse("2024-03-01T12:00:00.123456Z");
+
+    // Строка i: монета coin-i (у второй - с запятой и кавычкой), цена i * 1.5, ранг i, у нечётных ранга нет
+    private static byte[] export(ExportFormat format, int rows, int batchRows) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ExportWriter writer = ExportWriter.create(format, out, batchRows)) {
+            writer.begin(COLUMNS);
+            ExportRow row = new ExportRow(COLUMNS);
+            for (int i = 0; i < rows; i++) {
+                row.setText(0, i == 1 ? "coin, \"one\"" : "coin-" + i);
+                row.setDouble(1, i * 1.5);
+                if (i % 2 == 1) {
+                    row.setNull(2);
+                } else {
+                    row.setLong(2, i);
+                }
+                row.setLong(3, LocalDate.of(2024, 3, 1).toEpochDay() + i);
+                row.setLong(4, ExportService.micros(TIME));
+                writer.write(row);
+            }
+            writer.finish();
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    void csvIsGzippedWithHeaderQuotingAndEmptyNulls() throws IOException {
+        byte[] bytes = export(ExportFormat.CSV, 3, 0);
+
+        String csv;
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            csv = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        assertEquals("""
+                coin_id,price,rank_position,date,timestamp
+                coin-0,0.0,0,2024-03-01,2024-03-01T12:00:00.123456Z
+                "coin, ""one\""",1.5,,2024-03-02,2024-03-01T12:00:00.123456Z
+                coin-2,3.0,2,2024-03-03,2024-03-01T12:00:00.123456Z
+                """, csv);
+    }
+
+    @Test
+    void arrowStreamRoundTripsAcrossBatches() throws IOException {
+        int rows = 25;
+        byte[] bytes = export(ExportFormat.ARROW, rows, 10);
+
+        int read = 0;
+        int batches = 0;
+        try (RootAllocator allocator = new RootAllocator();
+             ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(bytes), allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            assertEquals(List.of("coin_id", "price", "rank_position", "date", "timestamp"),
+                    root.getSchema().getFields().stream().map(field -> field.getName()).toList());
+            while (reader.loadNextBatch()) {
+                batches++;
+                for (int r = 0; r < root.getRowCount(); r++, read++) {
+                    int i = read;
+                    assertEquals(i == 1 ? "coin, \"one\"" : "coin-" + i,
+                            ((VarCharVector) root.getVector(0)).getObject(r).toString());
+                    assertEquals(i * 1.5, ((Float8Vector) root.getVector(1)).get(r));
+                    BigIntVector rank = (BigIntVector) root.getVector(2);
+                    assertEquals(i % 2 == 1, rank.isNull(r));
+                    if (i % 2 == 0) {
+                        assertEquals(i, rank.get(r));
+                    }
+                    assertEquals(LocalDate.of(2024, 3, 1).plusDays(i).toEpochDay(),
+                            ((DateDayVector) root.getVector(3)).get(r));
+                    assertEquals(ExportService.micros(TIME), ((TimeStampMicroTZVector) root.getVector(4)).get(r));
+                }
+            }
+        }
+        assertEquals(rows, read);
+        assertEquals(3, batches);
+    }
+
+    @Test
+    void queryFiltersByCoinAndTimeAxis() {
+        ExportService.ExportQuery query = ExportService.query("spark_daily_change_history", COLUMNS,
+                List.of("Bitcoin", " ethereum"), Instant.parse("2024-03-01T00:00:00Z"), null);
+
+        assertEquals("SELECT \"coin_id\", \"price\", \"rank_position\", \"date\", \"timestamp\" " +
+                "FROM \"spark_daily_change_history\" WHERE coin_id = ANY(?) AND \"timestamp\" >= ?", query.sql());
+        assertArrayEquals(new String[]{"bitcoin", "ethereum"}, (String[]) query.args().get(0));
+
+        List<ExportColumn> noCoin = List.of(new ExportColumn("week_start", ExportColumn.Kind.DATE));
+        assertTrue(ExportService.query("spark_x", noCoin, null, null, Instant.EPOCH).sql()
+                .endsWith("WHERE \"week_start\" < ?"));
+        assertThrows(IllegalArgumentException.class,
+                () -> ExportService.query("spark_x", noCoin, List.of("bitcoin"), null, null));
+        assertEquals(Instant.parse("2024-03-01T00:00:00Z"), ExportService.parseTime("2024-03-01"));
+        assertThrows(IllegalArgumentException.class, () -> ExportService.parseTime("01.03.2024"));
+    }
+}
@@ -0,0 +1,34 @@
+package org.example.crypto.indicator;
+
+import org.example.crypto.repository.CoinKeyResolver;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CoinIndicatorStoreTest {
+
+    @Test
+    void writeCommitsInItsOwnTransaction() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        CoinIndicatorStore store = new CoinIndicatorStore(jdbcTemplate, mock(CoinKeyResolver.class), transactionManager);
+
+        store.write(List.of(new CoinIndicatorStore.Row("bitcoin", "btc",
+                new IndicatorValues(Instant.parse("2024-03-10T00:00:00Z"), 100, null, null, null, null, null, null, null))));
+
+        // Порция бэкфилла не присоединяется к открытой транзакции чтения истории и фиксируется сразу
+        verify(transactionManager).getTransaction(argThat(definition ->
+                definition.getPropagationBehavior() == TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        verify(transactionManager).commit(any());
+        verify(jdbcTemplate).batchUpdate(anyString(), anyList(), anyInt(), any());
+    }
+}
@@ -0,0 +1,161 @@
+package org.example.crypto.indicator;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.crypto.model.CoinPriceHistory;
+import org.example.crypto.service.TicksIngestedEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class IndicatorEngineTest {
+
+    private static final Instant T0 = Instant.parse("2024-03-10T00:00:00Z");
+
+    @TempDir
+    Path dir;
+
+    private final CoinIndicatorStore store = mock(CoinIndicatorStore.class);
+    private final List<CoinIndicatorStore.Row> written = new ArrayList<>();
+
+    private IndicatorEngine engine(int batchSize) {
+        doAnswer(invocation -> {
+            written.addAll(invocation.getArgument(0));
+            return null;
+        }).when(store).write(any());
+        return new IndicatorEngine(store, () -> List.of("bitcoin", "ethereum"), IndicatorState.Periods.DEFAULT,
+                dir.resolve("state.bin"), Duration.ofDays(30), batchSize, new SimpleMeterRegistry());
+    }
+
+    private static CoinPriceHistory tick(String coinId, int minute, double price) {
+        return CoinPriceHistory.builder().coinId(coinId).symbol(coinId.substring(0, 3)).price(price)
+                .timestamp(T0.plusSeconds(60L * minute)).build();
+    }
+
+    private static TicksIngestedEvent event(CoinPriceHistory... ticks) {
+        return new TicksIngestedEvent(new Object(), List.of(ticks));
+    }
+
+    @Test
+    void ingestedTicksAreWrittenInBatches() {
+        IndicatorEngine engine = engine(3);
+
+        engine.onTicksIngested(event(tick("bitcoin", 0, 100), tick("ethereum", 0, 10)));
+        verify(store, never()).write(any());
+
+        engine.onTicksIngested(event(tick("bitcoin", 1, 101), tick("bitcoin", 1, 105)));
+        assertEquals(3, written.size());
+        assertEquals(101.0, written.get(2).values().price());
+
+        engine.flush();
+        assertTrue(written.stream().allMatch(row -> row.values().sma() == null));
+        assertEquals(T0.plusSeconds(60), engine.lastTimestamp("bitcoin"));
+    }
+
+    @Test
+    void checkpointRestoresStateAndBackfillReadsOnlyNewerTicks() throws Exception {
+        IndicatorEngine first = engine(1000);
+        for (int i = 0; i < 40; i++) {
+            first.onTicksIngested(event(tick("bitcoin", i, 100 + i % 7)));
+        }
+        first.checkpoint();
+        assertEquals(40, written.size());
+
+        IndicatorEngine restarted = engine(1000);
+        restarted.restore();
+        assertEquals(T0.plusSeconds(60 * 39), restarted.lastTimestamp("bitcoin"));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, Instant>> since = ArgumentCaptor.forClass(Map.class);
+        doAnswer(invocation -> {
+            CoinIndicatorStore.TickConsumer consumer = invocation.getArgument(1);
+            // Повтор последнего тика из снимка пропускается, новый продолжает с того же состояния
+            consumer.accept("bitcoin", "bit", T0.plusSeconds(60 * 39), 999);
+            consumer.accept("bitcoin", "bit", T0.plusSeconds(60 * 40), 100 + 40 % 7);
+            return null;
+        }).when(store).readHistory(since.capture(), any());
+        restarted.backfill();
+
+        assertEquals(T0.plusSeconds(60 * 39), since.getValue().get("bitcoin"));
+        // Монета без снимка читается на глубину бэкфилла
+        Instant ethereumSince = since.getValue().get("ethereum");
+        assertTrue(Duration.between(ethereumSince, Instant.now()).minus(Duration.ofDays(30)).abs().toMinutes() < 1);
+        assertEquals(41, written.size());
+
+        // Значения после рестарта те же, что при непрерывном счёте
+        IndicatorState reference = new IndicatorState(IndicatorState.Periods.DEFAULT);
+        IndicatorValues expected = null;
+        for (int i = 0; i <= 40; i++) {
+            expected = reference.update(T0.plusSeconds(60L * i), 100 + i % 7);
+        }
+        assertEquals(expected, written.get(40).values());
+    }
+
+    @Test
+    void ticksArrivingDuringBackfillAreAppliedAfterIt() {
+        IndicatorEngine engine = engine(1000);
+        doAnswer(invocation -> {
+            CoinIndicatorStore.TickConsumer consumer = invocation.getArgument(1);
+            consumer.accept("bitcoin", "bit", T0, 100);
+            // Живой тик приходит посреди прохода по истории
+            engine.onTicksIngested(event(tick("bitcoin", 2, 102)));
+            consumer.accept("bitcoin", "bit", T0.plusSeconds(60), 101);
+            return null;
+        }).when(store).readHistory(any(), any());
+
+        engine.backfill();
+
+        assertEquals(List.of(100.0, 101.0, 102.0), written.stream().map(row -> row.values().price()).toList());
+    }
+
+    @Test
+    void tickArrivingBeforeBackfillStartsDoesNotCutHistory() {
+        IndicatorEngine engine = engine(1000);
+        engine.init();
+        try {
+            // Опрос успел загрузить тик между стартом и запуском бэкфилла
+            engine.onTicksIngested(event(tick("bitcoin", 2, 102)));
+            assertNull(engine.lastTimestamp("bitcoin"));
+
+            @SuppressWarnings("unchecked")
+            ArgumentCaptor<Map<String, Instant>> since = ArgumentCaptor.forClass(Map.class);
+            doAnswer(invocation -> {
+                CoinIndicatorStore.TickConsumer consumer = invocation.getArgument(1);
+                consumer.accept("bitcoin", "bit", T0, 100);
+                consumer.accept("bitcoin", "bit", T0.plusSeconds(60), 101);
+                return null;
+            }).when(store).readHistory(since.capture(), any());
+            engine.backfill();
+
+            // История монеты читается на всю глубину бэкфилла, а не с отложенного живого тика
+            Instant bitcoinSince = since.getValue().get("bitcoin");
+            assertTrue(Duration.between(bitcoinSince, Instant.now()).minus(Duration.ofDays(30)).abs().toMinutes() < 1);
+            assertEquals(List.of(100.0, 101.0, 102.0), written.stream().map(row -> row.values().price()).toList());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    void snapshotWithOtherPeriodsIsIgnored() throws Exception {
+        IndicatorEngine first = engine(1000);
+        first.onTicksIngested(event(tick("bitcoin", 0, 100)));
+        first.checkpoint();
+
+        IndicatorEngine changed = new IndicatorEngine(store, List::of, new IndicatorState.Periods(10, 20, 14, 12, 26, 9, 20, 2.0),
+                dir.resolve("state.bin"), Duration.ofDays(30), 1000, new SimpleMeterRegistry());
+        changed.restore();
+
+        assertNull(changed.lastTimestamp("bitcoin"));
+    }
+}
@@ -0,0 +1,152 @@
+package org.example.crypto.indicator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndicatorStateTest {
+
+    private static final Instant T0 = Instant.parse("2024-03-10T00:00:00Z");
+
+    private static List<Double> randomWalk(int n, long seed) {
+        Random random = new Random(seed);
+        List<Double> prices = new ArrayList<>();
+        // Высокий уровень цены и малый шаг - худший случай для потери точности в бегущей дисперсии
+        double price = 65_000;
+        for (int i = 0; i < n; i++) {
+            price *= Math.exp(0.002 * random.nextGaussian());
+            prices.add(price);
+        }
+        return prices;
+    }
+
+    private static List<IndicatorValues> feed(IndicatorState state, List<Double> prices) {
+        List<IndicatorValues> values = new ArrayList<>();
+        for (int i = 0; i < prices.size(); i++) {
+            values.add(state.update(T0.plusSeconds(60L * i), prices.get(i)));
+        }
+        return values;
+    }
+
+    @Test
+    void movingAveragesAndBandsMatchFullRecomputation() {
+        IndicatorState.Periods periods = IndicatorState.Periods.DEFAULT;
+        List<Double> prices = randomWalk(20_000, 1);
+        List<IndicatorValues> values = feed(new IndicatorState(periods), prices);
+
+        assertNull(values.get(18).sma());
+        assertNull(values.get(18).bollingerUpper());
+        for (int i = 19; i < prices.size(); i += 997) {
+            List<Double> window = prices.subList(i - 19, i + 1);
+            double mean = window.stream().mapToDouble(Double::doubleValue).average().orElseThrow();
+            double variance = window.stream().mapToDouble(p -> (p - mean) * (p - mean)).sum() / window.size();
+            IndicatorValues v = values.get(i);
+            assertEquals(mean, v.sma(), 1e-6);
+            assertEquals(mean + 2 * Math.sqrt(variance), v.bollingerUpper(), 1e-6);
+            assertEquals(mean - 2 * Math.sqrt(variance), v.bollingerLower(), 1e-6);
+        }
+    }
+
+    @Test
+    void emaAndMacdMatchRecursiveDefinition() {
+        IndicatorState.Periods periods = IndicatorState.Periods.DEFAULT;
+        List<Double> prices = randomWalk(500, 2);
+        List<IndicatorValues> values = feed(new IndicatorState(periods), prices);
+
+        double[] ema12 = ema(prices, 12);
+        double[] ema20 = ema(prices, 20);
+        double[] ema26 = ema(prices, 26);
+        assertNull(values.get(18).ema());
+        assertNull(values.get(24).macd());
+        for (int i = 25; i < prices.size(); i++) {
+            assertEquals(ema20[i], values.get(i).ema(), 1e-6);
+            assertEquals(ema12[i] - ema26[i], values.get(i).macd(), 1e-6);
+        }
+        // Сигнальная линия появляется после 9 значений MACD
+        assertNull(values.get(32).macdSignal());
+        assertNotNull(values.get(33).macdSignal());
+        assertEquals(values.get(100).macd() - values.get(100).macdSignal(), values.get(100).macdHistogram(), 1e-12);
+    }
+
+    @Test
+    void rsiUsesWilderSmoothing() {
+        IndicatorState state = new IndicatorState(new IndicatorState.Periods(2, 2, 3, 1, 2, 1, 2, 2.0));
+        double[] prices = {10, 11, 12, 11, 13, 12};
+        List<IndicatorValues> values = new ArrayList<>();
+        for (int i = 0; i < prices.length; i++) {
+            values.add(state.update(T0.plusSeconds(i), prices[i]));
+        }
+
+        assertNull(values.get(2).rsi());
+        // Первые три изменения +1 +1 -1: средний рост 2/3, падение 1/3
+        assertEquals(100 - 100 / (1 + 2.0), values.get(3).rsi(), 1e-9);
+        double gain = (2.0 / 3 * 2 + 2) / 3;
+        double loss = (1.0 / 3 * 2) / 3;
+        assertEquals(100 - 100 / (1 + gain / loss), values.get(4).rsi(), 1e-9);
+        assertTrue(values.get(5).rsi() < values.get(4).rsi());
+    }
+
+    @Test
+    void rsiIsHundredWithoutLosses() {
+        IndicatorState state = new IndicatorState(IndicatorState.Periods.DEFAULT);
+        IndicatorValues last = null;
+        for (int i = 0; i < 30; i++) {
+            last = state.update(T0.plusSeconds(i), 100 + i);
+        }
+        assertEquals(100.0, last.rsi());
+    }
+
+    @Test
+    void staleTicksAreIgnored() {
+        IndicatorState state = new IndicatorState(IndicatorState.Periods.DEFAULT);
+        assertNotNull(state.update(T0.plusSeconds(60), 100));
+
+        assertNull(state.update(T0.plusSeconds(60), 200));
+        assertNull(state.update(T0, 200));
+        assertEquals(T0.plusSeconds(60), state.lastTimestamp());
+    }
+
+    @Test
+    void restoredStateContinuesIdentically() throws IOException {
+        IndicatorState.Periods periods = IndicatorState.Periods.DEFAULT;
+        List<Double> prices = randomWalk(300, 3);
+        IndicatorState original = new IndicatorState(periods);
+        feed(original, prices.subList(0, 150));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        original.writeTo(new DataOutputStream(bytes));
+        IndicatorState restored = IndicatorState.readFrom(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), periods);
+
+        assertEquals(original.lastTimestamp(), restored.lastTimestamp());
+        for (int i = 150; i < prices.size(); i++) {
+            Instant ts = T0.plusSeconds(60L * i);
+            assertEquals(original.update(ts, prices.get(i)), restored.update(ts, prices.get(i)));
+        }
+    }
+
+    private static double[] ema(List<Double> prices, int period) {
+        double[] result = new double[prices.size()];
+        double alpha = 2.0 / (period + 1);
+        double sum = 0;
+        for (int i = 0; i < prices.size(); i++) {
+            if (i < period) {
+                sum += prices.get(i);
+                result[i] = sum / (i + 1);
+            } else {
+                result[i] = result[i - 1] + alpha * (prices.get(i) - result[i - 1]);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.crypto.loadtest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.crypto.model.CoinPriceHistory;
+import org.example.crypto.service.CoinGeckoMarketDataSource;
+import org.example.crypto.service.MarketDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoinGeckoStubServerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private CoinGeckoStubServer stub;
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+    }
+
+    private MarketDataSource start(CoinGeckoStubServer.Faults faults) throws IOException {
+        stub = new CoinGeckoStubServer(new SyntheticMarket(7, Duration.ofMinutes(1)), 60, faults, null, 1000);
+        stub.start(0);
+        return new CoinGeckoMarketDataSource(CoinGeckoMarketDataSource.webClient(stub.baseUrl(), null, null, null),
+                Duration.ofMillis(500), 1, Duration.ofMillis(10), registry);
+    }
+
+    @Test
+    void servesSyntheticMarketsPage() throws IOException {
+        MarketDataSource source = start(CoinGeckoStubServer.Faults.NONE);
+
+        MarketDataSource.MarketsPage page = source.fetchMarkets(List.of("coin-1", "coin-2", "coin-3"));
+
+        assertEquals(List.of("coin-1", "coin-2", "coin-3"), page.ticks().stream().map(CoinPriceHistory::getCoinId).toList());
+        assertEquals(3, page.ranks().size());
+        for (CoinPriceHistory tick : page.ticks()) {
+            assertTrue(tick.getPrice() > 0);
+            assertFalse(tick.getTimestamp().isAfter(stub.now()));
+        }
+    }
+
+    @Test
+    void servesHourlyRangeUpToStubTime() throws IOException {
+        MarketDataSource source = start(CoinGeckoStubServer.Faults.NONE);
+        Instant to = Instant.parse("2024-01-03T00:00:00Z");
+
+        List<CoinPriceHistory> points = source.fetchMarketChartRange("coin-1", to.minus(Duration.ofDays(2)), to).block();
+
+        assertEquals(49, points.size());
+        assertEquals(Duration.ofHours(1), Duration.between(points.get(0).getTimestamp(), points.get(1).getTimestamp()));
+    }
+
+    @Test
+    void rateLimitedRequestsAreRetriedAndCounted() throws IOException {
+        MarketDataSource source = start(new CoinGeckoStubServer.Faults(Duration.ZERO, Duration.ZERO, 1.0, 0, Duration.ZERO));
+
+        assertThrows(RuntimeException.class, () -> source.fetchMarkets(List.of("coin-1")));
+
+        assertEquals(2, stub.stats().rateLimited());
+        assertEquals(1.0, registry.counter("crypto.coingecko.retries", "endpoint", "markets", "cause", "rate-limit").count());
+    }
+
+    @Test
+    void hangingRequestsTimeOut() throws IOException {
+        MarketDataSource source = start(new CoinGeckoStubServer.Faults(Duration.ZERO, Duration.ZERO, 0, 1.0, Duration.ofSeconds(2)));
+
+        assertThrows(RuntimeException.class, () -> source.fetchMarkets(List.of("coin-1")));
+
+        assertEquals(1.0, registry.counter("crypto.coingecko.retries", "endpoint", "markets", "cause", "timeout").count());
+    }
+}
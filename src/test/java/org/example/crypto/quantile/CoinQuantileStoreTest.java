@@ -0,0 +1,72 @@
+package org.example.crypto.quantile;
+
+import org.example.crypto.repository.CoinKeyResolver;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CoinQuantileStoreTest {
+
+    private static final Instant TS = Instant.parse("2024-03-09T12:00:00Z");
+
+    // ResultSet, у которого wasNull, как у драйвера, относится к последнему прочитанному столбцу
+    private static ResultSet row(Map<Integer, Object> values) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        Object[] last = {null};
+        when(rs.getString(anyInt())).thenAnswer(invocation -> {
+            last[0] = values.get(invocation.<Integer>getArgument(0));
+            return last[0];
+        });
+        when(rs.getDouble(anyInt())).thenAnswer(invocation -> {
+            last[0] = values.get(invocation.<Integer>getArgument(0));
+            return last[0] == null ? 0.0 : (Double) last[0];
+        });
+        when(rs.getObject(anyInt(), eq(OffsetDateTime.class))).thenAnswer(invocation -> {
+            last[0] = values.get(invocation.<Integer>getArgument(0));
+            return last[0];
+        });
+        when(rs.wasNull()).thenAnswer(invocation -> last[0] == null);
+        return rs;
+    }
+
+    @Test
+    void missingVolumeIsPassedAsNullNotZero() throws Exception {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        ResultSet withVolume = row(Map.of(1, "bitcoin", 2, "btc", 3, OffsetDateTime.ofInstant(TS, ZoneOffset.UTC),
+                4, 100.0, 5, 2500.0));
+        ResultSet withoutVolume = row(Map.of(1, "bitcoin", 2, "btc", 3, OffsetDateTime.ofInstant(TS, ZoneOffset.UTC),
+                4, 101.0));
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            handler.processRow(withVolume);
+            handler.processRow(withoutVolume);
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+        CoinQuantileStore store = new CoinQuantileStore(jdbcTemplate, mock(CoinKeyResolver.class), transactionManager);
+
+        List<Double> volumes = new ArrayList<>();
+        store.readMissingDays(List.of("bitcoin"), LocalDate.of(2024, 3, 9), LocalDate.of(2024, 3, 10),
+                (coinId, symbol, timestamp, price, volume) -> volumes.add(volume));
+
+        assertEquals(2500.0, volumes.get(0));
+        assertNull(volumes.get(1));
+    }
+}
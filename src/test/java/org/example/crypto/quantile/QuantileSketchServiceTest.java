@@ -0,0 +1,133 @@
+package org.example.crypto.quantile;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.crypto.model.CoinPriceHistory;
+import org.example.crypto.service.TicksIngestedEvent;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class QuantileSketchServiceTest {
+
+    private static final Instant NOW = Instant.parse("2024-03-10T12:00:00Z");
+    private static final LocalDate TODAY = LocalDate.of(2024, 3, 10);
+
+    private final CoinQuantileStore store = mock(CoinQuantileStore.class);
+    private final QuantileSketchService service = new QuantileSketchService(store, () -> List.of("bitcoin"), 100, 30,
+            Clock.fixed(NOW, ZoneOffset.UTC), new SimpleMeterRegistry());
+
+    private int ingested;
+
+    // Каждый тик на секунду позже предыдущего
+    private void ingest(double... prices) {
+        List<CoinPriceHistory> ticks = new ArrayList<>();
+        for (int i = 0; i < prices.length; i++) {
+            ticks.add(tick(prices[i], 1000.0 + i, NOW.plusSeconds(ingested++)));
+        }
+        service.onTicksIngested(new TicksIngestedEvent(this, ticks));
+    }
+
+    private static CoinPriceHistory tick(double price, double volume, Instant timestamp) {
+        return CoinPriceHistory.builder().coinId("bitcoin").symbol("btc").price(price).volume(volume)
+                .timestamp(timestamp).build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private CoinQuantileStore.DayDigest lastWritten() {
+        ArgumentCaptor<Collection<CoinQuantileStore.DayDigest>> written = ArgumentCaptor.forClass(Collection.class);
+        verify(store, atLeastOnce()).write(written.capture());
+        return written.getValue().iterator().next();
+    }
+
+    @Test
+    void flushMergesIncrementWithStoredDayOnceAndKeepsItInMemory() {
+        TDigest storedPrice = new TDigest(100);
+        for (int i = 1; i <= 100; i++) {
+            storedPrice.add(i);
+        }
+        when(store.load(anyCollection())).thenReturn(List.of(new CoinQuantileStore.DayDigest("bitcoin", "btc", TODAY,
+                storedPrice, new TDigest(100))));
+
+        ingest(101, 102);
+        service.flush();
+        ingest(103);
+        service.flush();
+
+        verify(store, times(1)).load(List.of(new CoinQuantileStore.Key("bitcoin", TODAY)));
+        CoinQuantileStore.DayDigest day = lastWritten();
+        assertEquals(103, day.price().count());
+        assertEquals(103, day.price().max());
+        assertEquals(3, day.volume().count());
+    }
+
+    @Test
+    void failedWriteReturnsIncrementForNextFlush() {
+        when(store.load(anyCollection())).thenReturn(List.of());
+        doThrow(new IllegalStateException("нет связи")).doNothing().when(store).write(any());
+
+        ingest(1, 2, 3);
+        assertThrows(IllegalStateException.class, service::flush);
+        ingest(4);
+        service.flush();
+
+        assertEquals(4, lastWritten().price().count());
+        verify(store, times(2)).load(anyCollection());
+    }
+
+    @Test
+    void repeatedTickIsCountedOnce() {
+        when(store.load(anyCollection())).thenReturn(List.of());
+        CoinPriceHistory tick = tick(100, 1000, NOW);
+
+        // Монета не обновлялась между опросами: CoinGecko вернул тот же тик
+        service.onTicksIngested(new TicksIngestedEvent(this, List.of(tick)));
+        service.onTicksIngested(new TicksIngestedEvent(this, List.of(tick)));
+        // Запоздавший тик старше уже учтённого тоже не добавляется
+        service.onTicksIngested(new TicksIngestedEvent(this, List.of(tick(90, 900, NOW.minusSeconds(60)))));
+        service.onTicksIngested(new TicksIngestedEvent(this, List.of(tick(101, 1001, NOW.plusSeconds(60)))));
+        service.flush();
+
+        CoinQuantileStore.DayDigest day = lastWritten();
+        assertEquals(2, day.price().count());
+        assertEquals(100, day.price().min());
+        assertEquals(2, day.volume().count());
+    }
+
+    @Test
+    void summaryMergesDaysIntoRequestedQuantiles() {
+        TDigest first = new TDigest(100);
+        TDigest second = new TDigest(100);
+        for (int i = 1; i <= 500; i++) {
+            first.add(i);
+            second.add(500 + i);
+        }
+        when(store.range("bitcoin", TODAY.minusDays(1), TODAY)).thenReturn(List.of(
+                new CoinQuantileStore.DayDigest("bitcoin", "btc", TODAY.minusDays(1), first, new TDigest(100)),
+                new CoinQuantileStore.DayDigest("bitcoin", "btc", TODAY, second, new TDigest(100))));
+
+        QuantileSketchService.Summary summary = service.summarize("bitcoin", TODAY.minusDays(1), TODAY,
+                List.of(0.05, 0.5, 0.999));
+
+        assertEquals(2, summary.days());
+        assertEquals(1000, summary.count());
+        Map<String, Double> price = summary.price();
+        assertEquals(List.of("min", "p5", "p50", "p99.9", "max"), List.copyOf(price.keySet()));
+        assertEquals(500, price.get("p50"), 5);
+        assertEquals(50, price.get("p5"), 2);
+        assertEquals(1, price.get("min"));
+        assertNull(summary.volume().get("p50"));
+    }
+}
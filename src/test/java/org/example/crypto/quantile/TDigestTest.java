@@ -0,0 +1,105 @@
+package org.example.crypto.quantile;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TDigestTest {
+
+    private static double exact(double[] sorted, double q) {
+        double index = q * (sorted.length - 1);
+        int low = (int) Math.floor(index);
+        int high = Math.min(sorted.length - 1, low + 1);
+        return sorted[low] + (sorted[high] - sorted[low]) * (index - low);
+    }
+
+    // Логнормальные цены: тяжёлый правый хвост, как у объёмов и движений цены
+    private static double[] lognormal(int n, long seed) {
+        Random random = new Random(seed);
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = 100 * Math.exp(random.nextGaussian() * 0.5);
+        }
+        return values;
+    }
+
+    private static double rankError(double[] sorted, double value, double q) {
+        int below = 0;
+        while (below < sorted.length && sorted[below] <= value) {
+            below++;
+        }
+        return Math.abs((double) below / sorted.length - q);
+    }
+
+    @Test
+    void quantilesAreCloseToExactAndTailsAreTighter() {
+        double[] values = lognormal(100_000, 1);
+        TDigest digest = new TDigest(100);
+        for (double value : values) {
+            digest.add(value);
+        }
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        assertEquals(values.length, digest.count());
+        assertEquals(sorted[0], digest.min());
+        assertEquals(sorted[sorted.length - 1], digest.max());
+        assertEquals(sorted[0], digest.quantile(0));
+        assertEquals(sorted[sorted.length - 1], digest.quantile(1));
+        for (double q : new double[]{0.01, 0.05, 0.25, 0.5, 0.75, 0.95, 0.99}) {
+            double error = rankError(sorted, digest.quantile(q), q);
+            // Ошибка по рангу ограничена и меньше у краёв
+            assertTrue(error < (q < 0.1 || q > 0.9 ? 0.002 : 0.01), "q=" + q + ", ошибка ранга " + error);
+        }
+        assertEquals(0.95, digest.cdf(exact(sorted, 0.95)), 0.005);
+        assertEquals(0, digest.cdf(sorted[0] - 1));
+        assertEquals(1, digest.cdf(sorted[sorted.length - 1]));
+        assertTrue(digest.centroidCount() <= 100, "центроидов " + digest.centroidCount());
+    }
+
+    @Test
+    void mergedDailyDigestsMatchSingleDigestOfAllValues() {
+        double[] values = lognormal(30 * 1440, 2);
+        TDigest whole = new TDigest(100);
+        TDigest month = new TDigest(100);
+        for (int day = 0; day < 30; day++) {
+            TDigest daily = new TDigest(100);
+            for (int i = day * 1440; i < (day + 1) * 1440; i++) {
+                daily.add(values[i]);
+                whole.add(values[i]);
+            }
+            month.add(TDigest.fromBytes(daily.toBytes()));
+        }
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        assertEquals(whole.count(), month.count());
+        assertEquals(whole.min(), month.min());
+        assertEquals(whole.max(), month.max());
+        for (double q : new double[]{0.05, 0.5, 0.95, 0.99}) {
+            assertTrue(rankError(sorted, month.quantile(q), q) < 0.01, "q=" + q);
+        }
+    }
+
+    @Test
+    void serializedDigestIsCompactAndRoundTrips() {
+        TDigest digest = new TDigest(100);
+        for (double value : lognormal(1440, 3)) {
+            digest.add(value);
+        }
+
+        byte[] bytes = digest.toBytes();
+        TDigest restored = TDigest.fromBytes(bytes);
+
+        assertTrue(bytes.length < 2048, "размер " + bytes.length);
+        assertEquals(digest.count(), restored.count());
+        for (double q : new double[]{0, 0.05, 0.5, 0.99, 1}) {
+            assertEquals(digest.quantile(q), restored.quantile(q), 1e-9);
+        }
+        assertTrue(Double.isNaN(new TDigest(100).quantile(0.5)));
+        assertTrue(Double.isNaN(TDigest.fromBytes(new TDigest(50).toBytes()).min()));
+    }
+}
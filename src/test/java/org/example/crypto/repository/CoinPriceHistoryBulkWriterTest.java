@@ -0,0 +1,32 @@
+package org.example.crypto.repository;
+
+import org.example.crypto.model.CoinPriceHistory;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoinPriceHistoryBulkWriterTest {
+
+    @Test
+    void onlyClosedDaysAreMarkedDirty() {
+        List<CoinPriceHistory> rows = List.of(
+                tick("2024-03-09T23:59:59Z"),
+                tick("2024-03-08T10:00:00Z"),
+                tick("2024-03-09T00:00:00Z"),
+                tick("2024-03-10T00:00:00Z"),
+                tick("2024-03-10T12:00:00Z"));
+
+        Set<LocalDate> days = CoinPriceHistoryBulkWriter.closedDays(rows, LocalDate.parse("2024-03-10"));
+
+        assertEquals(List.of(LocalDate.parse("2024-03-08"), LocalDate.parse("2024-03-09")), List.copyOf(days));
+    }
+
+    private static CoinPriceHistory tick(String timestamp) {
+        return new CoinPriceHistory("bitcoin", "btc", 1.0, 2.0, 3.0, Instant.parse(timestamp));
+    }
+}
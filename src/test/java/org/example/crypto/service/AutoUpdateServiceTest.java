@@ -1,11 +1,15 @@
 package org.example.crypto.service;
 
-import org.example.crypto.spark.SparkBatchProcessor;
+import org.example.crypto.spark.SparkRunner;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -13,20 +17,20 @@ import static org.mockito.Mockito.*;
 class AutoUpdateServiceTest {
 
     private CoinGeckoService coinGeckoService;
-    private SparkBatchProcessor sparkBatchProcessor;
+    private SparkRunner sparkRunner;
     private AutoUpdateService autoUpdateService;
 
     @BeforeEach
     void setUp() {
         coinGeckoService = mock(CoinGeckoService.class);
-        sparkBatchProcessor = mock(SparkBatchProcessor.class);
-        autoUpdateService = new AutoUpdateService(coinGeckoService, sparkBatchProcessor);
+        sparkRunner = mock(SparkRunner.class);
+        autoUpdateService = new AutoUpdateService(coinGeckoService, sparkRunner);
         autoUpdateService.init();
     }
 
 
-    private ScheduledExecutorService getScheduler() throws Exception {
-        var field = AutoUpdateService.class.getDeclaredField("scheduler");
+    private ScheduledExecutorService getScheduler(String name) throws Exception {
+        var field = AutoUpdateService.class.getDeclaredField(name);
         field.setAccessible(true);
         return (ScheduledExecutorService) field.get(autoUpdateService);
     }
@@ -35,8 +39,8 @@ class AutoUpdateServiceTest {
         autoUpdateService.startAutoUpdate();
 
         assertTrue(autoUpdateService.isAutoUpdateEnabled());
-        assertNotNull(getScheduler());
-        assertFalse(getScheduler().isShutdown());
+        assertFalse(getScheduler("pollingScheduler").isShutdown());
+        assertFalse(getScheduler("analysisScheduler").isShutdown());
     }
 
     @Test
@@ -45,7 +49,8 @@ class AutoUpdateServiceTest {
         autoUpdateService.stopAutoUpdate();
 
         assertFalse(autoUpdateService.isAutoUpdateEnabled());
-        assertTrue(getScheduler().isShutdown());
+        assertTrue(getScheduler("pollingScheduler").isShutdown());
+        assertTrue(getScheduler("analysisScheduler").isShutdown());
     }
 
     @Test
@@ -68,32 +73,73 @@ class AutoUpdateServiceTest {
     }
 
     @Test
-    void updateDataAndSparkShouldHandleExceptionGracefully() {
+    void updateDataShouldHandleExceptionGracefully() {
         AutoUpdateService spyService = Mockito.spy(autoUpdateService);
 
         doThrow(new RuntimeException("API Error"))
-                .when(coinGeckoService).fetchAndSaveCoinData();
+                .when(coinGeckoService).pollDueCoins();
 
         // вызываем приватный метод через reflection
         try {
-            var method = AutoUpdateService.class.getDeclaredMethod("updateDataAndSpark");
+            var method = AutoUpdateService.class.getDeclaredMethod("updateData");
             method.setAccessible(true);
             method.invoke(spyService);
         } catch (Exception e) {
-            fail("Метод updateDataAndSpark должен обрабатывать исключения, а не выбрасывать их наружу");
+            fail("Метод updateData должен обрабатывать исключения, а не выбрасывать их наружу");
         }
     }
+
     @Test
-    void updateDataAndSparkShouldCallCoinGeckoAndSpark() throws Exception {
+    void updateDataAndAnalysisShouldCallCoinGeckoAndSpark() throws Exception {
         AutoUpdateService spyService = Mockito.spy(autoUpdateService);
 
-        // вызываем приватный метод через reflection
-        var method = AutoUpdateService.class.getDeclaredMethod("updateDataAndSpark");
-        method.setAccessible(true);
-        method.invoke(spyService);
+        // вызываем приватные методы через reflection
+        for (String name : List.of("updateData", "runAnalysis")) {
+            var method = AutoUpdateService.class.getDeclaredMethod(name);
+            method.setAccessible(true);
+            method.invoke(spyService);
+        }
+
+        verify(coinGeckoService, times(1)).pollDueCoins();
+        verify(sparkRunner, times(1)).runSparkAnalysis();
+    }
+
+    @Test
+    void slowAnalysisShouldNotDelayDuePolls() throws Exception {
+        ReflectionTestUtils.setField(autoUpdateService, "pollCheckIntervalMs", 50L);
+        CountDownLatch analysisStarted = new CountDownLatch(1);
+        CountDownLatch releaseAnalysis = new CountDownLatch(1);
+        when(sparkRunner.runSparkAnalysis()).thenAnswer(invocation -> {
+            analysisStarted.countDown();
+            releaseAnalysis.await();
+            return true;
+        });
+        CountDownLatch polls = new CountDownLatch(5);
+        doAnswer(invocation -> {
+            polls.countDown();
+            return List.of();
+        }).when(coinGeckoService).pollDueCoins();
 
-        verify(coinGeckoService, times(1)).fetchAndSaveCoinData();
-        verify(sparkBatchProcessor, times(1)).runDailyAnalysis();
+        autoUpdateService.startAutoUpdate();
+        try {
+            assertTrue(analysisStarted.await(5, TimeUnit.SECONDS));
+            // Пока первый прогон анализа висит, опрос продолжает идти по своему расписанию
+            assertTrue(polls.await(5, TimeUnit.SECONDS));
+            verify(sparkRunner, times(1)).runSparkAnalysis();
+        } finally {
+            releaseAnalysis.countDown();
+            autoUpdateService.stopAutoUpdate();
+        }
     }
 
+    @Test
+    void losingAnalysisRoleShouldCancelRunningAnalysis() {
+        autoUpdateService.startAutoUpdate();
+
+        autoUpdateService.setAnalysisEnabled(false);
+        verify(sparkRunner).cancelAnalysis();
+
+        autoUpdateService.stopAutoUpdate();
+        verify(sparkRunner, times(2)).cancelAnalysis();
+    }
 }
@@ -0,0 +1,136 @@
+package org.example.crypto.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoinGeckoResponseCacheTest {
+
+    private static final String BASE = "https://api.coingecko.com/api/v3";
+
+    @TempDir
+    Path tempDir;
+
+    private final List<ClientRequest> sent = new ArrayList<>();
+
+    private final ExchangeFunction upstream = request -> {
+        sent.add(request);
+        if ("\"v1\"".equals(request.headers().getFirst(HttpHeaders.IF_NONE_MATCH))) {
+            return Mono.just(ClientResponse.create(HttpStatus.NOT_MODIFIED).build());
+        }
+        return Mono.just(ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .header(HttpHeaders.ETAG, "\"v1\"")
+                .body("{\"n\":" + sent.size() + "}")
+                .build());
+    };
+
+    private CoinGeckoResponseCache cache(CoinGeckoResponseCache.Mode mode, boolean record, long maxBytes, long chartTtl)
+            throws IOException {
+        CoinGeckoResponseCache cache = new CoinGeckoResponseCache(tempDir, mode, record, maxBytes,
+                3600, chartTtl, 0, new SimpleMeterRegistry());
+        cache.load();
+        return cache;
+    }
+
+    private String get(CoinGeckoResponseCache cache, String uri) {
+        ClientRequest request = ClientRequest.create(HttpMethod.GET, URI.create(BASE + uri)).build();
+        ClientResponse response = cache.filter(request, upstream).block();
+        return response.statusCode().value() + " " + response.bodyToMono(String.class).defaultIfEmpty("").block();
+    }
+
+    @Test
+    void servesFreshEntryWithoutRequestAndIgnoresParameterOrder() throws IOException {
+        CoinGeckoResponseCache cache = cache(CoinGeckoResponseCache.Mode.ONLINE, false, 1 << 20, 3600);
+
+        assertEquals("200 {\"n\":1}", get(cache, "/coins/bitcoin?localization=false&tickers=false"));
+        assertEquals("200 {\"n\":1}", get(cache, "/coins/bitcoin?tickers=false&localization=false&x_cg_demo_api_key=secret"));
+        assertEquals(1, sent.size());
+
+        // Кеш переживает перезапуск
+        assertEquals("200 {\"n\":1}", get(cache(CoinGeckoResponseCache.Mode.ONLINE, false, 1 << 20, 3600),
+                "/coins/bitcoin?localization=false&tickers=false"));
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    void revalidatesStaleEntryWithEtag() throws IOException {
+        CoinGeckoResponseCache cache = cache(CoinGeckoResponseCache.Mode.ONLINE, true, 1 << 20, 0);
+
+        assertEquals("200 {\"n\":1}", get(cache, "/coins/bitcoin/market_chart?vs_currency=usd&days=90"));
+        assertEquals("200 {\"n\":1}", get(cache, "/coins/bitcoin/market_chart?vs_currency=usd&days=90"));
+
+        assertEquals(2, sent.size());
+        assertNull(sent.get(0).headers().getFirst(HttpHeaders.IF_NONE_MATCH));
+        assertEquals("\"v1\"", sent.get(1).headers().getFirst(HttpHeaders.IF_NONE_MATCH));
+    }
+
+    @Test
+    void marketsAreNotCachedUnlessRecording() throws IOException {
+        CoinGeckoResponseCache cache = cache(CoinGeckoResponseCache.Mode.ONLINE, false, 1 << 20, 3600);
+
+        get(cache, "/coins/markets?vs_currency=usd&ids=bitcoin,ethereum");
+        get(cache, "/coins/markets?vs_currency=usd&ids=ethereum,bitcoin");
+
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    void offlineModeReplaysRecordedResponsesAndFailsOnMiss() throws IOException {
+        get(cache(CoinGeckoResponseCache.Mode.ONLINE, true, 1 << 20, 3600), "/coins/markets?vs_currency=usd&ids=bitcoin");
+        CoinGeckoResponseCache offline = cache(CoinGeckoResponseCache.Mode.OFFLINE, false, 1 << 20, 3600);
+
+        assertEquals("200 {\"n\":1}", get(offline, "/coins/markets?ids=bitcoin&vs_currency=usd"));
+        assertTrue(get(offline, "/coins/markets?vs_currency=usd&ids=solana").startsWith("504 "));
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntriesOverSizeLimit() throws IOException {
+        // Каждая запись в gzip занимает несколько десятков байт, в лимит помещаются две
+        CoinGeckoResponseCache cache = cache(CoinGeckoResponseCache.Mode.ONLINE, false, 70, 3600);
+
+        get(cache, "/coins/bitcoin");
+        get(cache, "/coins/ethereum");
+        get(cache, "/coins/bitcoin");
+        get(cache, "/coins/solana");
+        get(cache, "/coins/bitcoin");
+        get(cache, "/coins/ethereum");
+
+        assertEquals(List.of("/coins/bitcoin", "/coins/ethereum", "/coins/solana", "/coins/ethereum"),
+                sent.stream().map(r -> r.url().getPath().substring("/api/v3".length())).toList());
+    }
+
+    @Test
+    void closedMarketChartRangesNeverExpire() {
+        LocalDate today = LocalDate.of(2024, 3, 10);
+        long midnight = today.atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+
+        assertEquals(CoinGeckoResponseCache.Endpoint.CHART_CLOSED, CoinGeckoResponseCache.classify(
+                URI.create(BASE + "/coins/bitcoin/market_chart/range?vs_currency=usd&from=0&to=" + (midnight - 1)), today));
+        assertEquals(CoinGeckoResponseCache.Endpoint.CHART, CoinGeckoResponseCache.classify(
+                URI.create(BASE + "/coins/bitcoin/market_chart/range?vs_currency=usd&from=0&to=" + (midnight + 60)), today));
+        assertEquals(CoinGeckoResponseCache.Endpoint.COIN, CoinGeckoResponseCache.classify(
+                URI.create(BASE + "/coins/bitcoin"), today));
+        assertEquals(CoinGeckoResponseCache.Endpoint.MARKETS, CoinGeckoResponseCache.classify(
+                URI.create(BASE + "/coins/markets?vs_currency=usd"), today));
+    }
+}
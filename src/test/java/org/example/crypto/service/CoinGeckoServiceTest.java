@@ -1,18 +1,35 @@
 package org.example.crypto.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.crypto.cluster.CoinShardingService;
 import org.example.crypto.model.CoinPriceHistory;
+import org.example.crypto.repository.CoinPriceHistoryBulkWriter;
 import org.example.crypto.repository.CoinPriceHistoryRepository;
+import org.example.crypto.wal.TickIngestBuffer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Mono;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -20,13 +37,27 @@ import static org.mockito.Mockito.*;
 class CoinGeckoServiceTest {
 
     private CoinPriceHistoryRepository repository;
+    private CoinPriceHistoryBulkWriter bulkWriter;
     private CoinGeckoService service;
+    private MarketDataSource marketDataSource;
     private WebClient webClientMock;
 
+    @TempDir
+    Path tempDir;
+
     @BeforeEach
     void setUp() {
         repository = mock(CoinPriceHistoryRepository.class);
-        service = new CoinGeckoService(repository);
+        marketDataSource = mock(MarketDataSource.class);
+        bulkWriter = mock(CoinPriceHistoryBulkWriter.class);
+        CoinShardingService shardingService = mock(CoinShardingService.class);
+        when(shardingService.filterOwned(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        TrackedCoinRegistry registry = new TrackedCoinRegistry(tempDir.resolve("coins_to_track.json"),
+                List.of("bitcoin", "ethereum", "solana"), false);
+        registry.start();
+        service = new CoinGeckoService(repository, bulkWriter, shardingService,
+                mock(TickIngestBuffer.class), mock(ApplicationEventPublisher.class), registry,
+                new PollingPlanner(60, 300, 1800, 10, 250, new SimpleMeterRegistry()), marketDataSource);
 
         service.init();
     }
@@ -65,21 +96,46 @@ class CoinGeckoServiceTest {
 
     @Test
     void testFetchAndSaveCoinData_Success() {
-        when(repository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
-
+        when(bulkWriter.write(anyList())).thenAnswer(invocation -> invocation.<List<?>>getArgument(0).size());
+        CoinPriceHistory tick = new CoinPriceHistory("bitcoin", "btc", 65000.0, 1.0e10, 1.2e12, Instant.now());
+        when(marketDataSource.fetchMarkets(anyList()))
+                .thenReturn(new MarketDataSource.MarketsPage(List.of(tick), Map.of("bitcoin", 1)));
 
         List<CoinPriceHistory> result = service.fetchAndSaveCoinData();
 
-        assertNotNull(result);
-        assertTrue(result.isEmpty() || result.size() >= 0);
-        verify(repository, atLeast(0)).saveAll(anyList());
+        assertEquals(List.of(tick), result);
+        verify(marketDataSource).fetchMarkets(List.of("bitcoin", "ethereum", "solana"));
+        verify(bulkWriter).write(List.of(tick));
     }
 
     @Test
     void testInitializeHistoricalDataIfNeeded_WithFewRecords() {
         when(repository.count()).thenReturn(50L);
+        when(marketDataSource.fetchMarketChart(anyString(), anyInt())).thenThrow(new RuntimeException("нет сети"));
         service.initializeHistoricalDataIfNeeded(10);
 
+        // Ошибка по одной монете не прерывает загрузку остальных
+        verify(marketDataSource, times(3)).fetchMarketChart(anyString(), eq(10));
+
+    }
+
+    @Test
+    void testFetchAndSaveHistoricalData_StopsWhenInterrupted() {
+        // Задачу загрузки отменили во время первой монеты: пауза перед следующей прерывается сразу
+        when(marketDataSource.fetchMarketChart(anyString(), anyInt())).thenAnswer(invocation -> {
+            Thread.currentThread().interrupt();
+            return List.of(point(Instant.now()));
+        });
+        when(marketDataSource.fetchSymbol(anyString())).thenReturn("btc");
+
+        try {
+            service.fetchAndSaveHistoricalData(10);
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+
+        verify(marketDataSource, times(1)).fetchMarketChart(anyString(), eq(10));
     }
 
     @Test
@@ -87,5 +143,136 @@ class CoinGeckoServiceTest {
         when(repository.count()).thenReturn(200L);
         service.initializeHistoricalDataIfNeeded(10);
 
+        verifyNoInteractions(marketDataSource);
+
+    }
+
+    @Test
+    void testSplitIntoChunks_CoversRangeWithoutGaps() {
+        Instant from = Instant.parse("2024-01-01T00:00:00Z");
+        Instant to = from.plus(Duration.ofDays(200));
+
+        List<CoinGeckoService.TimeChunk> chunks = CoinGeckoService.splitIntoChunks(from, to, Duration.ofDays(90));
+
+        assertEquals(3, chunks.size());
+        assertEquals(from, chunks.get(0).from());
+        assertEquals(chunks.get(0).to(), chunks.get(1).from());
+        assertEquals(chunks.get(1).to(), chunks.get(2).from());
+        assertEquals(to, chunks.get(2).to());
+    }
+
+    @Test
+    void testSplitIntoChunks_ClosedChunksAreStableAcrossReruns() {
+        Instant firstRun = Instant.parse("2024-05-10T13:00:05Z");
+        Instant secondRun = firstRun.plusSeconds(7);
+
+        List<String> firstKeys = closedChunkKeys(firstRun.minus(Duration.ofDays(200)), firstRun);
+        List<String> secondKeys = closedChunkKeys(secondRun.minus(Duration.ofDays(200)), secondRun);
+
+        assertEquals(3, firstKeys.size());
+        assertEquals(firstKeys, secondKeys);
+
+        List<CoinGeckoService.TimeChunk> chunks = CoinGeckoService.splitIntoChunks(
+                firstRun.minus(Duration.ofDays(200)), firstRun, Duration.ofDays(90));
+        assertEquals(Instant.parse("2023-10-23T00:00:00Z"), chunks.get(0).from());
+        // Незакрытым остаётся только хвост текущих суток
+        assertEquals(new CoinGeckoService.TimeChunk(Instant.parse("2024-05-10T00:00:00Z"), firstRun),
+                chunks.get(chunks.size() - 1));
+    }
+
+    // Ключи кеша для интервалов, которые кеш считает закрытыми
+    private static List<String> closedChunkKeys(Instant from, Instant to) {
+        LocalDate today = LocalDate.ofInstant(to, ZoneOffset.UTC);
+        return CoinGeckoService.splitIntoChunks(from, to, Duration.ofDays(90)).stream()
+                .map(chunk -> UriComponentsBuilder.fromHttpUrl("https://api.coingecko.com/api/v3")
+                        .path("/coins/{id}/market_chart/range")
+                        .queryParam("vs_currency", "usd")
+                        .queryParam("from", chunk.from().getEpochSecond())
+                        .queryParam("to", chunk.to().getEpochSecond())
+                        .build("bitcoin"))
+                .filter(uri -> CoinGeckoResponseCache.classify(uri, today) == CoinGeckoResponseCache.Endpoint.CHART_CLOSED)
+                .map(CoinGeckoResponseCache::cacheKey)
+                .toList();
+    }
+
+    @Test
+    void testStitchChunk_SkipsBoundaryDuplicates() {
+        Instant boundary = Instant.parse("2024-03-31T00:00:00Z");
+        Map<String, Instant> lastWritten = new HashMap<>();
+
+        List<CoinPriceHistory> first = CoinGeckoService.stitchChunk("bitcoin", List.of(
+                point(boundary.minus(Duration.ofHours(1))), point(boundary)), lastWritten);
+        List<CoinPriceHistory> second = CoinGeckoService.stitchChunk("bitcoin", List.of(
+                point(boundary), point(boundary.plus(Duration.ofHours(1)))), lastWritten);
+
+        assertEquals(2, first.size());
+        assertEquals(1, second.size());
+        assertEquals(boundary.plus(Duration.ofHours(1)), second.get(0).getTimestamp());
+        assertEquals(boundary.plus(Duration.ofHours(1)), lastWritten.get("bitcoin"));
+    }
+
+    @Test
+    void testFetchAndSaveHourlyHistory_RetriesFailedChunkAndReportsRemainingGaps() {
+        ReflectionTestUtils.setField(service, "backfillRequestIntervalMs", 0L);
+        service.removeTrackedCoins(List.of("ethereum", "solana"));
+        Instant from = Instant.parse("2024-01-01T00:00:00Z");
+        Instant to = from.plus(Duration.ofDays(180));
+        Instant second = from.plus(Duration.ofDays(90));
+        when(marketDataSource.fetchSymbol("bitcoin")).thenReturn("btc");
+        when(bulkWriter.write(anyList())).thenAnswer(invocation -> invocation.<List<?>>getArgument(0).size());
+        // Второй интервал падает один раз и загружается при повторном проходе
+        when(marketDataSource.fetchMarketChartRange("bitcoin", from, second))
+                .thenReturn(Mono.just(List.of(point(from), point(second))));
+        when(marketDataSource.fetchMarketChartRange("bitcoin", second, to))
+                .thenReturn(Mono.error(new RuntimeException("503")))
+                .thenReturn(Mono.just(List.of(point(second), point(to))));
+
+        assertEquals(4, service.fetchAndSaveHourlyHistory(from, to));
+        verify(marketDataSource, times(2)).fetchMarketChartRange("bitcoin", second, to);
+
+        // Интервал, не загрузившийся и при повторе, не теряется молча
+        when(marketDataSource.fetchMarketChartRange("bitcoin", second, to))
+                .thenReturn(Mono.error(new RuntimeException("503")));
+        HourlyBackfillException e = assertThrows(HourlyBackfillException.class,
+                () -> service.fetchAndSaveHourlyHistory(from, to));
+        assertEquals(List.of(new HourlyBackfillException.Gap("bitcoin", second, to)), e.getGaps());
+        assertEquals(2, e.getSaved());
+    }
+
+    @Test
+    void testPollPages_KeepsConfiguredNumberOfPagesInFlight() {
+        service.setPageIntervalMs(0);
+        service.setPollingConcurrency(2);
+        when(bulkWriter.write(anyList())).thenAnswer(invocation -> invocation.<List<?>>getArgument(0).size());
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        when(marketDataSource.fetchMarkets(anyList())).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            bothStarted.countDown();
+            // Первые две страницы ждут друг друга: без параллельной загрузки вторая не началась бы
+            bothStarted.await(5, TimeUnit.SECONDS);
+            inFlight.decrementAndGet();
+            String coinId = invocation.<List<String>>getArgument(0).get(0);
+            return new MarketDataSource.MarketsPage(List.of(point(Instant.now())), Map.of(coinId, 1));
+        });
+        List<PollingPlanner.Page> pages = List.of("bitcoin", "ethereum", "solana", "cardano").stream()
+                .map(coin -> new PollingPlanner.Page(PollingPlanner.Tier.HOT, List.of(coin)))
+                .toList();
+
+        List<CoinPriceHistory> saved = service.pollPages(pages);
+
+        assertEquals(4, saved.size());
+        assertEquals(2, maxInFlight.get());
+        assertEquals(0, bothStarted.getCount());
+        verify(bulkWriter, times(4)).write(anyList());
+    }
+
+    private CoinPriceHistory point(Instant timestamp) {
+        CoinPriceHistory history = new CoinPriceHistory();
+        history.setCoinId("bitcoin");
+        history.setPrice(50000.0);
+        history.setTimestamp(timestamp);
+        return history;
     }
 }
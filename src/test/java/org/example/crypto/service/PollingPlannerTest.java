@@ -0,0 +1,116 @@
+package org.example.crypto.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.crypto.model.CoinPriceHistory;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PollingPlannerTest {
+
+    private static final Instant T0 = Instant.parse("2024-03-10T12:00:00Z");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void newCoinsArePolledImmediatelyInMaximalPages() {
+        PollingPlanner planner = new PollingPlanner(60, 300, 1800, 10, 250, meterRegistry);
+        List<String> coins = coins(600);
+
+        List<PollingPlanner.Page> pages = planner.duePages(coins, T0);
+
+        assertEquals(List.of(250, 250, 100), pages.stream().map(page -> page.coinIds().size()).toList());
+        assertTrue(pages.stream().allMatch(page -> page.tier() == PollingPlanner.Tier.HOT));
+    }
+
+    @Test
+    void budgetKeepsOnlyMostValuableCoinsHot() {
+        // Страница на 2 монеты, бюджет 1.5 запроса в минуту: горячей остаётся одна страница
+        PollingPlanner planner = new PollingPlanner(60, 300, 1800, 1.5, 2, meterRegistry);
+        List<String> coins = List.of("calm", "wild", "big", "tiny");
+        planner.duePages(coins, T0);
+
+        Instant t1 = T0.plusSeconds(60);
+        record(planner, t1, List.of(
+                tick("calm", 100.0, t1.minusSeconds(10)),
+                tick("wild", 100.0, t1.minusSeconds(10)),
+                tick("big", 100.0, t1.minusSeconds(10)),
+                tick("tiny", 100.0, t1.minusSeconds(10))),
+                Map.of("calm", 50, "wild", 40, "big", 1, "tiny", 900));
+        Instant t2 = t1.plusSeconds(60);
+        record(planner, t2, List.of(
+                tick("calm", 100.1, t2.minusSeconds(10)),
+                tick("wild", 130.0, t2.minusSeconds(10)),
+                tick("big", 101.0, t2.minusSeconds(10)),
+                tick("tiny", 100.2, t2.minusSeconds(10))),
+                Map.of());
+
+        planner.retier(coins);
+
+        assertEquals(PollingPlanner.Tier.HOT, planner.tierOf("wild"));
+        assertEquals(PollingPlanner.Tier.HOT, planner.tierOf("big"));
+        assertNotEquals(PollingPlanner.Tier.HOT, planner.tierOf("calm"));
+        assertNotEquals(PollingPlanner.Tier.HOT, planner.tierOf("tiny"));
+    }
+
+    @Test
+    void coinsThatRarelyUpdateAreNotPolledOften() {
+        PollingPlanner planner = new PollingPlanner(60, 300, 1800, 100, 250, meterRegistry);
+        List<String> coins = List.of("bitcoin", "dead-token");
+        planner.duePages(coins, T0);
+
+        // last_updated у dead-token не меняется часами
+        Instant now = T0.plusSeconds(60);
+        record(planner, now, List.of(
+                tick("bitcoin", 60_000.0, now.minusSeconds(20)),
+                tick("dead-token", 0.01, now.minusSeconds(4 * 3600))), Map.of("bitcoin", 1));
+
+        planner.retier(coins);
+
+        assertEquals(PollingPlanner.Tier.HOT, planner.tierOf("bitcoin"));
+        assertEquals(PollingPlanner.Tier.COLD, planner.tierOf("dead-token"));
+    }
+
+    @Test
+    void tiersArePolledOnTheirOwnSchedule() {
+        PollingPlanner planner = new PollingPlanner(60, 300, 1800, 100, 250, meterRegistry);
+        List<String> coins = List.of("bitcoin", "dead-token");
+        planner.duePages(coins, T0);
+        Instant now = T0.plusSeconds(60);
+        record(planner, now, List.of(
+                tick("bitcoin", 60_000.0, now.minusSeconds(20)),
+                tick("dead-token", 0.01, now.minusSeconds(4 * 3600))), Map.of());
+
+        List<PollingPlanner.Page> first = planner.duePages(coins, now);
+        assertEquals(2, first.size());
+
+        // Минуту спустя подходит срок только горячего уровня
+        List<PollingPlanner.Page> second = planner.duePages(coins, now.plusSeconds(60));
+        assertEquals(List.of(new PollingPlanner.Page(PollingPlanner.Tier.HOT, List.of("bitcoin"))), second);
+
+        assertEquals(1.0, meterRegistry.get("crypto.polling.tier.coins").tag("tier", "cold").gauge().value());
+        assertEquals(2.0, meterRegistry.get("crypto.polling.updates").tag("tier", "hot").tag("changed", "true").counter().count());
+    }
+
+    private static void record(PollingPlanner planner, Instant now, List<CoinPriceHistory> ticks, Map<String, Integer> ranks) {
+        List<String> ids = ticks.stream().map(CoinPriceHistory::getCoinId).toList();
+        planner.recordPoll(new PollingPlanner.Page(PollingPlanner.Tier.HOT, ids), ticks, ranks, now);
+    }
+
+    private static CoinPriceHistory tick(String coinId, double price, Instant lastUpdated) {
+        return new CoinPriceHistory(coinId, coinId, price, null, null, lastUpdated);
+    }
+
+    private static List<String> coins(int count) {
+        List<String> coins = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            coins.add("coin-" + i);
+        }
+        return coins;
+    }
+}
@@ -0,0 +1,98 @@
+package org.example.crypto.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrackedCoinRegistryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private TrackedCoinRegistry registry;
+
+    @AfterEach
+    void tearDown() {
+        if (registry != null) {
+            registry.stop();
+        }
+    }
+
+    @Test
+    void startsFromDefaultsWhenFileIsMissing() {
+        registry = new TrackedCoinRegistry(tempDir.resolve("coins.json"), List.of("Bitcoin", " ethereum "), false);
+        registry.start();
+
+        assertEquals(List.of("bitcoin", "ethereum"), registry.snapshot());
+    }
+
+    @Test
+    void bulkChangesPublishNewSnapshotAndPersistAtomically() throws IOException {
+        Path file = tempDir.resolve("coins.json");
+        registry = new TrackedCoinRegistry(file, List.of("bitcoin", "ethereum"), false);
+        registry.start();
+        List<String> inFlight = registry.snapshot();
+
+        assertEquals(List.of("solana", "tron"), registry.addAll(List.of("solana", "bitcoin", "TRON")));
+        assertEquals(List.of("ethereum"), registry.removeAll(List.of("ethereum", "unknown")));
+
+        // Снимок, взятый до изменений, не меняется
+        assertEquals(List.of("bitcoin", "ethereum"), inFlight);
+        assertEquals(List.of("bitcoin", "solana", "tron"), registry.snapshot());
+        assertThrows(UnsupportedOperationException.class, () -> registry.snapshot().add("x"));
+
+        assertEquals("[\"bitcoin\",\"solana\",\"tron\"]", Files.readString(file));
+        assertFalse(Files.exists(tempDir.resolve("coins.json.tmp")));
+    }
+
+    @Test
+    void noChangesDoNotRewriteFile() {
+        Path file = tempDir.resolve("coins.json");
+        registry = new TrackedCoinRegistry(file, List.of("bitcoin"), false);
+        registry.start();
+
+        assertTrue(registry.addAll(List.of("bitcoin")).isEmpty());
+        assertTrue(registry.removeAll(List.of("solana")).isEmpty());
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void invalidExternalEditKeepsCurrentList() throws IOException {
+        Path file = tempDir.resolve("coins.json");
+        Files.writeString(file, "[\"bitcoin\"]");
+        registry = new TrackedCoinRegistry(file, List.of("ethereum"), false);
+        registry.start();
+
+        Files.writeString(file, "[\"bitcoin\", ");
+        registry.reload();
+        assertEquals(List.of("bitcoin"), registry.snapshot());
+
+        Files.writeString(file, "[]");
+        registry.reload();
+        assertEquals(List.of("bitcoin"), registry.snapshot());
+    }
+
+    @Test
+    void externalEditIsPickedUpWithoutRestart() throws Exception {
+        Path file = tempDir.resolve("coins.json");
+        Files.writeString(file, "[\"bitcoin\"]");
+        registry = new TrackedCoinRegistry(file, List.of("ethereum"), true);
+        registry.start();
+        assertEquals(List.of("bitcoin"), registry.snapshot());
+
+        Files.writeString(file, "[\"bitcoin\",\"cardano\"]");
+
+        long deadline = System.currentTimeMillis() + 15_000;
+        while (!registry.snapshot().contains("cardano") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(List.of("bitcoin", "cardano"), registry.snapshot());
+    }
+}
@@ -0,0 +1,112 @@
+package org.example.crypto.spark;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.RowFactory;
+import org.apache.spark.sql.SparkSession;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParquetArchiveJobTest {
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+
+    private static SparkSession spark;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void startSpark() {
+        spark = SparkSession.builder().master("local[1]").appName("parquet-archive-test")
+                .config("spark.ui.enabled", "false")
+                .config("spark.sql.shuffle.partitions", "1")
+                .getOrCreate();
+    }
+
+    @AfterAll
+    static void stopSpark() {
+        spark.stop();
+    }
+
+    @Test
+    void archivePartitionedByCoinKeepsCoinKeyAndSkipsDirtyDays() throws Exception {
+        ParquetArchiveJob job = new ParquetArchiveJob();
+        ReflectionTestUtils.setField(job, "enabled", true);
+        ReflectionTestUtils.setField(job, "partitionByCoin", true);
+        ReflectionTestUtils.setField(job, "archivePath", directory.resolve("archive").toString());
+
+        // Три дня по две монеты, по два тика в день
+        List<Row> rows = new ArrayList<>();
+        for (int day = 0; day < 3; day++) {
+            LocalDate date = FIRST_DAY.plusDays(day);
+            for (int coinKey = 1; coinKey <= 2; coinKey++) {
+                for (int hour = 0; hour < 2; hour++) {
+                    Timestamp ts = Timestamp.from(date.atTime(hour, 0).toInstant(ZoneOffset.UTC));
+                    rows.add(RowFactory.create(coinKey, ts, coinKey * 100.0 + day, 1.0, 10.0, Date.valueOf(date)));
+                }
+            }
+        }
+        Dataset<Row> ticks = spark.createDataFrame(rows, SyntheticHistoryGenerator.SCHEMA);
+        // Третий день ещё открыт
+        job.replaceArchive(ticks, FIRST_DAY.plusDays(2));
+        assertEquals(FIRST_DAY.plusDays(2), job.readState().closedBefore());
+
+        // Во второй день после выгрузки дописывались тики: он читается из PostgreSQL, а не из архива
+        Dataset<Row> archived = job.readArchive(spark, job.readState(), List.of(FIRST_DAY.plusDays(1).toString()));
+
+        assertEquals(Arrays.asList(ParquetArchiveJob.TICK_COLUMNS), Arrays.asList(archived.columns()));
+        List<Row> read = archived.orderBy("coin_key", "ts").collectAsList();
+        assertEquals(4, read.size());
+        for (Row row : read) {
+            int coinKey = ((Number) row.getAs("coin_key")).intValue();
+            assertEquals(coinKey * 100.0, (double) row.getAs("price"));
+            assertEquals(FIRST_DAY, ((Timestamp) row.getAs("ts")).toInstant().atOffset(ZoneOffset.UTC).toLocalDate());
+        }
+        assertEquals(List.of(1, 1, 2, 2), read.stream().map(row -> ((Number) row.getAs("coin_key")).intValue()).toList());
+    }
+
+    @Test
+    void dirtyDaysBecomeTsRangesMergedWithBaseRange() {
+        LocalDate closedBefore = FIRST_DAY.plusDays(10);
+        List<ParquetArchiveJob.DayRange> ranges = ParquetArchiveJob.dayRanges(
+                new ParquetArchiveJob.DayRange(closedBefore, null),
+                List.of(FIRST_DAY.plusDays(3), FIRST_DAY, FIRST_DAY.plusDays(1), FIRST_DAY.plusDays(9), FIRST_DAY.plusDays(12)));
+
+        // Соседние дни сливаются, день перед closedBefore и день после него поглощаются открытым диапазоном
+        assertEquals(List.of(
+                new ParquetArchiveJob.DayRange(FIRST_DAY, FIRST_DAY.plusDays(2)),
+                new ParquetArchiveJob.DayRange(FIRST_DAY.plusDays(3), FIRST_DAY.plusDays(4)),
+                new ParquetArchiveJob.DayRange(FIRST_DAY.plusDays(9), null)), ranges);
+
+        // Условие сравнивает сам ts с границами, без выражений от ts
+        String condition = ParquetArchiveJob.tsCondition(ranges);
+        assertEquals("(ts >= '2024-01-01'::date AT TIME ZONE 'UTC' AND ts < '2024-01-03'::date AT TIME ZONE 'UTC')"
+                + " OR (ts >= '2024-01-04'::date AT TIME ZONE 'UTC' AND ts < '2024-01-05'::date AT TIME ZONE 'UTC')"
+                + " OR ts >= '2024-01-10'::date AT TIME ZONE 'UTC'", condition);
+        assertFalse(condition.contains("::date IN"));
+    }
+
+    @Test
+    void closedRangeWithoutDirtyDaysStaysSingleRange() {
+        ParquetArchiveJob.DayRange base = new ParquetArchiveJob.DayRange(FIRST_DAY, FIRST_DAY.plusDays(5));
+
+        assertEquals(List.of(base), ParquetArchiveJob.dayRanges(base, List.of()));
+        assertEquals(List.of(new ParquetArchiveJob.DayRange(FIRST_DAY.minusDays(1), FIRST_DAY.plusDays(5))),
+                ParquetArchiveJob.dayRanges(base, List.of(FIRST_DAY.minusDays(1), FIRST_DAY.plusDays(2))));
+    }
+}
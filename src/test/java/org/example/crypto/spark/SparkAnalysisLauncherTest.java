@@ -0,0 +1,71 @@
+package org.example.crypto.spark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.spark.launcher.SparkLauncher;
+import org.example.crypto.cluster.WriteFence;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SparkAnalysisLauncherTest {
+
+    @TempDir
+    Path directory;
+
+    private SparkSessionFactory sessionFactory;
+    private SparkAnalysisLauncher launcher;
+
+    @BeforeEach
+    void setUp() {
+        sessionFactory = new SparkSessionFactory(new MockEnvironment()
+                .withProperty("crypto.spark.conf[spark.driver.memory]", "3g"));
+        ReflectionTestUtils.setField(sessionFactory, "master", "spark://master:7077");
+        ReflectionTestUtils.setField(sessionFactory, "shufflePartitions", "8");
+        launcher = new SparkAnalysisLauncher(sessionFactory, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(launcher, "driverMemory", "2g");
+        ReflectionTestUtils.setField(launcher, "appResource", "");
+    }
+
+    @Test
+    void childCommandCarriesModuleFlagsMasterAndFence() throws Exception {
+        String classpath = directory.resolve("classes") + File.pathSeparator + directory.resolve("lib.jar");
+        ReflectionTestUtils.setField(launcher, "appResource", classpath);
+
+        List<String> command = launcher.childCommand(new WriteFence(727361, 5),
+                List.of("--add-opens=java.base/java.nio=ALL-UNNAMED", "-Xmx8g", "-agentlib:jdwp=transport=dt_socket"));
+
+        assertTrue(command.get(0).endsWith("java"));
+        assertEquals(List.of("-Xmx2g", "--add-opens=java.base/java.nio=ALL-UNNAMED", "-cp", classpath,
+                        AnalysisRunnerMain.class.getName(), "--crypto.spark.master=spark://master:7077",
+                        "--crypto.cluster.fence.lock-key=727361", "--crypto.cluster.fence.epoch=5"),
+                command.subList(1, command.size()));
+    }
+
+    @Test
+    void childCommandWithoutFenceHasNoFenceArguments() throws Exception {
+        List<String> command = launcher.childCommand(WriteFence.NONE, List.of());
+
+        assertEquals("--crypto.spark.master=spark://master:7077", command.get(command.size() - 1));
+    }
+
+    @Test
+    void submitConfLetsSparkConfOverrideDriverMemory() {
+        Map<String, String> plain = launcher.submitConf(false);
+
+        assertEquals("3g", plain.get(SparkLauncher.DRIVER_MEMORY));
+        assertEquals("8", plain.get("spark.sql.shuffle.partitions"));
+        assertFalse(plain.containsKey(SparkLauncher.DRIVER_EXTRA_JAVA_OPTIONS));
+
+        assertEquals("-Dloader.main=" + AnalysisRunnerMain.class.getName(),
+                launcher.submitConf(true).get(SparkLauncher.DRIVER_EXTRA_JAVA_OPTIONS));
+    }
+}
@@ -0,0 +1,44 @@
+package org.example.crypto.spark;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SparkSessionFactoryTest {
+
+    @Test
+    void sparkConfMergesNamedSettingsAndFreeFormConf() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("crypto.spark.conf[spark.sql.files.maxPartitionBytes]", "256m")
+                .withProperty("crypto.spark.conf[spark.sql.adaptive.enabled]", "false");
+        SparkSessionFactory factory = new SparkSessionFactory(environment);
+        ReflectionTestUtils.setField(factory, "executorMemory", "4g");
+        ReflectionTestUtils.setField(factory, "executorCores", "");
+        ReflectionTestUtils.setField(factory, "shufflePartitions", "16");
+
+        Map<String, String> conf = factory.sparkConf();
+
+        assertEquals("4g", conf.get("spark.executor.memory"));
+        assertFalse(conf.containsKey("spark.executor.cores"));
+        assertEquals("16", conf.get("spark.sql.shuffle.partitions"));
+        assertEquals("256m", conf.get("spark.sql.files.maxPartitionBytes"));
+        // crypto.spark.conf применяется последним и переопределяет встроенные значения
+        assertEquals("false", conf.get("spark.sql.adaptive.enabled"));
+    }
+
+    @Test
+    void sessionDefaultsYieldToConfiguredValues() {
+        SparkSessionFactory factory = new SparkSessionFactory(new MockEnvironment());
+        ReflectionTestUtils.setField(factory, "shufflePartitions", "");
+        Map<String, String> streamingDefaults = Map.of("spark.sql.shuffle.partitions", "4");
+
+        assertEquals("4", factory.sessionConf(streamingDefaults).get("spark.sql.shuffle.partitions"));
+
+        ReflectionTestUtils.setField(factory, "shufflePartitions", "32");
+        assertEquals("32", factory.sessionConf(streamingDefaults).get("spark.sql.shuffle.partitions"));
+    }
+}
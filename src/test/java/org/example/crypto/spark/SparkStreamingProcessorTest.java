@@ -0,0 +1,98 @@
+package org.example.crypto.spark;
+
+import org.apache.spark.api.java.function.VoidFunction2;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.streaming.Trigger;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructType;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SparkStreamingProcessorTest {
+
+    private static final StructType SCHEMA = new StructType().add("coin_id", DataTypes.StringType);
+
+    // foreachBatch выполняется на драйвере, поэтому батчи можно собрать в статический список
+    private static final List<SparkStreamingProcessor.Progress> batches = new CopyOnWriteArrayList<>();
+
+    private static SparkSession spark;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void startSpark() {
+        spark = SparkSession.builder().master("local[1]").appName("streaming-progress-test")
+                .config("spark.ui.enabled", "false")
+                .config("spark.sql.shuffle.partitions", "1")
+                .getOrCreate();
+    }
+
+    @AfterAll
+    static void stopSpark() {
+        spark.stop();
+    }
+
+    @Test
+    void batchOfSameQueryIsAppliedOnce() {
+        SparkStreamingProcessor.Progress applied = new SparkStreamingProcessor.Progress("q1", 5);
+
+        assertFalse(SparkStreamingProcessor.isNewBatch(applied, "q1", 4));
+        assertFalse(SparkStreamingProcessor.isNewBatch(applied, "q1", 5));
+        assertTrue(SparkStreamingProcessor.isNewBatch(applied, "q1", 6));
+        assertTrue(SparkStreamingProcessor.isNewBatch(null, "q1", 0));
+        // Строка прогресса до появления query_id
+        assertTrue(SparkStreamingProcessor.isNewBatch(new SparkStreamingProcessor.Progress(null, 5), "q1", 0));
+    }
+
+    @Test
+    void restartWithFreshCheckpointIsNotTakenForReplay() throws Exception {
+        Path landing = Files.createDirectories(directory.resolve("landing"));
+        Path checkpoint = directory.resolve("checkpoint");
+
+        Files.writeString(landing.resolve("ticks-1.json"), "{\"coin_id\":\"bitcoin\"}\n");
+        SparkStreamingProcessor.Progress first = runOnce(landing, checkpoint);
+        Files.writeString(landing.resolve("ticks-2.json"), "{\"coin_id\":\"ethereum\"}\n");
+        SparkStreamingProcessor.Progress second = runOnce(landing, checkpoint);
+
+        // Перезапуск с той же контрольной точкой: тот же id, номера батчей продолжаются
+        assertEquals(first.queryId(), second.queryId());
+        assertEquals(first.batchId() + 1, second.batchId());
+        assertFalse(SparkStreamingProcessor.isNewBatch(second, first.queryId(), first.batchId()));
+
+        // Контрольная точка потеряна: номера батчей снова с нуля, но id запроса другой,
+        // и батч применяется, а не отбрасывается как уже записанный
+        Files.writeString(landing.resolve("ticks-3.json"), "{\"coin_id\":\"solana\"}\n");
+        SparkStreamingProcessor.Progress fresh = runOnce(landing, directory.resolve("checkpoint-new"));
+
+        assertNotEquals(second.queryId(), fresh.queryId());
+        assertEquals(0, fresh.batchId());
+        assertTrue(SparkStreamingProcessor.isNewBatch(second, fresh.queryId(), fresh.batchId()));
+    }
+
+    private SparkStreamingProcessor.Progress runOnce(Path landing, Path checkpoint) throws Exception {
+        batches.clear();
+        VoidFunction2<Dataset<Row>, Long> record = (batch, batchId) ->
+                batches.add(new SparkStreamingProcessor.Progress(SparkStreamingProcessor.queryId(batch), batchId));
+        spark.readStream().schema(SCHEMA).json(landing.toString())
+                .writeStream()
+                .option("checkpointLocation", checkpoint.toString())
+                .trigger(Trigger.AvailableNow())
+                .foreachBatch(record)
+                .start()
+                .awaitTermination();
+        assertFalse(batches.isEmpty());
+        return batches.get(batches.size() - 1);
+    }
+}
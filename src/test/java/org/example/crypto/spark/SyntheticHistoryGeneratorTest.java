@@ -0,0 +1,73 @@
+package org.example.crypto.spark;
+
+import org.apache.spark.sql.Row;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SyntheticHistoryGeneratorTest {
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+
+    @Test
+    void parsesScaleSpec() {
+        SyntheticHistoryGenerator.Scale scale = SyntheticHistoryGenerator.Scale.parse("1000x1095", 1);
+        assertEquals(1000, scale.coins());
+        assertEquals(1095, scale.days());
+        assertEquals(1440, scale.stepsPerDay());
+        assertEquals(1000L * 1095 * 1440, scale.rows());
+
+        SyntheticHistoryGenerator.Scale hourly = SyntheticHistoryGenerator.Scale.parse("10x30@60", 1);
+        assertEquals(24, hourly.stepsPerDay());
+        assertEquals("10x30@60", hourly.toString());
+
+        assertThrows(IllegalArgumentException.class, () -> SyntheticHistoryGenerator.Scale.parse("10", 1));
+        assertThrows(IllegalArgumentException.class, () -> SyntheticHistoryGenerator.Scale.parse("10x30@7", 1));
+        assertThrows(IllegalArgumentException.class, () -> SyntheticHistoryGenerator.Scale.parse("0x30", 1));
+    }
+
+    @Test
+    void generatesOneDayOfTicksPerCoin() {
+        SyntheticHistoryGenerator.Scale scale = new SyntheticHistoryGenerator.Scale(3, 5, 15);
+        SyntheticHistoryGenerator.Market market = SyntheticHistoryGenerator.Market.create(42, scale, FIRST_DAY);
+
+        List<Row> rows = market.day(2, 4);
+
+        assertEquals(96, rows.size());
+        Timestamp first = rows.get(0).getAs(1);
+        assertEquals(FIRST_DAY.plusDays(4).atStartOfDay().toInstant(ZoneOffset.UTC), first.toInstant());
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            assertEquals(3, (int) row.getAs(0));
+            assertEquals(first.getTime() + i * 15 * 60_000L, ((Timestamp) row.getAs(1)).getTime());
+            assertTrue((double) row.getAs(2) > 0);
+            assertTrue((double) row.getAs(3) > 0);
+            assertEquals(Date.valueOf(FIRST_DAY.plusDays(4)), row.getAs(5));
+        }
+    }
+
+    @Test
+    void daysJoinAtOpenPricesAndAreDeterministic() {
+        SyntheticHistoryGenerator.Scale scale = new SyntheticHistoryGenerator.Scale(2, 3, 60);
+        SyntheticHistoryGenerator.Market market = SyntheticHistoryGenerator.Market.create(7, scale, FIRST_DAY);
+        SyntheticHistoryGenerator.Market same = SyntheticHistoryGenerator.Market.create(7, scale, FIRST_DAY);
+        SyntheticHistoryGenerator.Market other = SyntheticHistoryGenerator.Market.create(8, scale, FIRST_DAY);
+
+        assertEquals(market.day(1, 1), same.day(1, 1));
+        assertNotEquals(market.day(1, 1), other.day(1, 1));
+        assertNotEquals(market.day(0, 1), market.day(1, 1));
+
+        // Первая цена дня - открытие, к которому прижат конец моста предыдущего дня
+        double lastOfDay0 = market.day(0, 0).get(23).getAs(2);
+        double openOfDay1 = market.day(0, 1).get(0).getAs(2);
+        double openOfDay2 = market.day(0, 2).get(0).getAs(2);
+        assertTrue(Math.abs(Math.log(lastOfDay0 / openOfDay1)) < 0.2);
+        assertNotEquals(openOfDay1, openOfDay2);
+    }
+}
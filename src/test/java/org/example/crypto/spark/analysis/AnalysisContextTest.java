@@ -0,0 +1,96 @@
+package org.example.crypto.spark.analysis;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.storage.StorageLevel;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class AnalysisContextTest {
+
+    @Test
+    void sharedIntermediateIsBuiltOnceAndReleasedAfterLastConsumer() {
+        Dataset<Row> history = mockDataset();
+        Dataset<Row> shared = mockDataset();
+        AtomicInteger builds = new AtomicInteger();
+        List<String> events = new ArrayList<>();
+
+        AnalysisRegistry registry = new AnalysisRegistry()
+                .intermediate(new Intermediate("shared", List.of(Intermediates.PRICE_HISTORY), context -> {
+                    builds.incrementAndGet();
+                    return shared;
+                }))
+                .analysis(analysis("first", "shared", events))
+                .analysis(analysis("second", "shared", events));
+
+        AnalysisContext context = new AnalysisContext(registry, history, mock(ResultSink.class), new Timestamp(0));
+
+        context.run(registry.getAnalyses().get(0));
+        verify(shared, never()).unpersist();
+
+        context.run(registry.getAnalyses().get(1));
+        verify(shared, times(1)).unpersist();
+
+        context.close();
+
+        assertEquals(1, builds.get());
+        assertEquals(List.of("first", "second"), events);
+        verify(shared, times(1)).unpersist();
+        verify(history, never()).unpersist();
+    }
+
+    @Test
+    void unknownDependencyIsRejected() {
+        AnalysisRegistry registry = new AnalysisRegistry();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> registry.analysis(analysis("broken", "missing", new ArrayList<>())));
+    }
+
+    @Test
+    void defaultAnalysesShareIntermediates() {
+        AnalysisRegistry registry = AnalysisRegistry.withDefaults();
+
+        var counts = registry.consumerCounts();
+
+        assertEquals(2, counts.get(Intermediates.LATEST_PER_COIN_WEEK));
+        assertEquals(2, counts.get(Intermediates.DAILY_COIN_AGG));
+        assertEquals(2, counts.get(Intermediates.LATEST_PER_COIN));
+        assertEquals(registry.getAnalyses().size(), counts.get(Intermediates.PRICE_HISTORY));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Dataset<Row> mockDataset() {
+        Dataset<Row> dataset = mock(Dataset.class);
+        when(dataset.persist(any(StorageLevel.class))).thenReturn(dataset);
+        return dataset;
+    }
+
+    private static SparkAnalysis analysis(String name, String intermediate, List<String> events) {
+        return new SparkAnalysis() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public List<String> intermediates() {
+                return List.of(intermediate);
+            }
+
+            @Override
+            public void run(AnalysisContext context) {
+                assertNotNull(context.get(intermediate));
+                events.add(name);
+            }
+        };
+    }
+}
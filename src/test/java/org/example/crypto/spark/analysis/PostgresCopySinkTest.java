@@ -0,0 +1,150 @@
+package org.example.crypto.spark.analysis;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.RowFactory;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructType;
+import org.example.crypto.cluster.WriteFence;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PostgresCopySinkTest {
+
+    private static final String TABLE = "spark_daily_stats";
+    private static final String QUOTED = "\"" + TABLE + "\"";
+
+    private final List<String> executed = new CopyOnWriteArrayList<>();
+    private Connection connection;
+    private Dataset<Row> result;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws SQLException {
+        Statement statement = mock(Statement.class);
+        when(statement.execute(anyString())).thenAnswer(invocation -> executed.add(invocation.getArgument(0)));
+        connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(statement);
+        ResultSet tables = mock(ResultSet.class);
+        when(tables.next()).thenReturn(true);
+        DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+        when(metaData.getTables(any(), any(), eq(TABLE), any())).thenReturn(tables);
+        when(connection.getMetaData()).thenReturn(metaData);
+
+        result = mock(Dataset.class);
+        when(result.schema()).thenReturn(new StructType().add("coin_id", DataTypes.StringType)
+                .add("daily_avg_price", DataTypes.DoubleType));
+    }
+
+    // Обрыв COPY на середине: Spark падает на одном из разделов
+    private PostgresCopySink failingMidCopy(WriteFence fence) {
+        return new PostgresCopySink(() -> connection, (dataset, table) -> {
+            executed.add("COPY " + table);
+            throw new IllegalStateException("Job aborted: COPY раздела 3 оборван");
+        }, fence);
+    }
+
+    // Целевую таблицу изменяют только эти операторы; при сбое их быть не должно
+    private List<String> targetChanges() {
+        return executed.stream()
+                .filter(sql -> sql.startsWith("INSERT INTO " + QUOTED) || sql.startsWith("ALTER TABLE " + QUOTED)
+                        || sql.startsWith("DROP TABLE " + QUOTED) || sql.contains("RENAME TO " + QUOTED))
+                .toList();
+    }
+
+    @Test
+    void appendFailingMidCopyLeavesTargetUnchanged() throws SQLException {
+        PostgresCopySink sink = failingMidCopy(WriteFence.NONE);
+
+        assertThrows(IllegalStateException.class, () -> sink.append(result, TABLE));
+
+        assertTrue(executed.contains("COPY " + TABLE + "_staging"));
+        assertEquals(List.of(), targetChanges());
+        assertEquals("DROP TABLE IF EXISTS " + "\"" + TABLE + "_staging\"", executed.get(executed.size() - 1));
+        assertTrue(sink.getRowsWritten().isEmpty());
+    }
+
+    @Test
+    void replaceFailingMidCopyLeavesTargetUnchanged() throws SQLException {
+        PostgresCopySink sink = failingMidCopy(WriteFence.NONE);
+
+        assertThrows(IllegalStateException.class, () -> sink.replace(result, TABLE, List.of("coin_id")));
+
+        assertTrue(executed.contains("COPY " + TABLE + "_shadow"));
+        assertEquals(List.of(), targetChanges());
+        assertTrue(executed.stream().noneMatch(sql -> sql.startsWith("CREATE INDEX")));
+        assertEquals("DROP TABLE IF EXISTS " + "\"" + TABLE + "_shadow\"", executed.get(executed.size() - 1));
+    }
+
+    @Test
+    void failureInsideSwapRollsBackWholeTransaction() throws SQLException {
+        PostgresCopySink sink = new PostgresCopySink(() -> connection, (dataset, table) -> 10, WriteFence.NONE);
+        Statement statement = connection.createStatement();
+        doThrow(new SQLException("нет места на диске")).when(statement)
+                .execute(startsWith("ALTER TABLE \"" + TABLE + "_shadow\" RENAME"));
+
+        assertThrows(IllegalStateException.class, () -> sink.replace(result, TABLE));
+
+        // Переименование целевой таблицы в _old уже выполнено, но не зафиксировано
+        assertTrue(executed.contains("ALTER TABLE " + QUOTED + " RENAME TO \"" + TABLE + "_old\""));
+        var order = inOrder(connection);
+        order.verify(connection).rollback();
+        // Единственная фиксация - удаление теневой таблицы после отката
+        order.verify(connection).commit();
+        assertTrue(sink.getRowsWritten().isEmpty());
+    }
+
+    @Test
+    void staleFenceLeavesEverythingUntouched() throws SQLException {
+        ResultSet epoch = mock(ResultSet.class);
+        when(epoch.next()).thenReturn(true);
+        when(epoch.getLong(1)).thenReturn(8L);
+        PreparedStatement select = mock(PreparedStatement.class);
+        when(select.executeQuery()).thenReturn(epoch);
+        when(connection.prepareStatement(startsWith("SELECT epoch"))).thenReturn(select);
+        PostgresCopySink sink = new PostgresCopySink(() -> connection, (dataset, table) -> 10, new WriteFence(1, 7));
+
+        assertThrows(IllegalStateException.class, () -> sink.append(result, TABLE));
+
+        // Теневая таблица с общим именем может принадлежать новому лидеру: её тоже не трогаем
+        assertEquals(List.of(), executed);
+        verify(connection, never()).commit();
+    }
+
+    @Test
+    void csvKeepsNullsAndEmptyStringsApart() {
+        StringBuilder buffer = new StringBuilder();
+
+        PostgresCopySink.appendCsv(buffer, RowFactory.create("bit\"coin", "", null, 1.5, new BigDecimal("1E+3"),
+                Date.valueOf("2024-01-02")));
+
+        assertEquals("\"bit\"\"coin\",\"\",,1.5,1000,2024-01-02\n", buffer.toString());
+    }
+
+    @Test
+    void columnDefinitionsMatchSparkJdbcTypes() {
+        StructType schema = new StructType()
+                .add("coin_id", DataTypes.StringType)
+                .add("rank_position", DataTypes.IntegerType)
+                .add("weekly_volume", DataTypes.DoubleType)
+                .add("week_start", DataTypes.TimestampType);
+
+        assertEquals("\"coin_id\" TEXT, \"rank_position\" INTEGER, \"weekly_volume\" DOUBLE PRECISION, \"week_start\" TIMESTAMP",
+                PostgresCopySink.columnDefinitions(schema));
+    }
+}
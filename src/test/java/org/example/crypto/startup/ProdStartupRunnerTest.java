@@ -0,0 +1,94 @@
+package org.example.crypto.startup;
+
+import org.example.crypto.cluster.CoinShardingService;
+import org.example.crypto.cluster.LeaderElectionService;
+import org.example.crypto.cluster.LeadershipChangedEvent;
+import org.example.crypto.service.AutoUpdateService;
+import org.example.crypto.service.CoinGeckoService;
+import org.example.crypto.spark.SparkStreamingProcessor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+class ProdStartupRunnerTest {
+
+    private CoinGeckoService coinGeckoService;
+    private AutoUpdateService autoUpdateService;
+    private LeaderElectionService leaderElectionService;
+    private CoinShardingService coinShardingService;
+    private ProdStartupRunner runner;
+
+    @BeforeEach
+    void setUp() {
+        coinGeckoService = mock(CoinGeckoService.class);
+        autoUpdateService = mock(AutoUpdateService.class);
+        leaderElectionService = mock(LeaderElectionService.class);
+        coinShardingService = mock(CoinShardingService.class);
+        runner = new ProdStartupRunner(coinGeckoService, autoUpdateService, leaderElectionService,
+                coinShardingService, mock(SparkStreamingProcessor.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        runner.shutdown();
+    }
+
+    @Test
+    void stepDownDuringHistoryLoadDoesNotStartAutoUpdate() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        // Загрузка истории, которая глотает прерывание и дорабатывает до конца
+        doAnswer(invocation -> {
+            loading.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finished.countDown();
+            return null;
+        }).when(coinGeckoService).initializeHistoricalDataIfNeeded(anyInt());
+
+        when(leaderElectionService.isLeader()).thenReturn(true);
+        runner.onLeadershipChanged(new LeadershipChangedEvent(this, true));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        when(leaderElectionService.isLeader()).thenReturn(false);
+        runner.onLeadershipChanged(new LeadershipChangedEvent(this, false));
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+
+        verify(autoUpdateService).stopAutoUpdate();
+        verify(autoUpdateService, never()).startAutoUpdate();
+    }
+
+    @Test
+    void shardedStepDownCancelsHistoryLoad() throws Exception {
+        when(coinShardingService.isEnabled()).thenReturn(true);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            loading.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return null;
+        }).when(coinGeckoService).initializeHistoricalDataIfNeeded(anyInt());
+
+        runner.onLeadershipChanged(new LeadershipChangedEvent(this, true));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        runner.onLeadershipChanged(new LeadershipChangedEvent(this, false));
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        verify(autoUpdateService).setAnalysisEnabled(false);
+    }
+}
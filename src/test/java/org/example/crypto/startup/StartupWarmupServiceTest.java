@@ -0,0 +1,70 @@
+package org.example.crypto.startup;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.crypto.service.CoinGeckoService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+class StartupWarmupServiceTest {
+
+    private CoinGeckoService coinGeckoService;
+    private ApplicationEventPublisher eventPublisher;
+    private SimpleMeterRegistry meterRegistry;
+    private StartupWarmupService warmup;
+    private WarmupHealthIndicator health;
+
+    @BeforeEach
+    void setUp() {
+        coinGeckoService = mock(CoinGeckoService.class);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        meterRegistry = new SimpleMeterRegistry();
+        warmup = new StartupWarmupService(coinGeckoService, eventPublisher, meterRegistry);
+        ReflectionTestUtils.setField(warmup, "historyDays", 90);
+        ReflectionTestUtils.setField(warmup, "retries", 2);
+        ReflectionTestUtils.setField(warmup, "retryDelayMs", 1L);
+        health = new WarmupHealthIndicator(warmup);
+        ReflectionTestUtils.setField(health, "blockReadiness", true);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void transientFailureIsRetried() {
+        doThrow(new RuntimeException("429 Too Many Requests")).doNothing()
+                .when(coinGeckoService).initializeHistoricalDataIfNeeded(anyInt(), any(BiConsumer.class));
+
+        warmup.runWarmup();
+
+        assertEquals(StartupWarmupService.Phase.COMPLETED, warmup.getPhase());
+        verify(coinGeckoService, times(2)).initializeHistoricalDataIfNeeded(anyInt(), any(BiConsumer.class));
+        verify(eventPublisher).publishEvent(any(WarmupCompletedEvent.class));
+        assertEquals(Status.UP, health.health().getStatus());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void persistentFailureStillGoesReadyAndStartsPolling() {
+        assertEquals(Status.OUT_OF_SERVICE, health.health().getStatus());
+        doThrow(new RuntimeException("CoinGecko недоступен"))
+                .when(coinGeckoService).initializeHistoricalDataIfNeeded(anyInt(), any(BiConsumer.class));
+
+        warmup.runWarmup();
+
+        // Первая попытка и два повтора, затем событие для запуска опроса и готовность с ошибкой в деталях
+        verify(coinGeckoService, times(3)).initializeHistoricalDataIfNeeded(anyInt(), any(BiConsumer.class));
+        assertEquals(StartupWarmupService.Phase.FAILED, warmup.getPhase());
+        verify(eventPublisher).publishEvent(any(WarmupCompletedEvent.class));
+        assertEquals(Status.UP, health.health().getStatus());
+        assertEquals("CoinGecko недоступен", health.health().getDetails().get("error"));
+        assertEquals(1, meterRegistry.counter("crypto.startup.warmup.failures").count());
+    }
+}
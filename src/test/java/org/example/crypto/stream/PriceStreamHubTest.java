@@ -0,0 +1,108 @@
+package org.example.crypto.stream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.crypto.model.CoinPriceHistory;
+import org.example.crypto.service.TicksIngestedEvent;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceStreamHubTest {
+
+    private static final Instant START = Instant.parse("2024-03-10T00:00:00Z");
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PriceStreamHub hub = new PriceStreamHub(10, registry);
+
+    // Подписчик, который сам решает, сколько запросить
+    private static final class Client extends BaseSubscriber<PriceUpdate> {
+
+        private final long initialRequest;
+        private final List<PriceUpdate> received = new ArrayList<>();
+
+        Client(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            if (initialRequest > 0) {
+                request(initialRequest);
+            }
+        }
+
+        @Override
+        protected void hookOnNext(PriceUpdate update) {
+            received.add(update);
+        }
+
+        List<String> prices() {
+            return received.stream().map(update -> update.coinId() + "=" + update.price()).toList();
+        }
+    }
+
+    private void publish(int second, String coinId, double price) {
+        CoinPriceHistory tick = CoinPriceHistory.builder().coinId(coinId).symbol(coinId.substring(0, 3))
+                .price(price).timestamp(START.plusSeconds(second)).build();
+        hub.onTicksIngested(new TicksIngestedEvent(this, List.of(tick)));
+    }
+
+    @Test
+    void subscriberGetsCurrentPricesThenLiveUpdatesOfItsCoins() {
+        publish(0, "bitcoin", 100);
+        publish(0, "ethereum", 10);
+        Client client = new Client(Long.MAX_VALUE);
+        hub.subscribe(Set.of("bitcoin", "solana")).subscribe(client);
+
+        publish(1, "ethereum", 11);
+        publish(1, "solana", 5);
+        publish(2, "bitcoin", 101);
+
+        assertEquals(List.of("bitcoin=100.0", "solana=5.0", "bitcoin=101.0"), client.prices());
+    }
+
+    @Test
+    void slowSubscriberGetsLatestValuePerCoinWhileFastOneGetsEverything() {
+        Client fast = new Client(Long.MAX_VALUE);
+        Client slow = new Client(1);
+        hub.subscribe(Set.of()).subscribe(fast);
+        hub.subscribe(Set.of()).subscribe(slow);
+
+        for (int second = 0; second < 100; second++) {
+            publish(second, "bitcoin", 100 + second);
+            publish(second, "ethereum", 10 + second);
+        }
+
+        assertEquals(200, fast.received.size());
+        assertEquals(List.of("bitcoin=100.0"), slow.prices());
+        slow.request(10);
+        // В буфере по значению на монету, в порядке первого появления: ethereum попал туда раньше bitcoin
+        assertEquals(List.of("bitcoin=100.0", "ethereum=109.0", "bitcoin=199.0"), slow.prices());
+        // 199 значений после первого легли в буфер из двух ячеек
+        assertEquals(197, registry.get("crypto.stream.conflated").counter().count());
+    }
+
+    @Test
+    void staleTicksAreIgnoredAndCancelledSubscribersAreReleased() {
+        Client client = new Client(Long.MAX_VALUE);
+        hub.subscribe(Set.of()).subscribe(client);
+        assertEquals(1, hub.subscriberCount());
+
+        publish(10, "bitcoin", 100);
+        publish(5, "bitcoin", 90);
+        client.dispose();
+        publish(20, "bitcoin", 110);
+
+        assertEquals(List.of("bitcoin=100.0"), client.prices());
+        assertEquals(0, hub.subscriberCount());
+        assertTrue(hub.hasCapacity());
+        assertEquals(2, registry.get("crypto.stream.published").counter().count());
+    }
+}
@@ -0,0 +1,150 @@
+package org.example.crypto.wal;
+
+import org.example.crypto.model.CoinPriceHistory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TickWriteAheadLogTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void appendedTicksShouldBeReadBackInOrder() throws Exception {
+        try (TickWriteAheadLog log = new TickWriteAheadLog(directory, SEGMENT_SIZE)) {
+            log.append(List.of(tick("bitcoin", 1, 50000.0, 1e9), tick("ethereum", 2, 3000.0, null)));
+
+            TickWriteAheadLog.Batch batch = log.read(0, 10);
+
+            assertEquals(2, batch.records().size());
+            CoinPriceHistory first = batch.records().get(0);
+            assertEquals("bitcoin", first.getCoinId());
+            assertEquals("BTC", first.getSymbol());
+            assertEquals(50000.0, first.getPrice());
+            assertEquals(1e9, first.getVolume());
+            assertEquals(Instant.ofEpochSecond(1, 500), first.getTimestamp());
+            assertNull(batch.records().get(1).getVolume());
+            assertEquals(log.getDurablePosition(), batch.nextPosition());
+        }
+    }
+
+    @Test
+    void unacknowledgedTicksShouldSurviveReopen() throws Exception {
+        try (TickWriteAheadLog log = new TickWriteAheadLog(directory, SEGMENT_SIZE)) {
+            log.append(List.of(tick("bitcoin", 1, 1.0, 1.0), tick("bitcoin", 2, 2.0, 1.0)));
+            TickWriteAheadLog.Batch first = log.read(0, 1);
+            log.acknowledge(first.nextPosition());
+        }
+
+        try (TickWriteAheadLog reopened = new TickWriteAheadLog(directory, SEGMENT_SIZE)) {
+            TickWriteAheadLog.Batch batch = reopened.read(reopened.getAcknowledgedPosition(), 10);
+
+            assertEquals(1, batch.records().size());
+            assertEquals(2.0, batch.records().get(0).getPrice());
+
+            reopened.append(List.of(tick("bitcoin", 3, 3.0, 1.0)));
+            assertEquals(2, reopened.read(reopened.getAcknowledgedPosition(), 10).records().size());
+        }
+    }
+
+    @Test
+    void ticksShouldSpanSegmentsAndAcknowledgedSegmentsShouldBeDeleted() throws Exception {
+        List<CoinPriceHistory> ticks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            ticks.add(tick("bitcoin", i, i, 1.0));
+        }
+
+        try (TickWriteAheadLog log = new TickWriteAheadLog(directory, SEGMENT_SIZE)) {
+            log.append(ticks);
+            assertTrue(log.getSegmentCount() > 1);
+
+            TickWriteAheadLog.Batch batch = log.read(0, 1000);
+            assertEquals(100, batch.records().size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i, batch.records().get(i).getPrice());
+            }
+
+            log.acknowledge(batch.nextPosition());
+            assertTrue(log.getSegmentCount() <= 1);
+            try (var files = Files.list(directory)) {
+                assertTrue(files.filter(f -> f.toString().endsWith(".wal")).count() <= 1);
+            }
+        }
+    }
+
+    @Test
+    void drainedSegmentsShouldBeUnmappedImmediately() throws Exception {
+        BufferPoolMXBean mapped = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("mapped")).findFirst().orElseThrow();
+        long before = mapped.getCount();
+
+        try (TickWriteAheadLog log = new TickWriteAheadLog(directory, SEGMENT_SIZE)) {
+            for (int round = 0; round < 20; round++) {
+                List<CoinPriceHistory> ticks = new ArrayList<>();
+                for (int i = 0; i < 50; i++) {
+                    ticks.add(tick("bitcoin", round * 50L + i, i, 1.0));
+                }
+                log.append(ticks);
+                TickWriteAheadLog.Batch batch = log.read(log.getAcknowledgedPosition(), 1000);
+                assertEquals(50, batch.records().size());
+                log.acknowledge(batch.nextPosition());
+            }
+
+            // Без явного снятия отображения каждый выгруженный сегмент жил бы до сборки мусора
+            assertTrue(mapped.getCount() - before <= 1, "отображено сегментов: " + (mapped.getCount() - before));
+        }
+        assertEquals(before, mapped.getCount());
+    }
+
+    @Test
+    void closedLogShouldRejectAppends() throws Exception {
+        TickWriteAheadLog log = new TickWriteAheadLog(directory, SEGMENT_SIZE);
+        log.append(List.of(tick("bitcoin", 1, 1.0, 1.0)));
+        log.close();
+        log.close();
+
+        assertThrows(IllegalStateException.class, () -> log.append(List.of(tick("bitcoin", 2, 2.0, 1.0))));
+    }
+
+    @Test
+    void tornTailShouldBeDiscardedOnRecovery() throws Exception {
+        long end;
+        try (TickWriteAheadLog log = new TickWriteAheadLog(directory, SEGMENT_SIZE)) {
+            end = log.append(List.of(tick("bitcoin", 1, 1.0, 1.0)));
+        }
+
+        Path segment = directory.resolve(String.format("%020d.wal", 0));
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[(int) end] = 42;
+        bytes[(int) end + 8] = 7;
+        Files.write(segment, bytes);
+
+        try (TickWriteAheadLog reopened = new TickWriteAheadLog(directory, SEGMENT_SIZE)) {
+            assertEquals(end, reopened.getDurablePosition());
+            assertEquals(1, reopened.read(0, 10).records().size());
+        }
+    }
+
+    private CoinPriceHistory tick(String coinId, long second, double price, Double volume) {
+        CoinPriceHistory history = new CoinPriceHistory();
+        history.setCoinId(coinId);
+        history.setSymbol("BTC");
+        history.setPrice(price);
+        history.setVolume(volume);
+        history.setMarketCap(price * 10);
+        history.setTimestamp(Instant.ofEpochSecond(second, 500));
+        return history;
+    }
+}